@@ -0,0 +1,253 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An ApproximateStatistics estimates the most common Strings used in search and getPage requests
+ * using a fixed amount of memory, no matter how many distinct Strings are submitted.
+ *
+ * Over all time, the Strings are summarized by a SpaceSavingSummary. For windowed queries, time is
+ * divided into buckets of bucketSeconds seconds, and the most recent bucketCount buckets each keep a
+ * SpaceSavingSummary of candidate Strings and a CountMinSketch of counts. A window is answered from
+ * the buckets that overlap it, so window boundaries are rounded outwards to whole buckets and windows
+ * longer than bucketCount * bucketSeconds only count the buckets that are still kept.
+ *
+ * Abstraction Function:
+ * An ApproximateStatistics represents the stream of Strings recorded with record(). overall summarizes
+ * the whole stream. For every slot s with bucketIndex[s] >= 0, candidates[s] and sketches[s] summarize
+ * the Strings recorded at times t with t / bucketSeconds == bucketIndex[s]. A slot with
+ * bucketIndex[s] == -1 has not summarized any Strings.
+ */
+class ApproximateStatistics {
+
+    /* the first int of written statistics, "CMS2", which changes whenever the sketches hash Strings differently */
+    private static final int FORMAT = 0x434D5332;
+
+    private final int bucketSeconds;
+    private final int bucketCount;
+    private final double epsilon;
+    private final SpaceSavingSummary overall;
+    private final long[] bucketIndex;
+    private final SpaceSavingSummary[] candidates;
+    private final CountMinSketch[] sketches;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /*
+     * Representation Invariant:
+     *  - bucketSeconds > 0 and bucketCount > 0
+     *  - bucketIndex, candidates and sketches all have length bucketCount
+     *  - bucketIndex[s] == -1 or bucketIndex[s] % bucketCount == s for all slots s
+     *  - candidates[s].total() == sketches[s].total() for all slots s
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - bucketSeconds, bucketCount and epsilon are private and final
+     *  - overall, bucketIndex, candidates and sketches are private, never shared outside of this
+     *    class and are only accessed while holding lock, or before the ApproximateStatistics is shared
+     *  - lock is a ReentrantLock rather than the lock of the ApproximateStatistics, so that a virtual thread
+     *    that waits for it does not pin its carrier thread
+     */
+
+    /**
+     * Check that the representation invariants for ApproximateStatistics hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (bucketSeconds <= 0 || bucketCount <= 0) {
+            throw new RuntimeException("bucketSeconds and bucketCount should be > 0");
+        }
+        for (int slot = 0; slot < bucketCount; slot++) {
+            if (bucketIndex[slot] != -1 && bucketIndex[slot] % bucketCount != slot) {
+                throw new RuntimeException("bucket " + bucketIndex[slot] + " is stored in the wrong slot");
+            }
+            if (candidates[slot].total() != sketches[slot].total()) {
+                throw new RuntimeException("the candidates and sketch of slot " + slot + " must count the same Strings");
+            }
+        }
+    }
+
+    /**
+     * Create an empty ApproximateStatistics with the settings of a MediatorConfig.
+     * @param config the settings to use, config must not be null
+     */
+    ApproximateStatistics(MediatorConfig config) {
+        bucketSeconds = config.getTrendingBucketSeconds();
+        bucketCount = config.getTrendingHorizon() / bucketSeconds;
+        epsilon = config.getSketchEpsilon();
+        overall = new SpaceSavingSummary(config.getHeavyHitterCapacity());
+        bucketIndex = new long[bucketCount];
+        candidates = new SpaceSavingSummary[bucketCount];
+        sketches = new CountMinSketch[bucketCount];
+
+        Arrays.fill(bucketIndex, -1);
+        for (int slot = 0; slot < bucketCount; slot++) {
+            candidates[slot] = new SpaceSavingSummary(config.getHeavyHitterCapacity());
+            sketches[slot] = new CountMinSketch(epsilon, config.getSketchDelta());
+        }
+        checkRep();
+    }
+
+    /**
+     * Record a String used as the input parameter to a search or getPage request.
+     * @param query the String used as the input parameter, query must not be null
+     * @param time the time, in seconds, at which the request was made
+     *
+     * Frame Condition:
+     * - if the bucket of time is newer than the bucket stored in its slot, the slot is cleared
+     *   and reused for the bucket of time
+     * - a String recorded for a bucket older than the bucket stored in its slot is only counted
+     *   in overall
+     */
+    void record(String query, long time) {
+        lock.lock();
+        try {
+            overall.offer(query);
+
+            long bucket = Math.floorDiv(time, bucketSeconds);
+            int slot = Math.floorMod(bucket, bucketCount);
+
+            if (bucketIndex[slot] < bucket) {
+                bucketIndex[slot] = bucket;
+                candidates[slot].clear();
+                sketches[slot].clear();
+            }
+            if (bucketIndex[slot] == bucket) {
+                candidates[slot].offer(query);
+                sketches[slot].add(query);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimate up to limit of the most common Strings ever recorded.
+     * @param limit the maximum number of Strings to return
+     * @return a Ranking of up to limit Strings in non-increasing order of estimated count, whose
+     * error bound is the largest possible overestimate of any count, which is at most
+     * (number of recorded Strings) / heavyHitterCapacity
+     */
+    Ranking mostFrequent(int limit) {
+        lock.lock();
+        try {
+            return new Ranking(RequestHistory.rank(overall.estimates(), limit), overall.errorBound());
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimate up to maxItems of the most common Strings recorded in a window of time.
+     * @param since the earliest time, in seconds, of a String that is to be counted
+     * @param now the latest time, in seconds, of a String that is to be counted
+     * @param maxItems the maximum number of Strings to return
+     * @return a Ranking of up to maxItems Strings in non-increasing order of estimated count over
+     * the buckets overlapping [since, now]. Its error bound is the larger of the overestimate that
+     * any count exceeds with probability at most delta, and the largest possible count of a String
+     * that was not a candidate in any of those buckets.
+     */
+    Ranking mostFrequentSince(long since, long now, int maxItems) {
+        lock.lock();
+        try {
+            long firstBucket = Math.max(Math.floorDiv(since, bucketSeconds),
+                    Math.floorDiv(now, bucketSeconds) - bucketCount + 1);
+            long lastBucket = Math.floorDiv(now, bucketSeconds);
+
+            List<Integer> slots = new ArrayList<>();
+            Set<String> windowCandidates = new LinkedHashSet<>();
+            long windowTotal = 0;
+            long missedBound = 0;
+
+            for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                int slot = Math.floorMod(bucket, bucketCount);
+                if (bucketIndex[slot] == bucket) {
+                    slots.add(slot);
+                    windowCandidates.addAll(candidates[slot].keys());
+                    windowTotal += sketches[slot].total();
+                    missedBound += candidates[slot].errorBound();
+                }
+            }
+
+            Map<String, Long> estimates = new LinkedHashMap<>();
+            for (String candidate : windowCandidates) {
+                long estimate = 0;
+                for (int slot : slots) {
+                    estimate += sketches[slot].estimate(candidate);
+                }
+                estimates.put(candidate, estimate);
+            }
+
+            long sketchBound = (long) Math.ceil(epsilon * windowTotal);
+            checkRep();
+            return new Ranking(RequestHistory.rank(estimates, maxItems), Math.max(sketchBound, missedBound));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write every summary and sketch to a snapshot, preceded by FORMAT and the settings they were created with.
+     * @param out the snapshot to write to, out must not be null
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        lock.lock();
+        try {
+            out.writeInt(FORMAT);
+            out.writeInt(bucketSeconds);
+            out.writeInt(bucketCount);
+            out.writeInt(overall.capacity());
+            out.writeInt(sketches[0].width());
+            out.writeInt(sketches[0].depth());
+
+            overall.writeTo(out);
+            for (int slot = 0; slot < bucketCount; slot++) {
+                out.writeLong(bucketIndex[slot]);
+                candidates[slot].writeTo(out);
+                sketches[slot].writeTo(out);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Create an ApproximateStatistics with the settings of a MediatorConfig from statistics written
+     * with writeTo. If the written statistics were created with different settings, or with sketches that
+     * hashed Strings differently, they cannot be restored, and the rest of in is left unread.
+     * @param in the snapshot to read from, in must not be null
+     * @param config the settings to use, config must not be null
+     * @return an ApproximateStatistics with the contents of the written statistics, or an empty one if
+     * they were created with different settings
+     * @throws IOException if in cannot be read
+     */
+    static ApproximateStatistics readFrom(DataInput in, MediatorConfig config) throws IOException {
+        ApproximateStatistics statistics = new ApproximateStatistics(config);
+        if (in.readInt() != FORMAT
+                || in.readInt() != statistics.bucketSeconds
+                || in.readInt() != statistics.bucketCount
+                || in.readInt() != statistics.overall.capacity()
+                || in.readInt() != statistics.sketches[0].width()
+                || in.readInt() != statistics.sketches[0].depth()) {
+            return statistics;
+        }
+
+        statistics.overall.readFrom(in);
+        for (int slot = 0; slot < statistics.bucketCount; slot++) {
+            statistics.bucketIndex[slot] = in.readLong();
+            statistics.candidates[slot].readFrom(in);
+            statistics.sketches[slot].readFrom(in);
+        }
+        statistics.checkRep();
+        return statistics;
+    }
+}
@@ -0,0 +1,362 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A ConcurrencyLimiter limits the number of asynchronous calls to a backend that are in flight at once, and
+ * adapts that limit to the latency of the backend, so that a burst of requests does not overload it.
+ *
+ * The limit follows the additive increase, multiplicative decrease rule of TCP congestion control. The lowest
+ * latency of a recent successful call that started while at most half the limit was in use estimates the
+ * latency of the backend when it is not loaded. Calls made while the limit is in use are never sampled, so
+ * an overloaded backend cannot raise the estimate, but once the limit has backed off to a single call every
+ * call is sampled, so the estimate follows a backend that has become slower for good.
+ *
+ * Completed calls are judged in rounds of limit calls, about one round trip of the backend. If even the fastest
+ * call of a round took more than TOLERANCE times the unloaded latency, the backend is queueing calls, and the
+ * limit is multiplied by BACKOFF. Judging a round by its fastest call keeps the few calls that a backend answers
+ * slowly however lightly it is loaded from holding the limit down. Otherwise, if the limit was in use during the
+ * round, it grows by one, up to maxLimit; until the limit is first decreased, it doubles instead, so that the
+ * first burst of calls finds the capacity of the backend within a few round trips. A call that fails also
+ * multiplies the limit by BACKOFF, at most once for the calls started before the previous decrease.
+ *
+ * A call that is submitted while the limit is in use waits in a first in, first out queue. It is rejected at
+ * once if maxQueued calls are already waiting, or if the calls ahead of it are expected to take longer than
+ * maxWait to complete, and is rejected when it has waited for maxWait, so no call waits for a permit it could
+ * only use after its caller has given up.
+ *
+ * Abstraction Function:
+ * A ConcurrencyLimiter represents a backend with inFlight calls running, and the calls in waiting, which each
+ * start once their future in waiting is completed. A call is only started while fewer than limit, rounded down,
+ * calls are running. unloadedLatency is the lowest latency in the previous window of BASELINE_WINDOW sampled
+ * calls, and windowLatency the lowest in the current window, of which windowCalls have completed; either is
+ * Long.MAX_VALUE if its window has no sampled calls yet. roundCalls calls of the current round have completed,
+ * the fastest of which took roundLatency, or Long.MAX_VALUE if none has, and roundLimited is true if the limit
+ * was in use when any of them completed. slowStart is true until the limit is first decreased. smoothedLatency
+ * is an exponentially weighted moving average of the latency of all calls, or 0 if no call has completed.
+ * lastDecrease is the time at which the limit was last decreased. All times and latencies are in nanoseconds.
+ */
+class ConcurrencyLimiter {
+
+    /* the limit that a ConcurrencyLimiter starts with, unless its maximum is lower */
+    private static final int INITIAL_LIMIT = 4;
+
+    /* a round whose fastest call takes more than TOLERANCE times the unloaded latency shows an overloaded backend */
+    private static final double TOLERANCE = 2.0;
+
+    /* the factor that the limit is multiplied by when the backend is overloaded */
+    private static final double BACKOFF = 0.75;
+
+    /* the number of sampled calls after which the unloaded latency is measured again, to follow the backend */
+    private static final int BASELINE_WINDOW = 64;
+
+    /* the weight of the latest call in the smoothed latency */
+    private static final double SMOOTHING = 0.1;
+
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long maxWait;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight = 0;
+    private long unloadedLatency = Long.MAX_VALUE;
+    private long windowLatency = Long.MAX_VALUE;
+    private int windowCalls = 0;
+    private long roundLatency = Long.MAX_VALUE;
+    private int roundCalls = 0;
+    private boolean roundLimited = false;
+    private boolean slowStart = true;
+    private double smoothedLatency = 0;
+    private long lastDecrease;
+
+    /*
+     * Representation Invariant:
+     *  - maxLimit > 0, maxQueued >= 0 and maxWait >= 0
+     *  - 1 <= limit <= maxLimit
+     *  - inFlight >= 0 and waiting.size() <= maxQueued
+     *  - waiting does not contain any null futures
+     *  - 0 <= windowCalls < BASELINE_WINDOW and 0 <= roundCalls < limit
+     *  - unloadedLatency >= 0, windowLatency >= 0, roundLatency >= 0 and smoothedLatency >= 0
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - maxLimit, maxQueued and maxWait are private, final and immutable
+     *  - waiting, limit, inFlight, the latency estimates and the state of the current round are private, never
+     *    shared outside of this class, and only accessed while holding lock. lock is a ReentrantLock, so that a
+     *    virtual thread waiting for it does not pin its carrier thread
+     *  - a waiting future is only completed after lock is released, since completing it starts its call on the
+     *    completing thread. A future that timed out in the meantime cannot be completed, and its permit is
+     *    handed back
+     */
+
+    /**
+     * Check that the representation invariants for ConcurrencyLimiter hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (maxLimit <= 0 || maxQueued < 0 || maxWait < 0) {
+            throw new RuntimeException("maxLimit should be > 0, and maxQueued and maxWait should be >= 0");
+        }
+        if (limit < 1 || limit > maxLimit) {
+            throw new RuntimeException("limit should be between 1 and maxLimit");
+        }
+        if (inFlight < 0 || waiting.size() > maxQueued) {
+            throw new RuntimeException("inFlight should be >= 0, and at most maxQueued calls should wait");
+        }
+    }
+
+    /**
+     * Create a ConcurrencyLimiter with no calls in flight.
+     * @param maxLimit the largest number of calls that may be in flight at once, maxLimit > 0
+     * @param maxQueued the largest number of calls that may wait for a permit at once, maxQueued >= 0
+     * @param maxWaitMillis the longest time, in milliseconds, that a call waits for a permit, maxWaitMillis >= 0
+     */
+    ConcurrencyLimiter(int maxLimit, int maxQueued, int maxWaitMillis) {
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.maxWait = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.limit = Math.min(INITIAL_LIMIT, maxLimit);
+        this.lastDecrease = System.nanoTime();
+        checkRep();
+    }
+
+    /**
+     * Start a call once fewer calls than the limit are in flight.
+     * @param call starts the call and returns its future, call must not be null
+     * @param <T> the type of the result of the call
+     * @return a future of the result of the call. It completes exceptionally with a RejectedExecutionException
+     * if the call was rejected, with a TimeoutException if the call waited for maxWait without being started,
+     * and with the exception of the call if the call fails. Cancelling it stops a waiting call from being
+     * started, or cancels the future of a started call, and a cancelled call does not change the limit
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<Void> permit;
+        lock.lock();
+        try {
+            if (waiting.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                permit = CompletableFuture.completedFuture(null);
+            }
+            else if (waiting.size() >= maxQueued || expectedWait(waiting.size() + 1) > maxWait) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("the backend is overloaded, "
+                        + inFlight + " calls are in flight and " + waiting.size() + " are waiting"));
+            }
+            else {
+                permit = new CompletableFuture<>();
+                waiting.addLast(permit);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if (!permit.isDone()) {
+            CompletableFuture<Void> waiter = permit;
+            permit.orTimeout(maxWait, TimeUnit.NANOSECONDS).exceptionally(e -> {
+                lock.lock();
+                try {
+                    waiting.remove(waiter);
+                }
+                finally {
+                    lock.unlock();
+                }
+                return null;
+            });
+        }
+
+        CompletableFuture<T> answer = new CompletableFuture<>();
+        permit.whenComplete((started, e) -> {
+            if (e != null) {
+                answer.completeExceptionally(e);
+                return;
+            }
+            long start = System.nanoTime();
+            int concurrency;
+            lock.lock();
+            try {
+                concurrency = inFlight;
+            }
+            finally {
+                lock.unlock();
+            }
+            CompletableFuture<T> result;
+            try {
+                result = call.get();
+            }
+            catch (RuntimeException failure) {
+                result = CompletableFuture.failedFuture(failure);
+            }
+            CompletableFuture<T> running = result;
+            running.whenComplete((value, failure) -> {
+                release(start, concurrency, failure != null, running.isCancelled());
+                if (failure == null) {
+                    answer.complete(value);
+                }
+                else {
+                    answer.completeExceptionally(failure);
+                }
+            });
+            answer.whenComplete((value, failure) -> {
+                if (answer.isCancelled()) {
+                    running.cancel(true);
+                }
+            });
+        });
+        answer.whenComplete((value, e) -> {
+            if (answer.isCancelled()) {
+                permit.cancel(true);
+            }
+        });
+        return answer;
+    }
+
+    /**
+     * Get the current limit.
+     * @return the number of calls that may currently be in flight at once, which is between 1 and maxLimit
+     */
+    int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Helper method that estimates how long a waiting call has to wait for a permit. Calls complete at about
+     * limit calls every smoothedLatency, so the calls ahead of it take about (position / limit) * smoothedLatency.
+     * Must be called while holding lock.
+     * @param position the number of calls that start before it, including itself, position > 0
+     * @return the expected wait, in nanoseconds, or 0 if no call has completed yet
+     */
+    private long expectedWait(int position) {
+        return (long) (position / Math.floor(limit) * smoothedLatency);
+    }
+
+    /**
+     * Helper method that records the completion of a call, adapts the limit to its latency, and starts as many
+     * waiting calls as the limit allows.
+     * @param start the time, in nanoseconds, at which the call was started
+     * @param concurrency the number of calls in flight, including it, when the call was started, concurrency > 0
+     * @param failed true if the call completed exceptionally, false otherwise
+     * @param cancelled true if the call was cancelled before it completed, false otherwise
+     *
+     * Frame Condition:
+     * - inFlight is decremented, and, unless the call was cancelled, the limit and the latency estimates are
+     *   updated
+     */
+    private void release(long start, int concurrency, boolean failed, boolean cancelled) {
+        long now = System.nanoTime();
+        long latency = now - start;
+        lock.lock();
+        try {
+            boolean limited = inFlight >= (int) limit;
+            inFlight--;
+            if (!cancelled) {
+                smoothedLatency = smoothedLatency == 0 ? latency
+                        : (1 - SMOOTHING) * smoothedLatency + SMOOTHING * latency;
+                if (!failed && concurrency <= Math.max(1, limit / 2)) {
+                    windowLatency = Math.min(windowLatency, latency);
+                    if (++windowCalls == BASELINE_WINDOW) {
+                        unloadedLatency = windowLatency;
+                        windowLatency = Long.MAX_VALUE;
+                        windowCalls = 0;
+                    }
+                }
+
+                if (failed) {
+                    if (start - lastDecrease > 0) {
+                        decrease(now);
+                    }
+                }
+                else {
+                    roundLatency = Math.min(roundLatency, latency);
+                    roundLimited |= limited;
+                    if (++roundCalls >= (int) limit) {
+                        long baseline = Math.min(unloadedLatency, windowLatency);
+                        if (baseline != Long.MAX_VALUE && roundLatency > TOLERANCE * baseline) {
+                            decrease(now);
+                        }
+                        else if (roundLimited) {
+                            limit = Math.min(maxLimit, slowStart ? 2 * limit : limit + 1);
+                        }
+                        roundLatency = Long.MAX_VALUE;
+                        roundCalls = 0;
+                        roundLimited = false;
+                    }
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        startWaiting();
+    }
+
+    /**
+     * Helper method that multiplies the limit by BACKOFF, ends slow start, and starts a new round. Must be called
+     * while holding lock.
+     * @param now the current time, in nanoseconds
+     *
+     * Frame Condition:
+     * - limit, lastDecrease, slowStart and the state of the current round are updated
+     */
+    private void decrease(long now) {
+        limit = Math.max(1, limit * BACKOFF);
+        lastDecrease = now;
+        slowStart = false;
+        roundLatency = Long.MAX_VALUE;
+        roundCalls = 0;
+        roundLimited = false;
+    }
+
+    /**
+     * Helper method that starts waiting calls, in the order they were submitted, while fewer calls than the
+     * limit are in flight.
+     *
+     * Frame Condition:
+     * - every started call is removed from waiting and counted in inFlight
+     */
+    private void startWaiting() {
+        List<CompletableFuture<Void>> started = new ArrayList<>();
+        lock.lock();
+        try {
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                started.add(waiting.pollFirst());
+                inFlight++;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+
+        boolean timedOut = false;
+        for (CompletableFuture<Void> permit : started) {
+            if (!permit.complete(null)) {
+                timedOut = true;
+                lock.lock();
+                try {
+                    inFlight--;
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+        }
+        if (timedOut) {
+            startWaiting();
+        }
+    }
+}
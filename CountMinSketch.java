@@ -0,0 +1,190 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A CountMinSketch estimates how many times each String occurred in a stream using a fixed
+ * depth x width table of counters. An estimate never underestimates the true frequency, and
+ * with probability at least 1 - delta it overestimates it by at most epsilon * total(), where
+ * width = ceil(e / epsilon) and depth = ceil(ln(1 / delta)).
+ *
+ * The column of a String in each row is derived from a 64-bit hash of its characters, split into
+ * two halves h1 and h2 that give column (h1 + row * h2) mod width, so the rows behave as independent
+ * hash functions while every String is hashed only once. The hash is not String.hashCode(), under
+ * which Strings such as "Aa" and "BB" collide in every row and the error bound would not hold.
+ *
+ * Abstraction Function:
+ * A CountMinSketch represents a multiset of total Strings, where the multiplicity of a String k
+ * is estimated by the minimum of table[row][bucket(hash(k), row)] over all 0 <= row < depth.
+ */
+class CountMinSketch {
+    private final int depth;
+    private final int width;
+    private final int[][] table;
+    private long total = 0;
+
+    /*
+     * Representation Invariant:
+     *  - depth > 0 and width > 0
+     *  - table.length == depth and table[row].length == width for all rows
+     *  - the entries of every row of table sum to total
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - CountMinSketch is not threadsafe; every CountMinSketch is confined to an object
+     *    that only accesses it while holding its own lock
+     */
+
+    /**
+     * Check that the representation invariants for CountMinSketch hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (depth <= 0 || width <= 0) {
+            throw new RuntimeException("depth and width should be > 0");
+        }
+        if (table.length != depth) {
+            throw new RuntimeException("table must have exactly depth rows");
+        }
+    }
+
+    /**
+     * Create an empty CountMinSketch with the given accuracy.
+     * @param epsilon the relative error of an estimate, 0 < epsilon < 1
+     * @param delta the probability that an estimate exceeds the relative error, 0 < delta < 1
+     */
+    CountMinSketch(double epsilon, double delta) {
+        width = (int) Math.ceil(Math.E / epsilon);
+        depth = (int) Math.ceil(Math.log(1 / delta));
+        table = new int[depth][width];
+        checkRep();
+    }
+
+    /**
+     * Count one occurrence of a String.
+     * @param key the String that occurred, key must not be null
+     */
+    void add(String key) {
+        long hash = hash(key);
+        for (int row = 0; row < depth; row++) {
+            table[row][bucket(hash, row)]++;
+        }
+        total++;
+    }
+
+    /**
+     * Estimate the number of occurrences of a String.
+     * @param key the String to estimate, key must not be null
+     * @return an estimate that is at least the true number of occurrences of key
+     */
+    long estimate(String key) {
+        long hash = hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, table[row][bucket(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Get the number of Strings counted by this sketch.
+     * @return the total number of calls to add
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * Get the number of counters in each row of the table.
+     * @return the width of the table
+     */
+    int width() {
+        return width;
+    }
+
+    /**
+     * Get the number of rows of the table.
+     * @return the depth of the table
+     */
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * Write the counters of the sketch to a snapshot.
+     * @param out the snapshot to write to, out must not be null
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(total);
+        for (int[] row : table) {
+            for (int counter : row) {
+                out.writeInt(counter);
+            }
+        }
+    }
+
+    /**
+     * Replace the counters of this sketch with those of a sketch of the same width and depth
+     * written with writeTo.
+     * @param in the snapshot to read from, in must not be null
+     * @throws IOException if in cannot be read
+     */
+    void readFrom(DataInput in) throws IOException {
+        total = in.readLong();
+        for (int[] row : table) {
+            for (int column = 0; column < width; column++) {
+                row[column] = in.readInt();
+            }
+        }
+        checkRep();
+    }
+
+    /**
+     * Forget every String counted by this sketch.
+     *
+     * Frame Condition:
+     * - every counter in table is zero and total() == 0
+     */
+    void clear() {
+        for (int[] row : table) {
+            Arrays.fill(row, 0);
+        }
+        total = 0;
+        checkRep();
+    }
+
+    /**
+     * Compute the 64-bit hash of a String, using FNV-1a over its characters followed by a final mix,
+     * so that both halves of the hash depend on every character.
+     * @param key the String to hash, key must not be null
+     * @return the hash of key
+     */
+    private static long hash(String key) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Map a hash to a column of a row, combining the two halves of the hash as h1 + row * h2.
+     * @param hash the hash of a String
+     * @param row the row of the table, 0 <= row < depth
+     * @return the column of row that the hash is counted in
+     */
+    private int bucket(long hash, int row) {
+        long first = hash & 0xffffffffL;
+        long second = (hash >>> 32) | 1;
+        return (int) ((first + row * second) % width);
+    }
+}
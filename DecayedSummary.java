@@ -0,0 +1,306 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A DecayedSummary is a fixed-size summary of the Strings in a stream where each occurrence of a
+ * String is worth less the older it is. An occurrence at time t contributes 2^(-(now - t) / halfLife)
+ * to the score of its String at time now, so the score of a String halves every halfLife seconds
+ * unless it occurs again.
+ *
+ * Scores are stored with forward decay: an occurrence at time t adds 2^((t - landmark) / halfLife)
+ * to the stored score of its String. Every stored score is then its true score multiplied by the same
+ * factor, so the order of the Strings never changes as time passes and only the String that occurred
+ * has to move in the heap. When the weight of new occurrences grows large, every stored score is
+ * divided by it and the landmark is moved forwards, so the stored scores never overflow.
+ *
+ * At most capacity Strings are tracked at a time. When an untracked String occurs and the summary is
+ * full, it replaces the tracked String with the smallest score and inherits that score, so a stored
+ * score may overestimate the true score but every String whose score is large enough is tracked.
+ *
+ * Abstraction Function:
+ * A DecayedSummary represents the map from each tracked String keys[s] to the decayed score
+ * scores[s] * 2^((landmark - now) / halfLife), for every slot s in slots.values(), where now is the
+ * time of the latest occurrence. heap[0..size-1] is a binary min-heap of slots ordered by scores,
+ * and position[s] is the index of slot s in heap.
+ */
+class DecayedSummary {
+
+    /* the number of half-lives after which stored scores are renormalised */
+    private static final int RENORMALISE = 256;
+
+    private final int capacity;
+    private final double halfLife;
+    private final String[] keys;
+    private final double[] scores;
+    private final int[] heap;
+    private final int[] position;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int size = 0;
+    private long landmark;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /*
+     * Representation Invariant:
+     *  - capacity > 0 and halfLife > 0
+     *  - 0 <= size <= capacity and slots.size() == size
+     *  - keys[slots.get(k)] equals k for all keys k of slots
+     *  - heap[position[s]] == s for all 0 <= s < size
+     *  - scores[heap[i]] >= scores[heap[(i - 1) / 2]] for all 0 < i < size
+     *  - scores[s] >= 0 for all 0 <= s < size
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - capacity, halfLife, keys, scores, heap, position and slots are private and final, and are never
+     *    shared outside of this class
+     *  - the fields of a DecayedSummary are only accessed while holding lock, or by readFrom before the
+     *    DecayedSummary is shared
+     *  - lock is a ReentrantLock rather than the lock of the DecayedSummary, so that a virtual thread that
+     *    waits for it does not pin its carrier thread
+     */
+
+    /**
+     * Check that the representation invariants for DecayedSummary hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (capacity <= 0 || halfLife <= 0) {
+            throw new RuntimeException("capacity and halfLife should be > 0");
+        }
+        if (size > capacity || slots.size() != size) {
+            throw new RuntimeException("the summary must track exactly size <= capacity Strings");
+        }
+        if (size > 0 && scores[heap[0]] > scores[heap[size - 1]]) {
+            throw new RuntimeException("the root of the heap must hold the smallest score");
+        }
+    }
+
+    /**
+     * Create an empty DecayedSummary.
+     * @param capacity the maximum number of Strings to track, capacity > 0
+     * @param halfLife the number of seconds after which the score of a String halves, halfLife > 0
+     * @param landmark the time, in seconds, from which weights are measured
+     */
+    DecayedSummary(int capacity, int halfLife, long landmark) {
+        this.capacity = capacity;
+        this.halfLife = halfLife;
+        this.landmark = landmark;
+        keys = new String[capacity];
+        scores = new double[capacity];
+        heap = new int[capacity];
+        position = new int[capacity];
+        checkRep();
+    }
+
+    /**
+     * Count one occurrence of a String. Takes O(log capacity) time, apart from a renormalisation
+     * of every score once every RENORMALISE half-lives.
+     * @param key the String that occurred, key must not be null
+     * @param time the time, in seconds, of the occurrence, which may be earlier than the landmark
+     *
+     * Frame Condition:
+     * - if key is not tracked and the summary is full, the tracked String with the smallest
+     *   score is no longer tracked
+     * - if time is RENORMALISE or more half-lives after the landmark, every stored score is
+     *   rescaled and the landmark is moved to time
+     */
+    void offer(String key, long time) {
+        lock.lock();
+        try {
+            if ((time - landmark) / halfLife >= RENORMALISE) {
+                renormalise(time);
+            }
+            double weight = Math.pow(2, (time - landmark) / halfLife);
+
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                if (size < capacity) {
+                    slot = size;
+                    heap[size] = slot;
+                    position[slot] = size;
+                    size++;
+                    scores[slot] = 0;
+                }
+                else {
+                    slot = heap[0];
+                    slots.remove(keys[slot]);
+                }
+                keys[slot] = key;
+                slots.put(key, slot);
+            }
+
+            scores[slot] += weight;
+            siftUp(position[slot]);
+            siftDown(position[slot]);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get up to limit of the tracked Strings with the highest scores.
+     * @param limit the maximum number of Strings to return
+     * @return up to limit tracked Strings in non-increasing order of score. Strings with equal
+     * scores are returned in an arbitrary order. In the case that limit <= 0, an empty list.
+     */
+    List<String> top(int limit) {
+        lock.lock();
+        try {
+            List<Integer> ranked = new ArrayList<>();
+            for (int slot = 0; slot < size; slot++) {
+                ranked.add(slot);
+            }
+            ranked.sort((first, second) -> Double.compare(scores[second], scores[first]));
+
+            List<String> top = new ArrayList<>();
+            for (int i = 0; i < Math.min(limit, ranked.size()); i++) {
+                top.add(keys[ranked.get(i)]);
+            }
+            checkRep();
+            return top;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the tracked Strings and their scores to a snapshot.
+     * @param out the snapshot to write to, out must not be null
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        lock.lock();
+        try {
+            out.writeLong(landmark);
+            out.writeInt(size);
+            for (int slot = 0; slot < size; slot++) {
+                QueryDictionary.writeString(out, keys[slot]);
+                out.writeDouble(scores[slot]);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Create a DecayedSummary from a summary written with writeTo. If the written summary tracked
+     * more than capacity Strings, only the capacity Strings with the highest scores are kept.
+     * @param in the snapshot to read from, in must not be null
+     * @param capacity the maximum number of Strings to track, capacity > 0
+     * @param halfLife the number of seconds after which the score of a String halves, halfLife > 0
+     * @return a DecayedSummary with the Strings and scores of the written summary
+     * @throws IOException if in cannot be read
+     */
+    static DecayedSummary readFrom(DataInput in, int capacity, int halfLife) throws IOException {
+        DecayedSummary summary = new DecayedSummary(capacity, halfLife, in.readLong());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            summary.restore(QueryDictionary.readString(in), in.readDouble());
+        }
+        summary.checkRep();
+        return summary;
+    }
+
+    /**
+     * Track a String with a stored score, replacing the tracked String with the smallest score if
+     * the summary is full and that score is smaller.
+     * @param key a String that is not tracked, key must not be null
+     * @param score the stored score of key, score >= 0
+     */
+    private void restore(String key, double score) {
+        int slot;
+        if (size < capacity) {
+            slot = size;
+            heap[size] = slot;
+            position[slot] = size;
+            size++;
+        }
+        else if (scores[heap[0]] < score) {
+            slot = heap[0];
+            slots.remove(keys[slot]);
+        }
+        else {
+            return;
+        }
+
+        keys[slot] = key;
+        scores[slot] = score;
+        slots.put(key, slot);
+        siftUp(position[slot]);
+        siftDown(position[slot]);
+    }
+
+    /**
+     * Move the landmark forwards and rescale every stored score to match. Scores that become too
+     * small to represent are rounded down to 0; the heap order is unchanged.
+     * @param time the new landmark, time > landmark
+     */
+    private void renormalise(long time) {
+        double factor = Math.pow(2, -(time - landmark) / halfLife);
+        for (int slot = 0; slot < size; slot++) {
+            scores[slot] *= factor;
+        }
+        landmark = time;
+    }
+
+    /**
+     * Restore the heap order by moving the slot at a heap index towards the root.
+     * @param index the heap index of a slot that may have a smaller score than its parent
+     */
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (scores[heap[parent]] <= scores[heap[index]]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    /**
+     * Restore the heap order by moving the slot at a heap index towards the leaves.
+     * @param index the heap index of a slot whose score may have increased
+     */
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            int right = left + 1;
+            int smallest = index;
+
+            if (left < size && scores[heap[left]] < scores[heap[smallest]]) {
+                smallest = left;
+            }
+            if (right < size && scores[heap[right]] < scores[heap[smallest]]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    /**
+     * Swap two slots in the heap.
+     * @param first the heap index of one slot
+     * @param second the heap index of the other slot
+     */
+    private void swap(int first, int second) {
+        int swapped = heap[first];
+        heap[first] = heap[second];
+        heap[second] = swapped;
+        position[heap[first]] = first;
+        position[heap[second]] = second;
+    }
+}
@@ -0,0 +1,72 @@
+package cpen221.mp3.wikimediator;
+
+/**
+ * A DistanceEstimate is the immutable answer to a distanceEstimate request: bounds on the number of links on
+ * the shortest path from one Wikipedia page to another, known without searching for the path.
+ *
+ * Abstraction Function:
+ * A DistanceEstimate represents the fact that the shortest path between two pages has at least lowerBound and
+ * at most upperBound links, where upperBound is Integer.MAX_VALUE if no path is known, and where lowerBound is
+ * Integer.MAX_VALUE if there is known to be no path.
+ */
+public class DistanceEstimate {
+    private final int lowerBound;
+    private final int upperBound;
+
+    /*
+     * Representation Invariant:
+     *  - 0 <= lowerBound <= upperBound
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - DistanceEstimate is immutable: lowerBound and upperBound are private and final
+     */
+
+    /**
+     * Check that the representation invariants for DistanceEstimate hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (lowerBound < 0 || lowerBound > upperBound) {
+            throw new RuntimeException("lowerBound should be between 0 and upperBound");
+        }
+    }
+
+    /**
+     * Create a DistanceEstimate.
+     * @param lowerBound the least number of links on the shortest path, or Integer.MAX_VALUE if there is no
+     *                   path, 0 <= lowerBound <= upperBound
+     * @param upperBound the largest number of links on the shortest path, or Integer.MAX_VALUE if no path is
+     *                   known
+     */
+    public DistanceEstimate(int lowerBound, int upperBound) {
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        checkRep();
+    }
+
+    /**
+     * Get the least number of links on the shortest path.
+     * @return the least number of links on the shortest path, or Integer.MAX_VALUE if there is no path
+     */
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Get the largest number of links on the shortest path.
+     * @return the largest number of links on the shortest path, or Integer.MAX_VALUE if no path is known
+     */
+    public int getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * Check whether there is known to be no path.
+     * @return true if the second page cannot be reached from the first, false if it may be
+     */
+    public boolean isUnreachable() {
+        return lowerBound == Integer.MAX_VALUE;
+    }
+}
@@ -1,6 +1,7 @@
 package cpen221.mp3.fsftbuffer;
 
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
@@ -14,13 +15,20 @@ import java.util.stream.Collectors;
  * When an object is added to a FSFTBuffer and the buffer is full, the least recently
  * accessed object is removed to make space for the new object to be added.
  *
+ * A FSFTBuffer may retain objects for a while after they time out. A retained object that has timed
+ * out is stale: it cannot be retrieved with get, but it can be retrieved with getStale, and touching
+ * or updating it makes it fresh again. This lets the user of the buffer check whether a stale object
+ * is still valid before fetching it again.
+ *
  * Abstraction Function:
- * A FSFTBuffer is represented by a buffer, which is a synchronized map with keys containing the string IDs of buffer objects
+ * A FSFTBuffer is represented by a buffer, which is a map with keys containing the string IDs of buffer objects
  * mapped to values, which are the bufferable objects themselves. Each object ID inside the buffer represents a
  * unique buffer object. In other words, two different IDs cannot map to the same buffer object. Thus, the buffer
  * cannot have duplicate buffer object IDs in the HashMap key set, nor can it have two different IDs in the key set
  * that map to the same bufferable object.
  * A FSFTBuffer with no key-value pairs in the buffer represents an empty FSFTBuffer.
+ * An object whose timeout time has passed is stale, and is kept in the buffer until staleRetention
+ * seconds after its timeout time.
  */
 
 public class FSFTBuffer<T extends Bufferable> {
@@ -36,14 +44,17 @@ public class FSFTBuffer<T extends Bufferable> {
 
     private final int capacity;
     private final int timeout;
-    private Map<String, T> buffer = Collections.synchronizedMap(new HashMap<>());
-    private final Map<String, Long> IdToTimeoutTime = Collections.synchronizedMap(new HashMap<>());
-    private final List<String> accessQueue = Collections.synchronizedList(new ArrayList<>());
+    private final int staleRetention;
+    private Map<String, T> buffer = new HashMap<>();
+    private final Map<String, Long> IdToTimeoutTime = new HashMap<>();
+    private final List<String> accessQueue = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
 
     /*
      * Representation Invariant:
      *  - capacity > 0
      *  - timeout > 0
+     *  - staleRetention >= 0
      *  - All keys in buffer must be the id of the object stored in the key's corresponding value
      *  - All keys in buffer must appear exactly once in IdToTimeoutTime
      *  - All keys in buffer must appear exactly once in accessQueue
@@ -52,28 +63,31 @@ public class FSFTBuffer<T extends Bufferable> {
 
     /*
      * Thread Safety Arguments:
-     *  - capacity and timeout are private and final, and each thread will have a local copy
-     *    thus avoiding sharing capacity and timeout with other threads
-     *  - buffer and IdToTimeoutTime both point to threadsafe map data type
-     *  - accessQueue points to threadsafe list data type
-     *  - for buffer, IdToTimeoutTime, and accessQueue, the non-threadsafe data type's reference
-     *    is thrown away by directly passing either a new HashMap directly into synchronizedMap()
-     *    or a new ArrayList directly into synchronizedList()
-     *  - methods that contain iterators or for loops iterating through either buffer, IdToTimeoutTime,
-     *    or accessQueue are synchronized
+     *  - capacity, timeout and staleRetention are private and final, and each thread will have a local copy
+     *    thus avoiding sharing capacity, timeout and staleRetention with other threads
+     *  - buffer, IdToTimeoutTime and accessQueue are private and never shared outside of this class,
+     *    and are only read or modified by the constructors, before the FSFTBuffer is shared, and
+     *    while holding lock, so they need no synchronization of their own
+     *  - every public method that reads or modifies buffer, IdToTimeoutTime or accessQueue holds lock
+     *    while it does, so each call sees and leaves them consistent. lock is a ReentrantLock rather
+     *    than the lock of the FSFTBuffer, so that a virtual thread waiting for it does not pin its
+     *    carrier thread
      */
 
     /**
      * Check that the representation invariants for FSFTBuffer hold true.
      * @throws RuntimeException if any representation invariants are violated.
      */
-    private synchronized void checkRep() {
+    private void checkRep() {
         if (capacity <= 0) {
             throw new RuntimeException("capacity should be > 0");
         }
         if (timeout <= 0) {
             throw new RuntimeException("timeout should be > 0");
         }
+        if (staleRetention < 0) {
+            throw new RuntimeException("staleRetention should be >= 0");
+        }
 
         for (String key : buffer.keySet()) {
             int countId = 0;
@@ -119,8 +133,28 @@ public class FSFTBuffer<T extends Bufferable> {
      *                 Requires that timeout be a positive number greater than zero.
      */
     public FSFTBuffer(int capacity, int timeout) {
+        this(capacity, timeout, 0);
+    }
+
+    /**
+     * Create a FSFTBuffer with a fixed capacity and a timeout value that
+     * retains objects for a while after they time out. A retained object
+     * that has timed out cannot be retrieved with get, but can still be
+     * retrieved with getStale, touched or updated, and still counts towards
+     * the capacity of the buffer.
+     *
+     * @param capacity The number of objects the buffer can hold.
+     *                 Requires that capacity be a positive number greater than zero.
+     * @param timeout  The duration, in seconds, an object should
+     *                 be in the buffer before it times out.
+     *                 Requires that timeout be a positive number greater than zero.
+     * @param staleRetention The duration, in seconds, an object is retained after it times out.
+     *                       Requires that staleRetention be zero or a positive number.
+     */
+    public FSFTBuffer(int capacity, int timeout, int staleRetention) {
         this.capacity = capacity;
         this.timeout = timeout;
+        this.staleRetention = staleRetention;
         checkRep();
     }
 
@@ -141,7 +175,8 @@ public class FSFTBuffer<T extends Bufferable> {
      * the object's timeout time, behaving the same way as multiple calls
      * to the update method available to instances of the FSFTBuffer class.
      * If the buffer is full, remove the least recently accessed
-     * object to make room for the new object.
+     * object to make room for the new object. Stale objects that are still
+     * retained are removed before any object that has not timed out.
      *
      * @param t Value to be added to the buffer.
      *          Must extend the Bufferable interface.
@@ -154,42 +189,56 @@ public class FSFTBuffer<T extends Bufferable> {
      * Frame Condition:
      * - buffer is modified such that all stale objects at time of method call are removed
      */
-    public synchronized boolean put(T t) {
-        checkRep();
-        Map<String, T> updatedBuffer = removeStaleObjects(buffer, IdToTimeoutTime);
+    public boolean put(T t) {
+        lock.lock();
+        try {
+            checkRep();
+            Map<String, T> updatedBuffer = removeStaleObjects(buffer, IdToTimeoutTime);
 
-        if (t == null) {
-            buffer = Collections.synchronizedMap(new HashMap<>(updatedBuffer));
-            return false;
-        }
+            if (t == null) {
+                buffer = new HashMap<>(updatedBuffer);
+                return false;
+            }
 
-        if (updatedBuffer.keySet().size() < capacity) {
-            updatedBuffer.put(t.id(), t);
-            IdToTimeoutTime.put(t.id(), System.currentTimeMillis() / MILLIS + timeout);
-            buffer = Collections.synchronizedMap(new HashMap<>(updatedBuffer));
+            if (updatedBuffer.keySet().size() < capacity) {
+                updatedBuffer.put(t.id(), t);
+                IdToTimeoutTime.put(t.id(), System.currentTimeMillis() / MILLIS + timeout);
+                buffer = new HashMap<>(updatedBuffer);
 
-            if (!accessQueue.contains(t.id())) {
-                accessQueue.add(t.id());
+                if (!accessQueue.contains(t.id())) {
+                    accessQueue.add(t.id());
+                }
             }
-        }
-
-        else {
-            int leastRecentPosition = 0;
-            String leastRecentId = accessQueue.get(leastRecentPosition);
-            accessQueue.remove(leastRecentPosition);
-            updatedBuffer.remove(leastRecentId);
-            IdToTimeoutTime.remove(leastRecentId);
 
-            updatedBuffer.put(t.id(), t);
-            if (!accessQueue.contains(t.id())) {
-                accessQueue.add(t.id());
+            else {
+                int leastRecentPosition = 0;
+                long now = System.currentTimeMillis() / MILLIS;
+                for (int i = 0; i < accessQueue.size(); i++) {
+                    String id = accessQueue.get(i);
+                    if (updatedBuffer.containsKey(id) && IdToTimeoutTime.get(id) <= now) {
+                        leastRecentPosition = i;
+                        break;
+                    }
+                }
+                String leastRecentId = accessQueue.get(leastRecentPosition);
+                accessQueue.remove(leastRecentPosition);
+                updatedBuffer.remove(leastRecentId);
+                IdToTimeoutTime.remove(leastRecentId);
+
+                updatedBuffer.put(t.id(), t);
+                if (!accessQueue.contains(t.id())) {
+                    accessQueue.add(t.id());
+                }
+                IdToTimeoutTime.put(t.id(), System.currentTimeMillis() / MILLIS + timeout);
+                buffer = new HashMap<>(updatedBuffer);
             }
-            IdToTimeoutTime.put(t.id(), System.currentTimeMillis() / MILLIS + timeout);
-            buffer = Collections.synchronizedMap(new HashMap<>(updatedBuffer));
-        }
 
-        checkRep();
-        return true;
+            checkRep();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -212,30 +261,129 @@ public class FSFTBuffer<T extends Bufferable> {
      * - accessQueue is modified by adding removing parameter id from index zero and adding
      *   it to the last index
      */
-    public synchronized T get(String id) throws ObjectNotInCacheException {
-        checkRep();
+    public T get(String id) throws ObjectNotInCacheException {
+        lock.lock();
+        try {
+            checkRep();
 
-        Map<String, T> updatedBuffer = removeStaleObjects(buffer, IdToTimeoutTime);
-        buffer = Collections.synchronizedMap(new HashMap<>(updatedBuffer));
+            Map<String, T> updatedBuffer = removeStaleObjects(buffer, IdToTimeoutTime);
+            buffer = new HashMap<>(updatedBuffer);
 
-        if (buffer.containsKey(id)) {
-            accessQueue.add(id);
-            for (int i = 0; i < accessQueue.size(); i++) {
-                if (Objects.equals(accessQueue.get(i), id)) {
-                    accessQueue.remove(i);
-                    break;
+            if (buffer.containsKey(id) && IdToTimeoutTime.get(id) > System.currentTimeMillis() / MILLIS) {
+                accessQueue.add(id);
+                for (int i = 0; i < accessQueue.size(); i++) {
+                    if (Objects.equals(accessQueue.get(i), id)) {
+                        accessQueue.remove(i);
+                        break;
+                    }
                 }
+
+                checkRep();
+                return buffer.get(id);
             }
 
+            else {
+                checkRep();
+                throw new ObjectNotInCacheException();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieve the object specified by parameter id from the FSFTBuffer, even if
+     * it has timed out, as long as it is still retained. The object is accessed
+     * the same way as with get, but its timeout time is not changed.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @return the object that matches the identifier from the buffer,
+     * which may be stale
+     * @throws ObjectNotInCacheException if the object specified by
+     * parameter id is not in the buffer, or is no longer retained
+     *
+     * Frame Condition:
+     * - buffer is modified such that all objects that are no longer retained at time of method call are removed
+     * - accessQueue is modified by moving parameter id to the last index
+     */
+    public T getStale(String id) throws ObjectNotInCacheException {
+        return getStale(id, staleRetention);
+    }
+
+    /**
+     * Retrieve the object specified by parameter id from the FSFTBuffer, even if
+     * it has timed out, as long as it timed out at most maxStaleness seconds ago.
+     * The object is accessed the same way as with get, but its timeout time is not changed.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @param maxStaleness the number of seconds the object may have been stale for.
+     *                     Requires that maxStaleness be zero or a positive number.
+     * @return the object that matches the identifier from the buffer,
+     * which may be stale
+     * @throws ObjectNotInCacheException if the object specified by
+     * parameter id is not in the buffer, or has been stale for longer than maxStaleness
+     *
+     * Frame Condition:
+     * - buffer is modified such that all objects that are no longer retained at time of method call are removed
+     * - accessQueue is modified by moving parameter id to the last index
+     */
+    public T getStale(String id, int maxStaleness) throws ObjectNotInCacheException {
+        lock.lock();
+        try {
+            checkRep();
+
+            Map<String, T> updatedBuffer = removeStaleObjects(buffer, IdToTimeoutTime);
+            buffer = new HashMap<>(updatedBuffer);
+
+            if (!buffer.containsKey(id)
+                    || IdToTimeoutTime.get(id) + maxStaleness <= System.currentTimeMillis() / MILLIS) {
+                checkRep();
+                throw new ObjectNotInCacheException();
+            }
+
+            accessQueue.remove(id);
+            accessQueue.add(id);
+
             checkRep();
             return buffer.get(id);
         }
+        finally {
+            lock.unlock();
+        }
+    }
 
-        else {
+    /**
+     * Get every object in the FSFTBuffer that has timed out but is still retained.
+     * The objects are not accessed, so their order of removal is not changed.
+     *
+     * @return the stale objects in the buffer, in no particular order
+     *
+     * Frame Condition:
+     * - buffer is modified such that all objects that are no longer retained at time of method call are removed
+     */
+    public List<T> staleObjects() {
+        lock.lock();
+        try {
             checkRep();
-            throw new ObjectNotInCacheException();
-        }
 
+            Map<String, T> updatedBuffer = removeStaleObjects(buffer, IdToTimeoutTime);
+            buffer = new HashMap<>(updatedBuffer);
+
+            long now = System.currentTimeMillis() / MILLIS;
+            List<T> stale = new ArrayList<>();
+            for (String id : buffer.keySet()) {
+                if (IdToTimeoutTime.get(id) <= now) {
+                    stale.add(buffer.get(id));
+                }
+            }
+
+            checkRep();
+            return stale;
+        }
+        finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -255,19 +403,25 @@ public class FSFTBuffer<T extends Bufferable> {
      *   to have a delayed timeout time
      */
     public boolean touch(String id) {
-        checkRep();
+        lock.lock();
+        try {
+            checkRep();
+
+            Map<String, T> updatedBuffer = removeStaleObjects(buffer, IdToTimeoutTime);
+            buffer = new HashMap<>(updatedBuffer);
 
-        Map<String, T> updatedBuffer = removeStaleObjects(buffer, IdToTimeoutTime);
-        buffer = Collections.synchronizedMap(new HashMap<>(updatedBuffer));
+            if (buffer.containsKey(id)) {
+                IdToTimeoutTime.put(id, System.currentTimeMillis() / MILLIS + timeout);
+                checkRep();
+                return true;
+            }
 
-        if (buffer.containsKey(id)) {
-            IdToTimeoutTime.put(id, System.currentTimeMillis() / MILLIS + timeout);
             checkRep();
-            return true;
+            return false;
+        }
+        finally {
+            lock.unlock();
         }
-
-        checkRep();
-        return false;
     }
 
     /**
@@ -287,36 +441,43 @@ public class FSFTBuffer<T extends Bufferable> {
      *   to have a delayed timeout time
      */
     public boolean update(T t) {
-        checkRep();
-        boolean timeUpdated = touch(t.id());
+        lock.lock();
+        try {
+            checkRep();
+            boolean timeUpdated = touch(t.id());
+
+            if (timeUpdated) {
+                buffer.put(t.id(), t);
+                checkRep();
+                return true;
+            }
 
-        if (timeUpdated) {
-            buffer.put(t.id(), t);
             checkRep();
-            return true;
+            return false;
+        }
+        finally {
+            lock.unlock();
         }
-
-        checkRep();
-        return false;
     }
 
     /**
      * Remove stale objects from the buffer, where stale refers to an
-     * object that has exceeded its timeout time.
+     * object that has exceeded its timeout time by more than staleRetention.
      *
      * @param buffer the buffer from which stale objects will be removed
      * @param IdToTimeoutTime contains the IDs of all objects in buffer and their corresponding
      *                        timeout time, which is the duration, in seconds, an object should be
      *                        in the buffer before it goes stale.
-     * @return An updated buffer containing only the objects from the original buffer that were not stale.
+     * @return An updated buffer containing only the objects from the original buffer that were not stale,
+     * or are still retained.
      */
-    private synchronized Map<String, T> removeStaleObjects(Map<String, T> buffer, Map<String, Long> IdToTimeoutTime) {
+    private Map<String, T> removeStaleObjects(Map<String, T> buffer, Map<String, Long> IdToTimeoutTime) {
 
         Map<String, T> updatedBuffer = new HashMap<>();
-        List<Long> timeoutTimes = Collections.synchronizedList(new ArrayList<>(IdToTimeoutTime.values()));
+        List<Long> timeoutTimes = new ArrayList<>(IdToTimeoutTime.values());
 
         List<Long> notTimedOutTimes = timeoutTimes.stream()
-                .filter(time -> time > System.currentTimeMillis() / MILLIS)
+                .filter(time -> time + staleRetention > System.currentTimeMillis() / MILLIS)
                 .collect(Collectors.toList());
 
         for (String ID : buffer.keySet()) {
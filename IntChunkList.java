@@ -0,0 +1,189 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An IntChunkList is a growable list of primitive ints that is appended to at its end and
+ * discarded from its front. Values are stored in fixed-size chunks so that growing the list
+ * never copies values that were already added, discarding values frees whole chunks, and no
+ * value is boxed.
+ *
+ * Abstraction Function:
+ * An IntChunkList represents the sequence of ints v_0, v_1, ..., v_(size - 1), where
+ * v_i is stored at chunks[(head + i) / CHUNK_SIZE][(head + i) % CHUNK_SIZE].
+ * An IntChunkList with size = 0 represents an empty list.
+ */
+class IntChunkList {
+
+    /* the number of ints stored in each chunk */
+    static final int CHUNK_SIZE = 4096;
+
+    private int[][] chunks = new int[1][];
+    private int head = 0;
+    private int size = 0;
+
+    /*
+     * Representation Invariant:
+     *  - size >= 0
+     *  - 0 <= head < CHUNK_SIZE
+     *  - chunks[i] != null for all 0 <= i < ceil((head + size) / CHUNK_SIZE)
+     *  - chunks[i].length == CHUNK_SIZE for all non-null chunks[i]
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - IntChunkList is not threadsafe; every IntChunkList is confined to an object
+     *    that only accesses it while holding its own lock
+     */
+
+    /**
+     * Check that the representation invariants for IntChunkList hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (size < 0) {
+            throw new RuntimeException("size must not be negative");
+        }
+        if (head < 0 || head >= CHUNK_SIZE) {
+            throw new RuntimeException("head must be a position within the first chunk");
+        }
+        for (int i = 0; i < (head + size + CHUNK_SIZE - 1) / CHUNK_SIZE; i++) {
+            if (chunks[i] == null || chunks[i].length != CHUNK_SIZE) {
+                throw new RuntimeException("chunk " + i + " must hold exactly " + CHUNK_SIZE + " values");
+            }
+        }
+    }
+
+    /**
+     * Append a value to the end of the list.
+     * @param value the value to append
+     *
+     * Frame Condition:
+     * - a new chunk is allocated only when every existing chunk is full
+     */
+    void add(int value) {
+        int position = head + size;
+        int chunk = position / CHUNK_SIZE;
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new int[CHUNK_SIZE];
+        }
+        chunks[chunk][position % CHUNK_SIZE] = value;
+        size++;
+
+        if (position % CHUNK_SIZE == 0) {
+            checkRep();
+        }
+    }
+
+    /**
+     * Get the value at a position in the list.
+     * @param index the position of the value, 0 <= index < size()
+     * @return the value at position index
+     * @throws IndexOutOfBoundsException if index is not a valid position
+     */
+    int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+        }
+        int position = head + index;
+        return chunks[position / CHUNK_SIZE][position % CHUNK_SIZE];
+    }
+
+    /**
+     * Replace the value at a position in the list.
+     * @param index the position of the value, 0 <= index < size()
+     * @param value the new value
+     * @throws IndexOutOfBoundsException if index is not a valid position
+     */
+    void set(int index, int value) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+        }
+        int position = head + index;
+        chunks[position / CHUNK_SIZE][position % CHUNK_SIZE] = value;
+    }
+
+    /**
+     * Get the number of values in the list.
+     * @return the number of values in the list
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Remove values from the front of the list.
+     * @param count the number of values to remove, 0 <= count <= size()
+     *
+     * Frame Condition:
+     * - the value previously at position count is now at position 0
+     * - chunks that no longer hold any value are released
+     */
+    void discardFirst(int count) {
+        if (count < 0 || count > size) {
+            throw new IndexOutOfBoundsException("cannot discard " + count + " values from size " + size);
+        }
+        head += count;
+        size -= count;
+
+        int freeChunks = head / CHUNK_SIZE;
+        if (freeChunks > 0) {
+            System.arraycopy(chunks, freeChunks, chunks, 0, chunks.length - freeChunks);
+            Arrays.fill(chunks, chunks.length - freeChunks, chunks.length, null);
+            head %= CHUNK_SIZE;
+        }
+        checkRep();
+    }
+
+    /**
+     * Get the index of the first value in the list that is greater than or equal to key.
+     * Requires that the values in the list are sorted in non-decreasing order.
+     *
+     * @param key the value to search for
+     * @return the smallest index i such that get(i) >= key, or size() if no such index exists
+     */
+    int lowerBound(int key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid) < key) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Write the values of the list to a snapshot.
+     * @param out the snapshot to write to, out must not be null
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(get(i));
+        }
+    }
+
+    /**
+     * Append the values of a list written with writeTo to the end of this list.
+     * @param in the snapshot to read from, in must not be null
+     * @throws IOException if in cannot be read
+     */
+    void readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            add(in.readInt());
+        }
+    }
+}
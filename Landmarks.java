@@ -0,0 +1,404 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Landmarks bound the distance between any two pages of a LinkGraph without searching it, from the
+ * distances between every page and a few landmark pages (the ALT technique). For a landmark L, the
+ * triangle inequality gives d(a, b) >= d(L, b) - d(L, a) and d(a, b) >= d(a, L) - d(b, L), and d(a, b) is
+ * at most d(a, L) + d(L, b). If L reaches a but not b, or b reaches L but a does not, there is no path
+ * from a to b at all.
+ *
+ * Each landmark is kept in a file of its own next to the graph, numbered in the order the landmarks were
+ * chosen, holding the distance from the landmark to every page and from every page to the landmark as one
+ * unsigned byte each: the distance if it is below FAR, FAR if it is FAR or more, and UNREACHABLE if there
+ * is no path. The files are memory-mapped. The first landmark is the page with the most links, and every
+ * other landmark is the page, among those that reach and are reached by the first, that is farthest from
+ * the landmarks chosen before it.
+ *
+ * Landmarks are rebuilt incrementally: build computes the landmarks that are missing, one at a time, and
+ * each is written, renamed into place and used as soon as it is complete. A file written for another
+ * import of the graph, and every file numbered after it, is rebuilt, and a build that is stopped resumes
+ * from the first missing landmark the next time.
+ *
+ * Abstraction Function:
+ * Landmarks represent the first tables.size() of up to count landmarks of graph, whose files are in
+ * directory. The i-th landmark is the page with ID tables.landmark(i).
+ */
+class Landmarks {
+
+    /* the distance stored for a page that is at least this many links away */
+    static final int FAR = 254;
+
+    /* the distance stored for a page that cannot be reached */
+    static final int UNREACHABLE = 255;
+
+    /* the names of landmark files, which contain the number of the landmark */
+    private static final String LANDMARK_FILE = "linkgraph-landmark-%03d.bin";
+
+    /* the first four bytes of every landmark file, "WLL1" */
+    private static final int MAGIC = 0x574C4C31;
+
+    /* the size, in bytes, of the header of a landmark file: magic, number of pages, stamp and landmark */
+    private static final int HEADER = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final LinkGraph graph;
+    private final Path directory;
+    private final int count;
+    private volatile Tables tables;
+
+    /*
+     * Representation Invariant:
+     *  - graph, directory and tables must not be null
+     *  - count >= 0 and tables.size() <= count
+     *  - every table in tables was written for the import of graph
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - graph, directory and count are private, final and immutable, and graph is threadsafe
+     *  - tables is volatile and points to an immutable Tables, which is only replaced by build, so a search
+     *    that reads it once uses one consistent set of landmarks
+     *  - build must not be called by two threads at once
+     */
+
+    /**
+     * Check that the representation invariants for Landmarks hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (graph == null || directory == null || tables == null) {
+            throw new RuntimeException("graph, directory and tables must not be null");
+        }
+        if (count < 0 || tables.size() > count) {
+            throw new RuntimeException("there should be at most count >= 0 landmarks");
+        }
+    }
+
+    /**
+     * Create Landmarks from the landmark files that are complete.
+     * @param graph the graph, graph must not be null
+     * @param directory the directory of the landmark files, directory must not be null
+     * @param count the number of landmarks to keep, count >= 0
+     * @param tables the landmarks read from directory, tables must not be null
+     */
+    private Landmarks(LinkGraph graph, Path directory, int count, Tables tables) {
+        this.graph = graph;
+        this.directory = directory;
+        this.count = count;
+        this.tables = tables;
+        checkRep();
+    }
+
+    /**
+     * Open the landmarks of a graph, reading the landmark files in a directory that were written for the
+     * import of the graph, in order, until the first one that is missing or was not.
+     * @param graph the graph, graph must not be null
+     * @param directory the directory of the landmark files, usually the directory of graph, directory must
+     *                  not be null
+     * @param count the number of landmarks to keep, count >= 0
+     * @return the landmarks of graph, which may be fewer than count
+     * @throws IOException if a landmark file cannot be read
+     */
+    static Landmarks open(LinkGraph graph, Path directory, int count) throws IOException {
+        Tables tables = new Tables(Collections.emptyList(), graph.size());
+        for (int i = 0; i < count; i++) {
+            ByteBuffer table = map(graph, file(directory, i));
+            if (table == null) {
+                break;
+            }
+            tables = tables.with(table);
+        }
+        return new Landmarks(graph, directory, count, tables);
+    }
+
+    /**
+     * Get the landmarks computed so far.
+     * @return the landmarks computed so far, which do not change
+     */
+    Tables tables() {
+        return tables;
+    }
+
+    /**
+     * Compute the missing landmarks, up to count of them, or until there is no page left to choose.
+     * @param stopped returns true once the build should stop, which it checks between two landmarks,
+     *                stopped must not be null
+     * @throws IOException if a landmark file cannot be written
+     *
+     * Frame Condition:
+     * - tables gains each landmark as soon as its file is complete
+     */
+    void build(BooleanSupplier stopped) throws IOException {
+        long size = HEADER + 2L * graph.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("the graph has too many pages for a landmark file");
+        }
+
+        while (tables.size() < count && !stopped.getAsBoolean()) {
+            int landmark = choose();
+            if (landmark < 0) {
+                return;
+            }
+
+            Path file = file(directory, tables.size());
+            Path temporary = directory.resolve(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                table.putInt(0, MAGIC).putInt(Integer.BYTES, graph.size()).putLong(2 * Integer.BYTES, graph.stamp())
+                        .putInt(2 * Integer.BYTES + Long.BYTES, landmark);
+                graph.distances(landmark, true, table, HEADER);
+                graph.distances(landmark, false, table, HEADER + graph.size());
+                table.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            ByteBuffer table = map(graph, file);
+            if (table == null) {
+                throw new IOException(file + " could not be read back");
+            }
+            tables = tables.with(table);
+            checkRep();
+        }
+    }
+
+    /**
+     * Helper method that chooses the next landmark.
+     * @return the ID of the page with the most links if there is no landmark yet; otherwise, among the pages
+     * that reach and are reached by the first landmark, the one whose smallest sum of the distances to and
+     * from a landmark is largest, with the smallest ID among equally far pages; or -1 if every such page is
+     * already a landmark
+     */
+    private int choose() {
+        Tables chosen = tables;
+        int best = -1;
+        if (chosen.size() == 0) {
+            long most = -1;
+            for (int page = 0; page < graph.size(); page++) {
+                long degree = graph.degree(page);
+                if (degree > most) {
+                    most = degree;
+                    best = page;
+                }
+            }
+            return best;
+        }
+
+        int farthest = 0;
+        for (int page = 0; page < graph.size(); page++) {
+            if (chosen.from(0, page) == UNREACHABLE || chosen.to(0, page) == UNREACHABLE) {
+                continue;
+            }
+            int distance = Integer.MAX_VALUE;
+            for (int i = 0; i < chosen.size(); i++) {
+                distance = Math.min(distance, chosen.from(i, page) + chosen.to(i, page));
+            }
+            if (distance > farthest) {
+                farthest = distance;
+                best = page;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Helper method that gets the name of a landmark file.
+     * @param directory the directory of the landmark files
+     * @param number the number of the landmark
+     * @return the path of the file of the landmark numbered number
+     */
+    private static Path file(Path directory, int number) {
+        return directory.resolve(String.format(LANDMARK_FILE, number));
+    }
+
+    /**
+     * Helper method that maps a landmark file into memory, if it is complete and was written for the import
+     * of a graph.
+     * @param graph the graph
+     * @param file the landmark file
+     * @return a read-only view of the file, or null if it is missing, damaged or was written for another import
+     * @throws IOException if the file cannot be read
+     */
+    private static ByteBuffer map(LinkGraph graph, Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER + 2L * graph.size()) {
+                return null;
+            }
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int landmark = table.getInt(2 * Integer.BYTES + Long.BYTES);
+            if (table.getInt(0) != MAGIC || table.getInt(Integer.BYTES) != graph.size()
+                    || table.getLong(2 * Integer.BYTES) != graph.stamp() || landmark < 0 || landmark >= graph.size()) {
+                return null;
+            }
+            return table;
+        }
+    }
+
+    /**
+     * A Tables is an immutable set of landmarks of a graph, which bounds the distances between its pages.
+     *
+     * Abstraction Function:
+     * A Tables represents the landmarks whose files are mapped in tables, in the order they were chosen.
+     * The distance from the i-th landmark to page p is the byte at HEADER + p in tables.get(i), and the
+     * distance from p to the landmark is the byte at HEADER + pages + p.
+     */
+    static class Tables {
+        private final List<ByteBuffer> tables;
+        private final int pages;
+
+        /*
+         * Representation Invariant:
+         *  - tables must not be null, and every table in it holds the distances of pages pages
+         */
+
+        /*
+         * Thread Safety Arguments:
+         *  - Tables is immutable: tables is an unmodifiable copy of read-only buffers, which are only read
+         *    with absolute gets
+         */
+
+        /**
+         * Create a Tables.
+         * @param tables the mapped landmark files, tables must not be null
+         * @param pages the number of pages of the graph
+         */
+        private Tables(List<ByteBuffer> tables, int pages) {
+            this.tables = Collections.unmodifiableList(new ArrayList<>(tables));
+            this.pages = pages;
+        }
+
+        /**
+         * Helper method that adds a landmark.
+         * @param table the mapped landmark file, table must not be null
+         * @return a Tables of these landmarks followed by the landmark of table
+         */
+        private Tables with(ByteBuffer table) {
+            List<ByteBuffer> more = new ArrayList<>(tables);
+            more.add(table);
+            return new Tables(more, pages);
+        }
+
+        /**
+         * Get the number of landmarks.
+         * @return the number of landmarks
+         */
+        int size() {
+            return tables.size();
+        }
+
+        /**
+         * Get a landmark.
+         * @param i the number of the landmark, 0 <= i < size()
+         * @return the ID of the i-th landmark
+         */
+        int landmark(int i) {
+            return tables.get(i).getInt(2 * Integer.BYTES + Long.BYTES);
+        }
+
+        /**
+         * Get a lower bound on the distance from one page to another.
+         * @param a the ID of the page to start on
+         * @param b the ID of the page to end on
+         * @return the largest lower bound on the number of links from a to b that the landmarks give, which is
+         * 0 if a is b and at least 1 otherwise, or Integer.MAX_VALUE if the landmarks show there is no path
+         */
+        int lowerBound(int a, int b) {
+            int bound = a == b ? 0 : 1;
+            for (int i = 0; i < tables.size(); i++) {
+                // d(L, b) - d(L, a), where only d(L, a) needs to be exact, since d(L, b) is at least its byte
+                int fromA = from(i, a);
+                if (fromA != UNREACHABLE) {
+                    int fromB = from(i, b);
+                    if (fromB == UNREACHABLE) {
+                        return Integer.MAX_VALUE;
+                    }
+                    if (fromA < FAR) {
+                        bound = Math.max(bound, fromB - fromA);
+                    }
+                }
+
+                // d(a, L) - d(b, L), where only d(b, L) needs to be exact
+                int toB = to(i, b);
+                if (toB != UNREACHABLE) {
+                    int toA = to(i, a);
+                    if (toA == UNREACHABLE) {
+                        return Integer.MAX_VALUE;
+                    }
+                    if (toB < FAR) {
+                        bound = Math.max(bound, toA - toB);
+                    }
+                }
+            }
+            return bound;
+        }
+
+        /**
+         * Get an upper bound on the distance from one page to another.
+         * @param a the ID of the page to start on
+         * @param b the ID of the page to end on
+         * @return the number of links on the shortest path from a to b through a landmark, 0 if a is b, or
+         * Integer.MAX_VALUE if there is no path through a landmark
+         */
+        int upperBound(int a, int b) {
+            int bound = a == b ? 0 : Integer.MAX_VALUE;
+            for (int i = 0; i < tables.size(); i++) {
+                int toA = to(i, a);
+                int fromB = from(i, b);
+                if (toA < FAR && fromB < FAR) {
+                    bound = Math.min(bound, toA + fromB);
+                }
+            }
+            return bound;
+        }
+
+        /**
+         * Check whether a page may be on a shortest path, given the distance a search has found to it.
+         * @param a the ID of the page to start on
+         * @param b the ID of the page to end on
+         * @param found the number of links the search has found between the page and the end that it searched
+         *              from, which is the other of a and b
+         * @param longest an upper bound on the number of links on the shortest path, or Integer.MAX_VALUE
+         * @return false if a path that takes found links to the page and then goes from a to b is longer than
+         * longest, or if there is no path from a to b; true otherwise
+         */
+        boolean within(int a, int b, int found, int longest) {
+            int bound = lowerBound(a, b);
+            return bound != Integer.MAX_VALUE && (longest == Integer.MAX_VALUE || found + bound <= longest);
+        }
+
+        /**
+         * Helper method that gets the stored distance from a landmark to a page.
+         * @param i the number of the landmark
+         * @param page the ID of the page
+         * @return the stored distance from the i-th landmark to page
+         */
+        private int from(int i, int page) {
+            return tables.get(i).get(HEADER + page) & 0xFF;
+        }
+
+        /**
+         * Helper method that gets the stored distance from a page to a landmark.
+         * @param i the number of the landmark
+         * @param page the ID of the page
+         * @return the stored distance from page to the i-th landmark
+         */
+        private int to(int i, int page) {
+            return tables.get(i).get(HEADER + pages + page) & 0xFF;
+        }
+    }
+}
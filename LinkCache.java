@@ -0,0 +1,152 @@
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.fsftbuffer.FSFTBuffer;
+import cpen221.mp3.fsftbuffer.ObjectNotInCacheException;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A LinkCache remembers the links of Wikipedia pages in one direction, either the pages that each page links
+ * to or the pages that link to each page, so that graph searches that pass through the same pages, such as
+ * the hub pages that most shortest paths go through, do not fetch their links again.
+ *
+ * Links are asked for a whole level of a search at a time: the pages whose links are cached are answered from
+ * the cache, and the links of all the others are fetched in one batched call of the backend. The pages are held
+ * as LinkLists over the dictionaries of a LinkTitles that the LinkCaches of a WikiMediator share, so a title is
+ * only stored once however many cached pages of the same dictionary link with it. A dictionary only grows, so
+ * LinkTitles starts a new one once it is full, and a full dictionary is dropped with the last cached LinkList
+ * that uses it, so the titles held stay bounded by the capacity of the cache.
+ *
+ * A LinkCache may also have a source of links that needs no network access, such as the cached text of a page.
+ * The links of a page that is not in the cache are taken from it if it knows them, without caching them, since
+ * the source keeps them itself.
+ *
+ * Abstraction Function:
+ * A LinkCache represents the map from the normalized title of each page with a LinkList in lists that has not
+ * timed out to the titles of the LinkList. titles gives the dictionary that new LinkLists intern their
+ * titles in. backend fetches the links of a collection of
+ * pages, mapping each of them to a list of titles, and local gives the links of a page without fetching them,
+ * or null if it does not know them.
+ */
+class LinkCache {
+    private final FSFTBuffer<LinkList> lists;
+    private final LinkTitles titles;
+    private final Function<Collection<String>, CompletableFuture<Map<String, List<String>>>> backend;
+    private final Function<String, List<String>> local;
+
+    /*
+     * Representation Invariant:
+     *  - lists, titles, backend and local must not be null
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - lists, titles, backend and local are private and final, and local is threadsafe
+     *  - lists points to a threadsafe FSFTBuffer, and every LinkList is immutable
+     *  - titles points to a threadsafe LinkTitles, and every LinkList keeps the threadsafe dictionary it was
+     *    created with, which is only ever added to, so an ID held by a LinkList always names the same title
+     *  - a fetch is only started by links, and its links are only cached once it has completed, by the stage that
+     *    handles its answer, which only accesses lists, titles and a map local to the call
+     */
+
+    /**
+     * Check that the representation invariants for LinkCache hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (lists == null || titles == null || backend == null || local == null) {
+            throw new RuntimeException("lists, titles, backend and local must not be null");
+        }
+    }
+
+    /**
+     * Create an empty LinkCache.
+     * @param capacity the maximum number of pages to cache the links of, capacity > 0
+     * @param timeout the number of seconds after which the cached links of a page are fetched again, timeout > 0
+     * @param titles gives the dictionary to intern linked titles in, titles must not be null
+     * @param backend fetches the links of a collection of pages, mapping the title of each of them to the titles
+     *                it is linked with, backend must not be null
+     */
+    LinkCache(int capacity, int timeout, LinkTitles titles,
+              Function<Collection<String>, CompletableFuture<Map<String, List<String>>>> backend) {
+        this(capacity, timeout, titles, backend, page -> null);
+    }
+
+    /**
+     * Create an empty LinkCache with a source of links that needs no network access.
+     * @param capacity the maximum number of pages to cache the links of, capacity > 0
+     * @param timeout the number of seconds after which the cached links of a page are fetched again, timeout > 0
+     * @param titles gives the dictionary to intern linked titles in, titles must not be null
+     * @param backend fetches the links of a collection of pages, mapping the title of each of them to the titles
+     *                it is linked with, backend must not be null
+     * @param local gives the titles a page is linked with, by its normalized title, or null if it does not know
+     *              them, without a network access, local must not be null
+     */
+    LinkCache(int capacity, int timeout, LinkTitles titles,
+              Function<Collection<String>, CompletableFuture<Map<String, List<String>>>> backend,
+              Function<String, List<String>> local) {
+        this.lists = new FSFTBuffer<>(capacity, timeout);
+        this.titles = titles;
+        this.backend = backend;
+        this.local = local;
+        checkRep();
+    }
+
+    /**
+     * Get the links of a collection of pages, from the cache where possible.
+     * @param pages the normalized titles of the pages, pages must not be null and must not contain null
+     * @return a future of a map from each title in pages to the titles it is linked with, which is empty if the
+     * page does not exist. It completes exceptionally if the links of a page that is neither cached nor known to
+     * local could not be fetched, and cancelling it cancels the fetch
+     *
+     * Frame Condition:
+     * - the links fetched for the pages that were neither cached nor known to local are cached
+     */
+    CompletableFuture<Map<String, List<String>>> links(Collection<String> pages) {
+        Map<String, List<String>> linked = new HashMap<>();
+        List<String> missed = new ArrayList<>();
+        for (String page : pages) {
+            try {
+                linked.put(page, lists.get(page).titles());
+            }
+            catch (ObjectNotInCacheException e) {
+                List<String> known = local.apply(page);
+                if (known != null) {
+                    linked.put(page, known);
+                }
+                else {
+                    missed.add(page);
+                }
+            }
+        }
+
+        checkRep();
+        if (missed.isEmpty()) {
+            return CompletableFuture.completedFuture(linked);
+        }
+
+        CompletableFuture<Map<String, List<String>>> fetch;
+        try {
+            fetch = backend.apply(missed);
+        }
+        catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Map<String, List<String>>> answer = fetch.thenApply(fetched -> {
+            for (String page : missed) {
+                List<String> links = fetched.getOrDefault(page, Collections.emptyList());
+                lists.put(new LinkList(page, links, titles.current()));
+                linked.put(page, links);
+            }
+            return linked;
+        });
+        answer.whenComplete((result, e) -> {
+            if (answer.isCancelled()) {
+                fetch.cancel(true);
+            }
+        });
+        return answer;
+    }
+}
@@ -0,0 +1,502 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A LinkGraph is a read-only index of the links between Wikipedia pages, imported from a dump by
+ * LinkGraphImporter, that answers shortestPath without a network access.
+ *
+ * The graph is kept in three memory-mapped files, so that it is read from the page cache of the
+ * operating system rather than held on the heap. The titles file holds the normalized title of every
+ * page, sorted, so the ID of a page is the position of its title, and IDs compare like titles. The
+ * forward and reverse files hold the links of every page, and the links to every page, in compressed
+ * sparse row form: the offsets of the links of page i are offsets[i] to offsets[i + 1] - 1, and each
+ * link is the four-byte ID of the page at its other end.
+ *
+ * Every file starts with MAGIC, the number of pages and the stamp of the import that wrote it, and the
+ * adjacency files also hold the number of links, so the files of two different imports are never used
+ * together. The adjacency files are mapped in regions of REGION bytes, so a graph may have more links
+ * than fit in one mapping.
+ *
+ * Abstraction Function:
+ * A LinkGraph represents the directed graph whose vertices are the pages 0, 1, ..., pages - 1, where
+ * page i has the i-th smallest title in titles, and which has an edge from page u to page v for every
+ * entry v among the links of u in forward, equivalently for every entry u among the links of v in
+ * reverse. links is the number of edges, and stamp identifies the import the graph was read from.
+ */
+class LinkGraph {
+
+    /* the name of the file of the sorted titles of the pages */
+    static final String TITLES_FILE = "linkgraph-titles.bin";
+
+    /* the name of the file of the links of every page */
+    static final String FORWARD_FILE = "linkgraph-forward.bin";
+
+    /* the name of the file of the links to every page */
+    static final String REVERSE_FILE = "linkgraph-reverse.bin";
+
+    /* the first four bytes of every file of a link graph, "WLG1" */
+    static final int MAGIC = 0x574C4731;
+
+    /* the size, in bytes, of the header of the titles file: magic, number of pages and stamp */
+    static final int TITLES_HEADER = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    /* the size, in bytes, of the header of an adjacency file: magic, number of pages, stamp and number of links */
+    static final int ADJACENCY_HEADER = TITLES_HEADER + Long.BYTES;
+
+    /* the size, in bytes, of each mapped region of an adjacency file, a multiple of Long.BYTES so that no
+       offset or link is split between two regions */
+    static final int REGION = 1 << 30;
+
+    /* the number of links a search follows between two checks of whether it should stop */
+    private static final int CHECK_INTERVAL = 4096;
+
+    private final int pages;
+    private final long links;
+    private final long stamp;
+    private final ByteBuffer titles;
+    private final ByteBuffer[] forward;
+    private final ByteBuffer[] reverse;
+
+    /*
+     * Representation Invariant:
+     *  - pages >= 0 and links >= 0
+     *  - titles, forward and reverse must not be null, and hold the files of the same import
+     *  - the titles in titles are distinct and sorted
+     *  - the offsets in forward and in reverse are non-decreasing, from 0 to links, and every link is
+     *    the ID of a page, 0 <= ID < pages
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - LinkGraph is immutable: all fields are private and final, and the buffers are read-only
+     *    mappings that are never shared outside of this class
+     *  - the buffers are only read with absolute gets, which do not use or change their position, so
+     *    any number of threads may read them at once
+     *  - each search keeps its state in arrays local to the call
+     */
+
+    /**
+     * Check that the representation invariants for LinkGraph hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (pages < 0 || links < 0) {
+            throw new RuntimeException("pages and links should be >= 0");
+        }
+        if (titles == null || forward == null || reverse == null) {
+            throw new RuntimeException("titles, forward and reverse must not be null");
+        }
+    }
+
+    /**
+     * Create a LinkGraph from the mapped files of one import.
+     * @param pages the number of pages, pages >= 0
+     * @param links the number of links, links >= 0
+     * @param stamp the stamp of the import that wrote the files
+     * @param titles the mapped titles file
+     * @param forward the mapped regions of the forward file
+     * @param reverse the mapped regions of the reverse file
+     */
+    private LinkGraph(int pages, long links, long stamp, ByteBuffer titles, ByteBuffer[] forward,
+                      ByteBuffer[] reverse) {
+        this.pages = pages;
+        this.links = links;
+        this.stamp = stamp;
+        this.titles = titles;
+        this.forward = forward;
+        this.reverse = reverse;
+        checkRep();
+    }
+
+    /**
+     * Open the link graph imported into a directory, if there is one.
+     * @param directory the directory that LinkGraphImporter imported a graph into, directory must not be null
+     * @return the link graph in directory, or null if there is no complete link graph in directory
+     * @throws IOException if the files of the link graph cannot be read, are damaged, or were written by
+     * different imports
+     */
+    static LinkGraph open(Path directory) throws IOException {
+        Path titlesFile = directory.resolve(TITLES_FILE);
+        Path forwardFile = directory.resolve(FORWARD_FILE);
+        Path reverseFile = directory.resolve(REVERSE_FILE);
+        if (!Files.exists(titlesFile) || !Files.exists(forwardFile) || !Files.exists(reverseFile)) {
+            return null;
+        }
+
+        ByteBuffer titles;
+        try (FileChannel channel = FileChannel.open(titlesFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(titlesFile + " is too large");
+            }
+            titles = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (titles.capacity() < TITLES_HEADER || titles.getInt(0) != MAGIC) {
+            throw new IOException(titlesFile + " is not a link graph file");
+        }
+        int pages = titles.getInt(Integer.BYTES);
+        long stamp = titles.getLong(2 * Integer.BYTES);
+        long start = titlesStart(pages);
+        if (pages < 0 || titles.capacity() < start) {
+            throw new IOException(titlesFile + " is damaged");
+        }
+        int bytes = pages == 0 ? 0 : titles.getInt((int) start - Integer.BYTES);
+        if (titles.capacity() != start + bytes) {
+            throw new IOException(titlesFile + " is damaged");
+        }
+
+        ByteBuffer[] forward = map(forwardFile, FileChannel.MapMode.READ_ONLY, Files.size(forwardFile));
+        ByteBuffer[] reverse = map(reverseFile, FileChannel.MapMode.READ_ONLY, Files.size(reverseFile));
+        long links = checkAdjacency(forwardFile, forward, pages, stamp);
+        if (checkAdjacency(reverseFile, reverse, pages, stamp) != links) {
+            throw new IOException(forwardFile + " and " + reverseFile + " hold different numbers of links");
+        }
+        return new LinkGraph(pages, links, stamp, titles, forward, reverse);
+    }
+
+    /**
+     * Get the number of pages in the graph.
+     * @return the number of pages
+     */
+    int size() {
+        return pages;
+    }
+
+    /**
+     * Get the stamp of the import that the graph was read from, which changes every time a graph is imported.
+     * @return the stamp of the graph
+     */
+    long stamp() {
+        return stamp;
+    }
+
+    /**
+     * Get the number of links of a page, in both directions.
+     * @param page the ID of the page, 0 <= page < size()
+     * @return the number of links from page plus the number of links to page
+     */
+    long degree(int page) {
+        return offset(forward, page + 1) - offset(forward, page) + offset(reverse, page + 1) - offset(reverse, page);
+    }
+
+    /**
+     * Get the ID of a page.
+     * @param title the normalized title of the page, title must not be null
+     * @return the ID of the page titled title, or -1 if the graph has no such page
+     */
+    int id(String title) {
+        int low = 0;
+        int high = pages - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = title(middle).compareTo(title);
+            if (comparison < 0) {
+                low = middle + 1;
+            }
+            else if (comparison > 0) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the title of a page.
+     * @param id the ID of the page, 0 <= id < size()
+     * @return the normalized title of the page
+     */
+    String title(int id) {
+        int start = (int) titlesStart(pages);
+        int from = id == 0 ? 0 : titles.getInt(TITLES_HEADER + (id - 1) * Integer.BYTES);
+        int to = titles.getInt(TITLES_HEADER + id * Integer.BYTES);
+        byte[] bytes = new byte[to - from];
+        titles.get(start + from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find the lexicographically smallest shortest path from one page to another, with a bidirectional
+     * breadth-first search that expands the smaller of its two frontiers one level at a time. Each search
+     * holds two ints per page of the graph.
+     *
+     * If there are landmarks, the search gives up at once if they prove that target cannot be reached from
+     * source, and does not expand a page if the distances of the landmarks show that no path through it can
+     * be as short as the shortest path through a landmark. Such a page is not on any shortest path, so the
+     * path found is the same.
+     * @param source the ID of the page to start on, 0 <= source < size()
+     * @param target the ID of the page to end on, 0 <= target < size()
+     * @param landmarks the landmarks of the graph, or null to search without them
+     * @param stopped returns true once the search should give up, stopped must not be null
+     * @return the titles of the pages on the lexicographically smallest shortest path from source to
+     * target, including both, an empty list if there is no such path, or null if the search was stopped
+     */
+    List<String> shortestPath(int source, int target, Landmarks landmarks, BooleanSupplier stopped) {
+        if (source == target) {
+            return Collections.singletonList(title(source));
+        }
+        Landmarks.Tables tables = landmarks == null ? null : landmarks.tables();
+        if (tables != null && tables.lowerBound(source, target) == Integer.MAX_VALUE) {
+            return new ArrayList<>();
+        }
+        int longest = tables == null ? Integer.MAX_VALUE : tables.upperBound(source, target);
+
+        int[] fromSource = new int[pages];
+        int[] toTarget = new int[pages];
+        Arrays.fill(fromSource, -1);
+        Arrays.fill(toTarget, -1);
+        fromSource[source] = 0;
+        toTarget[target] = 0;
+        IntChunkList forwardFrontier = new IntChunkList();
+        IntChunkList backwardFrontier = new IntChunkList();
+        forwardFrontier.add(source);
+        backwardFrontier.add(target);
+        int forwardDepth = 0;
+        int backwardDepth = 0;
+        long followed = 0;
+
+        while (forwardFrontier.size() > 0 && backwardFrontier.size() > 0) {
+            boolean forwards = forwardFrontier.size() <= backwardFrontier.size();
+            IntChunkList frontier = forwards ? forwardFrontier : backwardFrontier;
+            ByteBuffer[] adjacency = forwards ? forward : reverse;
+            int[] distances = forwards ? fromSource : toTarget;
+            int[] other = forwards ? toTarget : fromSource;
+            int depth = (forwards ? forwardDepth : backwardDepth) + 1;
+
+            IntChunkList level = new IntChunkList();
+            int length = Integer.MAX_VALUE;
+            for (int i = 0; i < frontier.size(); i++) {
+                int page = frontier.get(i);
+                long end = offset(adjacency, page + 1);
+                for (long link = offset(adjacency, page); link < end; link++) {
+                    if (++followed % CHECK_INTERVAL == 0 && stopped.getAsBoolean()) {
+                        return null;
+                    }
+                    int linked = target(adjacency, link);
+                    if (distances[linked] < 0) {
+                        distances[linked] = depth;
+                        if (other[linked] >= 0) {
+                            length = Math.min(length, depth + other[linked]);
+                        }
+                        if (tables == null || tables.within(forwards ? linked : source, forwards ? target : linked,
+                                depth, longest)) {
+                            level.add(linked);
+                        }
+                    }
+                }
+            }
+
+            if (forwards) {
+                forwardFrontier = level;
+                forwardDepth = depth;
+            }
+            else {
+                backwardFrontier = level;
+                backwardDepth = depth;
+            }
+            if (length != Integer.MAX_VALUE) {
+                return path(source, length, forwards ? forwardDepth : length - backwardDepth, level,
+                        fromSource, toTarget);
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Compute the distance from a page to every page, or from every page to a page, with a breadth-first search.
+     * @param page the ID of the page, 0 <= page < size()
+     * @param forwards true to follow links from page, false to follow links to page
+     * @param distances receives the distance of every page, as an unsigned byte at position start plus its ID:
+     *                  the distance if it is below Landmarks.FAR, Landmarks.FAR if it is Landmarks.FAR or
+     *                  more, or Landmarks.UNREACHABLE if there is no path. distances must not be null and must
+     *                  have room for size() bytes from start
+     * @param start the position in distances of the distance of page 0
+     */
+    void distances(int page, boolean forwards, ByteBuffer distances, int start) {
+        ByteBuffer[] adjacency = forwards ? forward : reverse;
+        for (int i = 0; i < pages; i++) {
+            distances.put(start + i, (byte) Landmarks.UNREACHABLE);
+        }
+        distances.put(start + page, (byte) 0);
+
+        IntChunkList queue = new IntChunkList();
+        queue.add(page);
+        for (int i = 0; i < queue.size(); i++) {
+            int current = queue.get(i);
+            int distance = Math.min(Landmarks.FAR, (distances.get(start + current) & 0xFF) + 1);
+            long end = offset(adjacency, current + 1);
+            for (long link = offset(adjacency, current); link < end; link++) {
+                int linked = target(adjacency, link);
+                if ((distances.get(start + linked) & 0xFF) == Landmarks.UNREACHABLE) {
+                    distances.put(start + linked, (byte) distance);
+                    queue.add(linked);
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method that chooses the lexicographically smallest shortest path, once its length is known.
+     * @param source the ID of the page to start on
+     * @param length the length of the shortest path, in links, length > 0
+     * @param meeting the distance from source of the pages where the two sides of the search met,
+     *                0 <= meeting <= length
+     * @param level the last level of the search, which holds every page at distance meeting from source
+     *              and length - meeting to the target
+     * @param fromSource the distance from source of every page the search found from source, or -1
+     * @param toTarget the distance to the target of every page the search found from the target, or -1
+     * @return the titles of the pages on the lexicographically smallest path of length links from source
+     * to the target
+     */
+    private List<String> path(int source, int length, int meeting, IntChunkList level,
+                              int[] fromSource, int[] toTarget) {
+        // mark every page at distance at most meeting from source that lies on a shortest path
+        BitSet onPath = new BitSet(pages);
+        IntChunkList marked = new IntChunkList();
+        for (int i = 0; i < level.size(); i++) {
+            int page = level.get(i);
+            if (fromSource[page] == meeting && toTarget[page] == length - meeting) {
+                onPath.set(page);
+                marked.add(page);
+            }
+        }
+        for (int distance = meeting; distance > 0; distance--) {
+            IntChunkList previous = new IntChunkList();
+            for (int i = 0; i < marked.size(); i++) {
+                int page = marked.get(i);
+                long end = offset(reverse, page + 1);
+                for (long link = offset(reverse, page); link < end; link++) {
+                    int linking = target(reverse, link);
+                    if (fromSource[linking] == distance - 1 && !onPath.get(linking)) {
+                        onPath.set(linking);
+                        previous.add(linking);
+                    }
+                }
+            }
+            marked = previous;
+        }
+
+        // IDs compare like titles, so the smallest ID is the smallest title
+        List<String> path = new ArrayList<>();
+        path.add(title(source));
+        int current = source;
+        for (int i = 1; i <= length; i++) {
+            int next = Integer.MAX_VALUE;
+            long end = offset(forward, current + 1);
+            for (long link = offset(forward, current); link < end; link++) {
+                int linked = target(forward, link);
+                boolean closer = i <= meeting
+                        ? onPath.get(linked) && fromSource[linked] == i
+                        : toTarget[linked] == toTarget[current] - 1;
+                if (closer) {
+                    next = Math.min(next, linked);
+                }
+            }
+            path.add(title(next));
+            current = next;
+        }
+        return path;
+    }
+
+    /**
+     * Get the position in the titles file of the first byte of the first title.
+     * @param pages the number of pages
+     * @return the size of the header and the end offsets of the titles
+     */
+    static long titlesStart(int pages) {
+        return TITLES_HEADER + (long) pages * Integer.BYTES;
+    }
+
+    /**
+     * Get the position in an adjacency file of the first link.
+     * @param pages the number of pages
+     * @return the size of the header and the offsets of the pages
+     */
+    static long linksStart(int pages) {
+        return ADJACENCY_HEADER + (pages + 1L) * Long.BYTES;
+    }
+
+    /**
+     * Map a file into memory in regions of REGION bytes.
+     * @param file the file to map, file must not be null
+     * @param mode the mode to map file in, READ_ONLY or READ_WRITE
+     * @param size the number of bytes to map, which the file is extended to in READ_WRITE mode, size >= 0
+     * @return the regions of file, in order, of REGION bytes except the last
+     * @throws IOException if file cannot be mapped
+     */
+    static ByteBuffer[] map(Path file, FileChannel.MapMode mode, long size) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[] {StandardOpenOption.READ}
+                : new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING};
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            ByteBuffer[] regions = new ByteBuffer[(int) Math.max(1, (size + REGION - 1) / REGION)];
+            for (int i = 0; i < regions.length; i++) {
+                long position = (long) i * REGION;
+                regions[i] = channel.map(mode, position, Math.min(REGION, size - position));
+            }
+            return regions;
+        }
+    }
+
+    /**
+     * Get the offset of the first link of a page in an adjacency file.
+     * @param adjacency the regions of the adjacency file
+     * @param page the ID of the page, 0 <= page <= pages, where pages gives the offset just past the last link
+     * @return the offset of the first link of page
+     */
+    static long offset(ByteBuffer[] adjacency, int page) {
+        long position = ADJACENCY_HEADER + (long) page * Long.BYTES;
+        return adjacency[(int) (position / REGION)].getLong((int) (position % REGION));
+    }
+
+    /**
+     * Get the page at the other end of a link in an adjacency file.
+     * @param adjacency the regions of the adjacency file
+     * @param link the offset of the link
+     * @return the ID of the page at the other end of the link
+     */
+    private int target(ByteBuffer[] adjacency, long link) {
+        long position = linksStart(pages) + link * Integer.BYTES;
+        return adjacency[(int) (position / REGION)].getInt((int) (position % REGION));
+    }
+
+    /**
+     * Helper method that checks the header and the size of an adjacency file.
+     * @param file the adjacency file
+     * @param adjacency the regions of file
+     * @param pages the number of pages of the titles file
+     * @param stamp the stamp of the titles file
+     * @return the number of links in file
+     * @throws IOException if file is damaged, or was not written by the same import as the titles file
+     */
+    private static long checkAdjacency(Path file, ByteBuffer[] adjacency, int pages, long stamp) throws IOException {
+        ByteBuffer header = adjacency[0];
+        if (header.capacity() < ADJACENCY_HEADER || header.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a link graph file");
+        }
+        if (header.getInt(Integer.BYTES) != pages || header.getLong(2 * Integer.BYTES) != stamp) {
+            throw new IOException(file + " was not written by the same import as " + TITLES_FILE);
+        }
+        long links = header.getLong(TITLES_HEADER);
+        if (links < 0 || Files.size(file) != linksStart(pages) + links * Integer.BYTES
+                || offset(adjacency, pages) != links) {
+            throw new IOException(file + " is damaged");
+        }
+        return links;
+    }
+}
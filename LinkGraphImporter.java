@@ -0,0 +1,287 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * LinkGraphImporter builds the LinkGraph that a WikiMediator answers shortestPath from without a network
+ * access, from a list of the links between Wikipedia pages.
+ *
+ * The links are read from a text file, which may be gzipped, with one link per line: the title of the
+ * page that links, a tab, and the title of the page it links to. Titles are normalized as getPage
+ * normalizes them, so underscores, as in the page and pagelinks dumps of Wikipedia, are spaces. Lines
+ * that do not hold two titles are skipped. Such a file is a join of the page and pagelinks tables of a
+ * dump, which can be exported from a database the dumps were loaded into.
+ *
+ * The file is read three times: once to collect and sort the titles, once to count the links of every
+ * page, and once to write every link into place in the mapped files of the graph. The heap holds the
+ * titles and two ints and two longs per page, but no link. The files are written under temporary names
+ * and renamed into place once complete, the titles file last, so that a WikiMediator never opens a partly
+ * written graph. Once the graph is in place, the landmarks that bound the distances between its pages are
+ * built next to it, so that a WikiMediator does not build them on startup.
+ */
+public final class LinkGraphImporter {
+
+    /**
+     * LinkGraphImporter only has static methods and is never instantiated.
+     */
+    private LinkGraphImporter() {
+    }
+
+    /**
+     * Import a list of links into a LinkGraph, replacing any link graph already in the directory, and build
+     * MediatorConfig.DLANDMARKS landmarks for it.
+     * @param input the file of links, one per line as a tab-separated pair of titles, gzipped if its name
+     *              ends in ".gz", input must not be null
+     * @param directory the directory to write the link graph to, which is created if it does not exist,
+     *                  directory must not be null
+     * @return the number of pages in the imported graph
+     * @throws IOException if input cannot be read, or the link graph cannot be written
+     */
+    public static int importLinks(Path input, Path directory) throws IOException {
+        return importLinks(input, directory, MediatorConfig.DLANDMARKS);
+    }
+
+    /**
+     * Import a list of links into a LinkGraph, replacing any link graph already in the directory, and build
+     * landmarks for it.
+     * @param input the file of links, one per line as a tab-separated pair of titles, gzipped if its name
+     *              ends in ".gz", input must not be null
+     * @param directory the directory to write the link graph to, which is created if it does not exist,
+     *                  directory must not be null
+     * @param landmarks the number of landmarks to build, as set by MediatorConfig.Builder.withLandmarks,
+     *                  landmarks >= 0
+     * @return the number of pages in the imported graph
+     * @throws IOException if input cannot be read, or the link graph or its landmarks cannot be written
+     */
+    public static int importLinks(Path input, Path directory, int landmarks) throws IOException {
+        Files.createDirectories(directory);
+
+        Set<String> seen = new HashSet<>();
+        try (BufferedReader reader = open(input)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] link = parse(line);
+                if (link != null) {
+                    seen.add(link[0]);
+                    seen.add(link[1]);
+                }
+            }
+        }
+        String[] titles = seen.toArray(new String[0]);
+        seen = null;
+        Arrays.sort(titles);
+        int pages = titles.length;
+
+        int[] outDegree = new int[pages];
+        int[] inDegree = new int[pages];
+        long links = 0;
+        try (BufferedReader reader = open(input)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] link = parse(line);
+                if (link != null) {
+                    outDegree[Arrays.binarySearch(titles, link[0])]++;
+                    inDegree[Arrays.binarySearch(titles, link[1])]++;
+                    links++;
+                }
+            }
+        }
+
+        long stamp = System.currentTimeMillis();
+        Path forwardFile = directory.resolve(LinkGraph.FORWARD_FILE + ".tmp");
+        Path reverseFile = directory.resolve(LinkGraph.REVERSE_FILE + ".tmp");
+        Path titlesFile = directory.resolve(LinkGraph.TITLES_FILE + ".tmp");
+        ByteBuffer[] forward = createAdjacency(forwardFile, outDegree, links, stamp);
+        ByteBuffer[] reverse = createAdjacency(reverseFile, inDegree, links, stamp);
+
+        // nextOut and nextIn hold the offset that the next link of each page, and to each page, is written at
+        long[] nextOut = new long[pages];
+        long[] nextIn = new long[pages];
+        for (int page = 0; page < pages; page++) {
+            nextOut[page] = LinkGraph.offset(forward, page);
+            nextIn[page] = LinkGraph.offset(reverse, page);
+        }
+        outDegree = null;
+        inDegree = null;
+        try (BufferedReader reader = open(input)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] link = parse(line);
+                if (link != null) {
+                    int from = Arrays.binarySearch(titles, link[0]);
+                    int to = Arrays.binarySearch(titles, link[1]);
+                    putLink(forward, pages, nextOut[from]++, to);
+                    putLink(reverse, pages, nextIn[to]++, from);
+                }
+            }
+        }
+        force(forward);
+        force(reverse);
+        writeTitles(titlesFile, titles, stamp);
+
+        Files.move(forwardFile, directory.resolve(LinkGraph.FORWARD_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(reverseFile, directory.resolve(LinkGraph.REVERSE_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(titlesFile, directory.resolve(LinkGraph.TITLES_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        LinkGraph graph = LinkGraph.open(directory);
+        if (graph == null) {
+            throw new IOException("the imported link graph could not be opened");
+        }
+        Landmarks.open(graph, directory, landmarks).build(() -> false);
+        return pages;
+    }
+
+    /**
+     * Import a file of links into the directory that a WikiMediatorServer keeps its files in, or into
+     * another directory.
+     * @param args the file of links, followed by the directory to import it into if it is not
+     *             MediatorConfig.LOCAL_DIRECTORY
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: LinkGraphImporter <links file> [directory]");
+            return;
+        }
+        Path directory = Paths.get(args.length == 2 ? args[1] : MediatorConfig.LOCAL_DIRECTORY);
+        try {
+            int pages = importLinks(Paths.get(args[0]), directory);
+            System.out.println("Imported the links of " + pages + " pages into " + directory);
+        }
+        catch (IOException e) {
+            System.err.println("Could not import the link graph: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Helper method that opens a file of links.
+     * @param input the file of links, gzipped if its name ends in ".gz"
+     * @return a reader of the lines of input
+     * @throws IOException if input cannot be opened
+     */
+    private static BufferedReader open(Path input) throws IOException {
+        InputStream in = Files.newInputStream(input);
+        if (input.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Helper method that parses a line of a file of links.
+     * @param line the line, line must not be null
+     * @return the normalized titles of the page that links and of the page it links to, or null if line
+     * does not hold two titles separated by a tab
+     */
+    private static String[] parse(String line) {
+        int tab = line.indexOf('\t');
+        if (tab < 0 || line.indexOf('\t', tab + 1) >= 0) {
+            return null;
+        }
+        String from = TitleNormalizer.normalize(line.substring(0, tab));
+        String to = TitleNormalizer.normalize(line.substring(tab + 1));
+        return from.isEmpty() || to.isEmpty() ? null : new String[] {from, to};
+    }
+
+    /**
+     * Helper method that creates an adjacency file with its header and offsets, and room for its links.
+     * @param file the file to create, file must not be null
+     * @param degrees the number of links of every page, degrees must not be null
+     * @param links the total number of links, the sum of degrees
+     * @param stamp the stamp of the import
+     * @return the mapped regions of file
+     * @throws IOException if file cannot be written
+     */
+    private static ByteBuffer[] createAdjacency(Path file, int[] degrees, long links, long stamp)
+            throws IOException {
+        ByteBuffer[] adjacency = LinkGraph.map(file, FileChannel.MapMode.READ_WRITE,
+                LinkGraph.linksStart(degrees.length) + links * Integer.BYTES);
+        adjacency[0].putInt(0, LinkGraph.MAGIC).putInt(Integer.BYTES, degrees.length)
+                .putLong(2 * Integer.BYTES, stamp).putLong(LinkGraph.TITLES_HEADER, links);
+
+        long offset = 0;
+        for (int page = 0; page <= degrees.length; page++) {
+            long position = LinkGraph.ADJACENCY_HEADER + (long) page * Long.BYTES;
+            adjacency[(int) (position / LinkGraph.REGION)].putLong((int) (position % LinkGraph.REGION), offset);
+            if (page < degrees.length) {
+                offset += degrees[page];
+            }
+        }
+        return adjacency;
+    }
+
+    /**
+     * Helper method that writes a link into an adjacency file.
+     * @param adjacency the mapped regions of the adjacency file
+     * @param pages the number of pages
+     * @param link the offset of the link
+     * @param page the ID of the page at the other end of the link
+     */
+    private static void putLink(ByteBuffer[] adjacency, int pages, long link, int page) {
+        long position = LinkGraph.linksStart(pages) + link * Integer.BYTES;
+        adjacency[(int) (position / LinkGraph.REGION)].putInt((int) (position % LinkGraph.REGION), page);
+    }
+
+    /**
+     * Helper method that forces the mapped regions of a file to the storage device.
+     * @param regions the mapped regions of the file
+     */
+    private static void force(ByteBuffer[] regions) {
+        for (ByteBuffer region : regions) {
+            ((MappedByteBuffer) region).force();
+        }
+    }
+
+    /**
+     * Helper method that writes the titles file.
+     * @param file the file to write, file must not be null
+     * @param titles the sorted titles of the pages, titles must not be null
+     * @param stamp the stamp of the import
+     * @throws IOException if file cannot be written, or the titles do not fit in one mapping
+     */
+    private static void writeTitles(Path file, String[] titles, long stamp) throws IOException {
+        long size = LinkGraph.titlesStart(titles.length);
+        for (String title : titles) {
+            size += title.getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("the titles of the pages do not fit in one file of 2GB");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(LinkGraph.MAGIC);
+            out.writeInt(titles.length);
+            out.writeLong(stamp);
+            int end = 0;
+            for (String title : titles) {
+                end += title.getBytes(StandardCharsets.UTF_8).length;
+                out.writeInt(end);
+            }
+            for (String title : titles) {
+                out.write(title.getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            channel.force(true);
+        }
+    }
+}
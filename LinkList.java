@@ -0,0 +1,92 @@
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.fsftbuffer.Bufferable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A LinkList is a data type that implements the Bufferable interface. It represents the pages that a
+ * Wikipedia page links to, or the pages that link to it, in the order Wikipedia listed them. The titles
+ * of the linked pages are held as their IDs in a QueryDictionary, so that a title linked from many cached
+ * pages is stored once, and every link costs four bytes.
+ *
+ * Abstraction Function:
+ * A LinkList represents the list of page titles t_0, t_1, ..., t_(n - 1) linked with the page titled
+ * title, where n = links.length and t_i is the title interned with ID links[i] in dictionary.
+ */
+class LinkList implements Bufferable {
+    private final String title;
+    private final int[] links;
+    private final QueryDictionary dictionary;
+
+    /*
+     * Representation Invariant:
+     *  - title, links and dictionary must not be null
+     *  - every entry of links is >= 0
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - LinkList is immutable: all fields are private and final, and links is a copy that is never
+     *    modified or shared outside of this class
+     *  - dictionary is threadsafe, and is only ever added to, so the IDs in links always name the same titles
+     */
+
+    /**
+     * Check that the representation invariants for LinkList hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (title == null || links == null || dictionary == null) {
+            throw new RuntimeException("title, links and dictionary must not be null");
+        }
+        for (int link : links) {
+            if (link < 0) {
+                throw new RuntimeException("links should only hold IDs >= 0");
+            }
+        }
+    }
+
+    /**
+     * Create a LinkList from the titles of the pages linked with a page.
+     * @param title the normalized title of the page, title must not be null
+     * @param linked the titles of the pages linked with the page, linked must not be null and must not
+     *               contain null
+     * @param dictionary the dictionary to intern the titles in linked in, which the LinkList keeps to look
+     *                   them up, dictionary must not be null
+     *
+     * Frame Condition:
+     * - every title in linked is interned in dictionary
+     */
+    LinkList(String title, List<String> linked, QueryDictionary dictionary) {
+        this.title = title;
+        this.dictionary = dictionary;
+        this.links = new int[linked.size()];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = dictionary.intern(linked.get(i));
+        }
+        checkRep();
+    }
+
+    /**
+     * Return the unique identifier of the LinkList.
+     * @return The unique identifier of the LinkList, which corresponds to the title of its page.
+     */
+    @Override
+    public String id() {
+        return title;
+    }
+
+    /**
+     * Get the titles of the pages linked with the page.
+     * @return the titles of the pages linked with the page, in the order Wikipedia listed them
+     */
+    List<String> titles() {
+        List<String> linked = new ArrayList<>(links.length);
+        for (int link : links) {
+            linked.add(dictionary.lookup(link));
+        }
+        return linked;
+    }
+}
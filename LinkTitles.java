@@ -0,0 +1,78 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A LinkTitles hands out the QueryDictionary that the LinkLists of the LinkCaches of a WikiMediator intern
+ * their titles in, so that a title linked with many cached pages is stored once. A dictionary can only grow,
+ * since the IDs in a LinkList must keep naming the same titles, so once the current dictionary holds
+ * maxTitles titles, LinkLists created after that intern their titles in a new, empty dictionary. Every
+ * LinkList keeps the dictionary it was created with, and an earlier dictionary is garbage once every
+ * LinkList created with it has been evicted or has timed out. The titles held are therefore at most those of
+ * the dictionaries of the cached LinkLists, each of which holds at most maxTitles titles plus the links of the
+ * LinkLists that were being created when it filled up.
+ *
+ * Abstraction Function:
+ * A LinkTitles represents the dictionary current that new LinkLists intern their titles in, which is
+ * replaced by an empty one once it holds maxTitles titles.
+ */
+class LinkTitles {
+    private final int maxTitles;
+    private final ReentrantLock lock = new ReentrantLock();
+    private QueryDictionary current = new QueryDictionary();
+
+    /*
+     * Representation Invariant:
+     *  - maxTitles > 0
+     *  - current must not be null
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - maxTitles is private, final and immutable
+     *  - current is private, points to a threadsafe QueryDictionary, and is only accessed while holding lock.
+     *    lock is a ReentrantLock, so that a virtual thread waiting for it does not pin its carrier thread
+     *  - a dictionary that has been replaced is still interned in by the LinkLists that were being created
+     *    with it, which is why it may end up with more than maxTitles titles
+     */
+
+    /**
+     * Check that the representation invariants for LinkTitles hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (maxTitles <= 0 || current == null) {
+            throw new RuntimeException("maxTitles should be > 0, and current must not be null");
+        }
+    }
+
+    /**
+     * Create a LinkTitles with an empty dictionary.
+     * @param maxTitles the number of titles after which a new dictionary is started, maxTitles > 0
+     */
+    LinkTitles(int maxTitles) {
+        this.maxTitles = maxTitles;
+        checkRep();
+    }
+
+    /**
+     * Get the dictionary that a new LinkList should intern its titles in.
+     * @return the current dictionary, which is a new, empty one if the previous one held maxTitles titles
+     *
+     * Frame Condition:
+     * - if the current dictionary holds maxTitles titles or more, it is replaced by an empty one
+     */
+    QueryDictionary current() {
+        lock.lock();
+        try {
+            if (current.size() >= maxTitles) {
+                current = new QueryDictionary();
+            }
+            checkRep();
+            return current;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package cpen221.mp3.wikimediator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A MediaWikiBackend is a WikiBackend that queries the API of a MediaWiki wiki, such as English Wikipedia,
+ * over HTTP. Queries are sent with an asynchronous HttpClient, which only uses a thread while a response is
+ * being parsed, never while one is awaited. Queries about more than RevisionInfo.MAX_TITLES pages are split
+ * into batches of RevisionInfo.MAX_TITLES titles, which are all sent at once. Every query, including every
+ * batch and every page of search results, is sent through a ConcurrencyLimiter, so a burst of requests does
+ * not send the wiki more queries at once than it answers without slowing down. Queries for the text of pages
+ * are hedged by a RequestHedger: a query that is slower than most is sent a second time, through the same
+ * ConcurrencyLimiter, and the first answer is used.
+ *
+ * Abstraction Function:
+ * A MediaWikiBackend represents the wiki whose API is at endpoint, which it queries through client, with as
+ * many queries in flight at once as limiter allows, and hedging queries for the text of pages as textHedger
+ * allows.
+ */
+class MediaWikiBackend implements WikiBackend {
+
+    /* the API endpoint of English Wikipedia */
+    static final String ENDPOINT = "https://en.wikipedia.org/w/api.php";
+
+    /* the largest number of search results that Wikipedia's API returns in one query */
+    private static final int MAX_SEARCH_RESULTS = 500;
+
+    /* the number of seconds to wait for a connection to the wiki */
+    private static final int CONNECT_TIMEOUT = 10;
+
+    /* the number of seconds to wait for the answer to a query */
+    private static final int QUERY_TIMEOUT = 30;
+
+    /* identifies the WikiMediator to the wiki, as the API etiquette of Wikipedia asks */
+    private static final String USER_AGENT = "WikiMediator/1.0 (CPEN 221 MP3)";
+
+    private final String endpoint;
+    private final HttpClient client;
+    private final ConcurrencyLimiter limiter;
+    private final RequestHedger textHedger;
+
+    /*
+     * Representation Invariant:
+     *  - endpoint, client, limiter and textHedger must not be null
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - endpoint, client, limiter and textHedger are private and final
+     *  - client is a threadsafe HttpClient, and every query only accesses state local to that query
+     *  - limiter and textHedger are threadsafe
+     */
+
+    /**
+     * Check that the representation invariants for MediaWikiBackend hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (endpoint == null || client == null || limiter == null || textHedger == null) {
+            throw new RuntimeException("endpoint, client, limiter and textHedger must not be null");
+        }
+    }
+
+    /**
+     * Create a MediaWikiBackend.
+     * @param endpoint the URL of the API of the wiki, endpoint must not be null
+     * @param executor runs the completion of every query, or null to use the default executor of HttpClient
+     * @param limiter limits the number of queries in flight at once, limiter must not be null
+     * @param textHedger hedges the queries for the text of pages, textHedger must not be null
+     */
+    MediaWikiBackend(String endpoint, Executor executor, ConcurrencyLimiter limiter, RequestHedger textHedger) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(CONNECT_TIMEOUT))
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        this.endpoint = endpoint;
+        this.client = builder.build();
+        this.limiter = limiter;
+        this.textHedger = textHedger;
+        checkRep();
+    }
+
+    @Override
+    public CompletableFuture<List<String>> search(String query, int limit) {
+        return search(query, limit, 0, new ArrayList<>());
+    }
+
+    /**
+     * Helper method that searches the wiki, one query of up to MAX_SEARCH_RESULTS results at a time.
+     * @param query the query string, query must not be null
+     * @param limit the maximum number of page titles to return, limit > titles.size()
+     * @param offset the number of results to skip, offset >= 0
+     * @param titles the page titles found by the previous queries, titles must not be null
+     * @return a future of titles, followed by up to limit - titles.size() more page titles that match query
+     */
+    private CompletableFuture<List<String>> search(String query, int limit, int offset, List<String> titles) {
+        int batch = Math.min(limit - titles.size(), MAX_SEARCH_RESULTS);
+        return ask("list", "search", "srsearch", query, "srnamespace", "*", "srprop", "",
+                "srlimit", String.valueOf(batch), "sroffset", String.valueOf(offset)).thenCompose(body -> {
+            JsonObject result = body.getAsJsonObject("query");
+            JsonArray found = result == null ? null : result.getAsJsonArray("search");
+            if (found != null) {
+                for (JsonElement element : found) {
+                    if (titles.size() < limit) {
+                        titles.add(element.getAsJsonObject().get("title").getAsString());
+                    }
+                }
+            }
+
+            JsonObject next = body.getAsJsonObject("continue");
+            if (titles.size() >= limit || found == null || found.size() == 0 || next == null || !next.has("sroffset")) {
+                return CompletableFuture.completedFuture(titles);
+            }
+            return search(query, limit, next.get("sroffset").getAsInt(), titles);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, RevisionInfo>> latestRevisions(Collection<String> titles) {
+        return batched(titles, batch -> ask("prop", "revisions", "rvprop", "ids|timestamp",
+                "titles", String.join("|", batch)).thenApply(body -> {
+            Map<String, RevisionInfo> revisions = new HashMap<>();
+            JsonObject result = body.getAsJsonObject("query");
+            Map<String, String> askedFor = inverse(pairs(result, "normalized"));
+            for (JsonObject page : pages(result)) {
+                JsonArray pageRevisions = page.getAsJsonArray("revisions");
+                if (pageRevisions == null || pageRevisions.size() == 0) {
+                    continue;
+                }
+                JsonObject revision = pageRevisions.get(0).getAsJsonObject();
+                String title = page.get("title").getAsString();
+                revisions.put(askedFor.getOrDefault(title, title), new RevisionInfo(revision.get("revid").getAsLong(),
+                        Instant.parse(revision.get("timestamp").getAsString())));
+            }
+            return revisions;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> resolveRedirects(Collection<String> titles) {
+        return batched(titles, batch -> ask("redirects", "1", "titles", String.join("|", batch)).thenApply(body -> {
+            JsonObject result = body.getAsJsonObject("query");
+            Map<String, String> normalized = pairs(result, "normalized");
+            Map<String, String> redirected = pairs(result, "redirects");
+
+            Map<String, String> targets = new HashMap<>();
+            for (String title : batch) {
+                String page = normalized.getOrDefault(title, title);
+                targets.put(title, redirected.getOrDefault(page, page));
+            }
+            return targets;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPageTexts(Collection<String> titles) {
+        return batched(titles, batch -> query(textHedger, "prop", "revisions", "rvprop", "content",
+                "rvslots", "main", "titles", String.join("|", batch)).thenApply(body -> {
+            Map<String, String> texts = new HashMap<>();
+            JsonObject result = body.getAsJsonObject("query");
+            Map<String, String> askedFor = inverse(pairs(result, "normalized"));
+            for (JsonObject page : pages(result)) {
+                String title = page.get("title").getAsString();
+                JsonArray pageRevisions = page.getAsJsonArray("revisions");
+                String text = "";
+                if (pageRevisions != null && pageRevisions.size() > 0) {
+                    JsonObject slots = pageRevisions.get(0).getAsJsonObject().getAsJsonObject("slots");
+                    JsonObject main = slots == null ? null : slots.getAsJsonObject("main");
+                    if (main != null && main.has("content")) {
+                        text = main.get("content").getAsString();
+                    }
+                }
+                texts.put(askedFor.getOrDefault(title, title), text);
+            }
+            return texts;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, List<String>>> links(Collection<String> titles) {
+        return batched(titles, batch -> paged(batch, "links", "prop", "links", "plnamespace", "0", "pllimit", "max"));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, List<String>>> linksHere(Collection<String> titles) {
+        return batched(titles, batch -> paged(batch, "linkshere", "prop", "linkshere", "lhnamespace", "0",
+                "lhprop", "title", "lhlimit", "max"));
+    }
+
+    /**
+     * Helper method that sends a query for a list of titles about each of a batch of pages, and sends it again
+     * with the continuation that the wiki answers with, until the wiki has listed every title.
+     * @param batch the distinct titles of the pages, at most RevisionInfo.MAX_TITLES, batch must not be null
+     * @param member the name of the list of titles in the answer for each page, member must not be null
+     * @param parameters the names and values of the parameters of the query, in turn, without the titles,
+     *                   parameters must not be null
+     * @return a future of a map from each title in batch to the titles listed for its page, in the order the
+     * wiki lists them; cancelling it cancels the query in flight
+     */
+    private CompletableFuture<Map<String, List<String>>> paged(List<String> batch, String member,
+            String... parameters) {
+        Map<String, List<String>> listed = new HashMap<>();
+        for (String title : batch) {
+            listed.put(title, new ArrayList<>());
+        }
+        CompletableFuture<Map<String, List<String>>> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<JsonObject>> running = new AtomicReference<>();
+        result.whenComplete((value, e) -> {
+            CompletableFuture<JsonObject> query = running.get();
+            if (result.isCancelled() && query != null) {
+                query.cancel(true);
+            }
+        });
+
+        List<String> first = new ArrayList<>(Arrays.asList(parameters));
+        first.add("titles");
+        first.add(String.join("|", batch));
+        page(result, running, listed, member, first);
+        return result;
+    }
+
+    /**
+     * Helper method that sends one query of paged, and then the queries for the rest of its answer.
+     * @param result the future of the answer of paged, result must not be null
+     * @param running holds the query in flight, running must not be null
+     * @param listed maps each title to the titles listed for its page so far, listed must not be null
+     * @param member the name of the list of titles in the answer for each page, member must not be null
+     * @param parameters the names and values of the parameters of the query, in turn, parameters must not be null
+     *
+     * Frame Condition:
+     * - the titles listed in the answer are appended to listed, and result is completed once every title has
+     *   been listed, or a query fails
+     */
+    private void page(CompletableFuture<Map<String, List<String>>> result,
+            AtomicReference<CompletableFuture<JsonObject>> running, Map<String, List<String>> listed,
+            String member, List<String> parameters) {
+        if (result.isDone()) {
+            return;
+        }
+        CompletableFuture<JsonObject> query = ask(parameters.toArray(new String[0]));
+        running.set(query);
+        if (result.isCancelled()) {
+            query.cancel(true);
+        }
+
+        query.whenComplete((body, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+                return;
+            }
+            JsonObject answer = body.getAsJsonObject("query");
+            Map<String, String> askedFor = inverse(pairs(answer, "normalized"));
+            for (JsonObject page : pages(answer)) {
+                JsonArray array = page.getAsJsonArray(member);
+                String title = page.get("title").getAsString();
+                List<String> titles = listed.get(askedFor.getOrDefault(title, title));
+                if (array == null || titles == null) {
+                    continue;
+                }
+                for (JsonElement element : array) {
+                    titles.add(element.getAsJsonObject().get("title").getAsString());
+                }
+            }
+
+            JsonObject next = body.getAsJsonObject("continue");
+            if (next == null) {
+                result.complete(listed);
+                return;
+            }
+            List<String> following = new ArrayList<>(parameters);
+            for (Map.Entry<String, JsonElement> entry : next.entrySet()) {
+                following.add(entry.getKey());
+                following.add(entry.getValue().getAsString());
+            }
+            page(result, running, listed, member, following);
+        });
+    }
+
+    /**
+     * Helper method that splits a query about many pages into batches of RevisionInfo.MAX_TITLES titles, sends
+     * every batch at once, and merges their answers.
+     * @param titles the titles of the pages, titles must not be null
+     * @param query sends the query for one batch of distinct titles, query must not be null
+     * @param <T> the type of the answer for each title
+     * @return a future of the answers for every batch, merged into one map; it completes exceptionally if the
+     * query for any batch does, and cancelling it cancels the query for every batch
+     */
+    private static <T> CompletableFuture<Map<String, T>> batched(Collection<String> titles,
+            Function<List<String>, CompletableFuture<Map<String, T>>> query) {
+        List<String> remaining = new ArrayList<>(new LinkedHashSet<>(titles));
+        List<CompletableFuture<Map<String, T>>> batches = new ArrayList<>();
+        for (int start = 0; start < remaining.size(); start += RevisionInfo.MAX_TITLES) {
+            int end = Math.min(remaining.size(), start + RevisionInfo.MAX_TITLES);
+            batches.add(query.apply(remaining.subList(start, end)));
+        }
+
+        CompletableFuture<Map<String, T>> merged = CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> {
+                    Map<String, T> answers = new HashMap<>();
+                    for (CompletableFuture<Map<String, T>> batch : batches) {
+                        answers.putAll(batch.join());
+                    }
+                    return answers;
+                });
+        merged.whenComplete((answers, e) -> {
+            if (merged.isCancelled()) {
+                batches.forEach(batch -> batch.cancel(true));
+            }
+        });
+        return merged;
+    }
+
+    /**
+     * Helper method that sends a query to the API of the wiki, without hedging it.
+     * @param parameters the names and values of the parameters of the query, in turn, parameters must not be
+     *                   null; the action, format and format version are added
+     * @return a future of the body of the answer, which completes exceptionally if limiter rejected the query,
+     * the wiki could not be reached, did not answer with HTTP status 200, or answered with an error
+     */
+    private CompletableFuture<JsonObject> ask(String... parameters) {
+        return query(null, parameters);
+    }
+
+    /**
+     * Helper method that sends a query to the API of the wiki.
+     * @param hedger hedges the query, or null to send it once
+     * @param parameters the names and values of the parameters of the query, in turn, parameters must not be
+     *                   null; the action, format and format version are added
+     * @return a future of the body of the answer, which completes exceptionally if limiter rejected the query,
+     * the wiki could not be reached, did not answer with HTTP status 200, or answered with an error; cancelling
+     * it cancels the query
+     */
+    private CompletableFuture<JsonObject> query(RequestHedger hedger, String... parameters) {
+        StringBuilder uri = new StringBuilder(endpoint).append("?action=query&format=json&formatversion=2");
+        for (int i = 0; i + 1 < parameters.length; i += 2) {
+            uri.append('&').append(parameters[i]).append('=')
+                    .append(URLEncoder.encode(parameters[i + 1], StandardCharsets.UTF_8));
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri.toString()))
+                .timeout(Duration.ofSeconds(QUERY_TIMEOUT))
+                .header("User-Agent", USER_AGENT)
+                .GET()
+                .build();
+
+        Supplier<CompletableFuture<HttpResponse<String>>> send =
+                () -> limiter.submit(() -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        CompletableFuture<HttpResponse<String>> sent = hedger == null ? send.get() : hedger.call(send);
+        CompletableFuture<JsonObject> answer = sent.thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new CompletionException(new IOException("the wiki answered with HTTP status "
+                        + response.statusCode()));
+            }
+            JsonObject body = JsonParser.parseString(response.body()).getAsJsonObject();
+            JsonObject error = body.getAsJsonObject("error");
+            if (error != null) {
+                throw new CompletionException(new IOException("the wiki answered with an error: "
+                        + (error.has("info") ? error.get("info").getAsString() : error)));
+            }
+            return body;
+        });
+        answer.whenComplete((body, e) -> {
+            if (answer.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return answer;
+    }
+
+    /**
+     * Helper method that gets the pages in the answer to a query.
+     * @param result the "query" member of the answer, or null if it had none
+     * @return the pages in result, including the ones that do not exist, in the order they were answered
+     */
+    private static List<JsonObject> pages(JsonObject result) {
+        List<JsonObject> pages = new ArrayList<>();
+        JsonArray array = result == null ? null : result.getAsJsonArray("pages");
+        if (array == null) {
+            return pages;
+        }
+        for (JsonElement element : array) {
+            pages.add(element.getAsJsonObject());
+        }
+        return pages;
+    }
+
+    /**
+     * Helper method that gets the list of title pairs in the answer to a query, such as the titles the wiki
+     * normalized, or the redirects it followed.
+     * @param result the "query" member of the answer, or null if it had none
+     * @param member the name of the list, member must not be null
+     * @return maps the "from" title of every pair in the list to its "to" title
+     */
+    private static Map<String, String> pairs(JsonObject result, String member) {
+        Map<String, String> pairs = new HashMap<>();
+        JsonArray array = result == null ? null : result.getAsJsonArray(member);
+        if (array == null) {
+            return pairs;
+        }
+        for (JsonElement element : array) {
+            JsonObject pair = element.getAsJsonObject();
+            pairs.put(pair.get("from").getAsString(), pair.get("to").getAsString());
+        }
+        return pairs;
+    }
+
+    /**
+     * Helper method that inverts a map of title pairs.
+     * @param pairs maps titles to titles, pairs must not be null
+     * @return maps every value of pairs to a key it is mapped from
+     */
+    private static Map<String, String> inverse(Map<String, String> pairs) {
+        Map<String, String> inverse = new HashMap<>();
+        for (Map.Entry<String, String> pair : pairs.entrySet()) {
+            inverse.put(pair.getValue(), pair.getKey());
+        }
+        return inverse;
+    }
+}
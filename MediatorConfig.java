@@ -0,0 +1,961 @@
+package cpen221.mp3.wikimediator;
+
+/**
+ * A MediatorConfig holds the optional settings of a WikiMediator that are fixed when the
+ * WikiMediator is constructed. A MediatorConfig is created with a MediatorConfig.Builder, and
+ * every setting that is not given to the builder keeps its default value.
+ *
+ * Abstraction Function:
+ * A MediatorConfig represents one choice of every optional WikiMediator setting, where each
+ * field holds the value of the setting with the same name.
+ */
+public class MediatorConfig {
+
+    /**
+     * How a WikiMediator counts the Strings used in search and getPage requests.
+     */
+    public enum StatisticsMode {
+        /* count every String exactly, using memory proportional to the number of requests */
+        EXACT,
+        /* estimate counts with fixed-size summaries and report an error bound */
+        APPROXIMATE
+    }
+
+    /**
+     * Which threads a WikiMediator and its server run blocking work on, such as the handler of each
+     * connection and the completion of each query of Wikipedia.
+     */
+    public enum ThreadMode {
+        /* run blocking work on platform threads, each backed by an operating system thread */
+        PLATFORM,
+        /* run blocking work on virtual threads if the JVM supports them, and on platform threads otherwise */
+        VIRTUAL
+    }
+
+    /* the default number of Strings tracked by an approximate summary */
+    public static final int DHEAVYHITTERS = 1000;
+
+    /* the default relative error of an approximate window count */
+    public static final double DEPSILON = 0.001;
+
+    /* the default probability that an approximate window count exceeds its relative error */
+    public static final double DDELTA = 0.01;
+
+    /* the default length of the history that approximate trending can look back over is 3600s */
+    public static final int DHORIZON = 3600;
+
+    /* the default length of each approximate trending time bucket is 60s */
+    public static final int DBUCKET = 60;
+
+    /* the default length of history kept at one-second resolution is 86400s (one day) */
+    public static final int DRAWRETENTION = 86400;
+
+    /* the default length of history kept at one-minute resolution is 2592000s (30 days) */
+    public static final int DMINUTERETENTION = 2592000;
+
+    /* the default half-life of a decayed zeitgeist score is 600s */
+    public static final int DHALFLIFE = 600;
+
+    /* the default number of request events the statistics ring buffer can hold */
+    public static final int DINGESTBUFFER = 8192;
+
+    /* the default longest time a statistics request waits for earlier requests to be recorded is 1000ms */
+    public static final int DINGESTLAG = 1000;
+
+    /* by default, a cached zeitgeist or trending result is only reused while it is exact */
+    public static final int DSTALENESS = 0;
+
+    /* the directory that a WikiMediatorServer keeps its statistics and its offline link graph in */
+    public static final String LOCAL_DIRECTORY = "local";
+
+    /* the default longest time a logged request waits before it is forced to disk is 100ms */
+    public static final int DDURABILITY = 100;
+
+    /* the default time between snapshots of persisted statistics is 3600s */
+    public static final int DSNAPSHOT = 3600;
+
+    /* the default time logged requests are kept after a snapshot covers them is 31536000s (365 days) */
+    public static final int DARCHIVERETENTION = 31536000;
+
+    /* the default number of queries whose search results are cached */
+    public static final int DSEARCHCACHE = 256;
+
+    /* the default time a cached search result is reused is 300s */
+    public static final int DSEARCHTIMEOUT = 300;
+
+    /* the default number of redirects whose targets are cached */
+    public static final int DREDIRECTCACHE = 1024;
+
+    /* the default time a cached redirect is reused is 3600s */
+    public static final int DREDIRECTTIMEOUT = 3600;
+
+    /* the default number of missing page titles that are remembered */
+    public static final int DNEGATIVECACHE = 4096;
+
+    /* the default time a missing page title is remembered is 600s */
+    public static final int DNEGATIVETIMEOUT = 600;
+
+    /* the default time a stale page is kept so that it can be revalidated is 3600s */
+    public static final int DREVALIDATION = 3600;
+
+    /* by default, a stale page is never served while it is fetched again */
+    public static final int DSTALEGRACE = 0;
+
+    /* the default largest number of queries of Wikipedia in flight at once */
+    public static final int DBACKENDCONCURRENCY = 32;
+
+    /* the default largest number of queries of Wikipedia that wait to be sent */
+    public static final int DBACKENDQUEUE = 256;
+
+    /* the default longest time a query of Wikipedia waits to be sent is 5000ms */
+    public static final int DBACKENDQUEUEWAIT = 5000;
+
+    /* by default, queries for the text of pages are never hedged */
+    public static final int DHEDGEBUDGET = 0;
+
+    /* the default number of pages whose links, and whose backlinks, are cached */
+    public static final int DLINKCACHE = 4096;
+
+    /* the default time the cached links of a page are reused is 3600s */
+    public static final int DLINKTIMEOUT = 3600;
+
+    /* the default number of linked titles after which the link caches start a new title dictionary */
+    public static final int DLINKTITLES = 1 << 20;
+
+    /* the default number of landmark pages whose distances bound the distances over an offline link graph */
+    public static final int DLANDMARKS = 16;
+
+    private final StatisticsMode statisticsMode;
+    private final int heavyHitterCapacity;
+    private final double sketchEpsilon;
+    private final double sketchDelta;
+    private final int trendingHorizon;
+    private final int trendingBucketSeconds;
+    private final int rawRetention;
+    private final int minuteRetention;
+    private final int decayHalfLife;
+    private final int ingestBufferSize;
+    private final int ingestMaxLag;
+    private final int rankingStaleness;
+    private final String persistenceDirectory;
+    private final int durabilityWindow;
+    private final int snapshotInterval;
+    private final int archiveRetention;
+    private final int searchCacheCapacity;
+    private final int searchCacheTimeout;
+    private final int redirectCacheCapacity;
+    private final int redirectCacheTimeout;
+    private final int negativeCacheCapacity;
+    private final int negativeCacheTimeout;
+    private final int revalidationWindow;
+    private final int staleGracePeriod;
+    private final ThreadMode threadMode;
+    private final int backendConcurrency;
+    private final int backendQueue;
+    private final int backendQueueWait;
+    private final int hedgeBudget;
+    private final int linkCacheCapacity;
+    private final int linkCacheTimeout;
+    private final int linkTitleCapacity;
+    private final String linkGraphDirectory;
+    private final int landmarkCount;
+
+    /*
+     * Representation Invariant:
+     *  - statisticsMode != null
+     *  - heavyHitterCapacity > 0
+     *  - 0 < sketchEpsilon < 1 and 0 < sketchDelta < 1
+     *  - trendingBucketSeconds > 0 and trendingHorizon >= trendingBucketSeconds
+     *  - 0 < rawRetention <= minuteRetention
+     *  - decayHalfLife > 0
+     *  - ingestBufferSize is a power of two and ingestMaxLag >= 0
+     *  - rankingStaleness >= 0
+     *  - durabilityWindow > 0, snapshotInterval > 0 and archiveRetention > 0
+     *  - searchCacheCapacity > 0 and searchCacheTimeout > 0
+     *  - redirectCacheCapacity > 0 and redirectCacheTimeout > 0
+     *  - negativeCacheCapacity > 0 and negativeCacheTimeout > 0
+     *  - revalidationWindow >= 0 and staleGracePeriod >= 0
+     *  - threadMode != null
+     *  - backendConcurrency > 0, backendQueue >= 0 and backendQueueWait >= 0
+     *  - 0 <= hedgeBudget <= 100
+     *  - linkCacheCapacity > 0, linkCacheTimeout > 0 and linkTitleCapacity > 0
+     *  - landmarkCount >= 0
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - MediatorConfig is immutable: all fields are private and final
+     */
+
+    /**
+     * Check that the representation invariants for MediatorConfig hold true.
+     * @throws IllegalArgumentException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (statisticsMode == null) {
+            throw new IllegalArgumentException("statisticsMode must not be null");
+        }
+        if (heavyHitterCapacity <= 0) {
+            throw new IllegalArgumentException("heavyHitterCapacity should be > 0");
+        }
+        if (sketchEpsilon <= 0 || sketchEpsilon >= 1 || sketchDelta <= 0 || sketchDelta >= 1) {
+            throw new IllegalArgumentException("sketchEpsilon and sketchDelta should be between 0 and 1");
+        }
+        if (trendingBucketSeconds <= 0 || trendingHorizon < trendingBucketSeconds) {
+            throw new IllegalArgumentException("trendingHorizon should be at least one trendingBucketSeconds");
+        }
+        if (rawRetention <= 0 || minuteRetention < rawRetention) {
+            throw new IllegalArgumentException("retention periods should satisfy 0 < rawRetention <= minuteRetention");
+        }
+        if (decayHalfLife <= 0) {
+            throw new IllegalArgumentException("decayHalfLife should be > 0");
+        }
+        if (ingestBufferSize <= 0 || Integer.bitCount(ingestBufferSize) != 1) {
+            throw new IllegalArgumentException("ingestBufferSize should be a power of two");
+        }
+        if (ingestMaxLag < 0) {
+            throw new IllegalArgumentException("ingestMaxLag should be >= 0");
+        }
+        if (rankingStaleness < 0) {
+            throw new IllegalArgumentException("rankingStaleness should be >= 0");
+        }
+        if (durabilityWindow <= 0) {
+            throw new IllegalArgumentException("durabilityWindow should be > 0");
+        }
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("snapshotInterval should be > 0");
+        }
+        if (archiveRetention <= 0) {
+            throw new IllegalArgumentException("archiveRetention should be > 0");
+        }
+        if (searchCacheCapacity <= 0 || searchCacheTimeout <= 0) {
+            throw new IllegalArgumentException("searchCacheCapacity and searchCacheTimeout should be > 0");
+        }
+        if (redirectCacheCapacity <= 0 || redirectCacheTimeout <= 0) {
+            throw new IllegalArgumentException("redirectCacheCapacity and redirectCacheTimeout should be > 0");
+        }
+        if (negativeCacheCapacity <= 0 || negativeCacheTimeout <= 0) {
+            throw new IllegalArgumentException("negativeCacheCapacity and negativeCacheTimeout should be > 0");
+        }
+        if (revalidationWindow < 0 || staleGracePeriod < 0) {
+            throw new IllegalArgumentException("revalidationWindow and staleGracePeriod should be >= 0");
+        }
+        if (threadMode == null) {
+            throw new IllegalArgumentException("threadMode must not be null");
+        }
+        if (backendConcurrency <= 0 || backendQueue < 0 || backendQueueWait < 0) {
+            throw new IllegalArgumentException("backendConcurrency should be > 0, and backendQueue and "
+                    + "backendQueueWait should be >= 0");
+        }
+        if (hedgeBudget < 0 || hedgeBudget > 100) {
+            throw new IllegalArgumentException("hedgeBudget should be between 0 and 100");
+        }
+        if (linkCacheCapacity <= 0 || linkCacheTimeout <= 0 || linkTitleCapacity <= 0) {
+            throw new IllegalArgumentException(
+                "linkCacheCapacity, linkCacheTimeout and linkTitleCapacity should be > 0");
+        }
+        if (landmarkCount < 0) {
+            throw new IllegalArgumentException("landmarkCount should be >= 0");
+        }
+    }
+
+    /**
+     * Create a MediatorConfig from the settings of a builder.
+     * @param builder the builder holding the settings, builder must not be null
+     */
+    private MediatorConfig(Builder builder) {
+        statisticsMode = builder.statisticsMode;
+        heavyHitterCapacity = builder.heavyHitterCapacity;
+        sketchEpsilon = builder.sketchEpsilon;
+        sketchDelta = builder.sketchDelta;
+        trendingHorizon = builder.trendingHorizon;
+        trendingBucketSeconds = builder.trendingBucketSeconds;
+        rawRetention = builder.rawRetention;
+        minuteRetention = builder.minuteRetention;
+        decayHalfLife = builder.decayHalfLife;
+        ingestBufferSize = builder.ingestBufferSize;
+        ingestMaxLag = builder.ingestMaxLag;
+        rankingStaleness = builder.rankingStaleness;
+        persistenceDirectory = builder.persistenceDirectory;
+        durabilityWindow = builder.durabilityWindow;
+        snapshotInterval = builder.snapshotInterval;
+        archiveRetention = builder.archiveRetention;
+        searchCacheCapacity = builder.searchCacheCapacity;
+        searchCacheTimeout = builder.searchCacheTimeout;
+        redirectCacheCapacity = builder.redirectCacheCapacity;
+        redirectCacheTimeout = builder.redirectCacheTimeout;
+        negativeCacheCapacity = builder.negativeCacheCapacity;
+        negativeCacheTimeout = builder.negativeCacheTimeout;
+        revalidationWindow = builder.revalidationWindow;
+        staleGracePeriod = builder.staleGracePeriod;
+        threadMode = builder.threadMode;
+        backendConcurrency = builder.backendConcurrency;
+        backendQueue = builder.backendQueue;
+        backendQueueWait = builder.backendQueueWait;
+        hedgeBudget = builder.hedgeBudget;
+        linkCacheCapacity = builder.linkCacheCapacity;
+        linkCacheTimeout = builder.linkCacheTimeout;
+        linkTitleCapacity = builder.linkTitleCapacity;
+        linkGraphDirectory = builder.linkGraphDirectory;
+        landmarkCount = builder.landmarkCount;
+        checkRep();
+    }
+
+    /**
+     * Get the statistics mode.
+     * @return how search and getPage Strings are counted
+     */
+    public StatisticsMode getStatisticsMode() {
+        return statisticsMode;
+    }
+
+    /**
+     * Get the number of Strings tracked by each approximate summary, including the summary
+     * used by decayedZeitgeist.
+     * @return the number of Strings tracked by each approximate summary
+     */
+    public int getHeavyHitterCapacity() {
+        return heavyHitterCapacity;
+    }
+
+    /**
+     * Get the relative error of an approximate window count.
+     * @return the relative error of an approximate window count
+     */
+    public double getSketchEpsilon() {
+        return sketchEpsilon;
+    }
+
+    /**
+     * Get the probability that an approximate window count exceeds its relative error.
+     * @return the probability that an approximate window count exceeds its relative error
+     */
+    public double getSketchDelta() {
+        return sketchDelta;
+    }
+
+    /**
+     * Get the length of the history that approximate trending can look back over.
+     * @return the length, in seconds, of the history kept for approximate trending
+     */
+    public int getTrendingHorizon() {
+        return trendingHorizon;
+    }
+
+    /**
+     * Get the length of each approximate trending time bucket.
+     * @return the length, in seconds, of each approximate trending time bucket
+     */
+    public int getTrendingBucketSeconds() {
+        return trendingBucketSeconds;
+    }
+
+    /**
+     * Get the length of history kept at one-second resolution.
+     * @return the number of seconds for which request statistics are kept at one-second resolution
+     */
+    public int getRawRetention() {
+        return rawRetention;
+    }
+
+    /**
+     * Get the length of history kept at one-minute resolution.
+     * @return the number of seconds for which request statistics are kept at one-minute resolution
+     */
+    public int getMinuteRetention() {
+        return minuteRetention;
+    }
+
+    /**
+     * Get the half-life of a decayed zeitgeist score.
+     * @return the number of seconds after which the decayed zeitgeist score of a String halves
+     */
+    public int getDecayHalfLife() {
+        return decayHalfLife;
+    }
+
+    /**
+     * Get the number of request events the statistics ring buffer can hold.
+     * @return the number of request events that can wait to be recorded before a request blocks
+     */
+    public int getIngestBufferSize() {
+        return ingestBufferSize;
+    }
+
+    /**
+     * Get the longest time a statistics request waits for earlier requests to be recorded.
+     * @return the longest wait, in milliseconds
+     */
+    public int getIngestMaxLag() {
+        return ingestMaxLag;
+    }
+
+    /**
+     * Get the age up to which a cached zeitgeist or trending result is reused.
+     * @return the age, in milliseconds, up to which a cached result is reused even if requests were made after
+     * it was computed
+     */
+    public int getRankingStaleness() {
+        return rankingStaleness;
+    }
+
+    /**
+     * Get the directory that request statistics are persisted in.
+     * @return the directory that request statistics are logged to and reloaded from, or null if
+     * request statistics are not persisted
+     */
+    public String getPersistenceDirectory() {
+        return persistenceDirectory;
+    }
+
+    /**
+     * Get the longest time a logged request waits before it is forced to disk.
+     * @return the durability window, in milliseconds
+     */
+    public int getDurabilityWindow() {
+        return durabilityWindow;
+    }
+
+    /**
+     * Get the time between snapshots of persisted statistics.
+     * @return the snapshot interval, in seconds
+     */
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Get how long logged requests are kept after a snapshot covers them.
+     * @return the archive retention, in seconds
+     */
+    public int getArchiveRetention() {
+        return archiveRetention;
+    }
+
+    /**
+     * Get the number of queries whose search results are cached.
+     * @return the maximum number of queries whose search results are cached at once
+     */
+    public int getSearchCacheCapacity() {
+        return searchCacheCapacity;
+    }
+
+    /**
+     * Get the time a cached search result is reused.
+     * @return the number of seconds after which a cached search result is fetched again
+     */
+    public int getSearchCacheTimeout() {
+        return searchCacheTimeout;
+    }
+
+    /**
+     * Get the number of redirects whose targets are cached.
+     * @return the maximum number of redirects whose targets are cached at once
+     */
+    public int getRedirectCacheCapacity() {
+        return redirectCacheCapacity;
+    }
+
+    /**
+     * Get the time a cached redirect is reused.
+     * @return the number of seconds after which the target of a cached redirect is resolved again
+     */
+    public int getRedirectCacheTimeout() {
+        return redirectCacheTimeout;
+    }
+
+    /**
+     * Get the number of missing page titles that are remembered.
+     * @return the number of titles of nonexistent pages the negative cache is sized for
+     */
+    public int getNegativeCacheCapacity() {
+        return negativeCacheCapacity;
+    }
+
+    /**
+     * Get the time a missing page title is remembered.
+     * @return the number of seconds after which a nonexistent page is fetched again
+     */
+    public int getNegativeCacheTimeout() {
+        return negativeCacheTimeout;
+    }
+
+    /**
+     * Get the time a stale page is kept so that it can be revalidated.
+     * @return the number of seconds a cached page is kept after its staleness interval, or 0 if stale
+     * pages are always fetched again
+     */
+    public int getRevalidationWindow() {
+        return revalidationWindow;
+    }
+
+    /**
+     * Get the time after a cached page goes stale during which it is served while it is fetched again.
+     * @return the grace period, in seconds, or 0 if a stale page is never served
+     */
+    public int getStaleGracePeriod() {
+        return staleGracePeriod;
+    }
+
+    /**
+     * Get the thread mode.
+     * @return which threads blocking work is run on
+     */
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Get the largest number of queries of Wikipedia in flight at once.
+     * @return the most queries that may be in flight at once, however well Wikipedia keeps up
+     */
+    public int getBackendConcurrency() {
+        return backendConcurrency;
+    }
+
+    /**
+     * Get the largest number of queries of Wikipedia that wait to be sent.
+     * @return the most queries that may wait for others to complete before a query is rejected
+     */
+    public int getBackendQueue() {
+        return backendQueue;
+    }
+
+    /**
+     * Get the longest time a query of Wikipedia waits to be sent.
+     * @return the longest wait, in milliseconds
+     */
+    public int getBackendQueueWait() {
+        return backendQueueWait;
+    }
+
+    /**
+     * Get the budget for hedging queries for the text of pages.
+     * @return the largest number of hedged queries per hundred queries for the text of pages, or 0 if they are
+     * never hedged
+     */
+    public int getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    /**
+     * Get the number of pages whose links are cached.
+     * @return the maximum number of pages whose links are cached at once, and of pages whose backlinks are
+     * cached at once
+     */
+    public int getLinkCacheCapacity() {
+        return linkCacheCapacity;
+    }
+
+    /**
+     * Get the time the cached links of a page are reused.
+     * @return the number of seconds after which the cached links of a page are fetched again
+     */
+    public int getLinkCacheTimeout() {
+        return linkCacheTimeout;
+    }
+
+    /**
+     * Get the number of linked titles after which the link caches start a new title dictionary.
+     * @return the number of titles a title dictionary of the link caches holds before a new one is started
+     */
+    public int getLinkTitleCapacity() {
+        return linkTitleCapacity;
+    }
+
+    /**
+     * Get the directory that an offline link graph is read from.
+     * @return the directory that LinkGraphImporter imported a link graph into, or null if shortestPath
+     * always asks Wikipedia for links
+     */
+    public String getLinkGraphDirectory() {
+        return linkGraphDirectory;
+    }
+
+    /**
+     * Get the number of landmarks of the offline link graph.
+     * @return the number of landmark pages whose distances bound the distances over the offline link graph,
+     * or 0 if no landmarks are used
+     */
+    public int getLandmarkCount() {
+        return landmarkCount;
+    }
+
+    /**
+     * A Builder collects the settings of a MediatorConfig. Every setting starts at its default value.
+     */
+    public static class Builder {
+        private StatisticsMode statisticsMode = StatisticsMode.EXACT;
+        private int heavyHitterCapacity = DHEAVYHITTERS;
+        private double sketchEpsilon = DEPSILON;
+        private double sketchDelta = DDELTA;
+        private int trendingHorizon = DHORIZON;
+        private int trendingBucketSeconds = DBUCKET;
+        private int rawRetention = DRAWRETENTION;
+        private int minuteRetention = DMINUTERETENTION;
+        private int decayHalfLife = DHALFLIFE;
+        private int ingestBufferSize = DINGESTBUFFER;
+        private int ingestMaxLag = DINGESTLAG;
+        private int rankingStaleness = DSTALENESS;
+        private String persistenceDirectory = null;
+        private int durabilityWindow = DDURABILITY;
+        private int snapshotInterval = DSNAPSHOT;
+        private int archiveRetention = DARCHIVERETENTION;
+        private int searchCacheCapacity = DSEARCHCACHE;
+        private int searchCacheTimeout = DSEARCHTIMEOUT;
+        private int redirectCacheCapacity = DREDIRECTCACHE;
+        private int redirectCacheTimeout = DREDIRECTTIMEOUT;
+        private int negativeCacheCapacity = DNEGATIVECACHE;
+        private int negativeCacheTimeout = DNEGATIVETIMEOUT;
+        private int revalidationWindow = DREVALIDATION;
+        private int staleGracePeriod = DSTALEGRACE;
+        private ThreadMode threadMode = ThreadMode.PLATFORM;
+        private int backendConcurrency = DBACKENDCONCURRENCY;
+        private int backendQueue = DBACKENDQUEUE;
+        private int backendQueueWait = DBACKENDQUEUEWAIT;
+        private int hedgeBudget = DHEDGEBUDGET;
+        private int linkCacheCapacity = DLINKCACHE;
+        private int linkCacheTimeout = DLINKTIMEOUT;
+        private int linkTitleCapacity = DLINKTITLES;
+        private String linkGraphDirectory = null;
+        private int landmarkCount = DLANDMARKS;
+
+        /**
+         * Set how search and getPage Strings are counted.
+         * @param statisticsMode the statistics mode, must not be null
+         * @return this builder
+         */
+        public Builder withStatisticsMode(StatisticsMode statisticsMode) {
+            this.statisticsMode = statisticsMode;
+            return this;
+        }
+
+        /**
+         * Set the number of Strings tracked by each approximate summary. Any String used in more
+         * than 1 / heavyHitterCapacity of the counted requests is guaranteed to be tracked.
+         * decayedZeitgeist always uses a summary of this size, in either statistics mode.
+         * @param heavyHitterCapacity the number of Strings to track, heavyHitterCapacity > 0
+         * @return this builder
+         */
+        public Builder withHeavyHitterCapacity(int heavyHitterCapacity) {
+            this.heavyHitterCapacity = heavyHitterCapacity;
+            return this;
+        }
+
+        /**
+         * Set the accuracy of approximate window counts.
+         * @param epsilon the relative error of a count, 0 < epsilon < 1
+         * @param delta the probability that a count exceeds its relative error, 0 < delta < 1
+         * @return this builder
+         */
+        public Builder withSketchAccuracy(double epsilon, double delta) {
+            this.sketchEpsilon = epsilon;
+            this.sketchDelta = delta;
+            return this;
+        }
+
+        /**
+         * Set the history kept for approximate trending. Windows longer than the horizon are
+         * counted over the horizon only, and window boundaries are rounded to whole buckets.
+         * @param horizon the length, in seconds, of the history, horizon >= bucketSeconds
+         * @param bucketSeconds the length, in seconds, of each time bucket, bucketSeconds > 0
+         * @return this builder
+         */
+        public Builder withTrendingHorizon(int horizon, int bucketSeconds) {
+            this.trendingHorizon = horizon;
+            this.trendingBucketSeconds = bucketSeconds;
+            return this;
+        }
+
+        /**
+         * Set the retention policy of request statistics. Statistics are kept at one-second
+         * resolution for rawRetention seconds, which should be the longest window that trending
+         * and windowedPeakLoad are expected to be called with. They are then rolled up into
+         * per-minute buckets, and after minuteRetention seconds into per-hour buckets, which are
+         * kept forever. trending queries that reach into rolled-up statistics are rounded to whole
+         * buckets, and windowedPeakLoad bounds the windows that reach into them by the busiest second
+         * kept for each bucket, reporting how far the result may be from the true peak.
+         * @param rawRetention the number of seconds to keep one-second resolution, rawRetention > 0
+         * @param minuteRetention the number of seconds to keep one-minute resolution,
+         *                        minuteRetention >= rawRetention
+         * @return this builder
+         */
+        public Builder withRetention(int rawRetention, int minuteRetention) {
+            this.rawRetention = rawRetention;
+            this.minuteRetention = minuteRetention;
+            return this;
+        }
+
+        /**
+         * Set how quickly the scores used by decayedZeitgeist fade. A request made halfLife
+         * seconds ago counts half as much as a request made now.
+         * @param halfLife the number of seconds after which a score halves, halfLife > 0
+         * @return this builder
+         */
+        public Builder withDecayHalfLife(int halfLife) {
+            this.decayHalfLife = halfLife;
+            return this;
+        }
+
+        /**
+         * Set how request statistics are recorded. Requests publish events to a ring buffer of
+         * bufferSize events, which a background thread records. A request only waits if the buffer
+         * is full once the persisted statistics have loaded; while they load, events that do not fit
+         * in the buffer are kept until the background thread can record them. zeitgeist, trending, windowedPeakLoad and decayedZeitgeist wait up to maxLagMillis
+         * for earlier requests to be recorded; if the background thread falls further behind, they
+         * answer from the requests recorded so far.
+         * @param bufferSize the number of events the ring buffer can hold, a power of two
+         * @param maxLagMillis the longest wait, in milliseconds, maxLagMillis >= 0
+         * @return this builder
+         */
+        public Builder withIngestion(int bufferSize, int maxLagMillis) {
+            this.ingestBufferSize = bufferSize;
+            this.ingestMaxLag = maxLagMillis;
+            return this;
+        }
+
+        /**
+         * Set how long zeitgeist and trending results may be reused. A result is cached per method and
+         * parameters, and is reused by identical calls for stalenessMillis after it was computed, even if
+         * requests were made since. After that, it is only reused while no search or getPage request has
+         * been made since, and, for trending, while the call is made in the same second.
+         * @param stalenessMillis the age, in milliseconds, up to which a result is reused, stalenessMillis >= 0
+         * @return this builder
+         */
+        public Builder withRankingStaleness(int stalenessMillis) {
+            this.rankingStaleness = stalenessMillis;
+            return this;
+        }
+
+        /**
+         * Persist request statistics in a directory. Every request is appended to a log in the directory,
+         * and the statistics in the log are reloaded when a WikiMediator is created with the same directory.
+         * Logged requests are written to disk together once every durability window, so a crash loses at
+         * most the requests made in the last durabilityMillis.
+         * @param directory the directory to keep the log in, or null to not persist request statistics
+         * @param durabilityMillis the durability window, in milliseconds, durabilityMillis > 0
+         * @return this builder
+         */
+        public Builder withPersistence(String directory, int durabilityMillis) {
+            this.persistenceDirectory = directory;
+            this.durabilityWindow = durabilityMillis;
+            return this;
+        }
+
+        /**
+         * Set how often persisted statistics are snapshotted. A snapshot holds every statistic recorded
+         * so far, and replaces the logged requests before it, so a restart only loads the latest snapshot
+         * and replays the requests logged after it. Statistics are also snapshotted when the WikiMediator
+         * is closed. Only used if request statistics are persisted.
+         * @param intervalSeconds the time between snapshots, in seconds, intervalSeconds > 0
+         * @return this builder
+         */
+        public Builder withSnapshotInterval(int intervalSeconds) {
+            this.snapshotInterval = intervalSeconds;
+            return this;
+        }
+
+        /**
+         * Set how long logged requests are kept once a snapshot covers them. They are no longer replayed,
+         * but range queries over past periods read them; once every request in a logged segment is older
+         * than retentionSeconds before the latest logged request, the segment and its index are deleted, and
+         * range queries that reach further back are answered from the statistics in memory. Only used if
+         * request statistics are persisted.
+         * @param retentionSeconds the time, in seconds, logged requests are kept, retentionSeconds > 0
+         * @return this builder
+         */
+        public Builder withArchiveRetention(int retentionSeconds) {
+            this.archiveRetention = retentionSeconds;
+            return this;
+        }
+
+        /**
+         * Set how search results are cached. Results are cached per query, ignoring case and extra
+         * whitespace, and a result fetched with a larger limit also answers searches with a smaller limit.
+         * A cached result is fetched again timeoutSeconds after it was fetched, independently of the
+         * staleness interval of cached pages.
+         * @param capacity the maximum number of queries to cache results for, capacity > 0
+         * @param timeoutSeconds the time, in seconds, a cached result is reused, timeoutSeconds > 0
+         * @return this builder
+         */
+        public Builder withSearchCache(int capacity, int timeoutSeconds) {
+            this.searchCacheCapacity = capacity;
+            this.searchCacheTimeout = timeoutSeconds;
+            return this;
+        }
+
+        /**
+         * Set how redirects are cached. getPage normalizes page titles and follows redirects, so every
+         * title of a page shares one cached copy of its text; the target of each redirect is cached so
+         * that it is only resolved once every timeoutSeconds.
+         * @param capacity the maximum number of redirects to cache, capacity > 0
+         * @param timeoutSeconds the time, in seconds, a cached redirect is reused, timeoutSeconds > 0
+         * @return this builder
+         */
+        public Builder withRedirectCache(int capacity, int timeoutSeconds) {
+            this.redirectCacheCapacity = capacity;
+            this.redirectCacheTimeout = timeoutSeconds;
+            return this;
+        }
+
+        /**
+         * Set how nonexistent pages are remembered. getPage remembers the titles of pages that do not
+         * exist for timeoutSeconds, and answers them with an empty String without a network access.
+         * A title is forgotten early if a search returns its page. Missing titles are kept in a compact
+         * filter of their own, and never take the place of a cached page.
+         * @param capacity the number of titles to remember, capacity > 0
+         * @param timeoutSeconds the time, in seconds, a title is remembered, timeoutSeconds > 0
+         * @return this builder
+         */
+        public Builder withNegativeCache(int capacity, int timeoutSeconds) {
+            this.negativeCacheCapacity = capacity;
+            this.negativeCacheTimeout = timeoutSeconds;
+            return this;
+        }
+
+        /**
+         * Set how long stale pages are kept for revalidation. A cached page remembers the revision its text
+         * was taken from. Once its staleness interval has passed, it is kept for another windowSeconds, and
+         * if it is requested in that time, only its latest revision is fetched; if the page has not changed,
+         * the cached text is reused for another staleness interval. The revisions of other stale pages are
+         * checked in the same query.
+         * @param windowSeconds the time, in seconds, a stale page is kept, or 0 to always fetch stale pages
+         *                      again, windowSeconds >= 0
+         * @return this builder
+         */
+        public Builder withRevalidationWindow(int windowSeconds) {
+            this.revalidationWindow = windowSeconds;
+            return this;
+        }
+
+        /**
+         * Serve stale pages while they are fetched again. For graceSeconds after the staleness interval
+         * of a cached page has passed, getPage returns the cached text immediately, marked as stale, and
+         * revalidates or fetches the page in the background, so a slow Wikipedia does not slow down
+         * requests for recently cached pages.
+         * @param graceSeconds the grace period, in seconds, or 0 to never serve stale pages, graceSeconds >= 0
+         * @return this builder
+         */
+        public Builder withStaleWhileRevalidate(int graceSeconds) {
+            this.staleGracePeriod = graceSeconds;
+            return this;
+        }
+
+        /**
+         * Set which threads blocking work is run on. In the VIRTUAL mode, a server of the WikiMediator handles
+         * each connection on its own virtual thread, so idle or blocked clients do not each hold an operating
+         * system thread. Virtual threads need Java 21 or later; on an earlier JVM, the VIRTUAL mode falls back
+         * to platform threads.
+         * @param threadMode the thread mode, must not be null
+         * @return this builder
+         */
+        public Builder withThreadMode(ThreadMode threadMode) {
+            this.threadMode = threadMode;
+            return this;
+        }
+
+        /**
+         * Set how many queries are sent to Wikipedia at once. The number of queries in flight adapts to how
+         * quickly Wikipedia answers: it grows by one every round trip while queries are answered about as
+         * quickly as when Wikipedia is idle, up to maxConcurrency, and shrinks by a quarter when a query fails
+         * or even the fastest queries of a round trip take more than twice as long. Other queries wait in a queue of up to maxQueued queries. A query is
+         * rejected if the queue is full, if the queries ahead of it are expected to take longer than
+         * maxWaitMillis, or once it has waited maxWaitMillis. A search whose query is rejected returns no
+         * titles, and a getPage returns an empty String.
+         * @param maxConcurrency the most queries in flight at once, maxConcurrency > 0
+         * @param maxQueued the most queries waiting to be sent, maxQueued >= 0
+         * @param maxWaitMillis the longest time, in milliseconds, a query waits to be sent, maxWaitMillis >= 0
+         * @return this builder
+         */
+        public Builder withBackendConcurrency(int maxConcurrency, int maxQueued, int maxWaitMillis) {
+            this.backendConcurrency = maxConcurrency;
+            this.backendQueue = maxQueued;
+            this.backendQueueWait = maxWaitMillis;
+            return this;
+        }
+
+        /**
+         * Hedge the queries for the text of pages. Once a query has taken longer than 95% of recent queries,
+         * it is sent a second time, and the first answer is used while the other query is cancelled, so a
+         * query that Wikipedia happens to answer slowly does not slow down getPage. Every query earns
+         * percent / 100 of a hedge, and each hedge spends one, so there are never more than percent hedges per
+         * hundred queries. Hedges count towards the limit on queries in flight, and are rejected like any
+         * other query while Wikipedia is overloaded.
+         * @param percent the largest number of hedges per hundred queries, or 0 to never hedge,
+         *                0 <= percent <= 100
+         * @return this builder
+         */
+        public Builder withHedging(int percent) {
+            this.hedgeBudget = percent;
+            return this;
+        }
+
+        /**
+         * Set how the links of pages are cached. shortestPath fetches the pages that each page it visits
+         * links to, and the pages that link to it; both are cached for capacity pages each, so that searches
+         * through the same pages reuse them. The linked titles of cached pages share a dictionary, and each link
+         * is held as a four-byte ID; see withLinkTitleCapacity for how the dictionary is bounded. Cached links
+         * are fetched again timeoutSeconds after they were fetched, independently of the staleness interval of
+         * cached pages.
+         * @param capacity the maximum number of pages to cache the links of, and the backlinks of, capacity > 0
+         * @param timeoutSeconds the time, in seconds, the cached links of a page are reused, timeoutSeconds > 0
+         * @return this builder
+         */
+        public Builder withLinkCache(int capacity, int timeoutSeconds) {
+            this.linkCacheCapacity = capacity;
+            this.linkCacheTimeout = timeoutSeconds;
+            return this;
+        }
+
+        /**
+         * Set how many linked titles the link caches intern in one dictionary. A dictionary cannot forget a
+         * title while a cached page may still refer to it, so once it holds maxTitles titles, pages cached
+         * after that start a new dictionary, and the full one is dropped once every page cached with it has
+         * been evicted. The titles held by the link caches are therefore bounded by their capacity and
+         * maxTitles, however many titles the pages they have ever cached linked to.
+         * @param maxTitles the number of titles after which a new dictionary is started, maxTitles > 0
+         * @return this builder
+         */
+        public Builder withLinkTitleCapacity(int maxTitles) {
+            this.linkTitleCapacity = maxTitles;
+            return this;
+        }
+
+        /**
+         * Answer shortestPath from an offline link graph, if LinkGraphImporter has imported one into a
+         * directory. The graph is memory-mapped rather than read onto the heap, and a search over it does
+         * not access the network. Paths between pages that are not both in the graph are still found by
+         * asking Wikipedia. If there is no graph in the directory, every path is found by asking Wikipedia.
+         * @param directory the directory to read the link graph from, or null to always ask Wikipedia
+         * @return this builder
+         */
+        public Builder withLinkGraph(String directory) {
+            this.linkGraphDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Set how many landmarks bound the distances over the offline link graph. The distances from and to
+         * each landmark page are stored as one byte per page in a file next to the graph, so that
+         * distanceEstimate answers without a search, and shortestPath does not expand pages that cannot be
+         * on a shortest path. The landmarks that are missing are built in the background, one at a time, and
+         * used as each is complete. More landmarks give tighter bounds, at the cost of two bytes per page and
+         * more work for every page that a search visits.
+         * @param count the number of landmarks, or 0 to use none, count >= 0
+         * @return this builder
+         */
+        public Builder withLandmarks(int count) {
+            this.landmarkCount = count;
+            return this;
+        }
+
+        /**
+         * Create a MediatorConfig with the settings of this builder.
+         * @return a MediatorConfig with the settings of this builder
+         * @throws IllegalArgumentException if any setting is out of range
+         */
+        public MediatorConfig build() {
+            return new MediatorConfig(this);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A NegativeCache remembers, for a limited time, the normalized titles of pages that do not exist, so
+ * that repeated requests for them are answered without a network access.
+ *
+ * Titles are not stored: each title is reduced to a 64-bit fingerprint, kept in a table of buckets
+ * of BUCKET_SLOTS slots in the style of a cuckoo filter. This takes 16 bytes per title however long it
+ * is, and, unlike a Bloom filter, a title can be removed again when its page appears. Two titles only
+ * share a fingerprint with probability about 2^-64, so a page that exists is practically never
+ * reported missing. Each fingerprint may be kept in either of two buckets, and is added to the one with
+ * a free slot, so the table fills evenly. When every slot of both buckets is in use, the entry that
+ * expires first is replaced, so the cache never holds more than its capacity.
+ *
+ * Abstraction Function:
+ * A NegativeCache represents the set of titles t such that, for some slot s in bucket
+ * first(fingerprint(t)) or second(fingerprint(t)), fingerprints[s] == fingerprint(t) and the current
+ * time is before expiries[s]. Bucket b holds the slots b * BUCKET_SLOTS up to, but not including,
+ * (b + 1) * BUCKET_SLOTS. A slot with fingerprints[s] == 0 is empty.
+ */
+class NegativeCache {
+
+    /* the number of slots in each bucket of the table */
+    private static final int BUCKET_SLOTS = 4;
+
+    private final int timeout;
+    private final int bucketMask;
+    private final long[] fingerprints;
+    private final long[] expiries;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /*
+     * Representation Invariant:
+     *  - timeout > 0
+     *  - bucketMask + 1 is a power of two, and fingerprints and expiries both have length
+     *    (bucketMask + 1) * BUCKET_SLOTS
+     *  - no two slots of the two buckets of a fingerprint hold that same fingerprint
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - timeout and bucketMask are private and final
+     *  - fingerprints and expiries are private, final, never shared outside of this class and only
+     *    accessed while holding lock, or from the constructor. lock is a ReentrantLock rather than the
+     *    lock of the NegativeCache, so that a virtual thread waiting for it does not pin its carrier thread
+     */
+
+    /**
+     * Check that the representation invariants for NegativeCache hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (timeout <= 0) {
+            throw new RuntimeException("timeout should be > 0");
+        }
+        if (Integer.bitCount(bucketMask + 1) != 1 || fingerprints.length != (bucketMask + 1) * BUCKET_SLOTS
+                || expiries.length != fingerprints.length) {
+            throw new RuntimeException("the table must hold BUCKET_SLOTS slots for each of a power of two buckets");
+        }
+    }
+
+    /**
+     * Create an empty NegativeCache.
+     * @param capacity the number of titles the cache should be able to hold, capacity > 0; the table is
+     *                 rounded up to a power of two buckets
+     * @param timeout the number of seconds after which a title is forgotten, timeout > 0
+     */
+    NegativeCache(int capacity, int timeout) {
+        int buckets = Integer.highestOneBit(Math.max(1, (capacity + BUCKET_SLOTS - 1) / BUCKET_SLOTS - 1)) << 1;
+        this.timeout = timeout;
+        this.bucketMask = buckets - 1;
+        this.fingerprints = new long[buckets * BUCKET_SLOTS];
+        this.expiries = new long[buckets * BUCKET_SLOTS];
+        checkRep();
+    }
+
+    /**
+     * Remember that the page with a title does not exist.
+     * @param title the normalized title, title must not be null
+     * @param now the current time, in seconds
+     *
+     * Frame Condition:
+     * - title is remembered until now + timeout; if both of its buckets are full, the entry of
+     *   those buckets that expires first is forgotten to make room for it
+     */
+    void add(String title, long now) {
+        long fingerprint = fingerprint(title);
+        lock.lock();
+        try {
+            int chosen = find(fingerprint);
+
+            if (chosen < 0) {
+                chosen = first(fingerprint) * BUCKET_SLOTS;
+                for (int bucket : new int[] {first(fingerprint), second(fingerprint)}) {
+                    for (int slot = bucket * BUCKET_SLOTS; slot < (bucket + 1) * BUCKET_SLOTS; slot++) {
+                        if (expiries[slot] < expiries[chosen]) {
+                            chosen = slot;
+                        }
+                    }
+                }
+            }
+
+            fingerprints[chosen] = fingerprint;
+            expiries[chosen] = now + timeout;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check whether a title is known not to exist.
+     * @param title the normalized title, title must not be null
+     * @param now the current time, in seconds
+     * @return true if title was added less than timeout seconds before now and has not been removed
+     * or replaced since, false otherwise
+     */
+    boolean contains(String title, long now) {
+        long fingerprint = fingerprint(title);
+        lock.lock();
+        try {
+            int slot = find(fingerprint);
+            if (slot < 0) {
+                return false;
+            }
+            if (expiries[slot] <= now) {
+                fingerprints[slot] = 0;
+                expiries[slot] = 0;
+                return false;
+            }
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget that the page with a title does not exist, because it has appeared.
+     * @param title the normalized title, title must not be null
+     */
+    void remove(String title) {
+        long fingerprint = fingerprint(title);
+        lock.lock();
+        try {
+            int slot = find(fingerprint);
+            if (slot >= 0) {
+                fingerprints[slot] = 0;
+                expiries[slot] = 0;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Helper method that finds the slot holding a fingerprint.
+     * @param fingerprint the fingerprint of a title
+     * @return the slot that holds fingerprint, or -1 if no slot of either of its buckets does
+     */
+    private int find(long fingerprint) {
+        for (int bucket : new int[] {first(fingerprint), second(fingerprint)}) {
+            for (int slot = bucket * BUCKET_SLOTS; slot < (bucket + 1) * BUCKET_SLOTS; slot++) {
+                if (fingerprints[slot] == fingerprint) {
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Map a fingerprint to the first bucket it may be stored in.
+     * @param fingerprint the fingerprint of a title
+     * @return the first bucket of fingerprint, 0 <= bucket <= bucketMask
+     */
+    private int first(long fingerprint) {
+        return (int) fingerprint & bucketMask;
+    }
+
+    /**
+     * Map a fingerprint to the second bucket it may be stored in.
+     * @param fingerprint the fingerprint of a title
+     * @return the second bucket of fingerprint, 0 <= bucket <= bucketMask
+     */
+    private int second(long fingerprint) {
+        return (int) (fingerprint >>> 32) & bucketMask;
+    }
+
+    /**
+     * Compute the 64-bit fingerprint of a title, using FNV-1a over its characters followed by a
+     * final mix, so that similar titles have unrelated fingerprints.
+     * @param title the normalized title, title must not be null
+     * @return a non-zero fingerprint of title
+     */
+    private static long fingerprint(String title) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < title.length(); i++) {
+            hash ^= title.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+}
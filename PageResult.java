@@ -0,0 +1,62 @@
+package cpen221.mp3.wikimediator;
+
+/**
+ * A PageResult is the immutable answer to a getPage request: the text of a Wikipedia page, and
+ * whether that text may be out of date.
+ *
+ * Abstraction Function:
+ * A PageResult is represented by text, the text of the requested page, or the empty String if the
+ * page does not exist, and stale, which is true if text was served from a cached copy whose staleness
+ * interval had already passed while a fresh copy was fetched in the background.
+ */
+public class PageResult {
+    private final String text;
+    private final boolean stale;
+
+    /*
+     * Representation Invariant:
+     *  - text must not be null
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - PageResult is immutable: text and stale are private and final
+     */
+
+    /**
+     * Check that the representation invariants for PageResult hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (text == null) {
+            throw new RuntimeException("text must not be null");
+        }
+    }
+
+    /**
+     * Create a PageResult.
+     * @param text the text of the page, or the empty String if the page does not exist, must not be null
+     * @param stale true if text is a cached copy whose staleness interval has passed
+     */
+    public PageResult(String text, boolean stale) {
+        this.text = text;
+        this.stale = stale;
+        checkRep();
+    }
+
+    /**
+     * Get the text of the page.
+     * @return the text of the page, or the empty String if the page does not exist
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Check whether the text may be out of date.
+     * @return true if the text is a cached copy whose staleness interval had passed, false otherwise
+     */
+    public boolean isStale() {
+        return stale;
+    }
+}
@@ -0,0 +1,289 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A PathFinder finds the lexicographically smallest shortest path of links from one page to another with a
+ * bidirectional breadth-first search. The search alternates between expanding the forward frontier, the pages
+ * whose distance from the source is forwardDepth, by fetching the links of every page in it, and expanding the
+ * backward frontier, the pages whose distance to the target is backwardDepth, by fetching the pages that link to
+ * every page in it, always expanding the smaller frontier. The links of every page in a frontier are fetched
+ * at once, so a level costs about one round trip of the wiki however many pages it has.
+ *
+ * Levels are only ever compared once they are complete, so the path found does not depend on the order in which
+ * the wiki answers: once a level meets the pages seen from the other side, every shortest path passes through
+ * the meeting pages with the lowest total distance, and the path is chosen one position at a time, taking the
+ * smallest title that still lies on a shortest path.
+ *
+ * A PathFinder is used for one search. Completing or cancelling the future returned by find, for instance
+ * when its timeout passes, cancels the fetch in flight and stops the search.
+ *
+ * Abstraction Function:
+ * A PathFinder represents the search for a shortest path from source to target in the graph whose edges are
+ * given by links, and reversed by linksHere. forward maps every page found from source to its distance from
+ * source, and backward every page found from target to its distance to target. outLinks maps every page of
+ * the forward levels expanded so far to the pages it links to, and inLinks every page of the backward levels
+ * expanded so far to the pages that link to it. forwardFrontier and backwardFrontier are the pages at distance
+ * forwardDepth from source and backwardDepth to target. result is completed with the path once it is found,
+ * and running is the fetch in flight, or null if there is none.
+ */
+class PathFinder {
+    private final Function<Collection<String>, CompletableFuture<Map<String, List<String>>>> links;
+    private final Function<Collection<String>, CompletableFuture<Map<String, List<String>>>> linksHere;
+    private final String source;
+    private final String target;
+    private final Map<String, Integer> forward = new HashMap<>();
+    private final Map<String, Integer> backward = new HashMap<>();
+    private final Map<String, List<String>> outLinks = new HashMap<>();
+    private final Map<String, List<String>> inLinks = new HashMap<>();
+    private final CompletableFuture<List<String>> result = new CompletableFuture<>();
+    private List<String> forwardFrontier;
+    private List<String> backwardFrontier;
+    private int forwardDepth = 0;
+    private int backwardDepth = 0;
+    private volatile CompletableFuture<Map<String, List<String>>> running = null;
+
+    /*
+     * Representation Invariant:
+     *  - links, linksHere, source, target and result must not be null
+     *  - forward maps source to 0 and backward maps target to 0
+     *  - every page in forwardFrontier is mapped to forwardDepth by forward, and every page in backwardFrontier
+     *    to backwardDepth by backward
+     *  - until result is completed, no page is in both forward and backward
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - links, linksHere, source, target and result are private and final, and result is threadsafe
+     *  - forward, backward, outLinks, inLinks, the frontiers and the depths are private, never shared outside of
+     *    this class, and only accessed by find and by the stage that runs once the fetch in flight has completed.
+     *    Only one fetch is in flight at a time, and the next one is only started by that stage, so these fields
+     *    are confined to one thread at a time, and each stage sees the writes of the one before it through the
+     *    future of the fetch
+     *  - running is volatile, so that a thread that completes or cancels result cancels the latest fetch; a fetch
+     *    that is started after result is completed is cancelled by the thread that starts it
+     */
+
+    /**
+     * Check that the representation invariants for PathFinder hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (links == null || linksHere == null || source == null || target == null || result == null) {
+            throw new RuntimeException("links, linksHere, source, target and result must not be null");
+        }
+        if (!Integer.valueOf(0).equals(forward.get(source)) || !Integer.valueOf(0).equals(backward.get(target))) {
+            throw new RuntimeException("source and target should be at distance 0 from themselves");
+        }
+    }
+
+    /**
+     * Create a PathFinder.
+     * @param links fetches the titles of the pages that each of a collection of pages links to, links must not
+     *              be null
+     * @param linksHere fetches the titles of the pages that link to each of a collection of pages, linksHere must
+     *                  not be null
+     * @param source the normalized title of the page to start on, source must not be null
+     * @param target the normalized title of the page to end on, target must not be null
+     */
+    PathFinder(Function<Collection<String>, CompletableFuture<Map<String, List<String>>>> links,
+               Function<Collection<String>, CompletableFuture<Map<String, List<String>>>> linksHere,
+               String source, String target) {
+        this.links = links;
+        this.linksHere = linksHere;
+        this.source = source;
+        this.target = target;
+        forward.put(source, 0);
+        backward.put(target, 0);
+        forwardFrontier = Collections.singletonList(source);
+        backwardFrontier = Collections.singletonList(target);
+        result.whenComplete((path, e) -> {
+            CompletableFuture<Map<String, List<String>>> fetch = running;
+            if (e != null && fetch != null) {
+                fetch.cancel(true);
+            }
+        });
+        checkRep();
+    }
+
+    /**
+     * Start the search. Must be called at most once.
+     * @return a future of the titles of the pages on the lexicographically smallest shortest path from source to
+     * target, including both, or of an empty list if there is no path. It completes exceptionally if the links of
+     * a page could not be fetched; completing it exceptionally, or cancelling it, stops the search
+     */
+    CompletableFuture<List<String>> find() {
+        if (source.equals(target)) {
+            result.complete(Collections.singletonList(source));
+        }
+        else {
+            expand();
+        }
+        return result;
+    }
+
+    /**
+     * Helper method that fetches the links of every page in the smaller frontier, unless the search is over.
+     *
+     * Frame Condition:
+     * - running is the fetch started, which expands the frontier once it completes
+     */
+    private void expand() {
+        if (result.isDone()) {
+            return;
+        }
+        if (forwardFrontier.isEmpty() || backwardFrontier.isEmpty()) {
+            result.complete(new ArrayList<>());
+            return;
+        }
+
+        boolean forwards = forwardFrontier.size() <= backwardFrontier.size();
+        CompletableFuture<Map<String, List<String>>> fetch;
+        try {
+            fetch = forwards ? links.apply(forwardFrontier) : linksHere.apply(backwardFrontier);
+        }
+        catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        running = fetch;
+        if (result.isDone()) {
+            fetch.cancel(true);
+            return;
+        }
+
+        fetch.whenComplete((linked, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            }
+            else if (!result.isDone()) {
+                if (forwards) {
+                    forwardFrontier = nextLevel(forwardFrontier, linked, ++forwardDepth, forward, outLinks);
+                }
+                else {
+                    backwardFrontier = nextLevel(backwardFrontier, linked, ++backwardDepth, backward, inLinks);
+                }
+                meet(forwards ? forwardFrontier : backwardFrontier, forwards);
+            }
+        });
+    }
+
+    /**
+     * Helper method that computes the next level of one side of the search from the links of its frontier.
+     * @param frontier the pages of the current level, frontier must not be null
+     * @param linked maps each page in frontier to the pages it is linked with, linked must not be null
+     * @param depth the distance of the next level, depth > 0
+     * @param distances the distances of the pages found by this side, distances must not be null
+     * @param adjacency the links of the pages this side has expanded, adjacency must not be null
+     * @return the pages at distance depth that this side had not found before, in sorted order
+     *
+     * Frame Condition:
+     * - every page returned is added to distances, at depth, and the links of every page in frontier are added
+     *   to adjacency
+     */
+    private static List<String> nextLevel(List<String> frontier, Map<String, List<String>> linked, int depth,
+                                          Map<String, Integer> distances, Map<String, List<String>> adjacency) {
+        SortedSet<String> level = new TreeSet<>();
+        for (String page : frontier) {
+            List<String> neighbours = linked.getOrDefault(page, Collections.emptyList());
+            adjacency.put(page, neighbours);
+            for (String neighbour : neighbours) {
+                if (!distances.containsKey(neighbour)) {
+                    distances.put(neighbour, depth);
+                    level.add(neighbour);
+                }
+            }
+        }
+        return new ArrayList<>(level);
+    }
+
+    /**
+     * Helper method that checks whether a new level meets the pages found by the other side of the search, and
+     * completes the search with the path through the meeting pages if it does, or expands the next frontier if it
+     * does not.
+     * @param level the new level, level must not be null
+     * @param forwards true if level is a level of the forward side, false if it is of the backward side
+     */
+    private void meet(List<String> level, boolean forwards) {
+        Map<String, Integer> other = forwards ? backward : forward;
+        int length = Integer.MAX_VALUE;
+        for (String page : level) {
+            Integer distance = other.get(page);
+            if (distance != null) {
+                length = Math.min(length, forward.get(page) + backward.get(page));
+            }
+        }
+
+        if (length == Integer.MAX_VALUE) {
+            expand();
+        }
+        else {
+            result.complete(path(length, forwards ? forwardDepth : length - backwardDepth));
+        }
+    }
+
+    /**
+     * Helper method that chooses the lexicographically smallest shortest path, once its length is known.
+     * @param length the length of the shortest path, in links, length > 0
+     * @param meeting the distance from source of the pages where the two sides met, 0 < meeting <= length, such
+     *                that the forward levels up to meeting and the backward levels up to length - meeting are
+     *                complete
+     * @return the titles of the pages on the lexicographically smallest path of length links from source to
+     * target
+     */
+    private List<String> path(int length, int meeting) {
+        // onPath.get(i) holds the pages at distance i from source that lie on a shortest path, for i <= meeting
+        List<Set<String>> onPath = new ArrayList<>(Collections.nCopies(meeting + 1, null));
+        Set<String> meetingPages = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : forward.entrySet()) {
+            Integer distance = backward.get(entry.getKey());
+            if (entry.getValue() == meeting && distance != null && distance == length - meeting) {
+                meetingPages.add(entry.getKey());
+            }
+        }
+        onPath.set(meeting, meetingPages);
+        for (int i = meeting - 1; i >= 0; i--) {
+            Set<String> next = onPath.get(i + 1);
+            Set<String> pages = new HashSet<>();
+            for (Map.Entry<String, List<String>> entry : outLinks.entrySet()) {
+                if (forward.get(entry.getKey()) == i && !Collections.disjoint(entry.getValue(), next)) {
+                    pages.add(entry.getKey());
+                }
+            }
+            onPath.set(i, pages);
+        }
+
+        // towards.get(page) holds the pages one link closer to target than page, for pages on the backward side
+        Map<String, SortedSet<String>> towards = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : inLinks.entrySet()) {
+            int distance = backward.get(entry.getKey());
+            for (String page : entry.getValue()) {
+                if (backward.get(page) == distance + 1) {
+                    towards.computeIfAbsent(page, k -> new TreeSet<>()).add(entry.getKey());
+                }
+            }
+        }
+
+        List<String> path = new ArrayList<>();
+        path.add(source);
+        String current = source;
+        for (int i = 1; i <= length; i++) {
+            String next = null;
+            if (i <= meeting) {
+                for (String page : outLinks.get(current)) {
+                    if (onPath.get(i).contains(page) && (next == null || page.compareTo(next) < 0)) {
+                        next = page;
+                    }
+                }
+            }
+            else {
+                next = towards.get(current).first();
+            }
+            path.add(next);
+            current = next;
+        }
+        return path;
+    }
+}
@@ -0,0 +1,95 @@
+package cpen221.mp3.wikimediator;
+
+/**
+ * A PeakLoad is the immutable answer to a windowedPeakLoad request: the largest number of requests made
+ * in any time window of a given length, together with a bound on how much that number may overstate it.
+ *
+ * Abstraction Function:
+ * A PeakLoad represents the fact that the busiest time window had at most requests requests and at least
+ * requests - errorBound requests. Requests older than the raw retention period are only known per minute
+ * or hour bucket, so windows that reach into rolled-up history can only be bounded. An exact PeakLoad has
+ * errorBound = 0. partial is true if the PeakLoad was computed before every earlier request had been
+ * recorded, for example while the statistics of an earlier WikiMediator were still being loaded.
+ */
+public class PeakLoad {
+    private final int requests;
+    private final long errorBound;
+    private final boolean partial;
+
+    /*
+     * Representation Invariant:
+     *  - 0 <= errorBound <= requests
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - PeakLoad is immutable: requests, errorBound and partial are private and final
+     */
+
+    /**
+     * Check that the representation invariants for PeakLoad hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (errorBound < 0 || errorBound > requests) {
+            throw new RuntimeException("errorBound should be between 0 and requests");
+        }
+    }
+
+    /**
+     * Create a PeakLoad.
+     * @param requests the largest possible number of requests in the busiest window, requests >= 0
+     * @param errorBound the largest amount by which requests may exceed the true number,
+     *                   0 <= errorBound <= requests
+     */
+    public PeakLoad(int requests, long errorBound) {
+        this(requests, errorBound, false);
+    }
+
+    /**
+     * Create a PeakLoad that may have been computed from only some of the requests made.
+     * @param requests the largest possible number of requests in the busiest window, requests >= 0
+     * @param errorBound the largest amount by which requests may exceed the true number,
+     *                   0 <= errorBound <= requests
+     * @param partial true if some requests made before the PeakLoad was computed were not counted
+     */
+    public PeakLoad(int requests, long errorBound, boolean partial) {
+        this.requests = requests;
+        this.errorBound = errorBound;
+        this.partial = partial;
+        checkRep();
+    }
+
+    /**
+     * Get the number of requests in the busiest window.
+     * @return the largest possible number of requests made in any one window
+     */
+    public int getRequests() {
+        return requests;
+    }
+
+    /**
+     * Get the error bound of the PeakLoad.
+     * @return the largest amount by which getRequests() may exceed the true number of requests in the
+     * busiest window, which is 0 if the PeakLoad is exact
+     */
+    public long getErrorBound() {
+        return errorBound;
+    }
+
+    /**
+     * Check whether the PeakLoad was computed from exact counts.
+     * @return true if getErrorBound() == 0, false otherwise
+     */
+    public boolean isExact() {
+        return errorBound == 0;
+    }
+
+    /**
+     * Check whether the PeakLoad was computed before every earlier request had been counted.
+     * @return true if some requests made before the PeakLoad was computed were not counted, false otherwise
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+}
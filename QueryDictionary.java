@@ -0,0 +1,168 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A QueryDictionary interns query strings into dense integer IDs. Each distinct query is
+ * stored exactly once, no matter how many times it is submitted, so that request history
+ * can refer to queries by a four-byte ID instead of by a copy of the String.
+ *
+ * Abstraction Function:
+ * A QueryDictionary represents the bijection between the distinct queries q_0, q_1, ..., q_(n - 1)
+ * that have been interned and the IDs 0, 1, ..., n - 1, where q_i = queries.get(i) is the i-th
+ * distinct query to be interned.
+ */
+class QueryDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> queries = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /*
+     * Representation Invariant:
+     *  - queries must not contain any null entries
+     *  - ids.size() == queries.size()
+     *  - ids.get(queries.get(i)) == i for all 0 <= i < queries.size()
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - ids and queries are private and final, and are never shared outside of this class
+     *  - every method that reads or writes ids or queries holds lock while it does, except readFrom, which
+     *    only fills a QueryDictionary that has not been shared yet. lock is a ReentrantLock rather than the
+     *    lock of the QueryDictionary, so that a virtual thread that interns a query does not pin its carrier
+     *    thread
+     */
+
+    /**
+     * Check that the representation invariants for QueryDictionary hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (ids.size() != queries.size()) {
+            throw new RuntimeException("ids and queries must contain the same number of entries");
+        }
+    }
+
+    /**
+     * Get the ID of a query, assigning the next unused ID if the query has not been seen before.
+     * @param query the query to intern, query must not be null
+     * @return the ID of query
+     *
+     * Frame Condition:
+     * - query is added to the dictionary if it was not already present
+     */
+    int intern(String query) {
+        lock.lock();
+        try {
+            Integer id = ids.get(query);
+            if (id == null) {
+                id = queries.size();
+                ids.put(query, id);
+                queries.add(query);
+                checkRep();
+            }
+            return id;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the query with a given ID.
+     * @param id the ID of the query, 0 <= id < size()
+     * @return the query that was assigned ID id
+     */
+    String lookup(int id) {
+        lock.lock();
+        try {
+            return queries.get(id);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of distinct queries interned in the dictionary.
+     * @return the number of distinct queries that have been interned
+     */
+    int size() {
+        lock.lock();
+        try {
+            return queries.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the queries of the dictionary, in order of ID, to a snapshot.
+     * @param out the snapshot to write to, out must not be null
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        lock.lock();
+        try {
+            out.writeInt(queries.size());
+            for (String query : queries) {
+                writeString(out, query);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Intern the queries of a dictionary written with writeTo, in order of ID. Read into an empty
+     * dictionary, every query gets the ID it had in the written dictionary.
+     * @param in the snapshot to read from, in must not be null
+     * @throws IOException if in cannot be read
+     */
+    void readFrom(DataInput in) throws IOException {
+        lock.lock();
+        try {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                intern(readString(in));
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write a String of any length as its UTF-8 length followed by its UTF-8 bytes.
+     * @param out the output to write to, out must not be null
+     * @param string the String to write, string must not be null
+     * @throws IOException if out cannot be written
+     */
+    static void writeString(DataOutput out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a String written with writeString.
+     * @param in the input to read from, in must not be null
+     * @return the String that was written
+     * @throws IOException if in cannot be read
+     */
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,102 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Ranking is an immutable list of Strings sorted in non-increasing order of how often they were
+ * used in search and getPage requests, together with a bound on how wrong that order may be.
+ *
+ * Abstraction Function:
+ * A Ranking is represented by items, the ranked Strings from most to least common, and errorBound,
+ * the largest amount by which the count used to rank any item may differ from its true count, which
+ * is also the largest possible count of a String that was left out of items. An exact Ranking has
+ * errorBound = 0. partial is true if the Ranking was computed before every earlier request had been
+ * recorded, for example while the statistics of an earlier WikiMediator were still being loaded.
+ */
+public class Ranking {
+    private final List<String> items;
+    private final long errorBound;
+    private final boolean partial;
+
+    /*
+     * Representation Invariant:
+     *  - items must not be null and must not contain any null entries
+     *  - errorBound >= 0
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - Ranking is immutable: items, errorBound and partial are private and final, and items is an
+     *    unmodifiable copy that is never shared with the caller of the constructor
+     */
+
+    /**
+     * Check that the representation invariants for Ranking hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (items == null || items.contains(null)) {
+            throw new RuntimeException("items must not be null or contain null entries");
+        }
+        if (errorBound < 0) {
+            throw new RuntimeException("errorBound must not be negative");
+        }
+    }
+
+    /**
+     * Create a Ranking.
+     * @param items the ranked Strings, from most to least common, must not be null
+     * @param errorBound the largest possible error in the counts used to rank items, errorBound >= 0
+     */
+    public Ranking(List<String> items, long errorBound) {
+        this(items, errorBound, false);
+    }
+
+    /**
+     * Create a Ranking that may have been computed from only some of the requests made.
+     * @param items the ranked Strings, from most to least common, must not be null
+     * @param errorBound the largest possible error in the counts used to rank items, errorBound >= 0
+     * @param partial true if some requests made before the Ranking was computed were not counted
+     */
+    public Ranking(List<String> items, long errorBound, boolean partial) {
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+        this.errorBound = errorBound;
+        this.partial = partial;
+        checkRep();
+    }
+
+    /**
+     * Get the ranked Strings.
+     * @return an unmodifiable list of the ranked Strings, from most to least common
+     */
+    public List<String> getItems() {
+        return items;
+    }
+
+    /**
+     * Get the error bound of the Ranking.
+     * @return the largest amount by which the count used to rank an item may differ from its
+     * true count, which is 0 if the Ranking is exact
+     */
+    public long getErrorBound() {
+        return errorBound;
+    }
+
+    /**
+     * Check whether the Ranking was computed from exact counts.
+     * @return true if getErrorBound() == 0, false otherwise
+     */
+    public boolean isExact() {
+        return errorBound == 0;
+    }
+
+    /**
+     * Check whether the Ranking was computed before every earlier request had been counted.
+     * @return true if some requests made before the Ranking was computed were not counted, false otherwise
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+}
@@ -0,0 +1,187 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A RankingCache remembers the Rankings computed by zeitgeist and trending, so that a burst of
+ * identical statistics requests is answered by one computation.
+ *
+ * A cached Ranking is reused while it is younger than the staleness bound. After that, it is still
+ * reused if it was computed for the same time and no search or getPage request has been recorded
+ * since, so it is exactly the Ranking that would be computed again. The cache holds at most CAPACITY
+ * Rankings, evicting the least recently used, and drops a Ranking once it is older than the staleness
+ * bound and a search or getPage request has been recorded since, as it can then never be reused.
+ *
+ * Abstraction Function:
+ * A RankingCache represents the map from each key, a method name and its parameters, to the last
+ * Ranking computed for it, entries.get(key).ranking. That Ranking was computed at System.nanoTime()
+ * entries.get(key).computedAt, for the call time entries.get(key).time, after entries.get(key).version
+ * search and getPage requests had been recorded. latestVersion is the largest number of search and
+ * getPage requests that any Ranking was cached or looked up after.
+ */
+class RankingCache {
+
+    /* a RankingCache holds at most 64 Rankings */
+    static final int CAPACITY = 64;
+
+    private final long stalenessNanos;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+    private final ReentrantLock lock = new ReentrantLock();
+    private long latestVersion = -1;
+
+    /*
+     * Representation Invariant:
+     *  - stalenessNanos >= 0
+     *  - entries does not contain any null keys or values, and entries.size() <= CAPACITY
+     *  - entries.get(key).version <= latestVersion for every key
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - stalenessNanos and lock are private and final
+     *  - entries is kept in access order, so even lookup modifies it; entries and latestVersion are
+     *    private, never shared outside of this class and only accessed while holding lock, and every
+     *    Entry is immutable
+     */
+
+    /**
+     * Check that the representation invariants for RankingCache hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (stalenessNanos < 0) {
+            throw new RuntimeException("stalenessNanos must not be negative");
+        }
+        if (entries.size() > CAPACITY) {
+            throw new RuntimeException("entries must hold at most CAPACITY Rankings");
+        }
+    }
+
+    /**
+     * Create an empty RankingCache.
+     * @param stalenessMillis the age, in milliseconds, up to which a cached Ranking is reused even if
+     *                        requests were recorded after it was computed, stalenessMillis >= 0
+     */
+    RankingCache(int stalenessMillis) {
+        stalenessNanos = TimeUnit.MILLISECONDS.toNanos(stalenessMillis);
+        checkRep();
+    }
+
+    /**
+     * Get a cached Ranking that is still fresh enough to reuse.
+     * @param key the method name and parameters of the Ranking, must not be null
+     * @param version the number of search and getPage requests recorded so far, or -1 if unknown
+     * @param time the time, in seconds, that the Ranking is computed for
+     * @return the cached Ranking for key if it is younger than the staleness bound, or if it was
+     * computed for time after version requests had been recorded; null otherwise
+     */
+    Ranking lookup(String key, long version, long time) {
+        lock.lock();
+        try {
+            latestVersion = Math.max(latestVersion, version);
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (!isStale(entry)) {
+                return entry.ranking;
+            }
+            if (entry.version == version && entry.time == time) {
+                return entry.ranking;
+            }
+            if (entry.version < latestVersion) {
+                entries.remove(key);
+            }
+            return null;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cache a computed Ranking, replacing any Ranking cached for the same key.
+     * @param key the method name and parameters of the Ranking, must not be null
+     * @param ranking the computed Ranking, must not be null
+     * @param version the number of search and getPage requests recorded when ranking was computed
+     * @param time the time, in seconds, that ranking was computed for
+     *
+     * Frame Condition:
+     * - Rankings that are stale and were computed before the latest recorded request are dropped, and the
+     *   least recently used Ranking is evicted if more than CAPACITY would be cached
+     */
+    void put(String key, Ranking ranking, long version, long time) {
+        lock.lock();
+        try {
+            latestVersion = Math.max(latestVersion, version);
+            Iterator<Entry> cached = entries.values().iterator();
+            while (cached.hasNext()) {
+                Entry entry = cached.next();
+                if (isStale(entry) && entry.version < latestVersion) {
+                    cached.remove();
+                }
+            }
+            entries.put(key, new Entry(ranking, System.nanoTime(), version, time));
+            checkRep();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of cached Rankings.
+     * @return the number of Rankings that the cache holds
+     */
+    int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check whether a cached Ranking is older than the staleness bound.
+     * @param entry a cached Ranking, must not be null
+     * @return true if entry was computed more than the staleness bound ago, false otherwise
+     */
+    private boolean isStale(Entry entry) {
+        return System.nanoTime() - entry.computedAt > stalenessNanos;
+    }
+
+    /**
+     * An Entry is an immutable cached Ranking together with when and for what it was computed.
+     */
+    private static class Entry {
+        private final Ranking ranking;
+        private final long computedAt;
+        private final long version;
+        private final long time;
+
+        /**
+         * Create an Entry.
+         * @param ranking the computed Ranking
+         * @param computedAt the value of System.nanoTime() when ranking was computed
+         * @param version the number of search and getPage requests recorded when ranking was computed
+         * @param time the time, in seconds, that ranking was computed for
+         */
+        Entry(Ranking ranking, long computedAt, long version, long time) {
+            this.ranking = ranking;
+            this.computedAt = computedAt;
+            this.version = version;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.fsftbuffer.Bufferable;
+
+/**
+ * A Redirect is a data type that implements the Bufferable interface. It represents a Wikipedia
+ * redirect page, which holds no text of its own and sends readers to another page.
+ *
+ * Abstraction Function:
+ * A Redirect is represented by two Strings: alias and target. alias is the normalized title of the
+ * redirect page, and target is the normalized title of the page that alias redirects to.
+ */
+class Redirect implements Bufferable {
+    private final String alias;
+    private final String target;
+
+    /*
+     * Representation Invariant:
+     *  - alias and target must not be null
+     *  - alias and target are not equal
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - Redirect is immutable: all fields are private and final
+     */
+
+    /**
+     * Check that the representation invariants for Redirect hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (alias == null || target == null) {
+            throw new RuntimeException("alias and target must not be null");
+        }
+        if (alias.equals(target)) {
+            throw new RuntimeException("a page cannot redirect to itself");
+        }
+    }
+
+    /**
+     * Create a Redirect from one page title to another.
+     * @param alias the normalized title of the redirect page, alias must not be null
+     * @param target the normalized title of the page that alias redirects to, target must not be
+     *               null and must not be equal to alias
+     */
+    Redirect(String alias, String target) {
+        this.alias = alias;
+        this.target = target;
+        checkRep();
+    }
+
+    /**
+     * Return the unique identifier of the Redirect.
+     * @return The unique identifier of the Redirect, which corresponds to the title of the redirect page.
+     */
+    @Override
+    public String id() {
+        return alias;
+    }
+
+    /**
+     * Get the title of the page that the Redirect sends readers to.
+     * @return the normalized title of the target page
+     */
+    String getTarget() {
+        return target;
+    }
+}
@@ -1,5 +1,7 @@
 package cpen221.mp3.server;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -19,9 +21,14 @@ public class Request {
     private final String query;
     private final String limit;
     private final String pageTitle;
+    private final List<String> pageTitles;
+    private final String pageTitle1;
+    private final String pageTitle2;
     private final String timeLimitInSeconds;
     private final String maxItems;
     private final String timeWindowInSeconds;
+    private final String from;
+    private final String to;
     private final String timeout;
 
     /*
@@ -47,21 +54,32 @@ public class Request {
      * @param query the query parameter the JSON request contained
      * @param limit the limit parameter the JSON request contained
      * @param pageTitle the pageTitle parameter the JSON request contained
+     * @param pageTitles the pageTitles parameter the JSON request contained
+     * @param pageTitle1 the pageTitle1 parameter the JSON request contained
+     * @param pageTitle2 the pageTitle2 parameter the JSON request contained
      * @param timeLimitInSeconds the timeLimitInSeconds parameter the JSON request contained
      * @param maxItems the maxItems parameter the JSON request contained
      * @param timeWindowInSeconds the timeWindowInSeconds parameter the JSON request contained
+     * @param from the from parameter the JSON request contained
+     * @param to the to parameter the JSON request contained
      * @param timeout the timeout parameter the JSON request contained
      */
-    public Request(String id, String type, String query, String limit, String pageTitle, String timeLimitInSeconds,
-                   String maxItems, String timeWindowInSeconds, String timeout) {
+    public Request(String id, String type, String query, String limit, String pageTitle, List<String> pageTitles,
+                   String pageTitle1, String pageTitle2, String timeLimitInSeconds, String maxItems,
+                   String timeWindowInSeconds, String from, String to, String timeout) {
         this.id = id;
         this.type = type;
         this.query = query;
         this.limit = limit;
         this.pageTitle = pageTitle;
+        this.pageTitles = pageTitles == null ? null : new ArrayList<>(pageTitles);
+        this.pageTitle1 = pageTitle1;
+        this.pageTitle2 = pageTitle2;
         this.timeLimitInSeconds = timeLimitInSeconds;
         this.maxItems = maxItems;
         this.timeWindowInSeconds = timeWindowInSeconds;
+        this.from = from;
+        this.to = to;
         this.timeout = timeout;
         checkRep();
     }
@@ -69,8 +87,10 @@ public class Request {
     /**
      * Check that the JSON-formatted String parsed to create the current instance
      * of Request did not contain any format errors or missing parameters.
-     * @throws JsonFormatException If the JSON request had formatting errors or
-     * missing parameters required for the specific operation specified by type.
+     * @throws JsonFormatException If the JSON request had formatting errors, an unknown type,
+     * a limit, maxItems, timeLimitInSeconds or timeout that is not a non-negative number, a
+     * timeWindowInSeconds that is not a positive number, or missing parameters required for
+     * the specific operation specified by type.
      */
     public void checkValidRequest() throws JsonFormatException {
         String id = this.getId();
@@ -78,9 +98,13 @@ public class Request {
         String query = this.getQuery();
         String limit = this.getLimit();
         String pageTitle = this.getPageTitle();
+        String pageTitle1 = this.getPageTitle1();
+        String pageTitle2 = this.getPageTitle2();
         String timeLimitInSeconds = this.getTimeLimitInSeconds();
         String maxItems = this.getMaxItems();
         String timeWindowInSeconds = this.getTimeWindowInSeconds();
+        String from = this.getFrom();
+        String to = this.getTo();
         String timeout = this.getTimeout();
 
         if (id == null) {
@@ -92,11 +116,7 @@ public class Request {
                 throw new JsonFormatException();
             }
             else {
-                try {
-                    int limitValue = Integer.parseInt(limit);
-                } catch (NumberFormatException nfe) {
-                    throw new JsonFormatException();
-                }
+                checkValidCount(limit, 0);
             }
         }
 
@@ -106,53 +126,115 @@ public class Request {
             }
         }
 
+        else if (Objects.equals(type, "getPages")) {
+            if (this.pageTitles == null || this.pageTitles.contains(null)) {
+                throw new JsonFormatException();
+            }
+        }
+
         else if (Objects.equals(type, "zeitgeist")) {
             if (limit == null) {
                 throw new JsonFormatException();
             }
-            try {
-                int limitValue = Integer.parseInt(limit);
-            } catch (NumberFormatException nfe) {
+            checkValidCount(limit, 0);
+        }
+
+        else if (Objects.equals(type, "decayedZeitgeist")) {
+            if (limit == null) {
                 throw new JsonFormatException();
             }
+            checkValidCount(limit, 0);
         }
 
         else if (Objects.equals(type, "trending")) {
-            if (timeLimitInSeconds == null || maxItems == null) {
+            if (maxItems == null || (timeLimitInSeconds == null && !this.isRange())) {
                 throw new JsonFormatException();
             }
-            try {
-                int timeLimitValue = Integer.parseInt(timeLimitInSeconds);
-                int maxItemsValue = Integer.parseInt(maxItems);
-            } catch (NumberFormatException nfe) {
+            if (!this.isRange()) {
+                checkValidCount(timeLimitInSeconds, 0);
+            }
+            checkValidCount(maxItems, 0);
+            checkValidRange(from, to);
+        }
+
+        else if (Objects.equals(type, "shortestPath")) {
+            if (pageTitle1 == null || pageTitle2 == null || timeout == null) {
                 throw new JsonFormatException();
             }
+            checkValidCount(timeout, 0);
+        }
+
+        else if (Objects.equals(type, "stop")) {
+            return;
         }
 
         else if (Objects.equals(type, "windowedPeakLoad")) {
             if (timeWindowInSeconds == null) {
                 throw new JsonFormatException();
             }
-            try {
-                int timeWindowValue = Integer.parseInt(timeWindowInSeconds);
-            } catch (NumberFormatException nfe) {
-                throw new JsonFormatException();
-            }
+            checkValidCount(timeWindowInSeconds, 1);
+            checkValidRange(from, to);
+        }
+
+        else {
+            throw new JsonFormatException();
+        }
+
+        if (timeout != null) {
+            checkValidCount(timeout, 0);
         }
+    }
 
-        else if (timeout != null) {
-            try {
-                int timeoutValue = Integer.parseInt(timeout);
-            } catch (NumberFormatException nfe) {
+    /**
+     * Check that a count parameter of a request, such as a limit, a timeout or a window, is a
+     * number that is at least least.
+     * @param value the parameter the JSON request contained, value must not be null
+     * @param least the smallest value the parameter may have
+     * @throws JsonFormatException If value is not a number, or is smaller than least.
+     */
+    private static void checkValidCount(String value, int least) throws JsonFormatException {
+        try {
+            if (Integer.parseInt(value) < least) {
                 throw new JsonFormatException();
             }
+        } catch (NumberFormatException nfe) {
+            throw new JsonFormatException();
         }
+    }
 
-        else {
+    /**
+     * Check that the from and to parameters of a request either are both missing, or are both
+     * times in seconds with from before to.
+     * @param from the from parameter the JSON request contained
+     * @param to the to parameter the JSON request contained
+     * @throws JsonFormatException If only one of from and to is given, either is not a number,
+     * or from is not before to.
+     */
+    private static void checkValidRange(String from, String to) throws JsonFormatException {
+        if (from == null && to == null) {
+            return;
+        }
+        if (from == null || to == null) {
+            throw new JsonFormatException();
+        }
+        try {
+            if (Long.parseLong(from) >= Long.parseLong(to)) {
+                throw new JsonFormatException();
+            }
+        } catch (NumberFormatException nfe) {
             throw new JsonFormatException();
         }
     }
 
+    /**
+     * Check whether the Request asks about a past period of time given by from and to,
+     * rather than a period that ends now.
+     * @return true if the Request has both a from and a to parameter, false otherwise
+     */
+    public boolean isRange() {
+        return this.from != null && this.to != null;
+    }
+
     /**
      * Get the unique identifier of the Request.
      * @return the unique identifier of the Request
@@ -201,6 +283,36 @@ public class Request {
         return this.pageTitle;
     }
 
+    /**
+     * Get the pageTitles of the Request, which could be null
+     * if the original JSON String did not contain a field
+     * for pageTitles.
+     * @return a copy of the pageTitles of the Request
+     */
+    public List<String> getPageTitles() {
+        return this.pageTitles == null ? null : new ArrayList<>(this.pageTitles);
+    }
+
+    /**
+     * Get the pageTitle1 of the Request, the page a shortestPath
+     * request starts on, which could be null if the original JSON
+     * String did not contain a field for pageTitle1.
+     * @return the pageTitle1 of the Request
+     */
+    public String getPageTitle1() {
+        return this.pageTitle1;
+    }
+
+    /**
+     * Get the pageTitle2 of the Request, the page a shortestPath
+     * request ends on, which could be null if the original JSON
+     * String did not contain a field for pageTitle2.
+     * @return the pageTitle2 of the Request
+     */
+    public String getPageTitle2() {
+        return this.pageTitle2;
+    }
+
     /**
      * Get the timeLimitInSeconds of the Request, which could be null
      * if the original JSON String did not contain a field
@@ -231,6 +343,26 @@ public class Request {
         return this.timeWindowInSeconds;
     }
 
+    /**
+     * Get the from time, in seconds since the epoch, of the Request, which could be null
+     * if the original JSON String did not contain a field
+     * for from.
+     * @return the from time of the Request
+     */
+    public String getFrom() {
+        return this.from;
+    }
+
+    /**
+     * Get the to time, in seconds since the epoch, of the Request, which could be null
+     * if the original JSON String did not contain a field
+     * for to.
+     * @return the to time of the Request
+     */
+    public String getTo() {
+        return this.to;
+    }
+
     /**
      * Get the timeout of the Request, which could be null
      * if the original JSON String did not contain a field
@@ -0,0 +1,223 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A RequestHedger cuts the tail latency of an asynchronous call to a backend by hedging it: if the call has not
+ * completed once it has taken longer than PERCENTILE of recent calls, the same call is made a second time, and
+ * whichever of the two completes successfully first answers the request, while the other is cancelled.
+ *
+ * Hedges are paid for from a budget, so they never add more than budget of the calls made: every request earns
+ * budget of a hedge, up to MAX_SAVED hedges, and each hedge spends one. Hedging only pays off for calls that are
+ * slow by chance rather than because the backend is overloaded, so hedges should be sent through the same
+ * ConcurrencyLimiter as the calls they duplicate, which rejects them when the backend is busy.
+ *
+ * Abstraction Function:
+ * A RequestHedger represents the latencies of the last min(samples, SAMPLES) requests, held in latencies in the
+ * order they were recorded, starting from latencies[samples % SAMPLES] once it is full, and the hedges that may
+ * still be made, saved. delay is PERCENTILE of those latencies as of the last time it was computed, or
+ * Long.MAX_VALUE while fewer than MIN_SAMPLES latencies have been recorded. All latencies are in nanoseconds.
+ */
+class RequestHedger {
+
+    /* the fraction of recent calls that complete before a call is hedged */
+    private static final double PERCENTILE = 0.95;
+
+    /* the number of recent latencies that the hedging delay is computed from */
+    private static final int SAMPLES = 256;
+
+    /* the number of latencies needed before any call is hedged */
+    private static final int MIN_SAMPLES = 32;
+
+    /* the number of latencies recorded between two computations of the hedging delay */
+    private static final int RECOMPUTE = 16;
+
+    /* the largest number of unspent hedges that can be saved up, to bound a burst of hedges */
+    private static final double MAX_SAVED = 10;
+
+    private final double budget;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] latencies = new long[SAMPLES];
+    private long samples = 0;
+    private long delay = Long.MAX_VALUE;
+    private double saved = 0;
+
+    /*
+     * Representation Invariant:
+     *  - 0 <= budget <= 1
+     *  - latencies has length SAMPLES, and samples >= 0
+     *  - delay > 0
+     *  - 0 <= saved <= MAX_SAVED
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - budget is private, final and immutable
+     *  - latencies, samples, delay and saved are private, never shared outside of this class, and only
+     *    accessed while holding lock. lock is a ReentrantLock, so that a virtual thread waiting for it does
+     *    not pin its carrier thread
+     *  - the two calls of a request, and the future it returns, are only completed and cancelled through
+     *    CompletableFuture, which is threadsafe, so they may complete on any thread. The calls of a request that
+     *    are still running are counted by a threadsafe AtomicInteger, so exactly one failed call, the last,
+     *    completes the future of a request whose calls all fail
+     */
+
+    /**
+     * Check that the representation invariants for RequestHedger hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (budget < 0 || budget > 1) {
+            throw new RuntimeException("budget should be between 0 and 1");
+        }
+        if (latencies.length != SAMPLES || samples < 0 || delay <= 0) {
+            throw new RuntimeException("latencies should hold SAMPLES latencies, and delay should be > 0");
+        }
+        if (saved < 0 || saved > MAX_SAVED) {
+            throw new RuntimeException("saved should be between 0 and MAX_SAVED");
+        }
+    }
+
+    /**
+     * Create a RequestHedger that has not seen any calls.
+     * @param percent the largest number of hedges per hundred calls, 0 <= percent <= 100; 0 never hedges
+     */
+    RequestHedger(int percent) {
+        this.budget = percent / 100.0;
+        checkRep();
+    }
+
+    /**
+     * Make a call, and make it a second time if it is slower than PERCENTILE of recent calls and the budget
+     * allows it.
+     * @param call starts the call and returns its future; it may be called twice, and must be safe to repeat.
+     *             call must not be null
+     * @param <T> the type of the result of the call
+     * @return a future of the result of the first of the calls to complete successfully, or of the exception of
+     * the last call to fail if every call fails. Cancelling it cancels both calls
+     */
+    <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+        long start = System.nanoTime();
+        long hedgeAfter;
+        lock.lock();
+        try {
+            saved = Math.min(MAX_SAVED, saved + budget);
+            hedgeAfter = delay;
+        }
+        finally {
+            lock.unlock();
+        }
+
+        CompletableFuture<T> answer = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        CompletableFuture<T> first = call.get();
+        first.whenComplete((value, e) -> {
+            if (!first.isCancelled()) {
+                record(System.nanoTime() - start);
+            }
+            settle(answer, running, value, e);
+        });
+
+        if (hedgeAfter != Long.MAX_VALUE && !first.isDone()) {
+            CompletableFuture.delayedExecutor(hedgeAfter, TimeUnit.NANOSECONDS).execute(() -> {
+                if (answer.isDone() || !spend()) {
+                    return;
+                }
+                running.incrementAndGet();
+                CompletableFuture<T> second = call.get();
+                second.whenComplete((value, e) -> settle(answer, running, value, e));
+                answer.whenComplete((value, e) -> second.cancel(true));
+            });
+        }
+        answer.whenComplete((value, e) -> first.cancel(true));
+        return answer;
+    }
+
+    /**
+     * Get the current hedging delay.
+     * @return the time, in milliseconds, after which a call is hedged, or -1 if no call is hedged yet
+     */
+    long getDelay() {
+        lock.lock();
+        try {
+            return delay == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMillis(delay);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Helper method that completes the future of a request with the outcome of one of its calls, if the call
+     * succeeded, or if it failed and was the last call of the request still running.
+     * @param answer the future of the request, answer must not be null
+     * @param running the number of calls of the request that have not completed, running must not be null
+     * @param value the result of the call, if it succeeded
+     * @param e the exception of the call, or null if it succeeded
+     * @param <T> the type of the result of the call
+     *
+     * Frame Condition:
+     * - running is decremented
+     */
+    private static <T> void settle(CompletableFuture<T> answer, AtomicInteger running, T value, Throwable e) {
+        boolean last = running.decrementAndGet() == 0;
+        if (e == null) {
+            answer.complete(value);
+        }
+        else if (last) {
+            answer.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Helper method that spends one hedge of the budget, if one is saved.
+     * @return true if a hedge may be made, false otherwise
+     *
+     * Frame Condition:
+     * - if a hedge may be made, saved is decremented
+     */
+    private boolean spend() {
+        lock.lock();
+        try {
+            if (saved < 1) {
+                return false;
+            }
+            saved--;
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Helper method that records the latency of the first call of a request, and recomputes the hedging delay
+     * every RECOMPUTE latencies. A first call that was cancelled because its hedge won is not recorded: the time
+     * it ran for is only a lower bound of its latency, and is about the hedging delay plus the latency of the
+     * hedge, so recording it would push the delay up whenever hedges win.
+     * @param latency the time, in nanoseconds, the first call took, latency >= 0
+     *
+     * Frame Condition:
+     * - latency is recorded, and delay may be recomputed
+     */
+    private void record(long latency) {
+        lock.lock();
+        try {
+            latencies[(int) (samples % SAMPLES)] = latency;
+            samples++;
+            if (samples >= MIN_SAMPLES && samples % RECOMPUTE == 0) {
+                long[] sorted = Arrays.copyOf(latencies, (int) Math.min(samples, SAMPLES));
+                Arrays.sort(sorted);
+                delay = Math.max(1, sorted[(int) (PERCENTILE * (sorted.length - 1))]);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,743 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A RequestHistory records the requests made to a WikiMediator in a columnar, primitive form.
+ * Query strings are interned into a QueryDictionary, and every recorded request costs a few
+ * bytes of int storage instead of a boxed Long and a String reference per request.
+ *
+ * Recent history is kept at one-second resolution. Once it is older than rawRetention seconds,
+ * it is rolled up into per-minute buckets, and once it is older than minuteRetention seconds,
+ * it is rolled up again into per-hour buckets. Queries over ranges that reach into rolled-up
+ * history are answered from the coarse buckets, so their boundaries are rounded to whole buckets,
+ * and peak loads that reach into it are bounded from the busiest second kept for each bucket.
+ *
+ * Abstraction Function:
+ * A RequestHistory represents two sequences:
+ *  - the searches (q_i, s_i), where q_i is the query String passed to search or getPage and s_i is the
+ *    time, in seconds, at which it was submitted. The searches made in the last rawRetention seconds
+ *    are (dictionary.lookup(searchIds.get(i)), baseTime + searchTimes.get(i)) for 0 <= i < searchIds.size();
+ *    older searches are counted by the query counts of the buckets of minutes and hours.
+ *  - the request times r_j, which are the times, in seconds, at which any WikiMediator method was called.
+ *    For 0 <= i < requestSeconds.size(), requestCounts.get(i) requests were made at time
+ *    baseTime + requestSeconds.get(i); older requests are counted by the buckets of minutes and hours.
+ * counts[id] is the number of searches, over all time, for the query with ID id.
+ */
+class RequestHistory {
+
+    /* the length of a minute bucket is 60s */
+    private static final int MINUTE = 60;
+
+    /* the length of an hour bucket is 3600s */
+    private static final int HOUR = 3600;
+
+    private final long baseTime;
+    private final int rawRetention;
+    private final int minuteRetention;
+    private final QueryDictionary dictionary = new QueryDictionary();
+    private final IntChunkList searchIds = new IntChunkList();
+    private final IntChunkList searchTimes = new IntChunkList();
+    private final IntChunkList requestSeconds = new IntChunkList();
+    private final IntChunkList requestCounts = new IntChunkList();
+    private final RollupTier minutes = new RollupTier(MINUTE);
+    private final RollupTier hours = new RollupTier(HOUR);
+    private int[] counts = new int[16];
+    private int rolledUpTo = Integer.MIN_VALUE;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /*
+     * Representation Invariant:
+     *  - 0 < rawRetention <= minuteRetention
+     *  - searchIds.size() == searchTimes.size()
+     *  - requestSeconds.size() == requestCounts.size()
+     *  - 0 <= searchIds.get(i) < dictionary.size() for all 0 <= i < searchIds.size()
+     *  - searchTimes is sorted in non-decreasing order and requestSeconds in strictly increasing order
+     *  - every bucket of hours ends at or before the start of the first bucket of minutes, and every
+     *    bucket of minutes ends at or before the first entry of searchTimes and of requestSeconds
+     *  - counts.length >= dictionary.size()
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - baseTime, rawRetention and minuteRetention are private and final
+     *  - dictionary is threadsafe
+     *  - searchIds, searchTimes, requestSeconds, requestCounts, minutes, hours, counts and rolledUpTo are
+     *    private, never shared outside of this class and are only accessed while holding lock, or before the
+     *    RequestHistory is shared
+     *  - lock is a ReentrantLock rather than the lock of the RequestHistory, so that a virtual thread that
+     *    waits for it does not pin its carrier thread
+     */
+
+    /**
+     * Check that the representation invariants for RequestHistory hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (rawRetention <= 0 || minuteRetention < rawRetention) {
+            throw new RuntimeException("retention periods must satisfy 0 < rawRetention <= minuteRetention");
+        }
+        if (searchIds.size() != searchTimes.size()) {
+            throw new RuntimeException("searchIds and searchTimes must contain the same number of entries");
+        }
+        if (requestSeconds.size() != requestCounts.size()) {
+            throw new RuntimeException("requestSeconds and requestCounts must contain the same number of entries");
+        }
+        if (counts.length < dictionary.size()) {
+            throw new RuntimeException("counts must have an entry for every query in the dictionary");
+        }
+    }
+
+    /**
+     * Create an empty RequestHistory.
+     * @param baseTime the time, in seconds, that recorded times are stored relative to.
+     *                 Every time recorded in this history must be within Integer.MAX_VALUE
+     *                 seconds of baseTime.
+     * @param rawRetention the number of seconds for which history is kept at one-second resolution,
+     *                     rawRetention > 0
+     * @param minuteRetention the number of seconds for which history is kept at one-minute resolution,
+     *                        minuteRetention >= rawRetention
+     */
+    RequestHistory(long baseTime, int rawRetention, int minuteRetention) {
+        this.baseTime = baseTime;
+        this.rawRetention = rawRetention;
+        this.minuteRetention = minuteRetention;
+        checkRep();
+    }
+
+    /**
+     * Record that a WikiMediator method was called.
+     * @param time the time, in seconds, at which the method was called
+     *
+     * Frame Condition:
+     * - the request is counted at time. If time is earlier than the last recorded request
+     *   time (the system clock moved backwards), the last recorded time is used instead so that
+     *   requestSeconds stays sorted.
+     * - history that has become older than a retention period is rolled up
+     */
+    void recordRequest(long time) {
+        lock.lock();
+        try {
+            int second = monotonic(requestSeconds, time);
+            int last = requestSeconds.size() - 1;
+
+            if (last >= 0 && requestSeconds.get(last) == second) {
+                requestCounts.set(last, requestCounts.get(last) + 1);
+            }
+            else {
+                requestSeconds.add(second);
+                requestCounts.add(1);
+            }
+            rollUp(second);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record a String used as the input parameter to a search or getPage request.
+     * @param query the String used as the input parameter, query must not be null
+     * @param time the time, in seconds, at which the request was made
+     *
+     * Frame Condition:
+     * - query is interned in the dictionary, its ID is appended to searchIds and its count is incremented
+     * - the time is appended to searchTimes, clamped in the same way as recordRequest
+     * - history that has become older than a retention period is rolled up
+     */
+    void recordSearch(String query, long time) {
+        lock.lock();
+        try {
+            int id = dictionary.intern(query);
+            if (id >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, id + 1));
+            }
+
+            int second = monotonic(searchTimes, time);
+            searchIds.add(id);
+            searchTimes.add(second);
+            counts[id]++;
+            rollUp(second);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get up to limit of the most common Strings recorded with recordSearch, sorted in
+     * non-increasing count order.
+     * @param limit the maximum number of Strings to return
+     * @return up to limit of the most common recorded Strings, sorted in non-increasing count order
+     */
+    List<String> mostFrequent(int limit) {
+        lock.lock();
+        try {
+            Map<String, Integer> countMap = new HashMap<>();
+            for (int id = 0; id < dictionary.size(); id++) {
+                if (counts[id] > 0) {
+                    countMap.put(dictionary.lookup(id), counts[id]);
+                }
+            }
+
+            checkRep();
+            return rank(countMap, limit);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get up to maxItems of the most common Strings recorded with recordSearch at or after a given
+     * time, sorted in non-increasing count order. Searches older than the raw retention period are
+     * counted if the minute or hour bucket they were rolled up into overlaps [since, now].
+     * @param since the earliest time, in seconds, of a search that is to be counted
+     * @param maxItems the maximum number of Strings to return
+     * @return up to maxItems of the most common Strings recorded at or after since, sorted in
+     * non-increasing count order
+     */
+    List<String> mostFrequentSince(long since, int maxItems) {
+        lock.lock();
+        try {
+            return mostFrequentBetween(since, Long.MAX_VALUE, maxItems);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get up to maxItems of the most common Strings recorded with recordSearch in a range of time,
+     * sorted in non-increasing count order. Searches older than the raw retention period are
+     * counted if the minute or hour bucket they were rolled up into overlaps [since, until).
+     * @param since the earliest time, in seconds, of a search that is to be counted
+     * @param until the time, in seconds, before which searches are counted
+     * @param maxItems the maximum number of Strings to return
+     * @return up to maxItems of the most common Strings recorded in [since, until), sorted in
+     * non-increasing count order
+     */
+    List<String> mostFrequentBetween(long since, long until, int maxItems) {
+        lock.lock();
+        try {
+            Map<Integer, Integer> idCounts = new LinkedHashMap<>();
+            long sinceOffset = since - baseTime;
+            long untilOffset = until == Long.MAX_VALUE ? Long.MAX_VALUE : until - baseTime;
+            hours.countQueries(sinceOffset, untilOffset, idCounts);
+            minutes.countQueries(sinceOffset, untilOffset, idCounts);
+
+            Map<String, Integer> countMap = new HashMap<>();
+            for (Map.Entry<Integer, Integer> idCount : idCounts.entrySet()) {
+                countMap.put(dictionary.lookup(idCount.getKey()), idCount.getValue());
+            }
+            int end = until == Long.MAX_VALUE ? searchIds.size() : searchTimes.lowerBound(offset(until));
+            for (int i = searchTimes.lowerBound(offset(since)); i < end; i++) {
+                String query = dictionary.lookup(searchIds.get(i));
+                countMap.put(query, countMap.getOrDefault(query, 0) + 1);
+            }
+
+            checkRep();
+            return rank(countMap, maxItems);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the maximum number of requests recorded in any time window of a given length,
+     * counting only requests made strictly before a given time. Requests older than the raw
+     * retention period are only known per minute or hour bucket, so windows that reach into
+     * rolled-up history are bounded using the total and the busiest second of each bucket.
+     * @param callTime the time, in seconds, before which requests are counted
+     * @param timeWindowInSeconds the length of the time window, in seconds
+     * @return the maximum number of requests recorded in any window [t, t + timeWindowInSeconds)
+     * with t + timeWindowInSeconds <= callTime, which is exact unless the busiest window may reach into
+     * rolled-up history, or 0 if timeWindowInSeconds <= 0
+     */
+    PeakLoad peakLoad(long callTime, int timeWindowInSeconds) {
+        lock.lock();
+        try {
+            return peakLoad(Long.MIN_VALUE, callTime, timeWindowInSeconds);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the maximum number of requests recorded in any time window of a given length that starts
+     * in a range of time, counting only requests made in that range. Requests older than the raw
+     * retention period are only known per minute or hour bucket: a window is charged, for each bucket
+     * it overlaps, no more than the requests of the bucket and no more than the busiest second of the
+     * bucket for every second of the overlap, so a bucket is never charged whole to a narrower window.
+     * @param since the earliest time, in seconds, of a request that is to be counted
+     * @param until the time, in seconds, before which requests are counted
+     * @param timeWindowInSeconds the length of the time window, in seconds
+     * @return the maximum number of requests recorded in any window [t, t + timeWindowInSeconds)
+     * with since <= t, counting only requests made before until, together with the amount by which
+     * it may exceed the true maximum, or 0 if timeWindowInSeconds <= 0
+     */
+    PeakLoad peakLoad(long since, long until, int timeWindowInSeconds) {
+        lock.lock();
+        try {
+            if (timeWindowInSeconds <= 0) {
+                return new PeakLoad(0, 0);
+            }
+
+            int sinceOffset = offset(since);
+            int untilOffset = offset(until);
+            int firstSecond = requestSeconds.lowerBound(sinceOffset);
+            int secondCount = requestSeconds.lowerBound(untilOffset);
+            LoadSegments segments = new LoadSegments(hours.bucketCount() + minutes.bucketCount()
+                    + Math.max(0, secondCount - firstSecond));
+
+            for (RollupTier tier : new RollupTier[]{hours, minutes}) {
+                for (int bucket = 0; bucket < tier.bucketCount(); bucket++) {
+                    long start = tier.bucketStart(bucket);
+                    long end = start + tier.width();
+                    long first = Math.max(start, sinceOffset);
+                    long last = Math.min(end, untilOffset);
+                    if (first < last) {
+                        segments.add(first, last, tier.requestCount(bucket), tier.peakCount(bucket),
+                                first == start && last == end);
+                    }
+                }
+            }
+            for (int second = firstSecond; second < secondCount; second++) {
+                int time = requestSeconds.get(second);
+                segments.add(time, time + 1L, requestCounts.get(second), requestCounts.get(second), true);
+            }
+
+            long mostRequests = 0;
+            long leastRequests = 0;
+            for (int segment = 0; segment < segments.size; segment++) {
+                long start = segments.starts[segment];
+                long end = segments.ends[segment];
+                long requests = segments.requests[segment];
+                long peak = segments.peaks[segment];
+
+                if (segments.whole[segment]) {
+                    long windows = (end - start + timeWindowInSeconds - 1) / timeWindowInSeconds;
+                    leastRequests = Math.max(leastRequests, Math.max(peak, (requests + windows - 1) / windows));
+                }
+
+                // the bound on a window only changes slope where one of its ends crosses the end of a
+                // segment, or where the overlap with a segment becomes long enough to hold all of its requests
+                List<Long> windowStarts = new ArrayList<>(List.of(start, end - timeWindowInSeconds));
+                if (peak > 0) {
+                    for (long seconds : new long[]{requests / peak, (requests + peak - 1) / peak}) {
+                        windowStarts.add(end - seconds);
+                        windowStarts.add(start - timeWindowInSeconds + seconds);
+                    }
+                }
+                for (long windowStart : windowStarts) {
+                    long windowEnd = windowStart + timeWindowInSeconds;
+                    mostRequests = Math.max(mostRequests, segments.mostRequests(windowStart, windowEnd));
+                    leastRequests = Math.max(leastRequests, segments.leastRequests(windowStart, windowEnd));
+                }
+            }
+
+            int maxRequests = (int) Math.min(Integer.MAX_VALUE, mostRequests);
+            checkRep();
+            return new PeakLoad(maxRequests, maxRequests - Math.min(leastRequests, maxRequests));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the whole history to a snapshot.
+     * @param out the snapshot to write to, out must not be null
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        lock.lock();
+        try {
+            out.writeLong(baseTime);
+            dictionary.writeTo(out);
+            searchIds.writeTo(out);
+            searchTimes.writeTo(out);
+            requestSeconds.writeTo(out);
+            requestCounts.writeTo(out);
+            minutes.writeTo(out);
+            hours.writeTo(out);
+            for (int id = 0; id < dictionary.size(); id++) {
+                out.writeInt(counts[id]);
+            }
+            out.writeInt(rolledUpTo);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Create a RequestHistory from a history written with writeTo. The retention periods of the
+     * written history are replaced by the given ones, which apply from the next rollup.
+     * @param in the snapshot to read from, in must not be null
+     * @param rawRetention the number of seconds for which history is kept at one-second resolution,
+     *                     rawRetention > 0
+     * @param minuteRetention the number of seconds for which history is kept at one-minute resolution,
+     *                        minuteRetention >= rawRetention
+     * @return a RequestHistory that records the same requests as the written history
+     * @throws IOException if in cannot be read
+     */
+    static RequestHistory readFrom(DataInput in, int rawRetention, int minuteRetention) throws IOException {
+        RequestHistory history = new RequestHistory(in.readLong(), rawRetention, minuteRetention);
+        history.dictionary.readFrom(in);
+        history.searchIds.readFrom(in);
+        history.searchTimes.readFrom(in);
+        history.requestSeconds.readFrom(in);
+        history.requestCounts.readFrom(in);
+        history.minutes.readFrom(in);
+        history.hours.readFrom(in);
+
+        history.counts = new int[Math.max(history.counts.length, history.dictionary.size())];
+        for (int id = 0; id < history.dictionary.size(); id++) {
+            history.counts[id] = in.readInt();
+        }
+        history.rolledUpTo = in.readInt();
+        history.checkRep();
+        return history;
+    }
+
+    /**
+     * Sort the entries of a map of counts in non-increasing count order and return up to
+     * limit of their keys. Entries with equal counts keep the iteration order of countMap.
+     * @param countMap maps Strings to the number of times they were recorded
+     * @param limit the maximum number of keys to return
+     * @param <C> the type of the counts
+     * @return up to limit keys of countMap, sorted in non-increasing count order
+     */
+    static <C extends Comparable<? super C>> List<String> rank(Map<String, C> countMap, int limit) {
+        List<Map.Entry<String, C>> sortedMapList = new ArrayList<>(countMap.entrySet());
+        sortedMapList.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
+
+        List<String> mostCommonStrings = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, sortedMapList.size()); i++) {
+            mostCommonStrings.add(sortedMapList.get(i).getKey());
+        }
+        return mostCommonStrings;
+    }
+
+    /**
+     * Roll up history that has become older than a retention period. Rolling up happens at most
+     * once per minute, and always moves whole buckets so that no bucket is split between tiers.
+     * @param now the current time, relative to baseTime
+     *
+     * Frame Condition:
+     * - searches and requests older than rawRetention are moved, per minute, into minutes
+     * - minute buckets older than minuteRetention are moved, per hour, into hours
+     */
+    private void rollUp(int now) {
+        int rawCutoff = bucketStart((long) now - rawRetention, MINUTE);
+        if (rawCutoff <= rolledUpTo) {
+            return;
+        }
+        rolledUpTo = rawCutoff;
+
+        BucketBuilder minuteBuilder = new BucketBuilder(minutes);
+        int searchEnd = searchTimes.lowerBound(rawCutoff);
+        int requestEnd = requestSeconds.lowerBound(rawCutoff);
+        int search = 0;
+
+        for (int request = 0; request < requestEnd || search < searchEnd; ) {
+            boolean takeRequest = search == searchEnd
+                    || (request < requestEnd && requestSeconds.get(request) <= searchTimes.get(search));
+            if (takeRequest) {
+                minuteBuilder.requests(requestSeconds.get(request), requestCounts.get(request),
+                        requestCounts.get(request));
+                request++;
+            }
+            else {
+                minuteBuilder.query(searchTimes.get(search), searchIds.get(search), 1);
+                search++;
+            }
+        }
+        minuteBuilder.flush();
+
+        searchIds.discardFirst(searchEnd);
+        searchTimes.discardFirst(searchEnd);
+        requestSeconds.discardFirst(requestEnd);
+        requestCounts.discardFirst(requestEnd);
+
+        BucketBuilder hourBuilder = new BucketBuilder(hours);
+        minutes.removeBefore(bucketStart((long) now - minuteRetention, HOUR), hourBuilder);
+        hourBuilder.flush();
+        checkRep();
+    }
+
+    /**
+     * Get the start of the bucket of a given width that contains a time. Buckets are aligned to
+     * absolute time, not to baseTime.
+     * @param time a time relative to baseTime
+     * @param width the width of the bucket, in seconds
+     * @return the start of the bucket containing time, relative to baseTime
+     */
+    private int bucketStart(long time, int width) {
+        long absolute = baseTime + time;
+        return saturate(Math.floorDiv(absolute, width) * width - baseTime);
+    }
+
+    /**
+     * Convert an absolute time to an offset from baseTime.
+     * @param time the time, in seconds
+     * @return time - baseTime, saturated to the range of an int
+     */
+    private int offset(long time) {
+        try {
+            return saturate(Math.subtractExact(time, baseTime));
+        }
+        catch (ArithmeticException e) {
+            return time < baseTime ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Saturate a time to the range of an int.
+     * @param time a time relative to baseTime
+     * @return time, saturated to the range of an int
+     */
+    private static int saturate(long time) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, time));
+    }
+
+    /**
+     * Convert a time to an offset that keeps a column sorted and is not part of history that
+     * has already been rolled up.
+     * @param column the column the offset will be appended to
+     * @param time the time, in seconds
+     * @return the offset of time, or the last offset in column or the end of the rolled up
+     * history if either is later
+     */
+    private int monotonic(IntChunkList column, long time) {
+        int offset = Math.max(offset(time), rolledUpTo);
+        if (column.size() > 0) {
+            offset = Math.max(offset, column.get(column.size() - 1));
+        }
+        return offset;
+    }
+
+    /**
+     * A BucketBuilder accumulates request and query counts that arrive in time order, and adds
+     * each completed bucket to a RollupTier.
+     */
+    private class BucketBuilder implements RollupTier.BucketReceiver {
+        private final RollupTier tier;
+        private final Map<Integer, Integer> queryCounts = new LinkedHashMap<>();
+        private int bucket = Integer.MIN_VALUE;
+        private int requestCount = 0;
+        private int peakCount = 0;
+
+        /**
+         * Create a BucketBuilder that adds buckets to a tier.
+         * @param tier the tier to add completed buckets to, must not be null
+         */
+        BucketBuilder(RollupTier tier) {
+            this.tier = tier;
+        }
+
+        /**
+         * Count requests in the bucket of the tier that contains a time.
+         * @param time a time relative to baseTime, no earlier than any time previously given to this builder
+         * @param requestCount the number of requests made at time
+         * @param peakCount the largest number of requests made in any one second counted by requestCount
+         */
+        @Override
+        public void requests(int time, int requestCount, int peakCount) {
+            moveTo(time);
+            this.requestCount += requestCount;
+            this.peakCount = Math.max(this.peakCount, peakCount);
+        }
+
+        /**
+         * Count uses of a query in the bucket of the tier that contains a time.
+         * @param time a time relative to baseTime, no earlier than any time previously given to this builder
+         * @param id the ID of the query
+         * @param count the number of times the query was used at time
+         */
+        @Override
+        public void query(int time, int id, int count) {
+            moveTo(time);
+            queryCounts.put(id, queryCounts.getOrDefault(id, 0) + count);
+        }
+
+        /**
+         * Add the bucket being accumulated, if any, to the tier.
+         */
+        void flush() {
+            if (bucket != Integer.MIN_VALUE) {
+                tier.addBucket(bucket, requestCount, peakCount, queryCounts);
+            }
+            queryCounts.clear();
+            requestCount = 0;
+            peakCount = 0;
+            bucket = Integer.MIN_VALUE;
+        }
+
+        /**
+         * Start accumulating the bucket of the tier that contains a time, adding the previous
+         * bucket to the tier if it is complete.
+         * @param time a time relative to baseTime, no earlier than any time previously given to this builder
+         */
+        private void moveTo(int time) {
+            int start = bucketStart(time, tier.width());
+            if (start != bucket) {
+                flush();
+                bucket = start;
+            }
+        }
+    }
+
+    /**
+     * LoadSegments are the stretches of time that a peak load is bounded from: rolled-up buckets and
+     * seconds of raw history, cut to the range of time the peak load is asked for, in time order.
+     */
+    private static class LoadSegments {
+        private final long[] starts;
+        private final long[] ends;
+        private final long[] requests;
+        private final long[] peaks;
+        private final boolean[] whole;
+        private final long[] mostPrefix;
+        private final long[] leastPrefix;
+        private int size = 0;
+
+        /*
+         * Representation Invariant:
+         *  - the segments [starts[i], ends[i]) for 0 <= i < size are non-empty, disjoint and in time order
+         *  - 0 <= peaks[i] <= requests[i] for all 0 <= i < size
+         *  - mostPrefix[i] is the sum of most(j, starts[j], ends[j]) and leastPrefix[i] the sum of the
+         *    requests of the whole segments, over 0 <= j < i, for all 0 <= i <= size
+         */
+
+        /**
+         * Create an empty LoadSegments.
+         * @param capacity the largest number of segments that will be added
+         */
+        LoadSegments(int capacity) {
+            starts = new long[capacity];
+            ends = new long[capacity];
+            requests = new long[capacity];
+            peaks = new long[capacity];
+            whole = new boolean[capacity];
+            mostPrefix = new long[capacity + 1];
+            leastPrefix = new long[capacity + 1];
+        }
+
+        /**
+         * Add a segment after every segment added so far.
+         * @param start the start of the segment, relative to baseTime
+         * @param end the end of the segment, start < end
+         * @param requestCount the number of requests counted by the bucket or second the segment is cut from
+         * @param peakCount the largest number of requests made in any one second of that bucket or second
+         * @param isWhole true if the segment is not cut short, so that requestCount were all made in it
+         */
+        void add(long start, long end, int requestCount, int peakCount, boolean isWhole) {
+            starts[size] = start;
+            ends[size] = end;
+            requests[size] = requestCount;
+            peaks[size] = peakCount;
+            whole[size] = isWhole;
+            mostPrefix[size + 1] = mostPrefix[size] + most(size, start, end);
+            leastPrefix[size + 1] = leastPrefix[size] + (isWhole ? requestCount : 0);
+            size++;
+        }
+
+        /**
+         * Get the largest number of requests that could have been made in a window.
+         * @param windowStart the start of the window, relative to baseTime
+         * @param windowEnd the end of the window, windowStart < windowEnd
+         * @return the sum, over the segments that overlap the window, of the fewer of the requests of the
+         * segment and its busiest second times the length of the overlap
+         */
+        long mostRequests(long windowStart, long windowEnd) {
+            int first = firstAfter(ends, windowStart);
+            int last = firstAfter(starts, windowEnd - 1) - 1;
+            if (first > last) {
+                return 0;
+            }
+            if (first == last) {
+                return most(first, windowStart, windowEnd);
+            }
+            return most(first, windowStart, windowEnd) + mostPrefix[last] - mostPrefix[first + 1]
+                    + most(last, windowStart, windowEnd);
+        }
+
+        /**
+         * Get the number of requests that were certainly made in a window.
+         * @param windowStart the start of the window, relative to baseTime
+         * @param windowEnd the end of the window, windowStart < windowEnd
+         * @return the sum, over the whole segments that overlap the window, of the requests of the segment
+         * that could not have been made outside the window
+         */
+        long leastRequests(long windowStart, long windowEnd) {
+            int first = firstAfter(ends, windowStart);
+            int last = firstAfter(starts, windowEnd - 1) - 1;
+            if (first > last) {
+                return 0;
+            }
+            if (first == last) {
+                return least(first, windowStart, windowEnd);
+            }
+            return least(first, windowStart, windowEnd) + leastPrefix[last] - leastPrefix[first + 1]
+                    + least(last, windowStart, windowEnd);
+        }
+
+        /**
+         * Get the largest number of requests of a segment that could have been made in a window.
+         * @param segment the index of a segment that overlaps the window
+         * @param windowStart the start of the window, relative to baseTime
+         * @param windowEnd the end of the window
+         * @return the fewer of the requests of the segment and its busiest second times the overlap
+         */
+        private long most(int segment, long windowStart, long windowEnd) {
+            long overlap = Math.min(ends[segment], windowEnd) - Math.max(starts[segment], windowStart);
+            return Math.min(requests[segment], overlap * peaks[segment]);
+        }
+
+        /**
+         * Get the number of requests of a segment that were certainly made in a window.
+         * @param segment the index of a segment that overlaps the window
+         * @param windowStart the start of the window, relative to baseTime
+         * @param windowEnd the end of the window
+         * @return if the segment is whole, its requests less its busiest second times each of its seconds
+         * outside the window, or 0 if that is negative or the segment is not whole
+         */
+        private long least(int segment, long windowStart, long windowEnd) {
+            if (!whole[segment]) {
+                return 0;
+            }
+            long overlap = Math.min(ends[segment], windowEnd) - Math.max(starts[segment], windowStart);
+            long outside = ends[segment] - starts[segment] - overlap;
+            return Math.max(0, requests[segment] - outside * peaks[segment]);
+        }
+
+        /**
+         * Find the first segment whose start or end, as given by times, is after a time.
+         * @param times starts or ends
+         * @param time a time relative to baseTime
+         * @return the least i in [0, size] such that times[i] > time, or size if there is none
+         */
+        private int firstAfter(long[] times, long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] > time) {
+                    high = middle;
+                }
+                else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -7,16 +7,23 @@ import java.util.Objects;
  * A Response represents a response sent from a WikiMediatorServer to a client connected to
  * the server. The Response is an object with three instance variables that indicate the
  * status of the Response: id, status, and response.
+ * errorBound is the error bound of an approximate result, or null if the result is exact, and
+ * partial is true if the result was computed from only some of the requests made, or null otherwise.
+ * stale is true if the result is the cached text of a page that may be out of date, or null otherwise.
  */
 public class Response {
     private final String id;
     private final String status;
     private final String response;
+    private final String errorBound;
+    private final Boolean partial;
+    private final Boolean stale;
 
     /*
      * Representation Invariant:
      *  - id must not be null
-     *  - status must either be "success" or "failed"
+     *  - status must either be "success", "failed", or null for a message that is not the result
+     *    of an operation
      */
 
     /**
@@ -27,8 +34,8 @@ public class Response {
         if (id == null) {
             throw new RuntimeException("id must not be null!");
         }
-        else if (!Objects.equals(status, "success") && !Objects.equals(status, "failed")) {
-            throw new RuntimeException("status must be either \"success\" or \"failed\"");
+        else if (status != null && !Objects.equals(status, "success") && !Objects.equals(status, "failed")) {
+            throw new RuntimeException("status must be either \"success\", \"failed\" or null");
         }
     }
 
@@ -40,9 +47,67 @@ public class Response {
      *                 Request object with the same id
      */
     public Response(String id, String status, String response) {
+        this(id, status, response, null);
+    }
+
+    /**
+     * Create an instance of Response that carries a message instead of the result of an
+     * operation, and so has no status.
+     * @param id the identifier of the Response. id must not be null.
+     * @param response the message to send
+     */
+    public Response(String id, String response) {
+        this(id, null, response, null);
+    }
+
+    /**
+     * Create an instance of Response for an approximate result, initializing all instance variables.
+     * @param id the identifier of the Response. id must not be null.
+     * @param status the status of the Response, must either be "success" or "failed"
+     * @param response the response obtained from handling the request specified by the
+     *                 Request object with the same id
+     * @param errorBound the error bound of the approximate result in response, or null if
+     *                   response is exact
+     */
+    public Response(String id, String status, String response, String errorBound) {
+        this(id, status, response, errorBound, false);
+    }
+
+    /**
+     * Create an instance of Response for a statistics result, initializing all instance variables.
+     * @param id the identifier of the Response. id must not be null.
+     * @param status the status of the Response, must either be "success" or "failed"
+     * @param response the response obtained from handling the request specified by the
+     *                 Request object with the same id
+     * @param errorBound the error bound of the approximate result in response, or null if
+     *                   response is exact
+     * @param partial true if the result in response was computed before the statistics of the
+     *                server had finished loading
+     */
+    public Response(String id, String status, String response, String errorBound, boolean partial) {
+        this(id, status, response, errorBound, partial, false);
+    }
+
+    /**
+     * Create an instance of Response, initializing all instance variables.
+     * @param id the identifier of the Response. id must not be null.
+     * @param status the status of the Response, must either be "success" or "failed"
+     * @param response the response obtained from handling the request specified by the
+     *                 Request object with the same id
+     * @param errorBound the error bound of the approximate result in response, or null if
+     *                   response is exact
+     * @param partial true if the result in response was computed before the statistics of the
+     *                server had finished loading
+     * @param stale true if the result in response is the cached text of a page that went stale
+     *              and is being fetched again
+     */
+    public Response(String id, String status, String response, String errorBound, boolean partial, boolean stale) {
         this.id = id;
         this.status = status;
         this.response = response;
+        this.errorBound = errorBound;
+        this.partial = partial ? Boolean.TRUE : null;
+        this.stale = stale ? Boolean.TRUE : null;
         checkRep();
     }
 }
@@ -0,0 +1,71 @@
+package cpen221.mp3.wikimediator;
+
+import java.time.Instant;
+
+/**
+ * A RevisionInfo identifies one revision of a Wikipedia page by its revision ID and the time it
+ * was made. The latest revisions of many pages are fetched together by a WikiBackend, without
+ * their text, to check cheaply whether cached pages have changed.
+ *
+ * Abstraction Function:
+ * A RevisionInfo represents the revision of a Wikipedia page with ID revisionId, made at timestamp.
+ */
+class RevisionInfo {
+
+    /* the largest number of titles that Wikipedia's API accepts in one query */
+    static final int MAX_TITLES = 50;
+
+    private final long revisionId;
+    private final Instant timestamp;
+
+    /*
+     * Representation Invariant:
+     *  - revisionId > 0
+     *  - timestamp must not be null
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - RevisionInfo is immutable: all fields are private and final
+     */
+
+    /**
+     * Check that the representation invariants for RevisionInfo hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (revisionId <= 0) {
+            throw new RuntimeException("revisionId should be > 0");
+        }
+        if (timestamp == null) {
+            throw new RuntimeException("timestamp must not be null");
+        }
+    }
+
+    /**
+     * Create a RevisionInfo.
+     * @param revisionId the ID of the revision, revisionId > 0
+     * @param timestamp the time at which the revision was made, timestamp must not be null
+     */
+    RevisionInfo(long revisionId, Instant timestamp) {
+        this.revisionId = revisionId;
+        this.timestamp = timestamp;
+        checkRep();
+    }
+
+    /**
+     * Get the ID of the revision.
+     * @return the revision ID
+     */
+    long getRevisionId() {
+        return revisionId;
+    }
+
+    /**
+     * Get the time at which the revision was made.
+     * @return the timestamp of the revision
+     */
+    Instant getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,247 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A RollupTier stores request statistics at a fixed, coarse time resolution. Time is divided into
+ * buckets of width seconds, and each bucket keeps the number of requests made during it, the largest
+ * number of requests made in any one second of it, and the number of times each query String was
+ * used during it. The largest number of requests in a second bounds how many of the requests of a
+ * bucket can fall in a time window that is shorter than the bucket.
+ *
+ * Abstraction Function:
+ * A RollupTier represents the buckets B_0, B_1, ..., B_(n - 1), n = bucketStarts.size(), where
+ * B_i covers the times [bucketStarts.get(i), bucketStarts.get(i) + width) relative to the base time
+ * of the RequestHistory that owns it, and requestCounts.get(i) requests were made during B_i, at most
+ * peakCounts.get(i) of them in the same second.
+ * The query counts of B_i are the triples (queryBuckets.get(j), queryIds.get(j), queryCounts.get(j))
+ * with queryBuckets.get(j) == bucketStarts.get(i): the query with ID queryIds.get(j) was used
+ * queryCounts.get(j) times during B_i.
+ */
+class RollupTier {
+    private final int width;
+    private final IntChunkList bucketStarts = new IntChunkList();
+    private final IntChunkList requestCounts = new IntChunkList();
+    private final IntChunkList peakCounts = new IntChunkList();
+    private final IntChunkList queryBuckets = new IntChunkList();
+    private final IntChunkList queryIds = new IntChunkList();
+    private final IntChunkList queryCounts = new IntChunkList();
+
+    /*
+     * Representation Invariant:
+     *  - width > 0
+     *  - bucketStarts.size() == requestCounts.size() == peakCounts.size()
+     *  - 0 <= peakCounts.get(i) <= requestCounts.get(i) for all 0 <= i < bucketStarts.size()
+     *  - queryBuckets.size() == queryIds.size() == queryCounts.size()
+     *  - bucketStarts is sorted in strictly increasing order, and every entry is a multiple of width
+     *    away from every other entry
+     *  - queryBuckets is sorted in non-decreasing order, and each of its entries appears in bucketStarts
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - RollupTier is not threadsafe; every RollupTier is confined to a RequestHistory that only
+     *    accesses it while holding its own lock
+     */
+
+    /**
+     * Check that the representation invariants for RollupTier hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (width <= 0) {
+            throw new RuntimeException("width should be > 0");
+        }
+        if (bucketStarts.size() != requestCounts.size() || requestCounts.size() != peakCounts.size()) {
+            throw new RuntimeException("bucketStarts, requestCounts and peakCounts must contain the same number "
+                    + "of entries");
+        }
+        if (queryBuckets.size() != queryIds.size() || queryIds.size() != queryCounts.size()) {
+            throw new RuntimeException("queryBuckets, queryIds and queryCounts must contain the same number of entries");
+        }
+    }
+
+    /**
+     * Create an empty RollupTier.
+     * @param width the length, in seconds, of each bucket, width > 0
+     */
+    RollupTier(int width) {
+        this.width = width;
+        checkRep();
+    }
+
+    /**
+     * Get the length of each bucket.
+     * @return the length, in seconds, of each bucket
+     */
+    int width() {
+        return width;
+    }
+
+    /**
+     * Add a bucket after every bucket in the tier.
+     * @param bucketStart the start of the bucket, which must be later than the start of every
+     *                    bucket already in the tier
+     * @param requestCount the number of requests made during the bucket
+     * @param peakCount the largest number of requests made in any one second of the bucket,
+     *                  0 <= peakCount <= requestCount
+     * @param counts maps the ID of every query used during the bucket to the number of times it was
+     *               used; the query counts are stored in the iteration order of counts
+     */
+    void addBucket(int bucketStart, int requestCount, int peakCount, Map<Integer, Integer> counts) {
+        bucketStarts.add(bucketStart);
+        requestCounts.add(requestCount);
+        peakCounts.add(peakCount);
+        for (Map.Entry<Integer, Integer> count : counts.entrySet()) {
+            queryBuckets.add(bucketStart);
+            queryIds.add(count.getKey());
+            queryCounts.add(count.getValue());
+        }
+        checkRep();
+    }
+
+    /**
+     * Remove every bucket that starts before a given time, passing each one to a receiver first.
+     * @param cutoff the start of the first bucket to keep
+     * @param receiver receives each removed bucket in order, or null if removed buckets are dropped
+     *
+     * Frame Condition:
+     * - every bucket that starts before cutoff is removed from the tier
+     */
+    void removeBefore(int cutoff, BucketReceiver receiver) {
+        int buckets = bucketStarts.lowerBound(cutoff);
+        int queries = queryBuckets.lowerBound(cutoff);
+
+        if (receiver != null) {
+            int query = 0;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                int start = bucketStarts.get(bucket);
+                receiver.requests(start, requestCounts.get(bucket), peakCounts.get(bucket));
+                for (; query < queries && queryBuckets.get(query) == start; query++) {
+                    receiver.query(start, queryIds.get(query), queryCounts.get(query));
+                }
+            }
+        }
+
+        bucketStarts.discardFirst(buckets);
+        requestCounts.discardFirst(buckets);
+        peakCounts.discardFirst(buckets);
+        queryBuckets.discardFirst(queries);
+        queryIds.discardFirst(queries);
+        queryCounts.discardFirst(queries);
+        checkRep();
+    }
+
+    /**
+     * Add the query counts of every bucket that overlaps [since, until) to a map.
+     * @param since the earliest time to count
+     * @param until the time before which to count
+     * @param counts maps query IDs to counts, and is updated with the query counts of the
+     *               overlapping buckets, in bucket order
+     */
+    void countQueries(long since, long until, Map<Integer, Integer> counts) {
+        int first = queryBuckets.lowerBound(clamp(since - width + 1));
+        for (int query = first; query < queryIds.size() && queryBuckets.get(query) < until; query++) {
+            int id = queryIds.get(query);
+            counts.put(id, counts.getOrDefault(id, 0) + queryCounts.get(query));
+        }
+    }
+
+    /**
+     * Get the number of buckets in the tier.
+     * @return the number of buckets in the tier
+     */
+    int bucketCount() {
+        return bucketStarts.size();
+    }
+
+    /**
+     * Get the start of a bucket.
+     * @param bucket the position of the bucket in the tier, 0 <= bucket < bucketCount()
+     * @return the start of the bucket
+     */
+    int bucketStart(int bucket) {
+        return bucketStarts.get(bucket);
+    }
+
+    /**
+     * Get the number of requests made during a bucket.
+     * @param bucket the position of the bucket in the tier, 0 <= bucket < bucketCount()
+     * @return the number of requests made during the bucket
+     */
+    int requestCount(int bucket) {
+        return requestCounts.get(bucket);
+    }
+
+    /**
+     * Get the largest number of requests made in any one second of a bucket.
+     * @param bucket the position of the bucket in the tier, 0 <= bucket < bucketCount()
+     * @return the largest number of requests made in any one second of the bucket
+     */
+    int peakCount(int bucket) {
+        return peakCounts.get(bucket);
+    }
+
+    /**
+     * Write the buckets of the tier to a snapshot.
+     * @param out the snapshot to write to, out must not be null
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        bucketStarts.writeTo(out);
+        requestCounts.writeTo(out);
+        peakCounts.writeTo(out);
+        queryBuckets.writeTo(out);
+        queryIds.writeTo(out);
+        queryCounts.writeTo(out);
+    }
+
+    /**
+     * Add the buckets of a tier of the same width written with writeTo to this empty tier.
+     * @param in the snapshot to read from, in must not be null
+     * @throws IOException if in cannot be read
+     */
+    void readFrom(DataInput in) throws IOException {
+        bucketStarts.readFrom(in);
+        requestCounts.readFrom(in);
+        peakCounts.readFrom(in);
+        queryBuckets.readFrom(in);
+        queryIds.readFrom(in);
+        queryCounts.readFrom(in);
+        checkRep();
+    }
+
+    /**
+     * Saturate a time to the range of an int.
+     * @param time a time relative to the base time
+     * @return time, saturated to the range of an int
+     */
+    private static int clamp(long time) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, time));
+    }
+
+    /**
+     * A BucketReceiver receives the contents of buckets that are removed from a RollupTier.
+     */
+    interface BucketReceiver {
+
+        /**
+         * Receive the number of requests made during a bucket.
+         * @param bucketStart the start of the bucket
+         * @param requestCount the number of requests made during the bucket
+         * @param peakCount the largest number of requests made in any one second of the bucket
+         */
+        void requests(int bucketStart, int requestCount, int peakCount);
+
+        /**
+         * Receive the number of times a query was used during a bucket.
+         * @param bucketStart the start of the bucket
+         * @param id the ID of the query
+         * @param count the number of times the query was used during the bucket
+         */
+        void query(int bucketStart, int id, int count);
+    }
+}
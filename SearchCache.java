@@ -0,0 +1,158 @@
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.fsftbuffer.FSFTBuffer;
+import cpen221.mp3.fsftbuffer.ObjectNotInCacheException;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * A SearchCache remembers the page titles returned by Wikipedia's search service, so that repeated
+ * searches for the same query are answered without a network access.
+ *
+ * Queries are normalized before they are looked up, so searches that only differ in case or
+ * whitespace share one cached result. A result fetched with a larger limit also answers later
+ * searches with a smaller limit, and a result that returned fewer titles than it asked for answers
+ * searches with any limit. When the same query is searched for several times at once, the search
+ * service is only called once, and every search completes with its result. No thread waits for the
+ * search service: every search returns a future at once.
+ *
+ * Abstraction Function:
+ * A SearchCache represents the map from each normalized query to the SearchResult in results with
+ * that query as its id, for as long as the SearchResult has not timed out. inFlight maps each
+ * normalized query that is being fetched from the search service to the future result of that fetch.
+ * backend is the search service, which maps a query and a limit to a future of up to limit page titles.
+ */
+class SearchCache {
+    private final FSFTBuffer<SearchResult> results;
+    private final Map<String, CompletableFuture<SearchResult>> inFlight = new ConcurrentHashMap<>();
+    private final BiFunction<String, Integer, CompletableFuture<List<String>>> backend;
+
+    /*
+     * Representation Invariant:
+     *  - results and backend must not be null
+     *  - inFlight does not contain any null keys or values
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - results, inFlight and backend are private and final
+     *  - results points to a threadsafe FSFTBuffer, and every SearchResult is immutable
+     *  - inFlight is a threadsafe ConcurrentHashMap; a future is only added with putIfAbsent, so
+     *    each query is fetched by at most one search at a time, and the future is only completed and
+     *    removed by that search, once its fetch has completed
+     */
+
+    /**
+     * Check that the representation invariants for SearchCache hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (results == null || backend == null) {
+            throw new RuntimeException("results and backend must not be null");
+        }
+    }
+
+    /**
+     * Create an empty SearchCache.
+     * @param capacity the maximum number of queries to cache results for, capacity > 0
+     * @param timeout the number of seconds after which a cached result is fetched again, timeout > 0
+     * @param backend the search service, which returns a future of up to limit page titles for a query,
+     *                backend must not be null
+     */
+    SearchCache(int capacity, int timeout, BiFunction<String, Integer, CompletableFuture<List<String>>> backend) {
+        this.results = new FSFTBuffer<>(capacity, timeout);
+        this.backend = backend;
+        checkRep();
+    }
+
+    /**
+     * Normalize a query string, so that queries that the search service treats the same way are
+     * cached together.
+     * @param query the query string, query must not be null
+     * @return query with leading and trailing whitespace removed, every run of whitespace replaced
+     * by a single space, and every letter in lower case
+     */
+    static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get up to limit page titles that match a query, from the cache if possible.
+     * @param query the query string, query must not be null
+     * @param limit the maximum number of page titles to return, limit > 0
+     * @return a future of up to limit page titles that match query, in the order the search service returned
+     * them, which completes exceptionally if the search service fails to fetch the result
+     *
+     * Frame Condition:
+     * - if no cached result covers limit, the result fetched from the search service is cached,
+     *   replacing any result cached for the same normalized query
+     */
+    CompletableFuture<List<String>> search(String query, int limit) {
+        String key = normalize(query);
+
+        SearchResult cached = lookup(key, limit);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.top(limit));
+        }
+
+        CompletableFuture<SearchResult> fetch = new CompletableFuture<>();
+        CompletableFuture<SearchResult> running = inFlight.putIfAbsent(key, fetch);
+        if (running != null) {
+            return running.thenCompose(shared -> shared.covers(limit)
+                    ? CompletableFuture.completedFuture(shared.top(limit))
+                    : search(query, limit));
+        }
+
+        SearchResult result = lookup(key, limit);
+        if (result != null) {
+            inFlight.remove(key, fetch);
+            fetch.complete(result);
+            return CompletableFuture.completedFuture(result.top(limit));
+        }
+
+        CompletableFuture<List<String>> titles;
+        try {
+            titles = backend.apply(query, limit);
+        }
+        catch (RuntimeException e) {
+            titles = CompletableFuture.failedFuture(e);
+        }
+        titles.whenComplete((found, failure) -> {
+            inFlight.remove(key, fetch);
+            if (failure != null) {
+                fetch.completeExceptionally(failure);
+                return;
+            }
+            SearchResult fetched = new SearchResult(key, limit, found);
+            if (!results.update(fetched)) {
+                results.put(fetched);
+            }
+            fetch.complete(fetched);
+        });
+
+        checkRep();
+        return fetch.thenApply(fetched -> fetched.top(limit));
+    }
+
+    /**
+     * Helper method that gets the cached result for a normalized query if it covers a limit.
+     * @param key the normalized query, key must not be null
+     * @param limit the maximum number of page titles to return
+     * @return the cached result for key if there is one that has not timed out and covers limit,
+     * null otherwise
+     */
+    private SearchResult lookup(String key, int limit) {
+        try {
+            SearchResult cached = results.get(key);
+            return cached.covers(limit) ? cached : null;
+        }
+        catch (ObjectNotInCacheException e) {
+            return null;
+        }
+    }
+}
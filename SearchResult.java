@@ -0,0 +1,92 @@
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.fsftbuffer.Bufferable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A SearchResult is a data type that implements the Bufferable interface. It represents the page
+ * titles returned by Wikipedia's search service for a normalized query, when asked for up to a
+ * given number of titles.
+ *
+ * Abstraction Function:
+ * A SearchResult represents the first titles.size() page titles that Wikipedia's search service
+ * returned for the normalized query string query, when asked for up to limit page titles. If
+ * titles.size() < limit, titles holds every page title that matches query.
+ */
+class SearchResult implements Bufferable {
+    private final String query;
+    private final int limit;
+    private final List<String> titles;
+
+    /*
+     * Representation Invariant:
+     *  - query must not be null
+     *  - limit > 0
+     *  - titles must not be null, and titles.size() <= limit
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - SearchResult is immutable: all fields are private and final, and titles is an
+     *    unmodifiable copy that is never shared outside of this class
+     */
+
+    /**
+     * Check that the representation invariants for SearchResult hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (query == null || titles == null) {
+            throw new RuntimeException("query and titles must not be null");
+        }
+        if (limit <= 0 || titles.size() > limit) {
+            throw new RuntimeException("a SearchResult must hold at most limit > 0 titles");
+        }
+    }
+
+    /**
+     * Create a SearchResult from the page titles returned by Wikipedia's search service.
+     * @param query the normalized query string, query must not be null
+     * @param limit the maximum number of page titles that were asked for, limit > 0
+     * @param titles the page titles returned, in the order they were returned, titles must not be null;
+     *               only the first limit titles are kept
+     */
+    SearchResult(String query, int limit, List<String> titles) {
+        this.query = query;
+        this.limit = limit;
+        this.titles = Collections.unmodifiableList(
+                new ArrayList<>(titles.subList(0, Math.min(limit, titles.size()))));
+        checkRep();
+    }
+
+    /**
+     * Return the unique identifier of the SearchResult.
+     * @return The unique identifier of the SearchResult, which corresponds to its normalized query.
+     */
+    @Override
+    public String id() {
+        return query;
+    }
+
+    /**
+     * Check whether the SearchResult can answer a search with a given limit.
+     * @param limit the maximum number of page titles to return
+     * @return true if the SearchResult was asked for at least limit page titles, or holds every
+     * page title that matches its query; false otherwise
+     */
+    boolean covers(int limit) {
+        return this.limit >= limit || titles.size() < this.limit;
+    }
+
+    /**
+     * Get the first page titles of the SearchResult.
+     * @param limit the maximum number of page titles to return
+     * @return up to limit page titles, in the order Wikipedia's search service returned them
+     */
+    List<String> top(int limit) {
+        return new ArrayList<>(titles.subList(0, Math.max(0, Math.min(limit, titles.size()))));
+    }
+}
@@ -0,0 +1,191 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A SegmentIndex is a sparse time index over the records of one segment of a StatisticsLog. The
+ * records are divided into blocks of BLOCK_RECORDS consecutive records, and the index keeps the
+ * earliest and latest time in each block, so a range query only reads the blocks, and only opens
+ * the segments, whose times overlap the range. Records are mostly, but not strictly, in time order,
+ * so each block keeps both bounds instead of just its first time.
+ *
+ * Abstraction Function:
+ * A SegmentIndex represents the first records records of a segment. For 0 <= b < blocks, the records
+ * b * BLOCK_RECORDS up to, but not including, min(records, (b + 1) * BLOCK_RECORDS) were made at times
+ * between earliest[b] and latest[b], inclusive.
+ */
+class SegmentIndex {
+
+    /* the number of records summarized by each entry of the index */
+    static final int BLOCK_RECORDS = 1024;
+
+    private long[] earliest = new long[4];
+    private long[] latest = new long[4];
+    private int blocks = 0;
+    private int records = 0;
+
+    /*
+     * Representation Invariant:
+     *  - earliest and latest have the same length, which is at least blocks
+     *  - blocks == ceil(records / BLOCK_RECORDS)
+     *  - earliest[b] <= latest[b] for all 0 <= b < blocks
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - SegmentIndex is not threadsafe; every SegmentIndex is confined to a StatisticsLog that only
+     *    accesses it while holding its own lock, or to a copy made while holding that lock
+     */
+
+    /**
+     * Check that the representation invariants for SegmentIndex hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (earliest.length != latest.length || earliest.length < blocks) {
+            throw new RuntimeException("earliest and latest must have an entry for every block");
+        }
+        if (blocks != (records + BLOCK_RECORDS - 1) / BLOCK_RECORDS) {
+            throw new RuntimeException("there must be exactly one block per BLOCK_RECORDS records");
+        }
+    }
+
+    /**
+     * Index the next record of the segment.
+     * @param time the time, in seconds, of the record
+     */
+    void add(long time) {
+        if (records % BLOCK_RECORDS == 0) {
+            if (blocks == earliest.length) {
+                earliest = Arrays.copyOf(earliest, 2 * blocks);
+                latest = Arrays.copyOf(latest, 2 * blocks);
+            }
+            earliest[blocks] = time;
+            latest[blocks] = time;
+            blocks++;
+        }
+        else {
+            earliest[blocks - 1] = Math.min(earliest[blocks - 1], time);
+            latest[blocks - 1] = Math.max(latest[blocks - 1], time);
+        }
+        records++;
+    }
+
+    /**
+     * Get the number of indexed records.
+     * @return the number of records of the segment that are indexed
+     */
+    int records() {
+        return records;
+    }
+
+    /**
+     * Get the number of blocks.
+     * @return the number of blocks the indexed records are divided into
+     */
+    int blocks() {
+        return blocks;
+    }
+
+    /**
+     * Get the time of the earliest indexed record.
+     * @return the earliest time, in seconds, of any indexed record, or Long.MAX_VALUE if there is none
+     */
+    long earliest() {
+        long time = Long.MAX_VALUE;
+        for (int block = 0; block < blocks; block++) {
+            time = Math.min(time, earliest[block]);
+        }
+        return time;
+    }
+
+    /**
+     * Get the time of the latest indexed record.
+     * @return the latest time, in seconds, of any indexed record, or Long.MIN_VALUE if there is none
+     */
+    long latest() {
+        long time = Long.MIN_VALUE;
+        for (int block = 0; block < blocks; block++) {
+            time = Math.max(time, latest[block]);
+        }
+        return time;
+    }
+
+    /**
+     * Check whether any record of the segment may have been made in a range of time.
+     * @param since the earliest time, in seconds, of the range
+     * @param until the time, in seconds, at which the range ends
+     * @return true if some block may hold a record made in [since, until), false otherwise
+     */
+    boolean overlaps(long since, long until) {
+        for (int block = 0; block < blocks; block++) {
+            if (overlaps(block, since, until)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether any record of a block may have been made in a range of time.
+     * @param block the block to check, 0 <= block < blocks()
+     * @param since the earliest time, in seconds, of the range
+     * @param until the time, in seconds, at which the range ends
+     * @return true if the block may hold a record made in [since, until), false otherwise
+     */
+    boolean overlaps(int block, long since, long until) {
+        return latest[block] >= since && earliest[block] < until;
+    }
+
+    /**
+     * Copy the index.
+     * @return a SegmentIndex of the same records that shares no state with this one
+     */
+    SegmentIndex copy() {
+        SegmentIndex copy = new SegmentIndex();
+        copy.earliest = Arrays.copyOf(earliest, Math.max(4, blocks));
+        copy.latest = Arrays.copyOf(latest, Math.max(4, blocks));
+        copy.blocks = blocks;
+        copy.records = records;
+        return copy;
+    }
+
+    /**
+     * Write the index to an index file.
+     * @param out the index file to write to, out must not be null
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(records);
+        for (int block = 0; block < blocks; block++) {
+            out.writeLong(earliest[block]);
+            out.writeLong(latest[block]);
+        }
+    }
+
+    /**
+     * Create a SegmentIndex from an index written with writeTo.
+     * @param in the index file to read from, in must not be null
+     * @return a SegmentIndex of the same records as the written index
+     * @throws IOException if in cannot be read
+     */
+    static SegmentIndex readFrom(DataInput in) throws IOException {
+        SegmentIndex index = new SegmentIndex();
+        index.records = in.readInt();
+        if (index.records < 0) {
+            throw new IOException("a segment index cannot hold a negative number of records");
+        }
+        index.blocks = (index.records + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        index.earliest = new long[Math.max(4, index.blocks)];
+        index.latest = new long[Math.max(4, index.blocks)];
+        for (int block = 0; block < index.blocks; block++) {
+            index.earliest[block] = in.readLong();
+            index.latest[block] = in.readLong();
+        }
+        index.checkRep();
+        return index;
+    }
+}
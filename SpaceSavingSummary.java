@@ -0,0 +1,269 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A SpaceSavingSummary is a fixed-size summary of the most frequent Strings in a stream, using the
+ * Space-Saving algorithm. At most capacity Strings are tracked at a time. When an untracked String
+ * arrives and the summary is full, it replaces the tracked String with the smallest count and
+ * inherits that count as its error.
+ *
+ * For every tracked String, count - error <= true frequency <= count. Every String whose true
+ * frequency is greater than total() / capacity is tracked, and no untracked String has a true
+ * frequency greater than errorBound().
+ *
+ * Abstraction Function:
+ * A SpaceSavingSummary represents the map from each tracked String keys[s] to the pair
+ * (counts[s], errors[s]), for every slot s in slots.values(), summarizing a stream of total Strings.
+ * heap[0..size-1] is a binary min-heap of slots ordered by counts, and position[s] is the index of
+ * slot s in heap.
+ */
+class SpaceSavingSummary {
+    private final int capacity;
+    private final String[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final int[] heap;
+    private final int[] position;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int size = 0;
+    private long total = 0;
+
+    /*
+     * Representation Invariant:
+     *  - capacity > 0
+     *  - 0 <= size <= capacity and slots.size() == size
+     *  - keys[slots.get(k)] equals k for all keys k of slots
+     *  - heap[position[s]] == s for all 0 <= s < size
+     *  - counts[heap[i]] >= counts[heap[(i - 1) / 2]] for all 0 < i < size
+     *  - 0 <= errors[s] < counts[s] for all 0 <= s < size
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - SpaceSavingSummary is not threadsafe; every SpaceSavingSummary is confined to an object
+     *    that only accesses it while holding its own lock
+     */
+
+    /**
+     * Check that the representation invariants for SpaceSavingSummary hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (capacity <= 0) {
+            throw new RuntimeException("capacity should be > 0");
+        }
+        if (size > capacity || slots.size() != size) {
+            throw new RuntimeException("the summary must track exactly size <= capacity Strings");
+        }
+        if (size > 0 && counts[heap[0]] > counts[heap[size - 1]]) {
+            throw new RuntimeException("the root of the heap must hold the smallest count");
+        }
+    }
+
+    /**
+     * Create an empty SpaceSavingSummary.
+     * @param capacity the maximum number of Strings to track, capacity > 0
+     */
+    SpaceSavingSummary(int capacity) {
+        this.capacity = capacity;
+        keys = new String[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heap = new int[capacity];
+        position = new int[capacity];
+        checkRep();
+    }
+
+    /**
+     * Count one occurrence of a String.
+     * @param key the String that occurred, key must not be null
+     *
+     * Frame Condition:
+     * - if key is not tracked and the summary is full, the tracked String with the smallest
+     *   count is no longer tracked
+     */
+    void offer(String key) {
+        total++;
+        Integer slot = slots.get(key);
+
+        if (slot == null) {
+            if (size < capacity) {
+                slot = size;
+                heap[size] = slot;
+                position[slot] = size;
+                size++;
+                counts[slot] = 0;
+                errors[slot] = 0;
+            }
+            else {
+                slot = heap[0];
+                slots.remove(keys[slot]);
+                errors[slot] = counts[slot];
+            }
+            keys[slot] = key;
+            slots.put(key, slot);
+        }
+
+        counts[slot]++;
+        siftUp(position[slot]);
+        siftDown(position[slot]);
+    }
+
+    /**
+     * Get the number of Strings counted by this summary.
+     * @return the total number of calls to offer
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * Get the largest amount by which a count reported by this summary may exceed the true
+     * frequency, which is also the largest possible frequency of an untracked String.
+     * @return the smallest tracked count if the summary is full, or 0 otherwise
+     */
+    long errorBound() {
+        return size == capacity ? counts[heap[0]] : 0;
+    }
+
+    /**
+     * Get the tracked Strings, each mapped to its estimated count.
+     * @return a map from every tracked String to its count, iterated in the order the
+     * Strings were first tracked in their current slots
+     */
+    Map<String, Long> estimates() {
+        Map<String, Long> estimates = new LinkedHashMap<>();
+        for (int slot = 0; slot < size; slot++) {
+            estimates.put(keys[slot], counts[slot]);
+        }
+        checkRep();
+        return estimates;
+    }
+
+    /**
+     * Get the tracked Strings.
+     * @return the set of Strings currently tracked by the summary
+     */
+    Set<String> keys() {
+        return Collections.unmodifiableSet(slots.keySet());
+    }
+
+    /**
+     * Get the maximum number of Strings tracked by this summary.
+     * @return the capacity of this summary
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Write the tracked Strings, their counts and errors, and the total to a snapshot.
+     * @param out the snapshot to write to, out must not be null
+     * @throws IOException if out cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(total);
+        out.writeInt(size);
+        for (int slot = 0; slot < size; slot++) {
+            QueryDictionary.writeString(out, keys[slot]);
+            out.writeLong(counts[slot]);
+            out.writeLong(errors[slot]);
+        }
+    }
+
+    /**
+     * Replace the contents of this summary with a summary of the same capacity written with writeTo.
+     * @param in the snapshot to read from, in must not be null
+     * @throws IOException if in cannot be read, or the written summary tracked more than capacity Strings
+     */
+    void readFrom(DataInput in) throws IOException {
+        clear();
+        total = in.readLong();
+        int count = in.readInt();
+        if (count > capacity) {
+            throw new IOException("a summary of " + count + " Strings does not fit in capacity " + capacity);
+        }
+
+        for (int slot = 0; slot < count; slot++) {
+            keys[slot] = QueryDictionary.readString(in);
+            counts[slot] = in.readLong();
+            errors[slot] = in.readLong();
+            slots.put(keys[slot], slot);
+            heap[slot] = slot;
+            position[slot] = slot;
+            size++;
+            siftUp(slot);
+        }
+        checkRep();
+    }
+
+    /**
+     * Forget every String counted by this summary.
+     *
+     * Frame Condition:
+     * - the summary is empty and total() == 0
+     */
+    void clear() {
+        slots.clear();
+        Arrays.fill(keys, null);
+        size = 0;
+        total = 0;
+    }
+
+    /**
+     * Restore the heap order by moving the slot at a heap index towards the root.
+     * @param index the heap index of a slot that may have a smaller count than its parent
+     */
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (counts[heap[parent]] <= counts[heap[index]]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    /**
+     * Restore the heap order by moving the slot at a heap index towards the leaves.
+     * @param index the heap index of a slot whose count may have increased
+     */
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            int right = left + 1;
+            int smallest = index;
+
+            if (left < size && counts[heap[left]] < counts[heap[smallest]]) {
+                smallest = left;
+            }
+            if (right < size && counts[heap[right]] < counts[heap[smallest]]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    /**
+     * Swap two slots in the heap.
+     * @param first the heap index of one slot
+     * @param second the heap index of the other slot
+     */
+    private void swap(int first, int second) {
+        int swapped = heap[first];
+        heap[first] = heap[second];
+        heap[second] = swapped;
+        position[heap[first]] = first;
+        position[heap[second]] = second;
+    }
+}
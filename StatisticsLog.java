@@ -0,0 +1,1051 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * A StatisticsLog makes the request statistics of a WikiMediator survive restarts. Every request
+ * event is appended to a compact binary log in a directory, and snapshots of the aggregated
+ * statistics are written next to it from time to time, so that a restart only loads the latest
+ * snapshot and replays the events logged after it.
+ *
+ * The log is split into numbered segments of fixed-size records of an op type, the time of the
+ * request in seconds and the ID of the query String it used, or -1 if it used none. The query
+ * Strings are dictionary-encoded: the first time a String is logged, it is appended to a separate
+ * dictionary file, and the i-th String in the dictionary file has ID i.
+ *
+ * Snapshot n holds the statistics after every event in the segments numbered below n. Taking a
+ * snapshot starts segment n, and once the snapshot has been written to a temporary file, forced to
+ * disk and atomically renamed, the older snapshots are deleted. If a crash interrupts any of these
+ * steps, the previous snapshot and the segments after it are still complete.
+ *
+ * The segments older than the latest snapshot are no longer replayed, but are kept as the archive
+ * of requests, which scan reads to answer range queries over past periods. Once every record of
+ * such a segment is more than archiveRetention seconds older than the latest logged request, the
+ * segment and its index file are deleted, and scan reports that it can no longer answer a range
+ * that starts before archivedBefore. Each segment has a SegmentIndex, a sparse index of the times
+ * of its records, which is kept in memory and written next to the segment once the segment is
+ * finished, so a range query only reads the parts of the segments that overlap the range.
+ *
+ * Appending a record or taking a snapshot only encodes it into memory. A group-commit thread writes
+ * everything pending to disk and forces it to the storage device once every durability window, so
+ * a crash loses at most the requests made in the last durability window, and appending never waits
+ * for the disk. A record or dictionary entry that was only partly written before a crash is ignored
+ * and overwritten when the log is next opened. If a commit fails, whatever it wrote is cut off, and
+ * everything it took out is put back in front of the pending events for the next commit to write.
+ *
+ * A StatisticsLog is opened in two phases. Creating it reads the dictionary and memory-maps the
+ * latest complete snapshot, which the caller reads with snapshot(). The caller then calls replay(),
+ * which passes every event logged after that snapshot to the caller and starts a new segment.
+ *
+ * Abstraction Function:
+ * A StatisticsLog represents the state in the snapshot numbered replayFrom, or no state if there is
+ * no such snapshot, followed by the events in the segments numbered replayFrom or above, followed by
+ * the events encoded in rotatedRecords, if it is not null, and then pendingRecords. A record with
+ * query ID id refers to the query String dictionary.lookup(id); the Strings with IDs from
+ * persistedQueries to dictionary.size() - 1 are encoded in pendingQueries and are not yet in the
+ * dictionary file. If pendingSnapshot is not null, it is the state after every event up to the end of
+ * rotatedRecords, and is yet to be written as the snapshot numbered segment.
+ * indexes maps the number of each segment to the index of its records, including the records that
+ * are not yet written; current is the index of the segment numbered segment, which is appended to.
+ * committingRecords and committingRotated, if they are not null, are the records of the segments numbered
+ * committingSegment and committingSegment - 1 that commit has taken out of pendingRecords and
+ * rotatedRecords but may not have written yet. latestTime is the latest time of any logged event, and every
+ * event made before archivedBefore may have been deleted.
+ */
+class StatisticsLog {
+
+    /* the name of the dictionary file */
+    static final String DICTIONARY_FILE = "queries.dict";
+
+    /* the name of the log file written before the log was split into segments */
+    private static final String LEGACY_LOG_FILE = "statistics.log";
+
+    /* the names of segment files, which contain the number of the segment */
+    private static final Pattern SEGMENT_NAME = Pattern.compile("statistics-(\\d+)\\.log");
+
+    /* the names of the index files of finished segments, which contain the number of the segment */
+    private static final String INDEX_NAME = "statistics-%010d.idx";
+
+    /* the names of snapshot files, which contain the number of the first segment they do not cover */
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    /* the first four bytes of every snapshot file, "WMS1" */
+    private static final int SNAPSHOT_MAGIC = 0x574D5331;
+
+    /* the size, in bytes, of the header of a snapshot file: magic, number and state length */
+    private static final int SNAPSHOT_HEADER = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    /* the op type of a request that did not use a query String */
+    private static final byte REQUEST = 0;
+
+    /* the op type of a search or getPage request */
+    private static final byte SEARCH = 1;
+
+    /* the size, in bytes, of a record: an op type, a time and a query ID */
+    private static final int RECORD_SIZE = Byte.BYTES + Long.BYTES + Integer.BYTES;
+
+    /* the initial size, in bytes, of the buffers of pending records and dictionary entries */
+    private static final int INITIAL_BUFFER = 64 * RECORD_SIZE;
+
+    private final Path directory;
+    private final long durabilityMillis;
+    private final QueryDictionary dictionary = new QueryDictionary();
+    private final FileChannel queries;
+    private final Object commitLock = new Object();
+    private final long replayFrom;
+    private final int archiveRetention;
+    private final Map<Long, SegmentIndex> indexes = new TreeMap<>();
+    private ByteBuffer snapshotState;
+    private SegmentIndex current = null;
+    private FileChannel log = null;
+    private Thread committer = null;
+    private long segment;
+    private ByteBuffer pendingRecords = ByteBuffer.allocate(INITIAL_BUFFER);
+    private ByteBuffer pendingQueries = ByteBuffer.allocate(INITIAL_BUFFER);
+    private ByteBuffer rotatedRecords = null;
+    private byte[] pendingSnapshot = null;
+    private int persistedQueries;
+    private boolean closed = false;
+    private long committingSegment = 0;
+    private ByteBuffer committingRecords = null;
+    private ByteBuffer committingRotated = null;
+    private long latestTime = Long.MIN_VALUE;
+    private long archivedBefore = Long.MIN_VALUE;
+
+    /*
+     * Representation Invariant:
+     *  - directory and queries must not be null
+     *  - durabilityMillis > 0 and archiveRetention > 0
+     *  - 0 <= replayFrom <= segment
+     *  - log and committer are null before replay() is called, and not null afterwards
+     *  - 0 <= persistedQueries <= dictionary.size()
+     *  - pendingRecords holds a whole number of records
+     *  - rotatedRecords is null if and only if pendingSnapshot is null
+     *  - current is null before replay() is called, and indexes.get(segment) afterwards
+     *  - committingRotated is null if committingRecords is null
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - directory, durabilityMillis, dictionary, queries, commitLock, replayFrom and archiveRetention are
+     *    private and final, and dictionary is threadsafe
+     *  - snapshotState is only accessed before replay() starts the group-commit thread
+     *  - committer, segment, pendingRecords, pendingQueries, rotatedRecords, pendingSnapshot,
+     *    persistedQueries, closed, indexes, current, committingSegment, committingRecords, committingRotated,
+     *    latestTime and archivedBefore are only accessed while holding the lock of the StatisticsLog, except
+     *    that the index of a finished segment, which no longer changes, is written to disk without it
+     *  - a finished segment is never written again, and scan copies, while holding the lock of the
+     *    StatisticsLog, the records that are not yet known to be written, so it reads only the prefix of each
+     *    segment that was already on disk, without any lock and without waiting for commit
+     *  - committingRecords and committingRotated are never modified while they are set, so scan can copy
+     *    them while commit writes them
+     *  - log and queries are only written by commit, which is synchronized on commitLock so that pending
+     *    events are written in the order they were appended, without holding the lock of the StatisticsLog
+     *    while waiting for the disk; log is only replaced while holding commitLock
+     *  - the group-commit thread waits on the lock of the StatisticsLog, and close wakes it
+     *  - the lock of the StatisticsLog is a monitor rather than a ReentrantLock because it is never held while
+     *    reading or writing the disk: append and snapshot are only called from the consumer thread of
+     *    statistics, and scan, the only method a request thread calls, only holds it while copying the records
+     *    in memory, so a virtual thread never pins its carrier thread for longer than that copy
+     */
+
+    /**
+     * Check that the representation invariants for StatisticsLog hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private synchronized void checkRep() {
+        if (directory == null || queries == null) {
+            throw new RuntimeException("directory and queries must not be null");
+        }
+        if (durabilityMillis <= 0 || archiveRetention <= 0) {
+            throw new RuntimeException("durabilityMillis and archiveRetention should be > 0");
+        }
+        if (replayFrom < 0 || segment < replayFrom) {
+            throw new RuntimeException("the current segment must not be older than the latest snapshot");
+        }
+        if ((log == null) != (committer == null)) {
+            throw new RuntimeException("log and committer must be created together");
+        }
+        if (persistedQueries < 0 || persistedQueries > dictionary.size()) {
+            throw new RuntimeException("persistedQueries must be between 0 and the size of the dictionary");
+        }
+        if (pendingRecords.position() % RECORD_SIZE != 0) {
+            throw new RuntimeException("pendingRecords must hold a whole number of records");
+        }
+        if ((rotatedRecords == null) != (pendingSnapshot == null)) {
+            throw new RuntimeException("a finished segment must be pending exactly when a snapshot is pending");
+        }
+        if (log != null && current != indexes.get(segment)) {
+            throw new RuntimeException("current must be the index of the segment being appended to");
+        }
+        if (committingRecords == null && committingRotated != null) {
+            throw new RuntimeException("a finished segment can only be committed together with pending records");
+        }
+    }
+
+    /**
+     * Open the log in a directory and find its latest complete snapshot. The directory is created if
+     * it does not exist.
+     * @param directory the directory holding the log, directory must not be null
+     * @param durabilityMillis the longest time, in milliseconds, that an appended event waits before it
+     *                         is forced to disk, durabilityMillis > 0
+     * @param archiveRetention the time, in seconds, that events are kept once a snapshot covers them,
+     *                         counted back from the latest logged event, archiveRetention > 0
+     * @throws IOException if the directory cannot be read or written
+     *
+     * Frame Condition:
+     * - the segments that the latest complete snapshot covers and that are older than archiveRetention
+     *   are deleted, together with their index files
+     */
+    StatisticsLog(Path directory, int durabilityMillis, int archiveRetention) throws IOException {
+        this.directory = directory;
+        this.durabilityMillis = durabilityMillis;
+        this.archiveRetention = archiveRetention;
+        Files.createDirectories(directory);
+
+        Path legacy = directory.resolve(LEGACY_LOG_FILE);
+        if (Files.exists(legacy) && numbered(SEGMENT_NAME).isEmpty()) {
+            Files.move(legacy, segmentFile(0), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        long dictionaryLength = readDictionary(directory.resolve(DICTIONARY_FILE));
+        persistedQueries = dictionary.size();
+        queries = openForAppend(directory.resolve(DICTIONARY_FILE), dictionaryLength);
+
+        List<Long> snapshots = numbered(SNAPSHOT_NAME);
+        long latest = 0;
+        for (int i = snapshots.size() - 1; i >= 0 && snapshotState == null; i--) {
+            snapshotState = mapSnapshot(snapshots.get(i));
+            latest = snapshots.get(i);
+        }
+        replayFrom = snapshotState == null ? 0 : latest;
+        segment = replayFrom;
+
+        List<Long> segments = numbered(SEGMENT_NAME);
+        for (long number : segments) {
+            if (number < replayFrom) {
+                SegmentIndex index = loadIndex(number);
+                indexes.put(number, index);
+                latestTime = Math.max(latestTime, index.latest());
+            }
+        }
+
+        /* segments are numbered from 0, so a log without segment 0 has had segments deleted */
+        if (!segments.isEmpty() && segments.get(0) > 0) {
+            archivedBefore = Long.MAX_VALUE;
+            for (SegmentIndex index : indexes.values()) {
+                archivedBefore = Math.min(archivedBefore, index.earliest());
+            }
+        }
+        deleteArchiveBefore(replayFrom);
+        checkRep();
+    }
+
+    /**
+     * Get the state in the latest complete snapshot, read through a read-only memory mapping of the
+     * snapshot file. Must be called before replay().
+     * @return an input holding the state passed to snapshot(byte[]) when the latest complete snapshot
+     * was taken, or null if the log has no complete snapshot
+     */
+    DataInputStream snapshot() {
+        if (snapshotState == null) {
+            return null;
+        }
+        return new DataInputStream(new ByteBufferInputStream(snapshotState.duplicate()));
+    }
+
+    /**
+     * Pass every event logged after the latest complete snapshot to a receiver, then start a new segment
+     * to append to and start the group-commit thread. Must be called exactly once.
+     * @param receiver receives every event logged after the latest complete snapshot, in the order it
+     *                 was logged, before this method returns; receiver must not be null
+     * @throws IOException if a segment cannot be read, or the new segment cannot be created
+     */
+    void replay(EventReceiver receiver) throws IOException {
+        snapshotState = null;
+        long next = replayFrom;
+        for (long number : numbered(SEGMENT_NAME)) {
+            if (number >= replayFrom) {
+                SegmentIndex index = new SegmentIndex();
+                replaySegment(segmentFile(number), (query, time) -> {
+                    index.add(time);
+                    receiver.receive(query, time);
+                });
+                writeIndex(number, index);
+                synchronized (this) {
+                    indexes.put(number, index);
+                    latestTime = Math.max(latestTime, index.latest());
+                    if (archivedBefore == Long.MAX_VALUE) {
+                        archivedBefore = index.earliest();
+                    }
+                }
+                next = number + 1;
+            }
+        }
+
+        synchronized (this) {
+            segment = next;
+            log = openSegment(segment);
+            current = new SegmentIndex();
+            indexes.put(segment, current);
+            committer = new Thread(this::commitPeriodically, "wikimediator-statistics-log");
+            committer.setDaemon(true);
+            checkRep();
+            committer.start();
+        }
+    }
+
+    /**
+     * Append a request event to the log. Only encodes the event into memory; it is written to disk
+     * by the group-commit thread within the durability window.
+     * @param query the String used by the request, or null if the request did not use one
+     * @param time the time, in seconds, at which the request was made
+     */
+    synchronized void append(String query, long time) {
+        if (closed) {
+            return;
+        }
+
+        int id = -1;
+        if (query != null) {
+            int known = dictionary.size();
+            id = dictionary.intern(query);
+            if (id == known) {
+                byte[] bytes = query.getBytes(StandardCharsets.UTF_8);
+                pendingQueries = ensureCapacity(pendingQueries, Integer.BYTES + bytes.length);
+                pendingQueries.putInt(bytes.length).put(bytes);
+            }
+        }
+
+        pendingRecords = ensureCapacity(pendingRecords, RECORD_SIZE);
+        pendingRecords.put(query == null ? REQUEST : SEARCH).putLong(time).putInt(id);
+        if (current != null) {
+            current.add(time);
+        }
+        latestTime = Math.max(latestTime, time);
+        if (archivedBefore == Long.MAX_VALUE) {
+            archivedBefore = time;
+        }
+    }
+
+    /**
+     * Take a snapshot of the state after every event appended so far. Only keeps the snapshot in
+     * memory; the group-commit thread writes it to disk within the durability window and then deletes
+     * the snapshots it replaces, and the segments it covers that are older than the archive retention.
+     * @param state the encoded state after every event appended so far, state must not be null
+     * @return true if the snapshot was taken, or false if the log is closed, the previous snapshot
+     * has not been written yet, or pending events are being written
+     *
+     * Frame Condition:
+     * - if the snapshot was taken, events appended after this call are logged in a new segment
+     */
+    synchronized boolean snapshot(byte[] state) {
+        if (closed || log == null || pendingSnapshot != null || committingRecords != null) {
+            return false;
+        }
+        rotatedRecords = pendingRecords;
+        pendingRecords = ByteBuffer.allocate(INITIAL_BUFFER);
+        pendingSnapshot = state;
+        segment++;
+        current = new SegmentIndex();
+        indexes.put(segment, current);
+        checkRep();
+        return true;
+    }
+
+    /**
+     * Write every pending event and snapshot to disk and force them to the storage device.
+     * @throws IOException if the log cannot be written
+     */
+    void commit() throws IOException {
+        synchronized (commitLock) {
+            ByteBuffer records;
+            ByteBuffer newQueries;
+            ByteBuffer rotated;
+            byte[] state;
+            long number;
+            SegmentIndex finished;
+            int committedQueries;
+            synchronized (this) {
+                if (pendingRecords.position() == 0 && pendingQueries.position() == 0 && pendingSnapshot == null) {
+                    return;
+                }
+                records = pendingRecords.flip();
+                newQueries = pendingQueries.flip();
+                rotated = rotatedRecords == null ? null : rotatedRecords.flip();
+                state = pendingSnapshot;
+                number = segment;
+                finished = rotated == null ? null : indexes.get(number - 1);
+                pendingRecords = ByteBuffer.allocate(Math.max(INITIAL_BUFFER, records.capacity()));
+                pendingQueries = ByteBuffer.allocate(Math.max(INITIAL_BUFFER, newQueries.capacity()));
+                rotatedRecords = null;
+                pendingSnapshot = null;
+                committedQueries = dictionary.size();
+                committingSegment = number;
+                committingRecords = records;
+                committingRotated = rotated;
+            }
+
+            long queriesLength = queries.position();
+            long logLength = log.position();
+            boolean queriesWritten = false;
+            boolean rotatedWritten = false;
+            boolean rotatedDone = false;
+            IOException failure = null;
+            try {
+                /* a record must never reach the disk before the dictionary entry of its query */
+                writeFully(queries, newQueries);
+                queriesWritten = true;
+                synchronized (this) {
+                    persistedQueries = committedQueries;
+                }
+                if (rotated != null) {
+                    writeFully(log, rotated);
+                    rotatedWritten = true;
+                    FileChannel next = openSegment(number);
+                    try {
+                        writeIndex(number - 1, finished);
+                    }
+                    catch (IOException e) {
+                        next.close();
+                        throw e;
+                    }
+                    FileChannel previous = log;
+                    log = next;
+                    logLength = next.position();
+                    rotatedDone = true;
+                    previous.close();
+                }
+                writeFully(log, records);
+            }
+            catch (IOException e) {
+                /* cut off the part of the failed write that reached the disk, so the retry is written in its place */
+                failure = e;
+                if (!queriesWritten) {
+                    rewind(queries, queriesLength, failure);
+                }
+                if (!rotatedWritten || rotatedDone) {
+                    rewind(log, logLength, failure);
+                }
+            }
+
+            synchronized (this) {
+                committingRecords = null;
+                committingRotated = null;
+                if (failure != null) {
+                    /* nothing is taken as persisted until it is on disk, so the next commit writes it again */
+                    if (!queriesWritten) {
+                        pendingQueries = prepend(newQueries, pendingQueries);
+                    }
+                    pendingRecords = prepend(records, pendingRecords);
+                    if (state != null) {
+                        ByteBuffer empty = ByteBuffer.allocate(INITIAL_BUFFER);
+                        rotatedRecords = rotatedWritten ? empty : prepend(rotated, empty);
+                        pendingSnapshot = state;
+                    }
+                    checkRep();
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+
+            /* the replaced snapshots are only deleted once the snapshot that covers them is on disk */
+            if (state != null) {
+                writeSnapshot(number, state);
+                deleteSnapshotsBefore(number);
+                deleteArchiveBefore(number);
+            }
+        }
+    }
+
+    /**
+     * Write every pending event and snapshot to disk and close the log. Events appended and snapshots
+     * taken after the log is closed are ignored.
+     * @throws IOException if the log cannot be written
+     */
+    void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        commit();
+        synchronized (commitLock) {
+            if (log != null) {
+                log.close();
+                long number;
+                SegmentIndex finished;
+                synchronized (this) {
+                    number = segment;
+                    finished = current;
+                }
+                writeIndex(number, finished);
+            }
+            queries.close();
+        }
+    }
+
+    /**
+     * Pass every logged event made in a range of time to a receiver, including the events that are
+     * not yet written, which are read from memory. Only the segments, and the blocks of them, whose
+     * index overlaps the range are read, and only the part of each segment that is already on disk.
+     * @param since the earliest time, in seconds, of an event to pass
+     * @param until the time, in seconds, before which events are passed
+     * @param receiver receives every logged event made in [since, until), in the order of the segments
+     *                 and of the records within each segment; receiver must not be null
+     * @return true if every event made in [since, until) was passed to receiver, or false if some of them
+     * may have been deleted after the archive retention period, in which case the events passed, if any,
+     * are incomplete
+     * @throws IOException if a segment cannot be read
+     */
+    boolean scan(long since, long until, EventReceiver receiver) throws IOException {
+        Map<Long, SegmentIndex> overlapping = new TreeMap<>();
+        Map<Long, List<ByteBuffer>> unwritten = new TreeMap<>();
+        synchronized (this) {
+            if (since < archivedBefore) {
+                return false;
+            }
+            for (Map.Entry<Long, SegmentIndex> entry : indexes.entrySet()) {
+                if (entry.getValue().overlaps(since, until)) {
+                    overlapping.put(entry.getKey(), entry.getValue().copy());
+                }
+            }
+            if (committingRecords != null) {
+                copyRecords(unwritten, committingSegment - 1, committingRotated, 0,
+                        committingRotated == null ? 0 : committingRotated.limit());
+                copyRecords(unwritten, committingSegment, committingRecords, 0, committingRecords.limit());
+            }
+            if (rotatedRecords != null) {
+                copyRecords(unwritten, segment - 1, rotatedRecords, 0, rotatedRecords.position());
+            }
+            copyRecords(unwritten, segment, pendingRecords, 0, pendingRecords.position());
+        }
+
+        for (Map.Entry<Long, SegmentIndex> entry : overlapping.entrySet()) {
+            List<ByteBuffer> inMemory = unwritten.getOrDefault(entry.getKey(), List.of());
+            int onDisk = entry.getValue().records();
+            for (ByteBuffer records : inMemory) {
+                onDisk -= records.remaining() / RECORD_SIZE;
+            }
+
+            if (onDisk > 0) {
+                try {
+                    scanSegment(segmentFile(entry.getKey()), entry.getValue(), onDisk, since, until, receiver);
+                }
+                catch (NoSuchFileException e) {
+                    // the segment expired from the archive after its index was copied
+                    return false;
+                }
+            }
+            for (ByteBuffer records : inMemory) {
+                receiveRecords(records, since, until, receiver);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Commit pending events once every durability window until the log is closed.
+     */
+    private void commitPeriodically() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (!closed) {
+                        wait(durabilityMillis);
+                    }
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+
+            try {
+                commit();
+            }
+            catch (IOException e) {
+                System.err.println("Could not write statistics to " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read the dictionary file into dictionary.
+     * @param file the dictionary file
+     * @return the length, in bytes, of the complete entries in the file
+     * @throws IOException if the file exists but cannot be read
+     */
+    private long readDictionary(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        long length = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int size = in.readInt();
+                byte[] bytes = new byte[size];
+                in.readFully(bytes);
+                dictionary.intern(new String(bytes, StandardCharsets.UTF_8));
+                length += Integer.BYTES + size;
+            }
+        }
+        catch (EOFException e) {
+            return length;
+        }
+    }
+
+    /**
+     * Pass every complete record of a segment to a receiver.
+     * @param file the segment file
+     * @param receiver receives every complete record, in order
+     * @throws IOException if the file cannot be read
+     */
+    private void replaySegment(Path file, EventReceiver receiver) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte op = in.readByte();
+                long time = in.readLong();
+                int id = in.readInt();
+
+                if (op == SEARCH && id >= 0 && id < dictionary.size()) {
+                    receiver.receive(dictionary.lookup(id), time);
+                }
+                else {
+                    receiver.receive(null, time);
+                }
+            }
+        }
+        catch (EOFException e) {
+            /* the end of the segment, or a record that was only partly written */
+        }
+    }
+
+    /**
+     * Pass the events of a segment made in a range of time to a receiver, reading only the blocks
+     * whose index overlaps the range.
+     * @param file the segment file
+     * @param index the index of the records of the segment to read
+     * @param onDisk the number of records at the start of the segment that are on disk,
+     *               0 < onDisk <= index.records()
+     * @param since the earliest time, in seconds, of an event to pass
+     * @param until the time, in seconds, before which events are passed
+     * @param receiver receives every event of the first onDisk records of the segment made in [since, until),
+     *                 in order
+     * @throws IOException if the segment cannot be read
+     */
+    private void scanSegment(Path file, SegmentIndex index, int onDisk, long since, long until,
+                             EventReceiver receiver) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer block = ByteBuffer.allocate(SegmentIndex.BLOCK_RECORDS * RECORD_SIZE);
+            for (int b = 0; (long) b * SegmentIndex.BLOCK_RECORDS < onDisk; b++) {
+                if (!index.overlaps(b, since, until)) {
+                    continue;
+                }
+
+                long first = (long) b * SegmentIndex.BLOCK_RECORDS;
+                int records = (int) Math.min(SegmentIndex.BLOCK_RECORDS, onDisk - first);
+                block.clear().limit(records * RECORD_SIZE);
+                while (block.hasRemaining()) {
+                    if (channel.read(block, first * RECORD_SIZE + block.position()) < 0) {
+                        break;
+                    }
+                }
+                block.flip();
+                receiveRecords(block, since, until, receiver);
+            }
+        }
+    }
+
+    /**
+     * Pass the events of encoded records made in a range of time to a receiver.
+     * @param records the encoded records, from its position to its limit
+     * @param since the earliest time, in seconds, of an event to pass
+     * @param until the time, in seconds, before which events are passed
+     * @param receiver receives every event of records made in [since, until), in order
+     *
+     * Frame Condition:
+     * - the position of records is moved past every complete record
+     */
+    private void receiveRecords(ByteBuffer records, long since, long until, EventReceiver receiver) {
+        while (records.remaining() >= RECORD_SIZE) {
+            byte op = records.get();
+            long time = records.getLong();
+            int id = records.getInt();
+            if (time < since || time >= until) {
+                continue;
+            }
+
+            if (op == SEARCH && id >= 0 && id < dictionary.size()) {
+                receiver.receive(dictionary.lookup(id), time);
+            }
+            else {
+                receiver.receive(null, time);
+            }
+        }
+    }
+
+    /**
+     * Copy encoded records that are not yet known to be on disk, to be read by scan. Must be called while
+     * holding the lock of the StatisticsLog.
+     * @param unwritten maps the number of each segment to copies of its records that are not yet on disk,
+     *                  in the order they were appended
+     * @param number the number of the segment that the records belong to
+     * @param records the buffer holding the records, or null if there are none
+     * @param start the index in records of the first byte of the first record
+     * @param end the index in records after the last byte of the last record
+     *
+     * Frame Condition:
+     * - if there are any records, a copy of them is added to the end of the list of segment number
+     */
+    private static void copyRecords(Map<Long, List<ByteBuffer>> unwritten, long number, ByteBuffer records,
+                                    int start, int end) {
+        if (records == null || end <= start) {
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(end - start);
+        copy.put(records.duplicate().clear().position(start).limit(end)).flip();
+        unwritten.computeIfAbsent(number, key -> new ArrayList<>()).add(copy);
+    }
+
+    /**
+     * Delete the segments that a complete snapshot covers and whose every record is more than
+     * archiveRetention seconds older than the latest logged event, together with their index files.
+     * @param covered the number of a snapshot that is complete on disk
+     * @throws IOException if a file cannot be deleted
+     *
+     * Frame Condition:
+     * - the deleted segments are removed from indexes, and archivedBefore is moved past them
+     */
+    private void deleteArchiveBefore(long covered) throws IOException {
+        List<Long> expired = new ArrayList<>();
+        synchronized (this) {
+            if (latestTime == Long.MIN_VALUE) {
+                return;
+            }
+            long cutoff = latestTime - archiveRetention;
+            for (Map.Entry<Long, SegmentIndex> entry : indexes.entrySet()) {
+                long latest = entry.getValue().latest();
+                if (entry.getKey() < covered && latest < cutoff) {
+                    expired.add(entry.getKey());
+                    if (latest != Long.MIN_VALUE) {
+                        archivedBefore = Math.max(archivedBefore, latest + 1);
+                    }
+                }
+            }
+            indexes.keySet().removeAll(expired);
+        }
+
+        for (long number : expired) {
+            Files.deleteIfExists(segmentFile(number));
+            Files.deleteIfExists(indexFile(number));
+        }
+    }
+
+    /**
+     * Get the index of a finished segment from its index file, or rebuild it from the segment and
+     * write its index file if the index file is missing or does not match the segment.
+     * @param number the number of the segment
+     * @return the index of every complete record of the segment
+     * @throws IOException if the segment cannot be read or its index file cannot be written
+     */
+    private SegmentIndex loadIndex(long number) throws IOException {
+        long records = Files.size(segmentFile(number)) / RECORD_SIZE;
+        Path file = indexFile(number);
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                SegmentIndex index = SegmentIndex.readFrom(in);
+                if (index.records() == records) {
+                    return index;
+                }
+            }
+            catch (IOException e) {
+                /* an index file that was only partly written is rebuilt below */
+            }
+        }
+
+        SegmentIndex index = new SegmentIndex();
+        replaySegment(segmentFile(number), (query, time) -> index.add(time));
+        writeIndex(number, index);
+        return index;
+    }
+
+    /**
+     * Write the index file of a finished segment.
+     * @param number the number of the segment
+     * @param index the index of every record of the segment, index must not be null
+     * @throws IOException if the index file cannot be written
+     */
+    private void writeIndex(long number, SegmentIndex index) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexFile(number))))) {
+            index.writeTo(out);
+        }
+    }
+
+    /**
+     * Map a snapshot file into memory and check that it is complete.
+     * @param number the number of the snapshot
+     * @return a read-only view of the state in the snapshot, or null if the snapshot is incomplete
+     * or damaged
+     * @throws IOException if the snapshot file cannot be read
+     */
+    private ByteBuffer mapSnapshot(long number) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile(number), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < SNAPSHOT_HEADER + Long.BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int length = file.getInt(Integer.BYTES + Long.BYTES);
+            if (file.getInt(0) != SNAPSHOT_MAGIC || file.getLong(Integer.BYTES) != number
+                    || (long) SNAPSHOT_HEADER + length + Long.BYTES != size) {
+                return null;
+            }
+
+            ByteBuffer state = file.duplicate();
+            state.position(SNAPSHOT_HEADER).limit(SNAPSHOT_HEADER + length);
+            state = state.slice();
+
+            CRC32 checksum = new CRC32();
+            checksum.update(state.duplicate());
+            if (checksum.getValue() != file.getLong(SNAPSHOT_HEADER + length)) {
+                return null;
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Write a snapshot file atomically: the snapshot is written to a temporary file, forced to disk and
+     * renamed over the snapshot file, so that a snapshot file is either complete or absent.
+     * @param number the number of the snapshot
+     * @param state the encoded state of the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    private void writeSnapshot(long number, byte[] state) throws IOException {
+        CRC32 checksum = new CRC32();
+        checksum.update(state);
+
+        ByteBuffer contents = ByteBuffer.allocate(SNAPSHOT_HEADER + state.length + Long.BYTES);
+        contents.putInt(SNAPSHOT_MAGIC).putLong(number).putInt(state.length).put(state).putLong(checksum.getValue());
+        contents.flip();
+
+        Path snapshot = snapshotFile(number);
+        Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, contents);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Delete every snapshot that a snapshot replaces.
+     * @param number the number of a snapshot that is complete on disk
+     * @throws IOException if the directory cannot be read or a file cannot be deleted
+     */
+    private void deleteSnapshotsBefore(long number) throws IOException {
+        for (long older : numbered(SNAPSHOT_NAME)) {
+            if (older < number) {
+                Files.deleteIfExists(snapshotFile(older));
+            }
+        }
+    }
+
+    /**
+     * Open a segment for appending after its last complete record, creating it if it does not exist.
+     * @param number the number of the segment
+     * @return a channel that appends to the segment
+     * @throws IOException if the segment cannot be opened
+     */
+    private FileChannel openSegment(long number) throws IOException {
+        Path file = segmentFile(number);
+        long length = Files.exists(file) ? Files.size(file) : 0;
+        return openForAppend(file, length - length % RECORD_SIZE);
+    }
+
+    /**
+     * Get the numbers of the files in the directory whose names match a pattern.
+     * @param name a pattern whose first group is the number in the name of a file
+     * @return the numbers of the matching files, in increasing order
+     * @throws IOException if the directory cannot be read
+     */
+    private List<Long> numbered(Pattern name) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = name.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Get the path of a segment file.
+     * @param number the number of the segment
+     * @return the path of the segment file in the directory
+     */
+    private Path segmentFile(long number) {
+        return directory.resolve(String.format("statistics-%010d.log", number));
+    }
+
+    /**
+     * Get the path of the index file of a segment.
+     * @param number the number of the segment
+     * @return the path of the index file in the directory
+     */
+    private Path indexFile(long number) {
+        return directory.resolve(String.format(INDEX_NAME, number));
+    }
+
+    /**
+     * Get the path of a snapshot file.
+     * @param number the number of the snapshot
+     * @return the path of the snapshot file in the directory
+     */
+    private Path snapshotFile(long number) {
+        return directory.resolve(String.format("snapshot-%010d.bin", number));
+    }
+
+    /**
+     * Open a file for appending, discarding anything after its complete entries.
+     * @param file the file to open
+     * @param length the length, in bytes, of the complete entries in the file
+     * @return a channel that appends to file after its complete entries
+     * @throws IOException if the file cannot be opened
+     */
+    private static FileChannel openForAppend(Path file, long length) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(length);
+        channel.position(length);
+        return channel;
+    }
+
+    /**
+     * Write the remaining bytes of a buffer to a channel and force them to the storage device.
+     * @param channel the channel to write to
+     * @param buffer the bytes to write
+     * @throws IOException if the channel cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Move a channel back to the end of what it held before a failed write, and cut off the part of the
+     * write that reached the file. A failure to cut it off is added to the failure of the write, since
+     * the next write from the same position overwrites it anyway.
+     * @param channel the channel that failed to be written
+     * @param length the length, in bytes, of the file before the failed write
+     * @param failure the failure of the write, failure must not be null
+     */
+    private static void rewind(FileChannel channel, long length, IOException failure) {
+        try {
+            channel.position(length);
+            channel.truncate(length);
+        }
+        catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Put bytes that failed to be written back in front of the bytes that were pending after them.
+     * @param unwritten the bytes that were taken out to be written, from 0 to its limit
+     * @param pending the bytes pending after them, from 0 to its position
+     * @return a buffer holding unwritten followed by pending, positioned after them
+     */
+    private static ByteBuffer prepend(ByteBuffer unwritten, ByteBuffer pending) {
+        ByteBuffer joined = ByteBuffer.allocate(Math.max(INITIAL_BUFFER, unwritten.limit() + pending.position()));
+        joined.put(unwritten.rewind()).put(pending.flip());
+        return joined;
+    }
+
+    /**
+     * Get a buffer with room for more bytes, copying a full buffer into a larger one.
+     * @param buffer the buffer to write to
+     * @param bytes the number of bytes that will be written
+     * @return buffer if it has room for bytes more bytes, or a larger copy of it otherwise
+     */
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+        larger.put(buffer.flip());
+        return larger;
+    }
+
+    /**
+     * An EventReceiver receives the request events replayed from a StatisticsLog.
+     */
+    interface EventReceiver {
+
+        /**
+         * Receive one replayed event.
+         * @param query the String used by the request, or null if the request did not use one
+         * @param time the time, in seconds, at which the request was made
+         */
+        void receive(String query, long time);
+    }
+
+    /**
+     * A ByteBufferInputStream reads the remaining bytes of a ByteBuffer, such as a memory-mapped file.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        /**
+         * Create a ByteBufferInputStream.
+         * @param buffer the buffer to read from, buffer must not be null
+         */
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A StatisticsPipeline moves the recording of request statistics off the request path. Request
+ * threads publish primitive events into a preallocated ring buffer without taking any lock or
+ * allocating any object, and a single consumer thread drains the events in order and applies
+ * them to an EventHandler, which owns every counter that the events update. Before it applies
+ * any event, the consumer thread runs a startup task, such as loading the counters from disk;
+ * events published meanwhile wait in the ring, and once it is full, in an unbounded overflow map,
+ * so that a slow startup never holds up the requests that publish events.
+ *
+ * A producer claims a sequence number with an atomic increment, writes the event into the slot
+ * of that sequence and then publishes the slot by storing the sequence in it. If the ring is full,
+ * the producer waits for the consumer to free a slot, unless the startup task is still running, in
+ * which case it stores the event in the overflow map under its sequence instead. A reader that
+ * needs every earlier event to be applied calls awaitConsumed, which waits at most maxLagMillis
+ * for the consumer.
+ *
+ * Closing the pipeline moves claimed past CLOSED, so that every later event is claimed after the
+ * consumer thread stops. The consumer thread applies the events claimed before that and then exits,
+ * and a later event is applied by the thread that publishes it, so a closed pipeline keeps no thread
+ * alive that refers to its handler.
+ *
+ * Abstraction Function:
+ * A StatisticsPipeline represents the queue of events with sequence numbers consumed through
+ * claimed.get() - 1, in order of sequence. The event with sequence n is stored in slot
+ * n & (capacity - 1): it was made at times[slot], and used the query String queries[slot], or
+ * no query String if queries[slot] is null. It has been published once published.get(slot) == n,
+ * or if it was published while the ring was full during startup, it is overflow.get(n) instead.
+ * Every event with sequence less than consumed has been applied to handler. The pipeline is closed
+ * if claimed.get() >= CLOSED, and stopAt is then the number of events claimed before it was closed.
+ */
+class StatisticsPipeline {
+
+    /* the longest time the consumer sleeps without checking for new events is 100ms */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /* the longest time a waiting reader or producer sleeps between checks is 50us */
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /* added to claimed when the pipeline is closed, larger than any sequence of an open pipeline */
+    private static final long CLOSED = 1L << 62;
+
+    private final int mask;
+    private final long maxLagNanos;
+    private final long[] times;
+    private final String[] queries;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final Runnable startup;
+    private final EventHandler handler;
+    private final Thread consumer;
+    private final ReentrantLock closedLock = new ReentrantLock();
+    private final Map<Long, Event> overflow = new ConcurrentHashMap<>();
+    private volatile boolean starting = true;
+    private volatile long consumed = 0;
+    private volatile long stopAt = Long.MAX_VALUE;
+    private volatile boolean sleeping = false;
+
+    /*
+     * Representation Invariant:
+     *  - mask + 1 is a power of two, and times, queries and published have length mask + 1
+     *  - maxLagNanos >= 0
+     *  - 0 <= consumed <= claimed.get() and claimed.get() - consumed <= mask + 1 + overflow.size()
+     *    once every producer that claimed a sequence has finished waiting for its slot
+     *  - every key of overflow is at least consumed, and its slot was never published with that sequence
+     *  - overflow is empty once starting is false and every event in it has been applied
+     *  - startup, handler and consumer must not be null
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - mask, maxLagNanos, startup, handler and consumer are private and final
+     *  - claimed is an AtomicLong, so every sequence number is claimed by exactly one producer
+     *  - the slot of sequence n is only written by the producer that claimed n, after consumed shows
+     *    that the consumer has finished with sequence n - capacity, and is only read by the consumer
+     *    after published shows n, which is stored after the slot is written
+     *  - overflow is a threadsafe map, the event of sequence n is only put in it by the producer that claimed
+     *    n, instead of storing it in the ring, and is only removed by the consumer when it applies it
+     *  - starting is volatile and is only written by the consumer thread, once the startup task has returned.
+     *    A producer that reads it as true just before it turns false still stores its event in overflow,
+     *    which the consumer checks for every sequence that is not in the ring
+     *  - consumed, stopAt and sleeping are volatile, consumed is only written by the consumer thread, and
+     *    stopAt is only written by close
+     *  - startup and handler are only called from the consumer thread until the pipeline is closed. An event
+     *    claimed after that is applied by the thread that publishes it, while holding closedLock, which close
+     *    holds until the consumer thread has exited, so the handler is still called for one event at a time
+     *    and in order. closedLock is a ReentrantLock, so that a virtual thread waiting for it does not pin its
+     *    carrier thread
+     */
+
+    /**
+     * Check that the representation invariants for StatisticsPipeline hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (Integer.bitCount(mask + 1) != 1 || times.length != mask + 1 || queries.length != mask + 1
+                || published.length() != mask + 1) {
+            throw new RuntimeException("the ring must have a power of two number of slots");
+        }
+        if (maxLagNanos < 0) {
+            throw new RuntimeException("maxLagNanos must not be negative");
+        }
+        if (startup == null || handler == null || consumer == null) {
+            throw new RuntimeException("startup, handler and consumer must not be null");
+        }
+    }
+
+    /**
+     * Create a StatisticsPipeline and start its consumer thread.
+     * @param capacity the number of events the ring can hold, a power of two
+     * @param maxLagMillis the longest time, in milliseconds, that awaitConsumed waits, maxLagMillis >= 0
+     * @param startup runs on the consumer thread before any event is applied, must not be null
+     * @param handler receives every published event on the consumer thread, must not be null
+     */
+    StatisticsPipeline(int capacity, int maxLagMillis, Runnable startup, EventHandler handler) {
+        mask = capacity - 1;
+        maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMillis);
+        times = new long[capacity];
+        queries = new String[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            published.set(slot, slot - capacity);
+        }
+        this.startup = startup;
+        this.handler = handler;
+
+        consumer = new Thread(this::consume, "wikimediator-statistics");
+        consumer.setDaemon(true);
+        checkRep();
+        consumer.start();
+    }
+
+    /**
+     * Publish an event. Does not take any lock or allocate any object while the ring has room; if the
+     * ring is full, waits until the consumer frees a slot. While the startup task is running, an event
+     * that does not fit in the ring is stored in the overflow map instead, so publish never waits for
+     * the startup task.
+     * Once the pipeline is closed, applies the event to the handler before returning instead.
+     * @param query the String used by the request, or null if the request did not use one
+     * @param time the time, in seconds, at which the request was made
+     * @return the sequence number of the event
+     */
+    long publish(String query, long time) {
+        long sequence = claimed.getAndIncrement();
+        if (sequence >= CLOSED) {
+            closedLock.lock();
+            try {
+                apply(query, time);
+            }
+            finally {
+                closedLock.unlock();
+            }
+            return sequence;
+        }
+        while (sequence - consumed > mask) {
+            if (starting) {
+                overflow.put(sequence, new Event(query, time));
+                wake();
+                return sequence;
+            }
+            wake();
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+
+        int slot = (int) sequence & mask;
+        times[slot] = time;
+        queries[slot] = query;
+        published.set(slot, sequence);
+
+        if (sleeping) {
+            wake();
+        }
+        return sequence;
+    }
+
+    /**
+     * Wait until every event up to and including a sequence number has been applied to the
+     * handler, or until maxLagMillis has passed.
+     * @param sequence the sequence number of the last event that must be applied
+     * @return true if every event up to sequence has been applied, or false if the wait timed out
+     */
+    boolean awaitConsumed(long sequence) {
+        if (consumed > sequence || sequence >= CLOSED) {
+            return true;
+        }
+        long deadline = System.nanoTime() + maxLagNanos;
+        wake();
+        while (consumed <= sequence) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Wait, without a time limit, until every event published before this call has been applied
+     * to the handler.
+     */
+    void drain() {
+        long last = claimed.get() - 1;
+        if (last >= CLOSED - 1) {
+            // the pipeline is closed, or is closing, and close waits for the consumer to finish
+            closedLock.lock();
+            closedLock.unlock();
+            return;
+        }
+        wake();
+        while (consumed <= last) {
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Close the pipeline: wait until the consumer thread has applied every event published before this
+     * call, and stop it. Events published after close are applied by the thread that publishes them.
+     * Closing a closed pipeline has no effect.
+     */
+    void close() {
+        closedLock.lock();
+        try {
+            if (claimed.get() >= CLOSED) {
+                return;
+            }
+            stopAt = claimed.getAndAdd(CLOSED);
+            wake();
+            boolean interrupted = false;
+            while (consumer.isAlive()) {
+                try {
+                    consumer.join();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        finally {
+            closedLock.unlock();
+        }
+    }
+
+    /**
+     * Wake the consumer thread if it is sleeping.
+     */
+    private void wake() {
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Run the startup task, then drain events from the ring and apply them to the handler, in order,
+     * until every event claimed before the pipeline was closed has been applied. Sleeps while the ring
+     * is empty until a producer, or close, wakes it.
+     */
+    private void consume() {
+        try {
+            startup.run();
+        }
+        catch (RuntimeException e) {
+            // a failed startup must not stop the statistics of every later request
+            System.err.println("Could not start recording statistics: " + e);
+        }
+        starting = false;
+
+        long next = 0;
+        while (next != stopAt) {
+            int slot = (int) next & mask;
+            if (published.get(slot) == next) {
+                String query = queries[slot];
+                long time = times[slot];
+                queries[slot] = null;
+                apply(query, time);
+                next++;
+                consumed = next;
+            }
+            else if (!overflow.isEmpty() && overflow.containsKey(next)) {
+                Event event = overflow.remove(next);
+                apply(event.query, event.time);
+                next++;
+                consumed = next;
+            }
+            else {
+                sleeping = true;
+                if (published.get(slot) != next && next != stopAt && !overflow.containsKey(next)) {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Helper method that applies one event to the handler. Must be called from the consumer thread, or,
+     * once the pipeline is closed, while holding closedLock.
+     * @param query the String used by the request, or null if the request did not use one
+     * @param time the time, in seconds, at which the request was made
+     */
+    private void apply(String query, long time) {
+        try {
+            handler.handle(query, time);
+        }
+        catch (RuntimeException e) {
+            // a broken event must not stop the statistics of every later request
+            System.err.println("Could not record a request made at " + time + ": " + e);
+        }
+    }
+
+    /**
+     * An Event is a request event that was published while the ring was full during startup.
+     */
+    private static final class Event {
+        private final String query;
+        private final long time;
+
+        /**
+         * Create an Event.
+         * @param query the String used by the request, or null if the request did not use one
+         * @param time the time, in seconds, at which the request was made
+         */
+        Event(String query, long time) {
+            this.query = query;
+            this.time = time;
+        }
+    }
+
+    /**
+     * An EventHandler applies the events of a StatisticsPipeline to the counters it owns.
+     * Its methods are only ever called one event at a time, in order: from the consumer thread, or, once the
+ * pipeline is closed, from the thread that publishes the event.
+     */
+    interface EventHandler {
+
+        /**
+         * Apply one event.
+         * @param query the String used by the request, or null if the request did not use one
+         * @param time the time, in seconds, at which the request was made
+         */
+        void handle(String query, long time);
+    }
+}
@@ -209,5 +209,41 @@ public class Task1Tests {
 
         assertThrows(ObjectNotInCacheException.class, () -> buffer1.get(obj1.id()));
     }
+
+    @Test
+    public void testStaleRetention() throws InterruptedException, ObjectNotInCacheException {
+        FSFTBuffer<BufferObject> buffer1 = new FSFTBuffer<>(4, 1, 5);
+        FSFTBuffer<BufferObject> buffer2 = new FSFTBuffer<>(4, 1, 1);
+
+        buffer1.put(obj1);
+        buffer2.put(obj2);
+        Thread.sleep(3000);
+
+        assertThrows(ObjectNotInCacheException.class, () -> buffer1.get(obj1.id()));
+        Assertions.assertEquals(obj1, buffer1.getStale(obj1.id()));
+        Assertions.assertEquals(1, buffer1.staleObjects().size());
+        assertThrows(ObjectNotInCacheException.class, () -> buffer2.getStale(obj2.id()));
+
+        Assertions.assertTrue(buffer1.touch(obj1.id()));
+        Assertions.assertEquals(obj1, buffer1.get(obj1.id()));
+        Assertions.assertEquals(0, buffer1.staleObjects().size());
+    }
+
+    @Test
+    public void testPutEvictsStaleFirst() throws InterruptedException, ObjectNotInCacheException {
+        FSFTBuffer<BufferObject> buffer1 = new FSFTBuffer<>(2, 1, 10);
+
+        buffer1.put(obj1);
+        buffer1.put(obj2);
+        Thread.sleep(2000);
+
+        buffer1.touch(obj1.id());
+        buffer1.getStale(obj2.id());
+        buffer1.put(obj3);
+
+        Assertions.assertEquals(obj1, buffer1.get(obj1.id()));
+        Assertions.assertEquals(obj3, buffer1.get(obj3.id()));
+        assertThrows(ObjectNotInCacheException.class, () -> buffer1.getStale(obj2.id()));
+    }
 }
 
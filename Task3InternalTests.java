@@ -0,0 +1,856 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+public class Task3InternalTests {
+    /* the start of the synthetic histories, aligned to an hour */
+    private static final long START = 1_000_000_800L;
+
+    /* a day of synthetic history */
+    private static final int DAY = 86400;
+
+    /* peakLoad */
+    private static RequestHistory steadyHistory(int seconds) {
+        RequestHistory history = new RequestHistory(START, 600, 7200);
+        for (int second = 0; second < seconds; second++) {
+            history.recordRequest(START + second);
+        }
+        return history;
+    }
+
+    @Test
+    public void testPeakLoadOfRolledUpHistory() {
+        RequestHistory history = steadyHistory(DAY);
+
+        PeakLoad peakLoad = history.peakLoad(START + DAY, 30);
+        Assertions.assertEquals(30, peakLoad.getRequests());
+        Assertions.assertTrue(peakLoad.isExact());
+
+        PeakLoad hoursOnly = history.peakLoad(START, START + 6 * 3600, 30);
+        Assertions.assertEquals(30, hoursOnly.getRequests());
+        Assertions.assertTrue(hoursOnly.isExact());
+
+        PeakLoad minutesOnly = history.peakLoad(START + DAY - 3600, START + DAY - 1200, 90);
+        Assertions.assertEquals(90, minutesOnly.getRequests());
+        Assertions.assertTrue(minutesOnly.isExact());
+    }
+
+    @Test
+    public void testPeakLoadBoundsBurstInRolledUpHistory() {
+        RequestHistory history = new RequestHistory(START, 600, 7200);
+        long burst = START + 5 * 3600 + 1000;
+        for (int second = 0; second < DAY; second++) {
+            history.recordRequest(START + second);
+            if (START + second == burst) {
+                for (int i = 0; i < 60; i++) {
+                    history.recordRequest(burst);
+                }
+            }
+        }
+
+        // the busiest 30 seconds had the burst of 61 requests and 29 more
+        PeakLoad peakLoad = history.peakLoad(START, START + 12 * 3600, 30);
+        Assertions.assertTrue(peakLoad.getRequests() >= 90);
+        Assertions.assertTrue(peakLoad.getRequests() - peakLoad.getErrorBound() <= 90);
+        Assertions.assertTrue(peakLoad.getRequests() - peakLoad.getErrorBound() >= 61);
+        Assertions.assertTrue(peakLoad.getRequests() < 3660);
+        Assertions.assertFalse(peakLoad.isExact());
+
+        PeakLoad wholeHour = history.peakLoad(START, START + 12 * 3600, 3600);
+        Assertions.assertTrue(wholeHour.getRequests() >= 3660);
+        Assertions.assertTrue(wholeHour.getRequests() - wholeHour.getErrorBound() <= 3660);
+        Assertions.assertTrue(wholeHour.getRequests() - wholeHour.getErrorBound() >= 3600);
+    }
+
+    @Test
+    public void testPeakLoadOfRawHistoryIsExact() {
+        RequestHistory history = new RequestHistory(START, 600, 7200);
+        for (int second = 0; second < 300; second++) {
+            for (int i = 0; i <= second % 7; i++) {
+                history.recordRequest(START + second);
+            }
+        }
+
+        PeakLoad peakLoad = history.peakLoad(START + 300, 3);
+        Assertions.assertEquals(18, peakLoad.getRequests());
+        Assertions.assertTrue(peakLoad.isExact());
+        Assertions.assertEquals(0, history.peakLoad(START + 300, 0).getRequests());
+    }
+
+    @Test
+    public void testRollupKeepsSearchCounts() {
+        RequestHistory history = new RequestHistory(START, 600, 7200);
+        for (int second = 0; second < DAY; second += 10) {
+            history.recordSearch(second < 3600 ? "early" : "late", START + second);
+            history.recordRequest(START + second);
+        }
+        Assertions.assertEquals(List.of("early"), history.mostFrequentBetween(START, START + 3600, 5));
+        Assertions.assertEquals(List.of("late", "early"), history.mostFrequentBetween(START, START + 3 * 3600, 5));
+        Assertions.assertEquals(List.of("late"), history.mostFrequentSince(START + DAY - 1200, 5));
+        Assertions.assertEquals(List.of("late", "early"), history.mostFrequent(5));
+        Assertions.assertEquals(DAY / 10, history.peakLoad(START, START + DAY, DAY).getRequests());
+    }
+
+    /* CountMinSketch */
+    @Test
+    public void testSketchSeparatesKeysWithEqualHashCodes() {
+        List<String> colliding = new ArrayList<>(List.of(""));
+        for (int round = 0; round < 6; round++) {
+            List<String> longer = new ArrayList<>();
+            for (String key : colliding) {
+                longer.add(key + "Aa");
+                longer.add(key + "BB");
+            }
+            colliding = longer;
+        }
+        Assertions.assertEquals(64, colliding.size());
+        Assertions.assertEquals(colliding.get(0).hashCode(), colliding.get(63).hashCode());
+
+        CountMinSketch sketch = new CountMinSketch(0.01, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(colliding.get(0));
+        }
+        Assertions.assertEquals(1000, sketch.estimate(colliding.get(0)));
+        for (String key : colliding.subList(1, colliding.size())) {
+            Assertions.assertTrue(sketch.estimate(key) <= 0.01 * sketch.total());
+        }
+    }
+
+    /* StatisticsPipeline */
+    @Test
+    public void testPipelineAppliesConcurrentEventsOnceInOrder() throws InterruptedException {
+        List<String> applied = new ArrayList<>();
+        StatisticsPipeline pipeline = new StatisticsPipeline(8, 1000, () -> { }, (query, time) -> applied.add(query));
+
+        int publishers = 8;
+        int events = 2000;
+        List<Map<Long, String>> sequences = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int publisher = 0; publisher < publishers; publisher++) {
+            Map<Long, String> published = new HashMap<>();
+            sequences.add(published);
+            String name = "p" + publisher + ":";
+            threads.add(new Thread(() -> {
+                for (int event = 0; event < events; event++) {
+                    published.put(pipeline.publish(name + event, event), name + event);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        pipeline.drain();
+
+        Map<Long, String> bySequence = new HashMap<>();
+        for (Map<Long, String> published : sequences) {
+            bySequence.putAll(published);
+        }
+        Assertions.assertEquals(publishers * events, bySequence.size());
+        Assertions.assertEquals(publishers * events, applied.size());
+        for (int sequence = 0; sequence < applied.size(); sequence++) {
+            Assertions.assertEquals(bySequence.get((long) sequence), applied.get(sequence));
+        }
+    }
+
+    @Test
+    public void testPipelineWaitsWhileRingIsFull() throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        List<Long> applied = new ArrayList<>();
+        StatisticsPipeline pipeline = new StatisticsPipeline(4, 1000, () -> { }, (query, time) -> {
+            entered.countDown();
+            try {
+                started.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            applied.add(time);
+        });
+
+        // until startup is over, a full ring holds events aside instead of waiting, so wait for the first event
+        pipeline.publish(null, 0);
+        Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Thread publisher = new Thread(() -> {
+            for (long event = 1; event < 10; event++) {
+                pipeline.publish(null, event);
+            }
+        });
+        publisher.start();
+        publisher.join(200);
+        Assertions.assertTrue(publisher.isAlive());
+
+        started.countDown();
+        publisher.join(5000);
+        Assertions.assertFalse(publisher.isAlive());
+        pipeline.drain();
+        Assertions.assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), applied);
+    }
+
+    @Test
+    public void testPipelineDoesNotWaitForSlowStartup() {
+        CountDownLatch started = new CountDownLatch(1);
+        List<Long> applied = new ArrayList<>();
+        StatisticsPipeline pipeline = new StatisticsPipeline(4, 50, () -> {
+            try {
+                started.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, (query, time) -> applied.add(time));
+
+        long publishStart = System.nanoTime();
+        long sequence = 0;
+        for (long event = 0; event < 100; event++) {
+            sequence = pipeline.publish(event % 2 == 0 ? null : "query", event);
+        }
+        Assertions.assertFalse(pipeline.awaitConsumed(sequence));
+        Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - publishStart) < 2000);
+        Assertions.assertTrue(applied.isEmpty());
+
+        started.countDown();
+        pipeline.drain();
+        Assertions.assertEquals(100, applied.size());
+        for (int event = 0; event < 100; event++) {
+            Assertions.assertEquals(Long.valueOf(event), applied.get(event));
+        }
+
+        pipeline.close();
+    }
+
+    @Test
+    public void testPipelineAwaitConsumedHonoursDeadline() {
+        CountDownLatch started = new CountDownLatch(1);
+        StatisticsPipeline pipeline = new StatisticsPipeline(8, 100, () -> {
+            try {
+                started.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, (query, time) -> { });
+
+        long sequence = pipeline.publish("query", 0);
+        long waitStart = System.nanoTime();
+        Assertions.assertFalse(pipeline.awaitConsumed(sequence));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart);
+        Assertions.assertTrue(waited >= 100);
+        Assertions.assertTrue(waited < 2000);
+
+        started.countDown();
+        pipeline.drain();
+        Assertions.assertTrue(pipeline.awaitConsumed(sequence));
+    }
+
+    @Test
+    public void testPipelineDrainWaitsForSlowHandler() {
+        List<Long> applied = new ArrayList<>();
+        StatisticsPipeline pipeline = new StatisticsPipeline(16, 0, () -> { }, (query, time) -> {
+            try {
+                Thread.sleep(2);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            applied.add(time);
+        });
+
+        for (long event = 0; event < 50; event++) {
+            pipeline.publish(null, event);
+        }
+        pipeline.drain();
+        Assertions.assertEquals(50, applied.size());
+    }
+
+    @Test
+    public void testPipelineCloseStopsConsumer() {
+        List<Thread> consumer = new ArrayList<>();
+        List<String> applied = new ArrayList<>();
+        StatisticsPipeline pipeline = new StatisticsPipeline(8, 1000, () -> consumer.add(Thread.currentThread()),
+                (query, time) -> {
+                    if (query.equals("broken")) {
+                        throw new IllegalStateException("broken event");
+                    }
+                    applied.add(query);
+                });
+
+        for (int event = 0; event < 20; event++) {
+            pipeline.publish(event == 5 ? "broken" : "before", event);
+        }
+        pipeline.close();
+        Assertions.assertFalse(consumer.get(0).isAlive());
+        Assertions.assertEquals(19, applied.size());
+
+        long sequence = pipeline.publish("after", 20);
+        Assertions.assertEquals("after", applied.get(19));
+        Assertions.assertTrue(pipeline.awaitConsumed(sequence));
+        pipeline.drain();
+        pipeline.close();
+        Assertions.assertEquals(20, applied.size());
+    }
+
+    @Test
+    public void testCloseDrainsPublishedStatistics() throws IOException, InterruptedException {
+        Path local = Files.createTempDirectory("local");
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withPersistence(local.toString(), MediatorConfig.DDURABILITY)
+                .withIngestion(16, 10000)
+                .build();
+
+        WikiMediator first = new WikiMediator(10, 50, config);
+        List<Thread> threads = new ArrayList<>();
+        for (int publisher = 0; publisher < 4; publisher++) {
+            String query = "Query" + publisher;
+            threads.add(new Thread(() -> {
+                for (int search = 0; search < 500; search++) {
+                    first.search(query, 0);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        first.close();
+        Thread.sleep(1100);
+
+        WikiMediator second = new WikiMediator(10, 50, config);
+        Assertions.assertEquals(2000, second.windowedPeakLoad(3600));
+        second.close();
+    }
+
+    /* RankingCache */
+    @Test
+    public void testRankingCacheEvictsLeastRecentlyUsed() {
+        RankingCache rankings = new RankingCache(60000);
+        Ranking ranking = new Ranking(List.of("Canada"), 0);
+        for (int key = 0; key <= RankingCache.CAPACITY; key++) {
+            rankings.put("zeitgeist:" + key, ranking, 0, 0);
+            if (key == 0) {
+                rankings.put("trending:1", ranking, 0, 0);
+            }
+            Assertions.assertSame(ranking, rankings.lookup("trending:1", 0, 0));
+        }
+
+        Assertions.assertEquals(RankingCache.CAPACITY, rankings.size());
+        Assertions.assertNull(rankings.lookup("zeitgeist:0", 0, 0));
+        Assertions.assertSame(ranking, rankings.lookup("trending:1", 0, 0));
+        Assertions.assertSame(ranking, rankings.lookup("zeitgeist:" + RankingCache.CAPACITY, 0, 0));
+    }
+
+    @Test
+    public void testRankingCacheDropsOutdatedRankings() throws InterruptedException {
+        RankingCache rankings = new RankingCache(0);
+        Ranking ranking = new Ranking(List.of("Canada"), 0);
+        rankings.put("zeitgeist:5", ranking, 3, 0);
+        rankings.put("trending:5", ranking, 3, 100);
+        Thread.sleep(5);
+
+        Assertions.assertSame(ranking, rankings.lookup("zeitgeist:5", 3, 0));
+        Assertions.assertNull(rankings.lookup("trending:5", 3, 101));
+        Assertions.assertEquals(2, rankings.size());
+
+        rankings.put("zeitgeist:1", ranking, 4, 0);
+        Assertions.assertEquals(1, rankings.size());
+        Assertions.assertNull(rankings.lookup("zeitgeist:5", 3, 0));
+    }
+
+    /* StatisticsLog */
+    private static List<String> scanned(StatisticsLog log, long since, long until) throws IOException {
+        List<String> events = new ArrayList<>();
+        if (!log.scan(since, until, (query, time) -> events.add(query + "@" + time))) {
+            return null;
+        }
+        return events;
+    }
+
+    @Test
+    public void testLogScanReadsPendingRecordsWithoutCommit() throws IOException {
+        Path local = Files.createTempDirectory("local");
+        StatisticsLog log = new StatisticsLog(local, 600000, MediatorConfig.DARCHIVERETENTION);
+        log.replay((query, time) -> { });
+        Path first = local.resolve("statistics-0000000000.log");
+
+        log.append("Canada", 10);
+        log.append(null, 11);
+        Assertions.assertEquals(List.of("Canada@10", "null@11"), scanned(log, 0, 100));
+        Assertions.assertEquals(0, Files.size(first));
+
+        log.commit();
+        log.append("Vietnam", 12);
+        Assertions.assertTrue(log.snapshot(new byte[]{1}));
+        log.append("Canada", 13);
+        Assertions.assertEquals(List.of("Canada@10", "null@11", "Vietnam@12", "Canada@13"), scanned(log, 0, 100));
+        Assertions.assertEquals(List.of("null@11", "Vietnam@12"), scanned(log, 11, 13));
+
+        log.commit();
+        Assertions.assertEquals(List.of("Canada@10", "null@11", "Vietnam@12", "Canada@13"), scanned(log, 0, 100));
+        log.close();
+    }
+
+    @Test
+    public void testLogArchiveRetentionDeletesOldSegments() throws IOException {
+        Path local = Files.createTempDirectory("local");
+        StatisticsLog log = new StatisticsLog(local, 600000, 1000);
+        log.replay((query, time) -> { });
+        for (long time = 0; time < 10; time++) {
+            log.append("Old", time);
+        }
+        Assertions.assertTrue(log.snapshot(new byte[]{1}));
+        log.commit();
+        Assertions.assertTrue(Files.exists(local.resolve("statistics-0000000000.log")));
+
+        log.append("New", 5000);
+        Assertions.assertTrue(log.snapshot(new byte[]{2}));
+        log.commit();
+        Assertions.assertFalse(Files.exists(local.resolve("statistics-0000000000.log")));
+        Assertions.assertFalse(Files.exists(local.resolve("statistics-0000000000.idx")));
+        Assertions.assertTrue(Files.exists(local.resolve("statistics-0000000001.log")));
+
+        Assertions.assertNull(scanned(log, 0, 6000));
+        Assertions.assertEquals(List.of("New@5000"), scanned(log, 10, 6000));
+        log.close();
+
+        StatisticsLog reopened = new StatisticsLog(local, 600000, 1000);
+        reopened.replay((query, time) -> { });
+        Assertions.assertNull(scanned(reopened, 0, 6000));
+        Assertions.assertEquals(List.of("New@5000"), scanned(reopened, 5000, 6000));
+        reopened.close();
+    }
+
+    @Test
+    public void testLogScanReportsSegmentDeletedDuringScanAsArchived() throws IOException {
+        Path local = Files.createTempDirectory("local");
+        StatisticsLog log = new StatisticsLog(local, 600000, MediatorConfig.DARCHIVERETENTION);
+        log.replay((query, time) -> { });
+        log.append("Old", 10);
+        Assertions.assertTrue(log.snapshot(new byte[]{1}));
+        log.commit();
+
+        // as if the archive retention deleted the segment while a scan was about to read it
+        Files.delete(local.resolve("statistics-0000000000.log"));
+        Assertions.assertNull(scanned(log, 0, 100));
+        log.close();
+    }
+
+    /* ConcurrencyLimiter */
+    private static CompletableFuture<String> controlled(ConcurrencyLimiter limiter,
+                                                        List<CompletableFuture<String>> started) {
+        return limiter.submit(() -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            started.add(call);
+            return call;
+        });
+    }
+
+    @Test
+    public void testLimiterQueuesCallsInOrderAndRejectsOverflow() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 2, 60000);
+        List<CompletableFuture<String>> started = new ArrayList<>();
+        CompletableFuture<String> first = controlled(limiter, started);
+        CompletableFuture<String> second = controlled(limiter, started);
+        CompletableFuture<String> third = controlled(limiter, started);
+        Assertions.assertEquals(1, started.size());
+
+        CompletionException rejected = Assertions.assertThrows(CompletionException.class,
+                () -> controlled(limiter, started).join());
+        Assertions.assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+        Assertions.assertEquals(1, started.size());
+
+        started.get(0).complete("first");
+        Assertions.assertEquals("first", first.join());
+        Assertions.assertEquals(2, started.size());
+        Assertions.assertFalse(second.isDone());
+
+        started.get(1).complete("second");
+        started.get(2).complete("third");
+        Assertions.assertEquals("second", second.join());
+        Assertions.assertEquals("third", third.join());
+    }
+
+    @Test
+    public void testLimiterRejectsCallsThatWouldWaitTooLong() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 4, 20);
+        List<CompletableFuture<String>> started = new ArrayList<>();
+        CompletableFuture<String> slow = controlled(limiter, started);
+        Thread.sleep(100);
+        started.get(0).complete("slow");
+        slow.join();
+
+        controlled(limiter, started);
+        CompletionException rejected = Assertions.assertThrows(CompletionException.class,
+                () -> controlled(limiter, started).join());
+        Assertions.assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+        Assertions.assertEquals(2, started.size());
+    }
+
+    @Test
+    public void testLimiterTimesOutWaitingCalls() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 4, 50);
+        List<CompletableFuture<String>> started = new ArrayList<>();
+        CompletableFuture<String> running = controlled(limiter, started);
+        CompletableFuture<String> waiting = controlled(limiter, started);
+
+        CompletionException timedOut = Assertions.assertThrows(CompletionException.class, waiting::join);
+        Assertions.assertTrue(timedOut.getCause() instanceof TimeoutException);
+        started.get(0).complete("running");
+        Assertions.assertEquals("running", running.join());
+        Assertions.assertEquals(1, started.size());
+
+        CompletableFuture<String> next = controlled(limiter, started);
+        Assertions.assertEquals(2, started.size());
+        started.get(1).complete("next");
+        Assertions.assertEquals("next", next.join());
+    }
+
+    @Test
+    public void testLimiterDoublesDuringSlowStart() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 0, 1000);
+        List<CompletableFuture<String>> started = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            controlled(limiter, started);
+        }
+        Assertions.assertEquals(4, limiter.getLimit());
+
+        for (CompletableFuture<String> call : started) {
+            call.complete("done");
+        }
+        Assertions.assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimiterBacksOffOnceForFailuresThenGrowsByOne() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 0, 1000);
+        List<CompletableFuture<String>> started = new ArrayList<>();
+        controlled(limiter, started);
+        controlled(limiter, started);
+        started.get(0).completeExceptionally(new IOException("unavailable"));
+        started.get(1).completeExceptionally(new IOException("unavailable"));
+        Assertions.assertEquals(3, limiter.getLimit());
+
+        started.clear();
+        for (int i = 0; i < 3; i++) {
+            controlled(limiter, started);
+        }
+        for (CompletableFuture<String> call : started) {
+            call.complete("done");
+        }
+        Assertions.assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimiterBacksOffWhenLatencyRises() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 0, 1000);
+        for (int i = 0; i < 4; i++) {
+            limiter.submit(() -> CompletableFuture.completedFuture("fast")).join();
+        }
+        Assertions.assertEquals(4, limiter.getLimit());
+
+        List<CompletableFuture<String>> started = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            controlled(limiter, started);
+        }
+        Thread.sleep(50);
+        for (CompletableFuture<String> call : started) {
+            call.complete("slow");
+        }
+        Assertions.assertEquals(3, limiter.getLimit());
+    }
+
+    /* RequestHedger */
+    private static void warmUp(RequestHedger hedger, int millis) throws InterruptedException {
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            hedger.call(() -> call);
+        }
+        Thread.sleep(millis);
+        for (CompletableFuture<String> call : calls) {
+            call.complete("warm");
+        }
+    }
+
+    private static CompletableFuture<String> slowCall(RequestHedger hedger, List<CompletableFuture<String>> started) {
+        return hedger.call(() -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            started.add(call);
+            return call;
+        });
+    }
+
+    private static void awaitCalls(List<CompletableFuture<String>> started, int calls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (started.size() < calls && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testHedgerHedgesAfterDelayAndCancelsLoser() throws InterruptedException {
+        RequestHedger hedger = new RequestHedger(100);
+        Assertions.assertEquals(-1, hedger.getDelay());
+        warmUp(hedger, 30);
+        long delay = hedger.getDelay();
+        Assertions.assertTrue(delay >= 30);
+
+        List<CompletableFuture<String>> started = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+        CompletableFuture<String> hedged = slowCall(hedger, started);
+        Assertions.assertEquals(1, started.size());
+        awaitCalls(started, 2);
+        Assertions.assertEquals(2, started.size());
+        Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= delay);
+
+        started.get(1).complete("hedge");
+        Assertions.assertEquals("hedge", hedged.join());
+        Assertions.assertTrue(started.get(0).isCancelled());
+
+        CompletableFuture<String> primary = slowCall(hedger, started);
+        awaitCalls(started, 4);
+        started.get(2).complete("primary");
+        Assertions.assertEquals("primary", primary.join());
+        // the hedge may have been sent just as the primary completed, in which case it is cancelled on the
+        // thread that sent it
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!started.get(3).isDone() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Assertions.assertTrue(started.get(3).isCancelled());
+    }
+
+    @Test
+    public void testHedgerSendsNoHedgeForFastCalls() throws InterruptedException {
+        RequestHedger hedger = new RequestHedger(100);
+        warmUp(hedger, 30);
+
+        List<CompletableFuture<String>> started = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> fast = slowCall(hedger, started);
+        started.get(0).complete("fast");
+        Thread.sleep(3 * hedger.getDelay());
+        Assertions.assertEquals("fast", fast.join());
+        Assertions.assertEquals(1, started.size());
+    }
+
+    @Test
+    public void testHedgerBudgetCapsHedges() throws InterruptedException {
+        RequestHedger hedger = new RequestHedger(10);
+        warmUp(hedger, 30);
+
+        List<CompletableFuture<String>> started = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            answers.add(slowCall(hedger, started));
+        }
+        Thread.sleep(3 * hedger.getDelay() + 100);
+
+        // 52 requests at 10 percent have earned 5.2 hedges, so only 5 of the 20 slow calls are hedged
+        Assertions.assertEquals(25, started.size());
+        for (CompletableFuture<String> call : started) {
+            call.complete("slow");
+        }
+        for (CompletableFuture<String> answer : answers) {
+            Assertions.assertEquals("slow", answer.join());
+        }
+
+        RequestHedger never = new RequestHedger(0);
+        warmUp(never, 30);
+        List<CompletableFuture<String>> unhedged = new CopyOnWriteArrayList<>();
+        slowCall(never, unhedged);
+        Thread.sleep(3 * never.getDelay());
+        Assertions.assertEquals(1, unhedged.size());
+    }
+
+    /* PathFinder */
+    private static final Map<String, List<String>> PATHS = Map.ofEntries(
+        Map.entry("S", List.of("C", "D1", "B", "D2", "A", "D3", "D4")),
+        Map.entry("A", List.of("Q")),
+        Map.entry("Q", List.of("R")),
+        Map.entry("R", List.of("Z")),
+        Map.entry("Z", List.of("T")),
+        Map.entry("B", List.of("Y", "X")),
+        Map.entry("C", List.of("X")),
+        Map.entry("X", List.of("V", "U")),
+        Map.entry("Y", List.of("U")),
+        Map.entry("U", List.of("T")),
+        Map.entry("V", List.of("T")));
+
+    private static Function<Collection<String>, CompletableFuture<Map<String, List<String>>>> shuffledLinks(
+            Map<String, List<String>> graph, Random random) {
+        return pages -> {
+            List<String> order = new ArrayList<>(pages);
+            Collections.shuffle(order, random);
+            Map<String, List<String>> linked = new LinkedHashMap<>();
+            for (String page : order) {
+                List<String> neighbours = new ArrayList<>(graph.getOrDefault(page, List.of()));
+                Collections.shuffle(neighbours, random);
+                linked.put(page, neighbours);
+            }
+            return CompletableFuture.supplyAsync(() -> linked,
+                CompletableFuture.delayedExecutor(random.nextInt(3), TimeUnit.MILLISECONDS));
+        };
+    }
+
+    @Test
+    public void testPathFinderChoosesSmallestShortestPathWhateverTheAnswerOrder() {
+        Map<String, List<String>> reversed = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : PATHS.entrySet()) {
+            for (String page : entry.getValue()) {
+                reversed.computeIfAbsent(page, k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        // S, B, X, U, T is the smallest of the paths of four links; A starts only a longer one, and the search
+        // meets on the backward side, so both the forward and the backward tie-breaking are used
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            PathFinder finder = new PathFinder(shuffledLinks(PATHS, random), shuffledLinks(reversed, random),
+                "S", "T");
+            Assertions.assertEquals(List.of("S", "B", "X", "U", "T"), finder.find().join());
+        }
+    }
+
+    @Test
+    public void testPathFinderTimeoutCancelsFetchInFlight() throws InterruptedException {
+        CompletableFuture<Map<String, List<String>>> fetch = new CompletableFuture<>();
+        PathFinder finder = new PathFinder(pages -> fetch, pages -> fetch, "S", "T");
+
+        CompletableFuture<List<String>> path = finder.find().orTimeout(20, TimeUnit.MILLISECONDS);
+        CompletionException e = Assertions.assertThrows(CompletionException.class, path::join);
+        Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!fetch.isDone() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Assertions.assertTrue(fetch.isCancelled());
+    }
+
+    /* LinkTitles */
+    @Test
+    public void testLinkCacheStartsNewDictionaryOnceFull() {
+        Map<String, List<String>> graph = Map.of(
+            "A", List.of("X", "Y", "Z"),
+            "B", List.of("Y", "W"),
+            "C", List.of("X", "V"));
+        LinkTitles titles = new LinkTitles(4);
+        LinkCache cache = new LinkCache(8, 3600, titles, pages -> {
+            Map<String, List<String>> links = new HashMap<>();
+            for (String page : pages) {
+                links.put(page, graph.get(page));
+            }
+            return CompletableFuture.completedFuture(links);
+        });
+
+        QueryDictionary first = titles.current();
+        Assertions.assertEquals(Map.of("A", graph.get("A")), cache.links(List.of("A")).join());
+        Assertions.assertEquals(Map.of("B", graph.get("B")), cache.links(List.of("B")).join());
+        Assertions.assertEquals(4, first.size());
+
+        Assertions.assertEquals(Map.of("C", graph.get("C")), cache.links(List.of("C")).join());
+        Assertions.assertNotEquals(first, titles.current());
+        Assertions.assertEquals(4, first.size());
+        Assertions.assertEquals(2, titles.current().size());
+        Assertions.assertEquals(graph, cache.links(List.of("A", "B", "C")).join());
+    }
+
+    /* WikitextLinks */
+    @Test
+    public void testScanFollowsPipesAndAnchors() {
+        WikitextLinks links = WikitextLinks.scan("[[plato|the philosopher]] taught [[Aristotle#Early life|him]], "
+                + "see [[#History]], [[socratic_method]] and [[ Plato ]].");
+        Assertions.assertTrue(links.isComplete());
+        Assertions.assertEquals(List.of("Aristotle", "Plato", "Socratic method"), links.getTitles());
+    }
+
+    @Test
+    public void testScanKeepsLinksInFileCaptions() {
+        WikitextLinks links = WikitextLinks.scan(
+                "[[File:Plato Silanion.jpg|thumb|A bust of [[Plato]] after [[Silanion|the sculptor]]]] "
+                + "[[Image:x.png]]");
+        Assertions.assertTrue(links.isComplete());
+        Assertions.assertEquals(List.of("Plato", "Silanion"), links.getTitles());
+    }
+
+    @Test
+    public void testScanLeavesOutOtherNamespacesAndWikis() {
+        WikitextLinks links = WikitextLinks.scan("[[Ethics]] [[Category:Philosophers]] "
+                + "[[:Category:Greek philosophers]] [[wikt:philosophy]] [[Wikipedia:Manual of Style]] "
+                + "[[Talk:Plato|talk]]");
+        Assertions.assertTrue(links.isComplete());
+        Assertions.assertEquals(List.of("Ethics"), links.getTitles());
+
+        WikitextLinks interlanguage = WikitextLinks.scan("[[Ethics]] [[fr:Platon]]");
+        Assertions.assertFalse(interlanguage.isComplete());
+        Assertions.assertEquals(List.of(), interlanguage.getTitles());
+        Assertions.assertFalse(WikitextLinks.scan("[[Plato%27s Academy]]").isComplete());
+    }
+
+    @Test
+    public void testScanIgnoresLinksShownAsText() {
+        WikitextLinks links = WikitextLinks.scan("<nowiki>[[Fake]]</nowiki> <pre class=\"x\">[[Also fake]]</pre> "
+                + "<!-- [[Hidden]] {{Infobox}} --> <nowiki/>[[Real]] <ref>[[Cited]]</ref>");
+        Assertions.assertTrue(links.isComplete());
+        Assertions.assertEquals(List.of("Cited", "Real"), links.getTitles());
+        Assertions.assertFalse(WikitextLinks.scan("<nowiki>[[Unclosed]]").isComplete());
+    }
+
+    @Test
+    public void testScanOnlyTrustsLinklessTemplates() {
+        WikitextLinks links = WikitextLinks.scan("{{Short description|Greek philosopher}}"
+                + "{{Use dmy dates|date=May 2020}}[[Plato]]{{citation needed}} {{sfn|Kraut|2022|p=3}} {{Reflist}}");
+        Assertions.assertTrue(links.isComplete());
+        Assertions.assertEquals(List.of("Plato"), links.getTitles());
+
+        WikitextLinks infobox = WikitextLinks.scan("{{Infobox philosopher|name=Plato}} [[Plato]]");
+        Assertions.assertFalse(infobox.isComplete());
+        Assertions.assertEquals(List.of(), infobox.getTitles());
+        Assertions.assertFalse(WikitextLinks.scan("[[Plato]] {{{1}}}").isComplete());
+    }
+
+    @Test
+    public void testScanRejectsCitationsWithLinkParameters() {
+        WikitextLinks cited = WikitextLinks.scan(
+                "{{cite book|title=The [[Republic (Plato)|Republic]]|author=Plato|year=1992}} [[Plato]]");
+        Assertions.assertTrue(cited.isComplete());
+        Assertions.assertEquals(List.of("Plato", "Republic (Plato)"), cited.getTitles());
+
+        Assertions.assertFalse(WikitextLinks.scan("{{cite book|title=Republic|author-link=Plato}}").isComplete());
+        Assertions.assertFalse(WikitextLinks.scan("{{Cite journal|title=Republic|Author-Link = Plato}}").isComplete());
+        Assertions.assertFalse(WikitextLinks.scan("{{cite web|title=Republic").isComplete());
+    }
+
+    @Test
+    public void testScanGivesUpOnGalleries() {
+        Assertions.assertFalse(WikitextLinks.scan("[[Plato]] <gallery>\nFile:Plato.png|[[Plato]]\n</gallery>")
+                .isComplete());
+        Assertions.assertFalse(WikitextLinks.scan("<Gallery mode=\"packed\">File:Plato.png</Gallery>").isComplete());
+    }
+}
@@ -1,11 +1,26 @@
 package cpen221.mp3;
 
+import cpen221.mp3.wikimediator.DistanceEstimate;
+import cpen221.mp3.wikimediator.LinkGraphImporter;
+import cpen221.mp3.wikimediator.MediatorConfig;
+import cpen221.mp3.wikimediator.PageResult;
+import cpen221.mp3.wikimediator.Ranking;
+import cpen221.mp3.wikimediator.VirtualThreads;
 import cpen221.mp3.wikimediator.WikiMediator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 
 public class Task3Tests {
@@ -51,6 +66,19 @@ public class Task3Tests {
         Assertions.assertEquals(expected, testWiki.search("Canada Goose", 0));
     }
 
+    @Test
+    public void testSearchCacheSmallerLimit() {
+        WikiMediator testWiki = new WikiMediator(10, 5,
+                new MediatorConfig.Builder().withSearchCache(4, 60).build());
+
+        List<String> wide = testWiki.search("spoon", 10);
+        List<String> narrow = testWiki.search("  Spoon ", 3);
+
+        Assertions.assertEquals(wide.subList(0, Math.min(3, wide.size())), narrow);
+        Assertions.assertEquals(wide, testWiki.search("SPOON", 10));
+        Assertions.assertEquals(3, testWiki.zeitgeist(5).size());
+    }
+
     /* getPage */
     //TODO: WRITE ASSERTIONS FOR THIS
     @Test
@@ -84,6 +112,175 @@ public class Task3Tests {
         Assertions.assertTrue(string5.contains("Lego's popularity is demonstrated by its wide representation and usage in many forms of cultural works, including books, films and art work. It has even been used in the classroom as a teaching tool."));
     }
 
+    @Test
+    public void testGetPageAliasesShareText() {
+        WikiMediator testWiki = new WikiMediator(10, 5,
+                new MediatorConfig.Builder().withRedirectCache(4, 60).build());
+        String canonical = testWiki.getPage("Barack Obama");
+
+        Assertions.assertEquals(canonical, testWiki.getPage("barack obama"));
+        Assertions.assertEquals(canonical, testWiki.getPage(" Barack_Obama "));
+        Assertions.assertEquals(canonical, testWiki.getPage("Obama"));
+        Assertions.assertEquals(4, testWiki.zeitgeist(5).size());
+    }
+
+    @Test
+    public void testMissingPageRemembered() {
+        WikiMediator testWiki = new WikiMediator(10, 5,
+                new MediatorConfig.Builder().withNegativeCache(16, 60).build());
+
+        Assertions.assertEquals("", testWiki.getPage("ldsjf;lasj;lve"));
+        Assertions.assertEquals("", testWiki.getPage("Ldsjf;lasj;lve"));
+        Assertions.assertEquals("", testWiki.getPage("ldsjf;lasj;lve"));
+        Assertions.assertEquals(2, testWiki.zeitgeist(5).size());
+    }
+
+    @Test
+    public void testStalePageServedWhileRefreshing() throws InterruptedException {
+        WikiMediator testWiki = new WikiMediator(10, 1,
+                new MediatorConfig.Builder().withStaleWhileRevalidate(30).build());
+        String fresh = testWiki.getPage("Lego");
+        Thread.sleep(2000);
+
+        PageResult stale = testWiki.getPageResult("Lego");
+        Assertions.assertTrue(stale.isStale());
+        Assertions.assertEquals(fresh, stale.getText());
+        testWiki.close();
+    }
+
+    @Test
+    public void testGetPagesMatchesGetPage() {
+        WikiMediator testWiki = new WikiMediator(10, 30);
+        List<String> titles = new ArrayList<>();
+        titles.add("Lego");
+        titles.add("lego");
+        titles.add("ldsjf;lasj;lve");
+        titles.add("Lego");
+
+        Map<String, String> pages = testWiki.getPages(titles);
+
+        Assertions.assertEquals(3, pages.size());
+        Assertions.assertEquals(pages.get("Lego"), pages.get("lego"));
+        Assertions.assertEquals("", pages.get("ldsjf;lasj;lve"));
+        Assertions.assertEquals(pages.get("Lego"), testWiki.getPage("Lego"));
+    }
+
+    @Test
+    public void testAsyncMatchesBlocking() {
+        WikiMediator testWiki = new WikiMediator(10, 30);
+        CompletableFuture<String> page = testWiki.getPageAsync("Lego");
+        CompletableFuture<List<String>> titles = testWiki.searchAsync("lego", 3);
+
+        Assertions.assertEquals(page.join(), testWiki.getPage("Lego"));
+        Assertions.assertEquals(titles.join(), testWiki.search("lego", 3));
+        Assertions.assertEquals(2, testWiki.zeitgeist(5).size());
+    }
+
+    @Test
+    public void testVirtualThreadMode() {
+        WikiMediator testWiki = new WikiMediator(10, 30, new MediatorConfig.Builder()
+                .withThreadMode(MediatorConfig.ThreadMode.VIRTUAL).build());
+
+        Assertions.assertEquals(VirtualThreads.isAvailable(), testWiki.usesVirtualThreads());
+        Assertions.assertEquals(testWiki.getPage("Lego"), testWiki.getPageAsync("lego").join());
+        Assertions.assertEquals(2, testWiki.zeitgeist(5).size());
+        Assertions.assertFalse(new WikiMediator(10, 30).usesVirtualThreads());
+    }
+
+    @Test
+    public void testBackendConcurrencyLimit() {
+        WikiMediator testWiki = new WikiMediator(10, 30, new MediatorConfig.Builder()
+                .withBackendConcurrency(1, 4, 30000).build());
+        List<String> titles = Arrays.asList("Lego", "Spoon", "Coca-Cola");
+
+        Assertions.assertEquals(new WikiMediator(10, 30).getPages(titles), testWiki.getPages(titles));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new MediatorConfig.Builder().withBackendConcurrency(0, 4, 1000).build());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new MediatorConfig.Builder().withBackendConcurrency(1, -1, 1000).build());
+    }
+
+    @Test
+    public void testHedgedPageFetches() {
+        WikiMediator testWiki = new WikiMediator(10, 30, new MediatorConfig.Builder().withHedging(100).build());
+        List<String> titles = Arrays.asList("Lego", "Spoon", "Coca-Cola");
+
+        Assertions.assertEquals(new WikiMediator(10, 30).getPages(titles), testWiki.getPages(titles));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new MediatorConfig.Builder().withHedging(101).build());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new MediatorConfig.Builder().withHedging(-1).build());
+    }
+
+    @Test
+    public void testShortestPath() throws TimeoutException {
+        WikiMediator testWiki = new WikiMediator(10, 30);
+
+        Assertions.assertEquals(Collections.singletonList("Philosophy"),
+                testWiki.shortestPath("Philosophy", "philosophy", 30));
+        Assertions.assertThrows(TimeoutException.class,
+                () -> testWiki.shortestPath("Philosophy", "Barack Obama", 0));
+    }
+
+    @Test
+    public void testShortestPathReusesLinks() throws TimeoutException {
+        WikiMediator testWiki = new WikiMediator(10, 30, new MediatorConfig.Builder().withLinkCache(64, 60).build());
+
+        List<String> path = testWiki.shortestPath("Philosophy", "Plato", 30);
+        Assertions.assertEquals("Philosophy", path.get(0));
+        Assertions.assertEquals("Plato", path.get(path.size() - 1));
+        Assertions.assertEquals(path, testWiki.shortestPath("Philosophy", "Plato", 30));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new MediatorConfig.Builder().withLinkCache(0, 60).build());
+    }
+
+    @Test
+    public void testShortestPathFromCachedPage() throws TimeoutException {
+        WikiMediator cachedWiki = new WikiMediator(10, 60);
+        WikiMediator testWiki = new WikiMediator(10, 60);
+
+        Assertions.assertFalse(cachedWiki.getPage("Plato").isEmpty());
+        Assertions.assertEquals(testWiki.shortestPath("Plato", "Philosophy", 30),
+                cachedWiki.shortestPath("Plato", "Philosophy", 30));
+    }
+
+    @Test
+    public void testShortestPathFromLinkGraph() throws IOException, TimeoutException {
+        Path local = Files.createTempDirectory("local");
+        Path links = local.resolve("links.tsv");
+        Files.write(links, List.of("apple\tcherry", "apple\tbanana", "banana\tdate", "cherry\tdate",
+                "date\tfig_tree", "elder\tapple", "not a link"));
+        Assertions.assertEquals(6, LinkGraphImporter.importLinks(links, local));
+        WikiMediator testWiki = new WikiMediator(10, 30,
+                new MediatorConfig.Builder().withLinkGraph(local.toString()).build());
+
+        Assertions.assertEquals(List.of("Apple", "Banana", "Date", "Fig tree"),
+                testWiki.shortestPath("apple", "Fig tree", 30));
+        Assertions.assertEquals(List.of("Elder", "Apple", "Cherry"), testWiki.shortestPath("Elder", "Cherry", 30));
+        Assertions.assertEquals(List.of(), testWiki.shortestPath("Fig tree", "Apple", 30));
+        Assertions.assertEquals(List.of("Date"), testWiki.shortestPath("Date", "date", 30));
+    }
+
+    @Test
+    public void testDistanceEstimateFromLandmarks() throws IOException {
+        Path local = Files.createTempDirectory("local");
+        Path links = local.resolve("links.tsv");
+        Files.write(links, List.of("apple\tcherry", "apple\tbanana", "banana\tdate", "cherry\tdate",
+                "date\tfig_tree", "elder\tapple"));
+        LinkGraphImporter.importLinks(links, local, 4);
+        WikiMediator testWiki = new WikiMediator(10, 30,
+                new MediatorConfig.Builder().withLinkGraph(local.toString()).withLandmarks(4).build());
+
+        DistanceEstimate estimate = testWiki.distanceEstimate("apple", "Fig tree");
+        Assertions.assertEquals(3, estimate.getLowerBound());
+        Assertions.assertEquals(3, estimate.getUpperBound());
+        estimate = testWiki.distanceEstimate("Elder", "Date");
+        Assertions.assertEquals(1, estimate.getLowerBound());
+        Assertions.assertEquals(3, estimate.getUpperBound());
+        Assertions.assertTrue(testWiki.distanceEstimate("Fig tree", "Apple").isUnreachable());
+        Assertions.assertEquals(0, testWiki.distanceEstimate("Date", "date").getUpperBound());
+    }
+
     /* Zeitgeist */
     @Test
     public void testEmptyZG() {
@@ -390,4 +587,262 @@ public class Task3Tests {
 
         Assertions.assertEquals(5, testWiki.windowedPeakLoad(6));
     }
+
+    /* Approximate statistics */
+    @Test
+    public void testApproximateZGUnderCapacity() {
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withStatisticsMode(MediatorConfig.StatisticsMode.APPROXIMATE)
+                .withHeavyHitterCapacity(10)
+                .build();
+        WikiMediator testWiki = new WikiMediator(10, 50, config);
+        List<String> expected = new ArrayList<>();
+        expected.add("Chicken");
+        expected.add("Beef");
+
+        for (int i = 0; i < 3; i++) {
+            testWiki.search("Chicken", 0);
+        }
+        for (int i = 0; i < 2; i++) {
+            testWiki.search("Beef", 0);
+        }
+        testWiki.search("Dog", 0);
+
+        Ranking ranking = testWiki.zeitgeistRanking(2);
+        Assertions.assertEquals(expected, ranking.getItems());
+        Assertions.assertTrue(ranking.isExact());
+        Assertions.assertEquals(expected, testWiki.zeitgeist(2));
+    }
+
+    @Test
+    public void testApproximateZGOverCapacity() {
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withStatisticsMode(MediatorConfig.StatisticsMode.APPROXIMATE)
+                .withHeavyHitterCapacity(4)
+                .build();
+        WikiMediator testWiki = new WikiMediator(10, 50, config);
+
+        for (int i = 0; i < 40; i++) {
+            testWiki.search("Popular", 0);
+            testWiki.search("Junk " + i, 0);
+        }
+
+        Ranking ranking = testWiki.zeitgeistRanking(1);
+        Assertions.assertEquals("Popular", ranking.getItems().get(0));
+        Assertions.assertTrue(ranking.getErrorBound() > 0);
+        Assertions.assertTrue(ranking.getErrorBound() <= 80 / 4);
+    }
+
+    @Test
+    public void testApproximateTrending() {
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withStatisticsMode(MediatorConfig.StatisticsMode.APPROXIMATE)
+                .withHeavyHitterCapacity(8)
+                .withTrendingHorizon(60, 1)
+                .build();
+        WikiMediator testWiki = new WikiMediator(10, 50, config);
+
+        for (int i = 0; i < 20; i++) {
+            testWiki.search("Canada", 0);
+            testWiki.search("Noise " + i, 0);
+        }
+        testWiki.search("Vietnam", 0);
+        testWiki.search("Vietnam", 0);
+
+        Ranking ranking = testWiki.trendingRanking(5, 2);
+        Assertions.assertEquals("Canada", ranking.getItems().get(0));
+        Assertions.assertEquals(2, ranking.getItems().size());
+        Assertions.assertTrue(ranking.getErrorBound() <= 42);
+    }
+
+    /* Decayed zeitgeist */
+    @Test
+    public void testDecayedZGOrder() {
+        WikiMediator testWiki = new WikiMediator(10, 50);
+        List<String> expected = new ArrayList<>();
+        expected.add("Chicken");
+        expected.add("Beef");
+
+        testWiki.search("Beef", 0);
+        for (int i = 0; i < 3; i++) {
+            testWiki.search("Chicken", 0);
+        }
+        testWiki.search("Beef", 0);
+
+        Assertions.assertEquals(expected, testWiki.decayedZeitgeist(2));
+        Assertions.assertEquals(expected.subList(0, 1), testWiki.decayedZeitgeist(1));
+    }
+
+    @Test
+    public void testDecayedZGFavoursRecent() throws InterruptedException {
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withDecayHalfLife(1)
+                .build();
+        WikiMediator testWiki = new WikiMediator(10, 50, config);
+        List<String> expected = new ArrayList<>();
+        expected.add("New");
+        expected.add("Old");
+
+        for (int i = 0; i < 3; i++) {
+            testWiki.search("Old", 0);
+        }
+        Thread.sleep(4 * WikiMediator.MILLIS);
+        testWiki.search("New", 0);
+
+        Assertions.assertEquals(expected, testWiki.decayedZeitgeist(5));
+        Assertions.assertEquals(List.of("Old"), testWiki.zeitgeist(1));
+    }
+
+    /* Cached rankings */
+    @Test
+    public void testCachedZGWithinStaleness() {
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withRankingStaleness(60 * WikiMediator.MILLIS)
+                .build();
+        WikiMediator testWiki = new WikiMediator(10, 50, config);
+        List<String> expected = new ArrayList<>();
+        expected.add("Chicken");
+
+        testWiki.search("Chicken", 0);
+        Assertions.assertEquals(expected, testWiki.zeitgeist(2));
+
+        testWiki.search("Beef", 0);
+        testWiki.search("Beef", 0);
+        Assertions.assertEquals(expected, testWiki.zeitgeist(2));
+        Assertions.assertEquals(List.of("Beef"), testWiki.zeitgeist(1));
+    }
+
+    @Test
+    public void testCachedZGInvalidated() {
+        WikiMediator testWiki = new WikiMediator(10, 50);
+
+        testWiki.search("Chicken", 0);
+        Ranking first = testWiki.zeitgeistRanking(2);
+        Assertions.assertSame(first, testWiki.zeitgeistRanking(2));
+
+        testWiki.search("Beef", 0);
+        testWiki.search("Beef", 0);
+        Assertions.assertEquals(List.of("Beef", "Chicken"), testWiki.zeitgeist(2));
+    }
+
+    /* Persistence */
+    @Test
+    public void testStatisticsSurviveRestart() throws IOException {
+        Path local = Files.createTempDirectory("local");
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withPersistence(local.toString(), MediatorConfig.DDURABILITY)
+                .build();
+        List<String> expected = new ArrayList<>();
+        expected.add("Chicken");
+        expected.add("Beef");
+
+        WikiMediator first = new WikiMediator(10, 50, config);
+        first.search("Beef", 0);
+        first.search("Chicken", 0);
+        first.search("Chicken", 0);
+        first.close();
+
+        WikiMediator second = new WikiMediator(10, 50, config);
+        Assertions.assertEquals(expected, second.zeitgeist(5));
+        second.search("Beef", 0);
+        second.search("Beef", 0);
+        second.close();
+
+        WikiMediator third = new WikiMediator(10, 50, config);
+        Assertions.assertEquals(List.of("Beef", "Chicken"), third.zeitgeist(5));
+        third.close();
+    }
+
+    @Test
+    public void testStatisticsRecoverFromSnapshotAndTail() throws IOException, InterruptedException {
+        Path local = Files.createTempDirectory("local");
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withPersistence(local.toString(), MediatorConfig.DDURABILITY)
+                .build();
+
+        WikiMediator first = new WikiMediator(10, 50, config);
+        first.search("Beef", 0);
+        first.search("Chicken", 0);
+        first.search("Chicken", 0);
+        first.close();
+
+        long snapshots;
+        try (Stream<Path> files = Files.list(local)) {
+            snapshots = files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).count();
+        }
+        Assertions.assertEquals(1, snapshots);
+
+        WikiMediator crashed = new WikiMediator(10, 50, config);
+        crashed.search("Beef", 0);
+        crashed.search("Beef", 0);
+        crashed.windowedPeakLoad();
+        Thread.sleep(5 * MediatorConfig.DDURABILITY);
+
+        WikiMediator recovered = new WikiMediator(10, 50, config);
+        Assertions.assertEquals(List.of("Beef", "Chicken"), recovered.zeitgeist(5));
+        recovered.close();
+    }
+
+    @Test
+    public void testStatisticsLoadInBackground() throws IOException {
+        Path local = Files.createTempDirectory("local");
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withPersistence(local.toString(), MediatorConfig.DDURABILITY)
+                .build();
+
+        WikiMediator first = new WikiMediator(10, 50, config);
+        first.search("Beef", 0);
+        first.search("Beef", 0);
+        first.close();
+
+        WikiMediator second = new WikiMediator(10, 50, config);
+        second.search("Chicken", 0);
+        Ranking ranking = second.zeitgeistRanking(5);
+        Assertions.assertTrue(second.isLoaded());
+        Assertions.assertFalse(ranking.isPartial());
+        Assertions.assertEquals(List.of("Beef", "Chicken"), ranking.getItems());
+        second.close();
+    }
+
+    @Test
+    public void testRangeQueriesInMemory() throws InterruptedException {
+        WikiMediator wikiMediator = new WikiMediator(10, 50);
+        long start = System.currentTimeMillis() / 1000;
+        wikiMediator.search("Beef", 0);
+        wikiMediator.search("Beef", 0);
+        Thread.sleep(2000);
+        long middle = System.currentTimeMillis() / 1000;
+        wikiMediator.search("Chicken", 0);
+        wikiMediator.search("Chicken", 0);
+        wikiMediator.search("Chicken", 0);
+
+        Assertions.assertEquals(List.of("Beef"), wikiMediator.trending(start, middle, 5));
+        Assertions.assertEquals(List.of("Chicken", "Beef"), wikiMediator.trending(start, middle + 60, 5));
+        Assertions.assertEquals(2, wikiMediator.windowedPeakLoad(start, middle, 30));
+    }
+
+    @Test
+    public void testRangeQueriesFromLog() throws IOException, InterruptedException {
+        Path local = Files.createTempDirectory("local");
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withPersistence(local.toString(), MediatorConfig.DDURABILITY)
+                .build();
+
+        WikiMediator first = new WikiMediator(10, 50, config);
+        long start = System.currentTimeMillis() / 1000;
+        first.search("Beef", 0);
+        first.search("Beef", 0);
+        Thread.sleep(2000);
+        long middle = System.currentTimeMillis() / 1000;
+        first.search("Chicken", 0);
+        first.search("Chicken", 0);
+        first.search("Chicken", 0);
+        first.close();
+
+        WikiMediator second = new WikiMediator(10, 50, config);
+        Assertions.assertEquals(List.of("Beef"), second.trending(start, middle, 5));
+        Assertions.assertEquals(List.of("Chicken", "Beef"), second.trending(start, middle + 60, 5));
+        Assertions.assertEquals(2, second.windowedPeakLoad(start, middle, 30));
+        second.close();
+    }
 }
@@ -0,0 +1,139 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A TitleNormalizer converts Wikipedia page titles to the canonical form used by MediaWiki, so that
+ * titles which name the same page, like "barack_obama" and "Barack obama", are equal Strings.
+ *
+ * The rules are the ones MediaWiki applies to the titles of English Wikipedia: underscores are
+ * spaces, runs of whitespace are collapsed into a single space, leading and trailing whitespace and a
+ * leading colon are removed, a section anchor after a '#' is ignored, the name of a standard namespace
+ * is written in its canonical case, and the first letter of the title, after the namespace if there
+ * is one, is upper case. The rest of the title is case-sensitive and is left unchanged.
+ */
+final class TitleNormalizer {
+
+    /* the canonical names of the standard namespaces of English Wikipedia */
+    private static final List<String> NAMESPACES = Arrays.asList(
+            "Talk", "User", "User talk", "Wikipedia", "Wikipedia talk", "File", "File talk",
+            "MediaWiki", "MediaWiki talk", "Template", "Template talk", "Help", "Help talk",
+            "Category", "Category talk", "Portal", "Portal talk", "Draft", "Draft talk",
+            "Module", "Module talk", "Special", "Media");
+
+    /* maps the lower case name of each standard namespace to its canonical name */
+    private static final Map<String, String> CANONICAL_NAMESPACES = new HashMap<>();
+
+    static {
+        for (String namespace : NAMESPACES) {
+            CANONICAL_NAMESPACES.put(namespace.toLowerCase(Locale.ROOT), namespace);
+        }
+    }
+
+    /**
+     * TitleNormalizer only has static methods and is never instantiated.
+     */
+    private TitleNormalizer() {
+    }
+
+    /**
+     * Normalize a page title.
+     * @param pageTitle the page title, pageTitle must not be null
+     * @return the canonical form of pageTitle, which is the empty String if pageTitle does not name a page
+     */
+    static String normalize(String pageTitle) {
+        String title = pageTitle;
+        int anchor = title.indexOf('#');
+        if (anchor >= 0) {
+            title = title.substring(0, anchor);
+        }
+        title = collapseWhitespace(title);
+        if (title.startsWith(":")) {
+            title = title.substring(1).trim();
+        }
+
+        int colon = title.indexOf(':');
+        if (colon > 0) {
+            String namespace = CANONICAL_NAMESPACES.get(title.substring(0, colon).trim().toLowerCase(Locale.ROOT));
+            if (namespace != null) {
+                return namespace + ":" + capitalize(title.substring(colon + 1).trim());
+            }
+        }
+        return capitalize(title);
+    }
+
+    /**
+     * Check whether a name is the name of a standard namespace.
+     * @param name the name, in any case, with underscores or spaces, name must not be null
+     * @return true if name names a standard namespace of English Wikipedia, false otherwise
+     */
+    static boolean isNamespace(String name) {
+        return CANONICAL_NAMESPACES.containsKey(collapseWhitespace(name).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Write underscores as spaces, collapse runs of whitespace into a single space, and remove leading and
+     * trailing whitespace, in one pass that does not copy a title that is already so.
+     * @param title the title, title must not be null
+     * @return title with underscores and runs of whitespace replaced by single spaces, and trimmed
+     */
+    static String collapseWhitespace(String title) {
+        boolean collapsed = true;
+        for (int i = 0; i < title.length() && collapsed; i++) {
+            char c = title.charAt(i);
+            if (c == '_' || (isWhitespace(c) && (c != ' ' || i == 0 || i == title.length() - 1
+                    || isWhitespace(title.charAt(i - 1)) || title.charAt(i - 1) == '_'))) {
+                collapsed = false;
+            }
+        }
+        if (collapsed) {
+            return title.trim();
+        }
+
+        StringBuilder result = new StringBuilder(title.length());
+        boolean space = false;
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (c == '_' || isWhitespace(c)) {
+                space = result.length() > 0;
+            }
+            else {
+                if (space) {
+                    result.append(' ');
+                    space = false;
+                }
+                result.append(c);
+            }
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * Helper method that checks whether a character is whitespace, as the regular expression \s matches it.
+     * @param c the character
+     * @return true if c is a space, a tab, a line break, a vertical tab or a form feed
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Helper method that upper cases the first letter of a title.
+     * @param title the title, title must not be null
+     * @return title with its first code point in upper case
+     */
+    private static String capitalize(String title) {
+        if (title.isEmpty()) {
+            return title;
+        }
+        int first = title.codePointAt(0);
+        return new StringBuilder()
+                .appendCodePoint(Character.toUpperCase(first))
+                .append(title, Character.charCount(first), title.length())
+                .toString();
+    }
+}
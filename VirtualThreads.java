@@ -0,0 +1,97 @@
+package cpen221.mp3.wikimediator;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * VirtualThreads creates the executors that a WikiMediator and its server run blocking work on, with one
+ * virtual thread per task if the JVM supports virtual threads, and with a pool of platform threads otherwise.
+ *
+ * Virtual threads were added in Java 21. They are looked up by reflection, so that the WikiMediator still
+ * compiles and runs on Java 17, where isAvailable returns false. A virtual thread only occupies an operating
+ * system thread, its carrier, while it runs: when it blocks on I/O, a ReentrantLock or a park, it is unmounted
+ * and its carrier runs another virtual thread. It stays mounted, pinning its carrier, if it blocks while it
+ * holds, or waits for, the lock of an object, so code that runs on virtual threads uses ReentrantLocks instead
+ * of synchronized blocks wherever it may block.
+ */
+public final class VirtualThreads {
+
+    /* Thread.Builder.name(String, long), or null if the JVM has no virtual threads */
+    private static final Method NAME;
+
+    /* Thread.Builder.factory(), or null if the JVM has no virtual threads */
+    private static final Method FACTORY;
+
+    /* Thread.ofVirtual(), or null if the JVM has no virtual threads */
+    private static final Method OF_VIRTUAL;
+
+    /* Executors.newThreadPerTaskExecutor(ThreadFactory), or null if the JVM has no virtual threads */
+    private static final Method PER_TASK;
+
+    static {
+        Method name = null;
+        Method factory = null;
+        Method ofVirtual = null;
+        Method perTask = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            // virtual threads are a preview feature before Java 21, and are not available unless it is enabled
+            factory.invoke(ofVirtual.invoke(null));
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            perTask = null;
+        }
+        NAME = name;
+        FACTORY = factory;
+        OF_VIRTUAL = ofVirtual;
+        PER_TASK = perTask;
+    }
+
+    /**
+     * VirtualThreads only has static methods and is never instantiated.
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * Check whether the JVM supports virtual threads.
+     * @return true if virtual threads can be created, false otherwise
+     */
+    public static boolean isAvailable() {
+        return PER_TASK != null;
+    }
+
+    /**
+     * Create an executor that runs every task on a new virtual thread, if virtual threads are asked for and the
+     * JVM supports them, or on a cached pool of daemon platform threads otherwise.
+     * @param name the name of the threads of the executor, which is followed by the number of each thread,
+     *             name must not be null
+     * @param virtual true to use virtual threads if they are available, false to use platform threads
+     * @return an executor that runs each task on a new virtual thread, or on a pooled platform thread
+     */
+    public static ExecutorService newExecutor(String name, boolean virtual) {
+        if (virtual && isAvailable()) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L);
+                return (ExecutorService) PER_TASK.invoke(null, FACTORY.invoke(builder));
+            }
+            catch (ReflectiveOperationException e) {
+                System.err.println("Could not create virtual threads, using platform threads: " + e.getMessage());
+            }
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, name + "-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,64 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A WikiBackend answers queries about the pages of a wiki asynchronously. Every method returns at once with
+ * a CompletableFuture that is completed once the wiki has answered, so no thread waits while a query is in
+ * flight, and the number of queries in flight is not limited by the number of threads. A future completes
+ * exceptionally if the wiki could not be reached, or answered with an error. Cancelling a future cancels
+ * the queries it is waiting for.
+ */
+interface WikiBackend {
+
+    /**
+     * Search the wiki.
+     * @param query the query string, query must not be null
+     * @param limit the maximum number of page titles to return, limit > 0
+     * @return a future of up to limit page titles that match query, in the order the wiki ranks them
+     */
+    CompletableFuture<List<String>> search(String query, int limit);
+
+    /**
+     * Fetch the latest revision of each of a collection of pages, without fetching their text.
+     * @param titles the normalized titles of the pages, titles must not be null
+     * @return a future of a map from each title in titles to the latest revision of its page. A title is
+     * missing if its page does not exist.
+     */
+    CompletableFuture<Map<String, RevisionInfo>> latestRevisions(Collection<String> titles);
+
+    /**
+     * Follow the redirects of each of a collection of pages.
+     * @param titles the normalized titles of the pages, titles must not be null
+     * @return a future of a map from each title in titles to the title of the page it redirects to, or to
+     * itself if it is not a redirect
+     */
+    CompletableFuture<Map<String, String>> resolveRedirects(Collection<String> titles);
+
+    /**
+     * Fetch the text of each of a collection of pages.
+     * @param titles the normalized titles of the pages, titles must not be null
+     * @return a future of a map from each title in titles to the text of its page, or to the empty String
+     * if the page does not exist
+     */
+    CompletableFuture<Map<String, String>> getPageTexts(Collection<String> titles);
+
+    /**
+     * Fetch the titles of the articles that each of a collection of pages links to.
+     * @param titles the normalized titles of the pages, titles must not be null
+     * @return a future of a map from each title in titles to the titles of the articles its page links to, in
+     * the order the wiki lists them, or to an empty list if the page does not exist
+     */
+    CompletableFuture<Map<String, List<String>>> links(Collection<String> titles);
+
+    /**
+     * Fetch the titles of the articles that link to each of a collection of pages.
+     * @param titles the normalized titles of the pages, titles must not be null
+     * @return a future of a map from each title in titles to the titles of the articles that link to its page,
+     * in the order the wiki lists them, or to an empty list if no article does
+     */
+    CompletableFuture<Map<String, List<String>>> linksHere(Collection<String> titles);
+}
@@ -1,348 +1,1577 @@
-package cpen221.mp3.wikimediator;
-
-import cpen221.mp3.fsftbuffer.FSFTBuffer;
-import cpen221.mp3.fsftbuffer.ObjectNotInCacheException;
-import org.fastily.jwiki.core.Wiki;
-
-import java.util.*;
-import java.util.concurrent.TimeoutException;
-
-/**
- * A WikiMediator represents a mediator service for Wikipedia that accesses Wikipedia pages
- * and other relevant information. Wikipedia pages are cached in the WikiMediator to minimize
- * network accesses. A WikiMediator can only store a finite amount of Wikipedia pages, and a
- * page is only cached for a finite amount of time unless it is accessed again.
- * The mediator service will also collect statistical information about requests, such as the
- * frequency and absolute time of requests.
- *
- * Abstraction Function:
- * A WikiMediator is represented by a FSFTBuffer, which is a user-defined data type that stores
- * a finite number of bufferable objects for a finite period of time. In this case, the objects
- * stored in the FSFTBuffer are instances of the WikiPage class.
- * One ArrayList of Strings, unfilteredSearches, keeps track of the query strings submitted to
- * the WikiMediator through the methods search() and getPage().
- * Two ArrayLists of Longs, timeSearched and requestTimes, keep track of the time at which a query
- * String was submitted to either search() or getPage() and the time any of the WikiMediator methods
- * were called, respectively.
- */
-public class WikiMediator {
-
-    /* conversion constant 1 second = 1000 milliseconds */
-    public static final int MILLIS = 1000;
-
-    private final FSFTBuffer<WikiPage> wikiBuffer;
-    private final List<String> unfilteredSearches = Collections.synchronizedList(new ArrayList<>());
-    private final List<Long> timeSearched = Collections.synchronizedList(new ArrayList<>());
-    private final List<Long> requestTimes = Collections.synchronizedList(new ArrayList<>());
-
-    /*
-     * Representation Invariant:
-     *  - unfilteredSearches must not contain any null entries
-     *  - timeSearched must not contain any entries less than zero
-     *  - requestTimes must not contain any entries less than zero
-     */
-
-    /*
-     * Thread Safety Arguments:
-     *  - MILLIS is static and final
-     *  - unfilteredSearches, timeSearched, and requestTimes all point to threadsafe list data type
-     *  - non-threadsafe data type's reference is thrown away by directly passing a new ArrayList
-     *    directly into synchronizedList()
-     *  - methods of the WikiMediator class are synchronized
-     */
-
-    /**
-     * Check that the representation invariants WikiMediator hold true.
-     * @throws RuntimeException if any representation invariants are violated.
-     */
-    private synchronized void checkRep() {
-        for (String s : unfilteredSearches) {
-            if (s == null) {
-                throw new RuntimeException("unfilteredSearches must not contain a null entry");
-            }
-        }
-
-        for (Long searchTime : timeSearched) {
-            if (searchTime < 0) {
-                throw new RuntimeException("timeSearched must not contain any entries less than zero");
-            }
-        }
-
-        for (Long requestTime : requestTimes) {
-            if (requestTime < 0) {
-                throw new RuntimeException("requestTimes must not contain any entries less than zero");
-            }
-        }
-    }
-
-    /**
-     * Create a WikiMediator with a fixed capacity and a timeout value.
-     *
-     * @param capacity the maximum amount of objects that can be stored in the WikiMediator
-     *                 capacity must be a number greater than zero
-     * @param stalenessInterval the maximum period of time an object will be stored in the WikiMediator
-     *                          stalenessInterval must be a number greater than zero
-     */
-    public WikiMediator(int capacity, int stalenessInterval){
-        wikiBuffer = new FSFTBuffer<>(capacity, stalenessInterval);
-        checkRep();
-    }
-
-    /**
-     * Helper method that stores the Strings used as input parameters to search or getPage requests
-     * in unfilteredSearches. Also stores the time at which the requests were made in timeSearched.
-     * @param queryOrPageTitle, the String used as input parameters in search or getPage method calls
-     *
-     * Frame Condition:
-     * - String of query or page title is added to unfilteredSearches
-     * - Long corresponding to the time at which the request was made is stored in timeSearched
-     */
-    private synchronized void addSearch(String queryOrPageTitle){
-        unfilteredSearches.add(queryOrPageTitle);
-        timeSearched.add(System.currentTimeMillis() / MILLIS);
-    }
-
-    /**
-     * Given a query, return up to limit page titles that match the query string (per Wikipedia's search service).
-     * @param query The query string to search the Wiki with, query must not be null.
-     * @param limit The maximum number of page titles to return that match the query string
-     * @return Up to limit page titles that match the query string when searched through Wikipedia's search service.
-     * In the case that limit <= 0, return an empty list of page titles.
-     */
-    public synchronized List<String> search(String query, int limit){
-        checkRep();
-        Wiki wiki = new Wiki.Builder().withDomain("en.wikipedia.org").build();
-
-        requestTimes.add(System.currentTimeMillis() / MILLIS);
-        addSearch(query);
-
-        checkRep();
-        if (limit <= 0) {
-            return new ArrayList<>();
-        }
-
-        return wiki.search(query, limit);
-    }
-
-    /**
-     * Given a pageTitle, return the text associated with the Wikipedia page that matches pageTitle.
-     * @param pageTitle The title of the page to query Wikipedia, pageTitle must not be null.
-     * @return The text of the page specified by pageTitle, or an empty string if the page is non-existent
-     * or something went wrong.
-     */
-    public synchronized String getPage(String pageTitle) {
-        checkRep();
-
-        requestTimes.add(System.currentTimeMillis() / MILLIS);
-        addSearch(pageTitle);
-
-        WikiPage wikiPage;
-        String pageText;
-
-        try {
-            wikiPage = wikiBuffer.get(pageTitle);
-            pageText = wikiPage.getPageContent();
-        }
-        catch(ObjectNotInCacheException e){
-            Wiki wiki = new Wiki.Builder().withDomain("en.wikipedia.org").build();
-            pageText = wiki.getPageText(pageTitle);
-
-            wikiPage = new WikiPage(pageTitle, pageText);
-            wikiBuffer.put(wikiPage);
-        }
-
-        checkRep();
-        return pageText;
-    }
-
-    /**
-     * Given a limit, return the most common Strings used in search and getPage requests, with items being sorted in
-     * non-increasing count order. When many requests have been made, return only limit items.
-     *
-     * @param limit The maximum number of most common Strings to return.
-     *              limit must be a number greater than zero.
-     * @return Up to limit most common Strings used in search and getPage requests, with items sorted in non-increasing
-     * count order based on the frequency of their query requests. In the case of different Strings with the same
-     * frequency of total search and getPage requests, the String to return will be chosen arbitrarily.
-     */
-    public synchronized List<String> zeitgeist(int limit) {
-        checkRep();
-
-        requestTimes.add(System.currentTimeMillis() / MILLIS);
-
-        List<String> mostCommonStrings = new ArrayList<>();
-        Map<String, Integer> zeigMap = new HashMap<>();
-
-        for (String s : unfilteredSearches){
-            int count = zeigMap.getOrDefault(s, 0);
-            zeigMap.put(s, count + 1);
-        }
-
-        List<Map.Entry<String, Integer>> sortedMapList = new LinkedList<>(zeigMap.entrySet());
-
-        sortedMapList.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
-
-        if (sortedMapList.size() == 0) {
-            checkRep();
-            return mostCommonStrings;
-        }
-
-        else {
-            for (int i = 0; i < Math.min(limit, sortedMapList.size()); i++){
-                mostCommonStrings.add(sortedMapList.get(i).getKey());
-            }
-        }
-
-        checkRep();
-        return mostCommonStrings;
-    }
-
-    /**
-     * Finds and returns up to maxItems most common Strings used in search and getPage requests, with requests
-     * all having been made in the last timeLimitInSeconds. Requests are sorted in non-increasing count order
-     * according to their frequencies.
-     *
-     * @param timeLimitInSeconds The number of seconds before the method was called where search or getPage requests
-     *                           must have been made in order to have the query Strings be accounted for.
-     *                           If the method was called at currentTime, the requests returned would all have been made
-     *                           in the interval [currentTime - timeLimitInSeconds, currentTime].
-     *                           0 < timeLimitInSeconds < currentTime
-     * @param maxItems The maximum number of most common Strings to return.
-     *                 maxItems must be a number greater than zero.
-     * @return Up to maxItems most common Strings used in search and getPage requests made at most timeLimitInSeconds ago,
-     * with items sorted in non-increasing count order based on the frequency of their query requests.  In the case of
-     * different Strings with the same frequency of total search and getPage requests, the String to return will be
-     * chosen arbitrarily.
-     */
-    public synchronized List<String> trending(int timeLimitInSeconds, int maxItems) {
-        checkRep();
-        long callTime = System.currentTimeMillis()/1000;
-        requestTimes.add(callTime);
-
-        List<String> trendingStrings = new ArrayList<>();
-        List<String> filteredSearches = new ArrayList<>();
-        List<Integer> removedIndexes = new ArrayList<>();
-        Map<String, Integer> trendingMap = new HashMap<>();
-
-        for(String s :unfilteredSearches){
-            filteredSearches.add(s);
-        }
-
-        int index = 0;
-
-        for (String s : unfilteredSearches){
-            if (callTime - timeLimitInSeconds > timeSearched.get(index)){
-                removedIndexes.add(index);
-            }
-            index++;
-        }
-
-        Collections.sort(removedIndexes, Collections.reverseOrder());
-
-        for(int i : removedIndexes) {
-            filteredSearches.remove(i);
-        }
-
-        for (String s : filteredSearches){
-            int count = trendingMap.getOrDefault(s, 0);
-            trendingMap.put(s, count + 1);
-        }
-
-        List<Map.Entry<String, Integer> > sortedMapList = new LinkedList<>(trendingMap.entrySet());
-
-        sortedMapList.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
-
-        if (sortedMapList.size() == 0) {
-            checkRep();
-            return trendingStrings;
-        }
-
-        else {
-            for (int i = 0; i < Math.min(maxItems, sortedMapList.size()); i++){
-                trendingStrings.add(sortedMapList.get(i).getKey());
-            }
-        }
-
-        checkRep();
-        return trendingStrings;
-    }
-
-    /**
-     * Return the maximum number of valid requests made using the public API of WikiMediator seen in any time window
-     * of length timeWindowInSeconds. Valid requests are calls to the methods: search, getPage, zeitgeist, trending,
-     * and windowedPeakLoad. This current call to windowedPeakLoad will not be accounted for in the number of valid requests.
-     *
-     * @param timeWindowInSeconds The size of the time interval within which request frequencies will be considered.
-     *                            0 < timeWindowInSeconds < currentTime
-     *                            where currentTime is the time at which this method was called.
-     * @return The maximum number of requests made to the WikiMediator API during any time interval of size
-     * timeWindowInSeconds. This number will not include requests made at the moment this method was called, including
-     * calls to this method itself.
-     */
-    public synchronized int windowedPeakLoad(int timeWindowInSeconds) {
-        checkRep();
-
-        long callTime = System.currentTimeMillis() / MILLIS;
-        requestTimes.add(callTime);
-
-        int maxRequests = 0;
-
-
-        long firstRequestTime = requestTimes.stream()
-                .min(Comparator.comparing(Long::valueOf))
-                .orElse((long) 0);
-
-        do{
-            long windowUpperBound = callTime;
-            long windowLowerBound = callTime - timeWindowInSeconds;
-
-            int numRequests = (int) requestTimes.stream()
-                    .filter(times -> times < windowUpperBound && times >= windowLowerBound)
-                    .count();
-
-            if (numRequests > maxRequests){
-                maxRequests = numRequests;
-            }
-
-            callTime -= 1;
-        } while(callTime - timeWindowInSeconds >= firstRequestTime);
-
-        checkRep();
-        return maxRequests;
-    }
-
-    /**
-     * Return the maximum number of valid requests made using the public API of WikiMediator seen in any time window
-     * of length 30 seconds. Valid requests are calls to the methods: search, getPage, zeitgeist, trending,
-     * and windowedPeakLoad. This current call to windowedPeakLoad will not be accounted for in the number of valid requests.
-     *
-     * @return The maximum number of requests made to the WikiMediator API during any 30 second time interval.
-     * This number will not include requests made at the moment this method was called, including calls to this method
-     * itself.
-     */
-    public synchronized int windowedPeakLoad() {
-        return windowedPeakLoad(30);
-    }
-
-    /* Task 5 - Could not implement in time */
-
-    /**
-     * Finds the shortest path between two Wikipedia pages, where shortest path is defined
-     * as the minimum number of link clicks it takes to start from a page, pageTitle1,
-     * and reach another page, pageTitle2.
-     * @param pageTitle1 The Wikipedia page to start on
-     * @param pageTitle2 The Wikipedia page to end on
-     * @param timeout The number of seconds that is permitted for this operation before
-     *                a TimeoutException is thrown.
-     * @return A list of page titles (including the starting and ending pages) on the
-     * shortest path between pageTitle1 and pageTitle2, if such a path exists. If there
-     * are two or more shortest paths, then the one with the lowest lexicographical
-     * value is to be returned. If no path exists between two pages, an empty List
-     * will be returned.
-     * @throws TimeoutException If the operation takes timeout seconds or longer to
-     * execute.
-     */
-    public synchronized  List<String> shortestPath(String pageTitle1, String pageTitle2, int timeout) throws TimeoutException {
-        return new ArrayList<>();
-    }
-}
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.fsftbuffer.FSFTBuffer;
+import cpen221.mp3.fsftbuffer.ObjectNotInCacheException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A WikiMediator represents a mediator service for Wikipedia that accesses Wikipedia pages
+ * and other relevant information. Wikipedia pages are cached in the WikiMediator to minimize
+ * network accesses. A WikiMediator can only store a finite amount of Wikipedia pages, and a
+ * page is only cached for a finite amount of time unless it is accessed again.
+ * The mediator service will also collect statistical information about requests, such as the
+ * frequency and absolute time of requests.
+ *
+ * Abstraction Function:
+ * A WikiMediator is represented by a FSFTBuffer, which is a user-defined data type that stores
+ * a finite number of bufferable objects for a finite period of time. In this case, the objects
+ * stored in the FSFTBuffer are instances of the WikiPage class, each stored under its normalized title.
+ * A WikiPage that has been stored for longer than the staleness interval is stale, and is retained for
+ * revalidationWindow more seconds so that it can be reused if its revision has not changed. For the first
+ * staleGracePeriod seconds after it goes stale, a WikiPage is served as it is while the title is being refreshed
+ * in the background, unless the WikiMediator is closed; refreshing holds the titles whose refresh has been started
+ * but not finished.
+ * Pages and search results are fetched through a WikiBackend, backend, which answers asynchronously, so requests
+ * that wait for Wikipedia do not hold a thread while they wait. virtualThreads is true if the answers of backend,
+ * and the connections of a server of the WikiMediator, are handled on virtual threads.
+ * A second FSFTBuffer, redirects, maps the normalized titles of redirect pages to the normalized titles
+ * of the pages they redirect to, so every title of a page shares the WikiPage stored under its target.
+ * A NegativeCache, missingPages, holds the normalized titles of pages that were recently found not to exist.
+ * A SearchCache, searchCache, holds the page titles last returned by Wikipedia's search service for
+ * each normalized query.
+ * Two LinkCaches, outLinks and inLinks, hold the titles of the pages that recently visited pages link to and
+ * are linked from, over one dictionary of titles, for shortestPath. The links of a page whose text is in
+ * wikiBuffer are taken from its text, when they are all known from it, instead of being fetched.
+ * linkGraph is the offline LinkGraph that shortestPath searches on pathSearches, instead of fetching links, for
+ * pages that are in it, or null if the WikiMediator has no offline link graph, in which case pathSearches is null.
+ * landmarks are the Landmarks of linkGraph, which bound the distances between its pages for shortestPath and
+ * distanceEstimate, or null if linkGraph is null or the WikiMediator uses no landmarks.
+ * A RequestHistory, history, keeps track of the query strings submitted to the WikiMediator
+ * through the methods search() and getPage() along with the time at which each was submitted,
+ * and of the time at which any of the WikiMediator methods were called.
+ * If the WikiMediator was created in the APPROXIMATE statistics mode, the query strings are
+ * instead summarized by an ApproximateStatistics, approximate, and history only keeps track of
+ * the time at which any of the WikiMediator methods were called.
+ * In either mode, a DecayedSummary, decayed, keeps an exponentially decayed score of the query strings
+ * submitted through search() and getPage().
+ * Requests are not recorded directly: every request publishes an event to a StatisticsPipeline, statistics,
+ * whose consumer thread applies the events to history, approximate and decayed in the order they were published.
+ * searchEvents is the number of search and getPage requests that the consumer thread has applied.
+ * A RankingCache, rankings, holds the Rankings last computed by zeitgeist and trending.
+ * If the WikiMediator persists its statistics, every applied event is also appended to a StatisticsLog, log,
+ * whose latest snapshot and the events logged after it are loaded into history, approximate, decayed and
+ * searchEvents by the consumer thread before it applies any event; otherwise log is null. loaded is true once
+ * that loading has finished. The next snapshot is taken once an event made at nextSnapshot or later is applied.
+ */
+public class WikiMediator {
+
+    /* conversion constant 1 second = 1000 milliseconds */
+    public static final int MILLIS = 1000;
+
+    private final FSFTBuffer<WikiPage> wikiBuffer;
+    private final SearchCache searchCache;
+    private final FSFTBuffer<Redirect> redirects;
+    private final NegativeCache missingPages;
+    private final LinkCache outLinks;
+    private final LinkCache inLinks;
+    private final LinkGraph linkGraph;
+    private final ExecutorService pathSearches;
+    private final Landmarks landmarks;
+    private final int revalidationWindow;
+    private final int staleGracePeriod;
+    private final WikiBackend backend;
+    private final boolean virtualThreads;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+    private final StatisticsPipeline statistics;
+    private final RankingCache rankings;
+    private final int snapshotInterval;
+    private volatile RequestHistory history;
+    private volatile ApproximateStatistics approximate;
+    private volatile DecayedSummary decayed;
+    private volatile StatisticsLog log = null;
+    private volatile boolean loaded = false;
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final ReentrantLock statisticsLock = new ReentrantLock();
+    private volatile long searchEvents;
+    private long nextSnapshot;
+
+    /*
+     * Representation Invariant:
+     *  - wikiBuffer, redirects, missingPages, searchCache, outLinks, inLinks and backend must not be null
+     *  - pathSearches is null if and only if linkGraph is null
+     *  - landmarks is null if linkGraph is null
+     *  - history must not be null
+     *  - approximate is null if and only if the WikiMediator counts query strings exactly
+     *  - decayed must not be null
+     *  - statistics and rankings must not be null
+     *  - searchEvents >= 0
+     *  - snapshotInterval > 0
+     *  - revalidationWindow >= 0 and staleGracePeriod >= 0
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - MILLIS is static and final
+     *  - wikiBuffer, redirects, missingPages, searchCache, outLinks, inLinks and backend are final and point to
+     *    threadsafe data types
+     *  - the stages of a request that run once backend has answered may run on any thread, but only access
+     *    these threadsafe data types and collections local to the request, which each stage hands over to
+     *    the next one through its future
+     *  - history, approximate, decayed, log and loaded are volatile, and are only assigned by the consumer thread
+     *    of statistics while it loads the persisted statistics, before it applies any event; a reader that runs
+     *    during loading reads the statistics loaded so far
+     *  - history and approximate point to threadsafe data types
+     *  - decayed is never shared outside of this class and points to a threadsafe data type
+     *  - statistics is final and threadsafe; its startup task is only called from its consumer thread, and its
+     *    handler is called for one event at a time, from the consumer thread until statistics is closed and from
+     *    the thread that publishes the event after that. Both only update history, approximate, decayed, log,
+     *    loaded and searchEvents
+     *  - searchEvents is volatile and is only written by the handler of statistics
+     *  - log is threadsafe, and is only appended to by the handler of statistics
+     *  - refreshing is a threadsafe set that a title is only added to by the thread that starts its refresh, and
+     *    only removed from once that refresh has completed, so each title is refreshed at most once at a time
+     *  - closed is volatile, and is only ever set to true
+     *  - virtualThreads is final and immutable
+     *  - linkGraph is final and immutable, and pathSearches is final and threadsafe
+     *  - landmarks is final and threadsafe, and is only built by the landmark thread, which stops once closed
+     *  - nextSnapshot is only accessed while holding snapshotLock, which is held while an event is applied and
+     *    appended to log and while a snapshot is taken, so every snapshot matches the events appended before it.
+     *    snapshotLock is only taken by the handler of statistics and by close, after statistics has been closed.
+     *    It is a ReentrantLock, since once statistics is closed, the handler runs on the threads of requests
+     *  - rankings is final and threadsafe, and a Ranking is only computed and added to it while holding
+     *    statisticsLock
+     *  - search and getPage, and their asynchronous variants, only publish an event to statistics and access
+     *    searchCache, redirects, missingPages, wikiBuffer or backend, so they do not take statisticsLock
+     *  - the statistics methods of the WikiMediator class wait for the events published before them to be applied
+     *    before they take statisticsLock, and only hold it while they look up and compute their result, so a
+     *    request that waits for a lagging consumer thread does not hold up every other statistics request.
+     *    statisticsLock is a ReentrantLock rather than the lock of the WikiMediator, so that a virtual thread
+     *    that waits for it does not pin its carrier thread
+     */
+
+    /**
+     * Check that the representation invariants WikiMediator hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (wikiBuffer == null || redirects == null || missingPages == null || searchCache == null || backend == null) {
+            throw new RuntimeException("wikiBuffer, redirects, missingPages, searchCache and backend must not be null");
+        }
+        if (outLinks == null || inLinks == null) {
+            throw new RuntimeException("outLinks and inLinks must not be null");
+        }
+        if ((linkGraph == null) != (pathSearches == null)) {
+            throw new RuntimeException("pathSearches should be null if and only if linkGraph is null");
+        }
+        if (linkGraph == null && landmarks != null) {
+            throw new RuntimeException("landmarks should be null if linkGraph is null");
+        }
+        if (history == null) {
+            throw new RuntimeException("history must not be null");
+        }
+        if (decayed == null) {
+            throw new RuntimeException("decayed must not be null");
+        }
+        if (statistics == null || rankings == null) {
+            throw new RuntimeException("statistics and rankings must not be null");
+        }
+        if (snapshotInterval <= 0) {
+            throw new RuntimeException("snapshotInterval should be > 0");
+        }
+    }
+
+    /**
+     * Get the current time in seconds.
+     * @return the number of seconds elapsed since the epoch
+     */
+    private static long currentTime() {
+        return System.currentTimeMillis() / MILLIS;
+    }
+
+    /**
+     * Create a WikiMediator with a fixed capacity and a timeout value.
+     *
+     * @param capacity the maximum amount of objects that can be stored in the WikiMediator
+     *                 capacity must be a number greater than zero
+     * @param stalenessInterval the maximum period of time an object will be stored in the WikiMediator
+     *                          stalenessInterval must be a number greater than zero
+     */
+    public WikiMediator(int capacity, int stalenessInterval){
+        this(capacity, stalenessInterval, new MediatorConfig.Builder().build());
+    }
+
+    /**
+     * Create a WikiMediator with a fixed capacity, a timeout value and optional settings.
+     *
+     * @param capacity the maximum amount of objects that can be stored in the WikiMediator
+     *                 capacity must be a number greater than zero
+     * @param stalenessInterval the maximum period of time an object will be stored in the WikiMediator
+     *                          stalenessInterval must be a number greater than zero
+     * @param config the optional settings of the WikiMediator, config must not be null
+     */
+    public WikiMediator(int capacity, int stalenessInterval, MediatorConfig config){
+        revalidationWindow = config.getRevalidationWindow();
+        staleGracePeriod = config.getStaleGracePeriod();
+        wikiBuffer = new FSFTBuffer<>(capacity, stalenessInterval, Math.max(revalidationWindow, staleGracePeriod));
+        virtualThreads = config.getThreadMode() == MediatorConfig.ThreadMode.VIRTUAL && VirtualThreads.isAvailable();
+        if (config.getThreadMode() == MediatorConfig.ThreadMode.VIRTUAL && !virtualThreads) {
+            System.err.println("Virtual threads need Java 21 or later, using platform threads.");
+        }
+        backend = new MediaWikiBackend(MediaWikiBackend.ENDPOINT,
+                virtualThreads ? VirtualThreads.newExecutor("wikimediator-backend", true) : null,
+                new ConcurrencyLimiter(config.getBackendConcurrency(), config.getBackendQueue(),
+                        config.getBackendQueueWait()),
+                new RequestHedger(config.getHedgeBudget()));
+        redirects = new FSFTBuffer<>(config.getRedirectCacheCapacity(), config.getRedirectCacheTimeout());
+        missingPages = new NegativeCache(config.getNegativeCacheCapacity(), config.getNegativeCacheTimeout());
+        searchCache = new SearchCache(config.getSearchCacheCapacity(), config.getSearchCacheTimeout(), backend::search);
+        LinkTitles linkTitles = new LinkTitles(config.getLinkTitleCapacity());
+        outLinks = new LinkCache(config.getLinkCacheCapacity(), config.getLinkCacheTimeout(), linkTitles,
+                backend::links, this::pageLinks);
+        inLinks = new LinkCache(config.getLinkCacheCapacity(), config.getLinkCacheTimeout(), linkTitles,
+                backend::linksHere);
+        linkGraph = openLinkGraph(config);
+        pathSearches = linkGraph == null ? null : VirtualThreads.newExecutor("wikimediator-paths", virtualThreads);
+        landmarks = openLandmarks(linkGraph, config);
+        Snapshot empty = new Snapshot(config);
+        history = empty.history;
+        decayed = empty.decayed;
+        approximate = empty.approximate;
+        searchEvents = empty.searchEvents;
+        rankings = new RankingCache(config.getRankingStaleness());
+        snapshotInterval = config.getSnapshotInterval();
+        nextSnapshot = currentTime() + snapshotInterval;
+
+        statistics = new StatisticsPipeline(config.getIngestBufferSize(), config.getIngestMaxLag(),
+                () -> load(config), this::applyEvent);
+        checkRep();
+    }
+
+    /**
+     * Check whether the WikiMediator runs blocking work on virtual threads: it does if it was created in the
+     * VIRTUAL thread mode and the JVM supports virtual threads. A server of the WikiMediator then handles each
+     * connection on its own virtual thread.
+     * @return true if the WikiMediator uses virtual threads, false if it uses platform threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Helper method that loads the statistics persisted by an earlier WikiMediator, if the WikiMediator persists
+     * its statistics. Runs on the consumer thread of statistics before it applies any event, so requests are
+     * answered while the statistics load.
+     * @param config the optional settings of the WikiMediator, config must not be null
+     *
+     * Frame Condition:
+     * - history, approximate, decayed and searchEvents hold the latest snapshot and every request logged
+     *   after it, log is opened to append new requests to, and loaded is true
+     */
+    private void load(MediatorConfig config) {
+        long start = System.nanoTime();
+        StatisticsLog opened = openLog(config);
+        if (opened != null) {
+            Snapshot snapshot = loadSnapshot(opened, config);
+            history = snapshot.history;
+            decayed = snapshot.decayed;
+            approximate = snapshot.approximate;
+            searchEvents = snapshot.searchEvents;
+            log = replayLog(opened);
+            System.err.println("Loaded statistics from " + config.getPersistenceDirectory() + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+        loaded = true;
+    }
+
+    /**
+     * Check whether the statistics persisted by an earlier WikiMediator have finished loading. Until they
+     * have, search and getPage are answered normally, but zeitgeist, trending, windowedPeakLoad and
+     * decayedZeitgeist only wait up to the maximum ingestion lag of the WikiMediator for them, and may
+     * then answer from the statistics loaded so far.
+     * @return true if the persisted statistics have been loaded, or the WikiMediator does not persist its
+     * statistics, false otherwise
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Helper method that opens the statistics log of the WikiMediator, if it persists its statistics.
+     * @param config the optional settings of the WikiMediator, config must not be null
+     * @return the opened log, or null if the WikiMediator does not persist its statistics or the log
+     * could not be opened
+     */
+    private static StatisticsLog openLog(MediatorConfig config) {
+        if (config.getPersistenceDirectory() == null) {
+            return null;
+        }
+        try {
+            return new StatisticsLog(Paths.get(config.getPersistenceDirectory()), config.getDurabilityWindow(),
+                    config.getArchiveRetention());
+        }
+        catch (IOException e) {
+            System.err.println("Could not load statistics from " + config.getPersistenceDirectory() + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Helper method that opens the offline link graph of the WikiMediator, if it has one.
+     * @param config the optional settings of the WikiMediator, config must not be null
+     * @return the opened link graph, or null if the WikiMediator has no link graph directory, there is no
+     * link graph in it, or the link graph could not be opened
+     */
+    private static LinkGraph openLinkGraph(MediatorConfig config) {
+        if (config.getLinkGraphDirectory() == null) {
+            return null;
+        }
+        try {
+            return LinkGraph.open(Paths.get(config.getLinkGraphDirectory()));
+        }
+        catch (IOException e) {
+            System.err.println("Could not open the link graph in " + config.getLinkGraphDirectory() + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Helper method that opens the landmarks of the offline link graph of the WikiMediator, and starts building
+     * those that are missing in the background until the WikiMediator is closed.
+     * @param graph the offline link graph of the WikiMediator, or null if it has none
+     * @param config the optional settings of the WikiMediator, config must not be null
+     * @return the landmarks of graph, or null if graph is null, the WikiMediator uses no landmarks, or the
+     * landmarks could not be opened
+     */
+    private Landmarks openLandmarks(LinkGraph graph, MediatorConfig config) {
+        if (graph == null || config.getLandmarkCount() == 0) {
+            return null;
+        }
+        Landmarks opened;
+        try {
+            opened = Landmarks.open(graph, Paths.get(config.getLinkGraphDirectory()), config.getLandmarkCount());
+        }
+        catch (IOException e) {
+            System.err.println("Could not open the landmarks in " + config.getLinkGraphDirectory() + ": "
+                    + e.getMessage());
+            return null;
+        }
+        if (opened.tables().size() < config.getLandmarkCount()) {
+            Thread builder = new Thread(() -> {
+                try {
+                    opened.build(() -> closed);
+                }
+                catch (IOException e) {
+                    System.err.println("Could not build the landmarks in " + config.getLinkGraphDirectory() + ": "
+                            + e.getMessage());
+                }
+            }, "wikimediator-landmarks");
+            builder.setDaemon(true);
+            builder.start();
+        }
+        return opened;
+    }
+
+    /**
+     * Helper method that loads the statistics in the latest snapshot of an opened statistics log.
+     * @param opened the opened log, opened must not be null
+     * @param config the optional settings of the WikiMediator, config must not be null
+     * @return the statistics in the latest snapshot of opened, or empty statistics if opened has no
+     * snapshot or its latest snapshot cannot be read
+     */
+    private static Snapshot loadSnapshot(StatisticsLog opened, MediatorConfig config) {
+        DataInput in = opened.snapshot();
+        if (in != null) {
+            try {
+                return Snapshot.readFrom(in, config);
+            }
+            catch (IOException e) {
+                System.err.println("Could not load the statistics snapshot in " + config.getPersistenceDirectory()
+                        + ": " + e.getMessage());
+            }
+        }
+        return new Snapshot(config);
+    }
+
+    /**
+     * Helper method that replays the events logged after the latest snapshot of an opened statistics log,
+     * and starts appending new requests to it.
+     * @param opened the opened log, opened must not be null
+     * @return opened, or null if opened could not be replayed
+     *
+     * Frame Condition:
+     * - every request logged after the latest snapshot is recorded
+     */
+    private StatisticsLog replayLog(StatisticsLog opened) {
+        try {
+            opened.replay(this::recordEvent);
+            return opened;
+        }
+        catch (IOException e) {
+            System.err.println("Could not load statistics from disk: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Helper method that applies a request event published to statistics, and appends it to log. Only
+     * called as the handler of statistics.
+     * @param queryOrPageTitle the String used as input parameter in a search or getPage method call, or
+     *                         null if the request was a call to any other method
+     * @param time the time, in seconds, at which the request was made
+     *
+     * Frame Condition:
+     * - the request is recorded as in recordEvent, and appended to log if it is not null
+     * - if log is not null and time is nextSnapshot or later, a snapshot is taken and nextSnapshot is moved
+     *   snapshotInterval seconds past time
+     */
+    private void applyEvent(String queryOrPageTitle, long time) {
+        snapshotLock.lock();
+        try {
+            recordEvent(queryOrPageTitle, time);
+            if (log == null) {
+                return;
+            }
+            log.append(queryOrPageTitle, time);
+            if (time >= nextSnapshot) {
+                nextSnapshot = time + snapshotInterval;
+                takeSnapshot();
+            }
+        }
+        finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Helper method that passes the current statistics of the WikiMediator to log as a snapshot. Must be
+     * called while holding snapshotLock, and only if log is not null.
+     */
+    private void takeSnapshot() {
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        try {
+            new Snapshot(history, decayed, approximate, searchEvents).writeTo(new DataOutputStream(state));
+        }
+        catch (IOException e) {
+            System.err.println("Could not snapshot statistics: " + e.getMessage());
+            return;
+        }
+        log.snapshot(state.toByteArray());
+    }
+
+    /**
+     * Helper method that records a request event in the statistics of the WikiMediator.
+     * @param queryOrPageTitle the String used as input parameter in a search or getPage method call, or
+     *                         null if the request was a call to any other method
+     * @param time the time, in seconds, at which the request was made
+     *
+     * Frame Condition:
+     * - the time at which the request was made is recorded in history
+     * - if queryOrPageTitle is not null, it is recorded in history along with time, or in approximate if
+     *   the WikiMediator counts query strings approximately, its decayed score is increased and searchEvents
+     *   is incremented
+     */
+    private void recordEvent(String queryOrPageTitle, long time) {
+        history.recordRequest(time);
+        if (queryOrPageTitle == null) {
+            return;
+        }
+
+        if (approximate != null) {
+            approximate.record(queryOrPageTitle, time);
+        }
+        else {
+            history.recordSearch(queryOrPageTitle, time);
+        }
+        decayed.offer(queryOrPageTitle, time);
+        searchEvents++;
+    }
+
+    /**
+     * Helper method that records a call to a statistics method and waits until every request made
+     * before it has been applied, or until the maximum ingestion lag of the WikiMediator has passed.
+     * @param callTime the time, in seconds, at which the method was called
+     * @return true if every request made before the call has been applied, false if the wait timed out
+     */
+    private boolean recordStatisticsRequest(long callTime) {
+        return statistics.awaitConsumed(statistics.publish(null, callTime));
+    }
+
+    /**
+     * Helper method that returns the Ranking cached for a statistics request if it can be reused, and
+     * computes and caches it otherwise. Concurrent identical requests are computed only once. If the
+     * requests made before this one are not all applied within the maximum ingestion lag, for example
+     * because the persisted statistics are still loading, a partial Ranking is computed and not cached.
+     * @param key the method name and parameters of the request, key must not be null
+     * @param sequence the sequence number of the event published for the request
+     * @param time the time, in seconds, that the Ranking is computed for, or 0 if it does not depend on time
+     * @param compute computes the Ranking from history or approximate, compute must not be null
+     * @return the Ranking for the request
+     *
+     * Frame Condition:
+     * - if no cached Ranking can be reused and the computed Ranking is not partial, it is cached under key
+     */
+    private Ranking cachedRanking(String key, long sequence, long time, Supplier<Ranking> compute) {
+        boolean complete = statistics.awaitConsumed(sequence);
+        statisticsLock.lock();
+        try {
+            if (!complete) {
+                Ranking partial = compute.get();
+                return new Ranking(partial.getItems(), partial.getErrorBound(), true);
+            }
+            long version = searchEvents;
+
+            Ranking ranking = rankings.lookup(key, version, time);
+            if (ranking == null) {
+                ranking = compute.get();
+                rankings.put(key, ranking, version, time);
+            }
+            return ranking;
+        }
+        finally {
+            statisticsLock.unlock();
+        }
+    }
+
+    /**
+     * Given a query, return up to limit page titles that match the query string (per Wikipedia's search service).
+     * Results are cached for the search cache timeout of the WikiMediator, so a repeated search, or a search
+     * that only differs in case or whitespace, may return the page titles found when the query was first searched.
+     * @param query The query string to search the Wiki with, query must not be null.
+     * @param limit The maximum number of page titles to return that match the query string
+     * @return Up to limit page titles that match the query string when searched through Wikipedia's search service.
+     * In the case that limit <= 0, or that Wikipedia's search service could not be reached, return an empty list of
+     * page titles.
+     */
+    public List<String> search(String query, int limit){
+        return searchAsync(query, limit).join();
+    }
+
+    /**
+     * Given a query, search Wikipedia exactly as search does, without waiting for the answer. The request is counted
+     * in the statistics of the WikiMediator when the method is called.
+     * @param query The query string to search the Wiki with, query must not be null.
+     * @param limit The maximum number of page titles to return that match the query string
+     * @return A future of up to limit page titles that match the query string, or of an empty list of page titles
+     * if limit <= 0 or Wikipedia's search service could not be reached. The future never completes exceptionally.
+     */
+    public CompletableFuture<List<String>> searchAsync(String query, int limit) {
+        checkRep();
+
+        statistics.publish(query, currentTime());
+
+        checkRep();
+        if (limit <= 0) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+
+        return searchCache.search(query, limit).handle((titles, failure) -> {
+            if (failure != null) {
+                System.err.println("Could not search for " + query + ": " + cause(failure).getMessage());
+                return new ArrayList<>();
+            }
+            for (String title : titles) {
+                missingPages.remove(TitleNormalizer.normalize(title));
+            }
+            return titles;
+        });
+    }
+
+    /**
+     * Given a pageTitle, return the text associated with the Wikipedia page that matches pageTitle.
+     * pageTitle is normalized the way MediaWiki normalizes titles, and redirects are followed, so every title
+     * of the same page returns, and caches, the same text. A page that does not exist is remembered for the
+     * negative cache timeout of the WikiMediator, or until a search returns it, and is not fetched again until then.
+     * A page that has gone stale is only fetched again if its revision has changed. If the WikiMediator serves
+     * stale pages while they are fetched again, the text may be out of date; use getPageResult to find out.
+     * @param pageTitle The title of the page to query Wikipedia, pageTitle must not be null.
+     * @return The text of the page specified by pageTitle, or an empty string if the page is non-existent
+     * or something went wrong.
+     */
+    public String getPage(String pageTitle) {
+        return getPageAsync(pageTitle).join();
+    }
+
+    /**
+     * Given a pageTitle, get the text of the Wikipedia page that matches pageTitle exactly as getPage does, without
+     * waiting for Wikipedia to answer. The request is counted in the statistics of the WikiMediator when the method
+     * is called.
+     * @param pageTitle The title of the page to query Wikipedia, pageTitle must not be null.
+     * @return A future of the text of the page specified by pageTitle, or of an empty string if the page is
+     * non-existent or something went wrong. The future never completes exceptionally.
+     */
+    public CompletableFuture<String> getPageAsync(String pageTitle) {
+        return getPageResultAsync(pageTitle).thenApply(PageResult::getText);
+    }
+
+    /**
+     * Given a pageTitle, return the text associated with the Wikipedia page that matches pageTitle, exactly as
+     * getPage does, together with whether the text may be out of date. A cached page that went stale less than
+     * the stale grace period ago is returned immediately, marked as stale, and is refreshed in the background.
+     * @param pageTitle The title of the page to query Wikipedia, pageTitle must not be null.
+     * @return A PageResult holding the text of the page specified by pageTitle, or an empty string if the page
+     * is non-existent or something went wrong.
+     */
+    public PageResult getPageResult(String pageTitle) {
+        return getPageResultAsync(pageTitle).join();
+    }
+
+    /**
+     * Given a pageTitle, get the text of the Wikipedia page that matches pageTitle, and whether it may be out of
+     * date, exactly as getPageResult does, without waiting for Wikipedia to answer. A cached page is returned in a
+     * future that is already complete.
+     * @param pageTitle The title of the page to query Wikipedia, pageTitle must not be null.
+     * @return A future of a PageResult holding the text of the page specified by pageTitle, or an empty string if
+     * the page is non-existent or something went wrong. The future never completes exceptionally.
+     */
+    public CompletableFuture<PageResult> getPageResultAsync(String pageTitle) {
+        checkRep();
+
+        statistics.publish(pageTitle, currentTime());
+
+        String title = resolve(pageTitle);
+        if (title == null) {
+            checkRep();
+            return CompletableFuture.completedFuture(new PageResult("", false));
+        }
+
+        PageResult cached = cachedPage(title);
+        if (cached != null) {
+            checkRep();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        checkRep();
+        return fetchPages(Collections.singletonList(title)).thenApply(texts -> new PageResult(texts.get(title), false));
+    }
+
+    /**
+     * Given a list of page titles, return the text associated with the Wikipedia page that matches each of them, as
+     * getPage does for each title, but fetching every page that is not cached in as few queries of Wikipedia as
+     * possible: one query per step for every 50 titles, rather than one round trip per title. Each title is counted
+     * in the statistics of the WikiMediator as a getPage request. Stale pages within the stale grace period are
+     * returned as they are, and refreshed in the background.
+     * @param pageTitles The titles of the pages to query Wikipedia, pageTitles must not be null and must not contain
+     *                   null.
+     * @return A map from each distinct title in pageTitles, in the order in which they first appear, to the text of
+     * its page, or an empty string if the page is non-existent or something went wrong.
+     */
+    public Map<String, String> getPages(List<String> pageTitles) {
+        return getPagesAsync(pageTitles).join();
+    }
+
+    /**
+     * Given a list of page titles, get the text of the Wikipedia page that matches each of them exactly as getPages
+     * does, without waiting for Wikipedia to answer. Every title is counted in the statistics of the WikiMediator
+     * when the method is called.
+     * @param pageTitles The titles of the pages to query Wikipedia, pageTitles must not be null and must not contain
+     *                   null.
+     * @return A future of a map from each distinct title in pageTitles, in the order in which they first appear, to
+     * the text of its page, or an empty string if the page is non-existent or something went wrong. The future never
+     * completes exceptionally.
+     */
+    public CompletableFuture<Map<String, String>> getPagesAsync(List<String> pageTitles) {
+        checkRep();
+
+        Map<String, String> pages = new LinkedHashMap<>();
+        Map<String, String> pending = new LinkedHashMap<>();
+        for (String pageTitle : pageTitles) {
+            statistics.publish(pageTitle, currentTime());
+            if (pages.containsKey(pageTitle)) {
+                continue;
+            }
+
+            String title = resolve(pageTitle);
+            PageResult cached = title == null ? new PageResult("", false) : cachedPage(title);
+            if (cached != null) {
+                pages.put(pageTitle, cached.getText());
+            }
+            else {
+                pages.put(pageTitle, null);
+                pending.put(pageTitle, title);
+            }
+        }
+
+        checkRep();
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(pages);
+        }
+        return fetchPages(new LinkedHashSet<>(pending.values())).thenApply(fetched -> {
+            for (Map.Entry<String, String> entry : pending.entrySet()) {
+                pages.put(entry.getKey(), fetched.get(entry.getValue()));
+            }
+            return pages;
+        });
+    }
+
+    /**
+     * Helper method that normalizes a page title and follows its redirect, if it is a known redirect.
+     * @param pageTitle the title of the page, pageTitle must not be null
+     * @return the normalized title of the page that pageTitle names, which is not a known redirect, or null if
+     * pageTitle does not name a page or the page is known not to exist
+     */
+    private String resolve(String pageTitle) {
+        String title = TitleNormalizer.normalize(pageTitle);
+        if (title.isEmpty() || missingPages.contains(title, currentTime())) {
+            return null;
+        }
+
+        try {
+            return redirects.get(title).getTarget();
+        }
+        catch (ObjectNotInCacheException e) {
+            // the title is not a known redirect, so it is either a page or an unknown redirect
+            return title;
+        }
+    }
+
+    /**
+     * Helper method that gets the cached page with a title if it can be served without fetching it: if it is fresh,
+     * or if it has been stale for less than the stale grace period, in which case it is refreshed in the background.
+     * @param title the normalized title of the page, which is not a known redirect, title must not be null
+     * @return a PageResult holding the text of the cached page, marked stale if it has gone stale, or null if the
+     * page must be fetched
+     */
+    private PageResult cachedPage(String title) {
+        WikiPage wikiPage = freshPage(title);
+        if (wikiPage != null) {
+            return new PageResult(wikiPage.getPageContent(), false);
+        }
+
+        if (staleGracePeriod > 0) {
+            try {
+                wikiPage = wikiBuffer.getStale(title, staleGracePeriod);
+                refreshInBackground(title);
+                return new PageResult(wikiPage.getPageContent(), true);
+            }
+            catch (ObjectNotInCacheException e) {
+                // the page is not cached, or has been stale for too long to serve
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper method that revalidates pages that are not fresh, and fetches the pages that have changed or are not
+     * cached from Wikipedia, following the redirects of titles that are unknown redirects. Each step takes one
+     * query of Wikipedia's API for every RevisionInfo.MAX_TITLES titles, however many titles there are: the
+     * revisions are checked, the redirects are resolved, the revisions of redirect targets are checked, and the
+     * texts are fetched. Each step is started once the one before it has been answered, without waiting for it.
+     * @param titles the normalized titles of the pages, which are not known redirects, titles must not be null
+     * @return a future of a map from each title in titles to the text of its page, or an empty string if the page
+     * is non-existent or could not be fetched. The future never completes exceptionally.
+     *
+     * Frame Condition:
+     * - every fetched page is stored in wikiBuffer, and every title whose page does not exist is added to
+     *   missingPages
+     */
+    private CompletableFuture<Map<String, String>> fetchPages(Collection<String> titles) {
+        Map<String, String> texts = new HashMap<>();
+        Map<String, String> targets = new LinkedHashMap<>();
+        Map<String, RevisionInfo> latest = new HashMap<>();
+        Map<String, String> targetTexts = new HashMap<>();
+        Set<String> missed = new LinkedHashSet<>();
+
+        return revalidate(titles).thenCompose(revisions -> {
+            latest.putAll(revisions);
+            for (String title : titles) {
+                WikiPage wikiPage = freshPage(title);
+                if (wikiPage != null) {
+                    texts.put(title, wikiPage.getPageContent());
+                }
+                else {
+                    targets.put(title, title);
+                }
+            }
+            return targets.isEmpty()
+                    ? CompletableFuture.completedFuture(new HashMap<String, String>())
+                    : backend.resolveRedirects(targets.keySet());
+        }).thenCompose(resolved -> {
+            Set<String> redirected = new LinkedHashSet<>();
+            for (Map.Entry<String, String> entry : targets.entrySet()) {
+                String title = entry.getKey();
+                String target = resolved.get(title) == null ? title : TitleNormalizer.normalize(resolved.get(title));
+                if (!target.isEmpty() && !target.equals(title)) {
+                    redirects.put(new Redirect(title, target));
+                    missingPages.remove(target);
+                    entry.setValue(target);
+                    redirected.add(target);
+                }
+            }
+            return revalidate(redirected);
+        }).thenCompose(revisions -> {
+            latest.putAll(revisions);
+            for (String target : targets.values()) {
+                WikiPage wikiPage = freshPage(target);
+                if (wikiPage != null) {
+                    targetTexts.put(target, wikiPage.getPageContent());
+                }
+                else {
+                    missed.add(target);
+                }
+            }
+            return missed.isEmpty()
+                    ? CompletableFuture.completedFuture(new HashMap<String, String>())
+                    : backend.getPageTexts(missed);
+        }).handle((fetched, failure) -> {
+            if (failure != null) {
+                System.err.println("Could not fetch pages " + titles + ": " + cause(failure).getMessage());
+                for (String title : titles) {
+                    texts.putIfAbsent(title, "");
+                }
+                return texts;
+            }
+
+            for (String target : missed) {
+                String pageText = fetched.get(target);
+                if (pageText == null) {
+                    // Wikipedia did not answer for the page, so it is not known not to exist
+                    pageText = "";
+                }
+                else if (pageText.isEmpty()) {
+                    missingPages.add(target, currentTime());
+                }
+                else {
+                    WikiPage wikiPage = new WikiPage(target, pageText, latest.get(target));
+                    if (!wikiBuffer.update(wikiPage)) {
+                        wikiBuffer.put(wikiPage);
+                    }
+                }
+                targetTexts.put(target, pageText);
+            }
+
+            for (Map.Entry<String, String> entry : targets.entrySet()) {
+                texts.put(entry.getKey(), targetTexts.get(entry.getValue()));
+            }
+            return texts;
+        });
+    }
+
+    /**
+     * Helper method that starts refreshing a stale page in the background, unless it is already being refreshed
+     * or the WikiMediator has been closed.
+     * @param title the normalized title of the stale page, title must not be null
+     */
+    private void refreshInBackground(String title) {
+        if (closed || !refreshing.add(title)) {
+            return;
+        }
+        fetchPages(Collections.singletonList(title)).whenComplete((texts, failure) -> refreshing.remove(title));
+    }
+
+    /**
+     * Helper method that fetches the latest revisions of pages that are not cached or have gone stale, together
+     * with the latest revisions of as many other stale pages as fit in the same queries of RevisionInfo.MAX_TITLES
+     * titles. Every stale page whose revision has not changed has its timeout extended, so it is reused instead of
+     * being fetched again. The latest revisions of titles are fetched before their text, so a page edited in between
+     * is stored with an older revision and is fetched again at its next revalidation, rather than reused with
+     * outdated text.
+     * @param requested the normalized titles of the requested pages, requested must not be null
+     * @return a future of a map from the requested titles and the titles of the checked stale pages to their latest
+     * revisions; a title is missing if its page does not exist. If stale pages are not retained, or the revisions
+     * could not be fetched, a future of an empty map. The future never completes exceptionally.
+     *
+     * Frame Condition:
+     * - every checked stale page in wikiBuffer whose revision is unchanged is touched
+     */
+    private CompletableFuture<Map<String, RevisionInfo>> revalidate(Collection<String> requested) {
+        if (revalidationWindow == 0 || requested.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+
+        Set<String> titles = new LinkedHashSet<>(requested);
+        int batchTitles = (titles.size() + RevisionInfo.MAX_TITLES - 1) / RevisionInfo.MAX_TITLES * RevisionInfo.MAX_TITLES;
+        for (WikiPage stale : wikiBuffer.staleObjects()) {
+            if (titles.size() == batchTitles) {
+                break;
+            }
+            if (stale.getRevisionId() != -1) {
+                titles.add(stale.getPageTitle());
+            }
+        }
+
+        return backend.latestRevisions(titles).handle((latest, failure) -> {
+            if (failure != null) {
+                System.err.println("Could not fetch revisions: " + cause(failure).getMessage());
+                return new HashMap<>();
+            }
+            for (String checked : titles) {
+                try {
+                    if (wikiBuffer.getStale(checked).isRevision(latest.get(checked))) {
+                        wikiBuffer.touch(checked);
+                    }
+                }
+                catch (ObjectNotInCacheException e) {
+                    // the page is not cached, or was removed since it was checked
+                }
+            }
+            return latest;
+        });
+    }
+
+    /**
+     * Helper method that gets the cached page with a title if it is fresh, which it is again if revalidate found
+     * it to be unchanged.
+     * @param title the normalized title of the page, title must not be null
+     * @return the cached page with title if it can be reused, null otherwise
+     */
+    private WikiPage freshPage(String title) {
+        try {
+            return wikiBuffer.get(title);
+        }
+        catch (ObjectNotInCacheException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Helper method that gets the links of a cached page from its text, without a network access.
+     * @param title the normalized title of the page, title must not be null
+     * @return the titles of the articles that the cached text of the page with title links to, or null if the
+     * page is not cached, or its links cannot all be found in its text
+     */
+    private List<String> pageLinks(String title) {
+        WikiPage page = freshPage(title);
+        if (page == null) {
+            return null;
+        }
+        WikitextLinks links = page.getLinks();
+        return links.isComplete() ? links.getTitles() : null;
+    }
+
+    /**
+     * Helper method that finds the exception that made a future complete exceptionally.
+     * @param failure the exception the future completed with, failure must not be null
+     * @return the cause of failure if it only wraps the exception of an earlier stage, failure otherwise
+     */
+    private static Throwable cause(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    /**
+     * Given a limit, return the most common Strings used in search and getPage requests, with items being sorted in
+     * non-increasing count order. When many requests have been made, return only limit items.
+     *
+     * @param limit The maximum number of most common Strings to return.
+     *              limit must be a number greater than zero.
+     * @return Up to limit most common Strings used in search and getPage requests, with items sorted in non-increasing
+     * count order based on the frequency of their query requests. In the case of different Strings with the same
+     * frequency of total search and getPage requests, the String to return will be chosen arbitrarily.
+     * If the WikiMediator counts query strings approximately, the counts are estimates; use zeitgeistRanking
+     * to also obtain the error bound of the estimates. If the WikiMediator has a ranking staleness bound, the
+     * result may be computed up to that long ago, and miss the requests made since.
+     */
+    public List<String> zeitgeist(int limit) {
+        return zeitgeistRanking(limit).getItems();
+    }
+
+    /**
+     * Given a limit, return the most common Strings used in search and getPage requests, exactly as zeitgeist
+     * does, together with the error bound of the counts used to rank them.
+     *
+     * @param limit The maximum number of most common Strings to return.
+     *              limit must be a number greater than zero.
+     * @return A Ranking of up to limit most common Strings used in search and getPage requests. If the
+     * WikiMediator counts query strings exactly, the error bound is 0. Otherwise, the error bound is the largest
+     * amount by which any count may be overestimated, which is at most the number of search and getPage requests
+     * divided by the heavy hitter capacity of the WikiMediator.
+     */
+    public Ranking zeitgeistRanking(int limit) {
+        checkRep();
+
+        String key = "zeitgeist " + limit;
+        long sequence = statistics.publish(null, currentTime());
+        Ranking ranking = rankings.lookup(key, -1, 0);
+        if (ranking == null) {
+            ranking = cachedRanking(key, sequence, 0, () -> {
+                if (approximate != null) {
+                    return approximate.mostFrequent(limit);
+                }
+                return new Ranking(history.mostFrequent(limit), 0);
+            });
+        }
+
+        checkRep();
+        return ranking;
+    }
+
+    /**
+     * Given a limit, return the Strings used in search and getPage requests that are most popular right now, with
+     * items sorted in non-increasing order of decayed score. Every request adds 1 to the score of its String, and
+     * every score halves each time the decay half-life of the WikiMediator passes, so recent requests count more
+     * than old ones without any hard cut-off.
+     *
+     * @param limit The maximum number of Strings to return.
+     *              limit must be a number greater than zero.
+     * @return Up to limit Strings used in search and getPage requests, with items sorted in non-increasing order of
+     * decayed score. Only as many Strings as the heavy hitter capacity of the WikiMediator are scored at a time; when
+     * a new String is requested, it takes over the lowest score, so scores may be overestimated. In the case of
+     * different Strings with the same score, the String to return will be chosen arbitrarily.
+     */
+    public List<String> decayedZeitgeist(int limit) {
+        return decayedZeitgeistRanking(limit).getItems();
+    }
+
+    /**
+     * Given a limit, return the Strings used in search and getPage requests that are most popular right now, as in
+     * decayedZeitgeist(int), together with whether every earlier request was counted.
+     *
+     * @param limit The maximum number of Strings to return.
+     *              limit must be a number greater than zero.
+     * @return A Ranking of up to limit Strings, with items sorted in non-increasing order of decayed score. Decayed
+     * scores are not counts, so the error bound of the Ranking is always 0; it is partial if some requests made
+     * before this call had not been counted within the maximum ingestion lag of the WikiMediator.
+     */
+    public Ranking decayedZeitgeistRanking(int limit) {
+        checkRep();
+
+        boolean complete = recordStatisticsRequest(currentTime());
+        List<String> items;
+        statisticsLock.lock();
+        try {
+            items = decayed.top(limit);
+        }
+        finally {
+            statisticsLock.unlock();
+        }
+
+        checkRep();
+        return new Ranking(items, 0, !complete);
+    }
+
+    /**
+     * Finds and returns up to maxItems most common Strings used in search and getPage requests, with requests
+     * all having been made in the last timeLimitInSeconds. Requests are sorted in non-increasing count order
+     * according to their frequencies.
+     *
+     * @param timeLimitInSeconds The number of seconds before the method was called where search or getPage requests
+     *                           must have been made in order to have the query Strings be accounted for.
+     *                           If the method was called at currentTime, the requests returned would all have been made
+     *                           in the interval [currentTime - timeLimitInSeconds, currentTime].
+     *                           0 < timeLimitInSeconds < currentTime
+     * @param maxItems The maximum number of most common Strings to return.
+     *                 maxItems must be a number greater than zero.
+     * @return Up to maxItems most common Strings used in search and getPage requests made at most timeLimitInSeconds ago,
+     * with items sorted in non-increasing count order based on the frequency of their query requests.  In the case of
+     * different Strings with the same frequency of total search and getPage requests, the String to return will be
+     * chosen arbitrarily.
+     * If the WikiMediator counts query strings approximately, the counts are estimates; use trendingRanking
+     * to also obtain the error bound of the estimates. If the WikiMediator has a ranking staleness bound, the
+     * result may be computed up to that long ago, and miss the requests made since.
+     */
+    public List<String> trending(int timeLimitInSeconds, int maxItems) {
+        return trendingRanking(timeLimitInSeconds, maxItems).getItems();
+    }
+
+    /**
+     * Finds and returns up to maxItems most common Strings used in search and getPage requests made in the last
+     * timeLimitInSeconds, exactly as trending does, together with the error bound of the counts used to rank them.
+     *
+     * @param timeLimitInSeconds The number of seconds before the method was called where search or getPage requests
+     *                           must have been made in order to have the query Strings be accounted for.
+     *                           0 < timeLimitInSeconds < currentTime
+     * @param maxItems The maximum number of most common Strings to return.
+     *                 maxItems must be a number greater than zero.
+     * @return A Ranking of up to maxItems most common Strings used in search and getPage requests made at most
+     * timeLimitInSeconds ago. If the WikiMediator counts query strings exactly, the error bound is 0. Otherwise,
+     * the window is rounded outwards to whole trending buckets and limited to the trending horizon, and the error
+     * bound is the largest amount by which any count may be overestimated, except with probability at most the
+     * sketch delta of the WikiMediator.
+     */
+    public Ranking trendingRanking(int timeLimitInSeconds, int maxItems) {
+        checkRep();
+        long callTime = currentTime();
+
+        String key = "trending " + timeLimitInSeconds + " " + maxItems;
+        long sequence = statistics.publish(null, callTime);
+        Ranking ranking = rankings.lookup(key, -1, callTime);
+        if (ranking == null) {
+            ranking = cachedRanking(key, sequence, callTime, () -> {
+                if (approximate != null) {
+                    return approximate.mostFrequentSince(callTime - timeLimitInSeconds, callTime, maxItems);
+                }
+                return new Ranking(history.mostFrequentSince(callTime - timeLimitInSeconds, maxItems), 0);
+            });
+        }
+
+        checkRep();
+        return ranking;
+    }
+
+    /**
+     * Return the maximum number of valid requests made using the public API of WikiMediator seen in any time window
+     * of length timeWindowInSeconds. Valid requests are calls to the methods: search, getPage, zeitgeist, trending,
+     * and windowedPeakLoad. This current call to windowedPeakLoad will not be accounted for in the number of valid requests.
+     *
+     * @param timeWindowInSeconds The size of the time interval within which request frequencies will be considered.
+     *                            0 < timeWindowInSeconds < currentTime
+     *                            where currentTime is the time at which this method was called.
+     * @return The maximum number of requests made to the WikiMediator API during any time interval of size
+     * timeWindowInSeconds. This number will not include requests made at the moment this method was called, including
+     * calls to this method itself.
+     */
+    public int windowedPeakLoad(int timeWindowInSeconds) {
+        return windowedPeakLoadEstimate(timeWindowInSeconds).getRequests();
+    }
+
+    /**
+     * Return the maximum number of valid requests made using the public API of WikiMediator seen in any time window
+     * of length timeWindowInSeconds, together with how much it may overstate the true maximum. Requests older than
+     * the raw retention period are only known per minute or hour, so a window that reaches into them is bounded by
+     * the busiest second of each minute or hour it overlaps instead of being counted exactly.
+     *
+     * @param timeWindowInSeconds The size of the time interval within which request frequencies will be considered.
+     *                            0 < timeWindowInSeconds < currentTime
+     *                            where currentTime is the time at which this method was called.
+     * @return The largest possible number of requests made to the WikiMediator API during any time interval of size
+     * timeWindowInSeconds and the amount by which it may exceed the true number, as in windowedPeakLoad(int).
+     */
+    public PeakLoad windowedPeakLoadEstimate(int timeWindowInSeconds) {
+        checkRep();
+
+        long callTime = currentTime();
+        boolean complete = recordStatisticsRequest(callTime);
+        PeakLoad peakLoad;
+        statisticsLock.lock();
+        try {
+            PeakLoad inMemory = history.peakLoad(callTime, timeWindowInSeconds);
+            peakLoad = new PeakLoad(inMemory.getRequests(), inMemory.getErrorBound(), !complete);
+        }
+        finally {
+            statisticsLock.unlock();
+        }
+
+        checkRep();
+        return peakLoad;
+    }
+
+    /**
+     * Return the maximum number of valid requests made using the public API of WikiMediator seen in any time window
+     * of length 30 seconds. Valid requests are calls to the methods: search, getPage, zeitgeist, trending,
+     * and windowedPeakLoad. This current call to windowedPeakLoad will not be accounted for in the number of valid requests.
+     *
+     * @return The maximum number of requests made to the WikiMediator API during any 30 second time interval.
+     * This number will not include requests made at the moment this method was called, including calls to this method
+     * itself.
+     */
+    public int windowedPeakLoad() {
+        return windowedPeakLoad(30);
+    }
+
+    /**
+     * Finds and returns up to maxItems most common Strings used in search and getPage requests made in a past
+     * period of time, such as between 14:00 and 15:00 on a given day.
+     *
+     * @param from The time, in seconds since the epoch, at which the period starts.
+     * @param to The time, in seconds since the epoch, at which the period ends, to > from.
+     * @param maxItems The maximum number of most common Strings to return.
+     *                 maxItems must be a number greater than zero.
+     * @return Up to maxItems most common Strings used in search and getPage requests made in [from, to), with items
+     * sorted in non-increasing count order. In the case of different Strings with the same frequency, the String to
+     * return will be chosen arbitrarily. Use trendingRanking(from, to, maxItems) to also obtain the error bound.
+     */
+    public List<String> trending(long from, long to, int maxItems) {
+        return trendingRanking(from, to, maxItems).getItems();
+    }
+
+    /**
+     * Finds and returns up to maxItems most common Strings used in search and getPage requests made in a past
+     * period of time, exactly as trending(from, to, maxItems) does, together with the error bound of the counts
+     * used to rank them.
+     *
+     * @param from The time, in seconds since the epoch, at which the period starts.
+     * @param to The time, in seconds since the epoch, at which the period ends, to > from.
+     * @param maxItems The maximum number of most common Strings to return.
+     *                 maxItems must be a number greater than zero.
+     * @return A Ranking of up to maxItems most common Strings used in search and getPage requests made in
+     * [from, to). If the WikiMediator persists its statistics, the Strings are counted exactly from the logged
+     * requests, reading only the parts of the log that overlap the period. Otherwise, they are counted from the
+     * statistics in memory, so the period is rounded outwards to whole rolled-up buckets, or to whole trending
+     * buckets if the WikiMediator counts query strings approximately, and requests older than the history kept
+     * in memory are not counted.
+     */
+    public Ranking trendingRanking(long from, long to, int maxItems) {
+        checkRep();
+
+        boolean complete = recordStatisticsRequest(currentTime());
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        Ranking ranking;
+        if (scanLog(from, to, (query, time) -> {
+            if (query != null) {
+                counts.put(query, counts.getOrDefault(query, 0) + 1);
+            }
+        })) {
+            ranking = new Ranking(RequestHistory.rank(counts, maxItems), 0, !complete);
+        }
+        else {
+            ApproximateStatistics summary = approximate;
+            Ranking inMemory = summary != null
+                    ? summary.mostFrequentSince(from, to - 1, maxItems)
+                    : new Ranking(history.mostFrequentBetween(from, to, maxItems), 0);
+            ranking = new Ranking(inMemory.getItems(), inMemory.getErrorBound(), !complete);
+        }
+
+        checkRep();
+        return ranking;
+    }
+
+    /**
+     * Return the maximum number of valid requests made using the public API of WikiMediator in any time window of
+     * length timeWindowInSeconds that starts in a past period of time, counting only the requests made in that
+     * period, such as the peak load on a given day.
+     *
+     * @param from The time, in seconds since the epoch, at which the period starts.
+     * @param to The time, in seconds since the epoch, at which the period ends, to > from. Requests made at or after
+     *           the moment this method was called are not counted.
+     * @param timeWindowInSeconds The size of the time interval within which request frequencies will be considered.
+     *                            timeWindowInSeconds > 0
+     * @return The maximum number of requests made in [from, to) during any time interval of size timeWindowInSeconds.
+     * If the WikiMediator persists its statistics, the requests are counted exactly from the logged requests.
+     * Otherwise, they are counted from the statistics in memory, so a window that reaches into rolled-up history
+     * is bounded as in windowedPeakLoadEstimate(long, long, int).
+     */
+    public int windowedPeakLoad(long from, long to, int timeWindowInSeconds) {
+        return windowedPeakLoadEstimate(from, to, timeWindowInSeconds).getRequests();
+    }
+
+    /**
+     * Return the maximum number of valid requests made using the public API of WikiMediator in any time window of
+     * length timeWindowInSeconds that starts in a past period of time, counting only the requests made in that
+     * period, together with how much it may overstate the true maximum.
+     *
+     * @param from The time, in seconds since the epoch, at which the period starts.
+     * @param to The time, in seconds since the epoch, at which the period ends, to > from. Requests made at or after
+     *           the moment this method was called are not counted.
+     * @param timeWindowInSeconds The size of the time interval within which request frequencies will be considered.
+     *                            timeWindowInSeconds > 0
+     * @return The largest possible number of requests made in [from, to) during any time interval of size
+     * timeWindowInSeconds and the amount by which it may exceed the true number. If the WikiMediator persists its
+     * statistics, the requests are counted exactly from the logged requests. Otherwise, they are counted from the
+     * statistics in memory, where requests older than the raw retention period are only known per minute or hour,
+     * and a window that overlaps part of a minute or hour is charged no more than the busiest second of it for
+     * every second of the overlap.
+     */
+    public PeakLoad windowedPeakLoadEstimate(long from, long to, int timeWindowInSeconds) {
+        checkRep();
+
+        long callTime = currentTime();
+        boolean complete = recordStatisticsRequest(callTime);
+        long until = Math.min(to, callTime);
+
+        SortedMap<Long, Integer> perSecond = new TreeMap<>();
+        PeakLoad peakLoad;
+        if (scanLog(from, until, (query, time) -> perSecond.put(time, perSecond.getOrDefault(time, 0) + 1))) {
+            peakLoad = new PeakLoad(peakLoad(perSecond, until, timeWindowInSeconds), 0, !complete);
+        }
+        else {
+            PeakLoad inMemory = history.peakLoad(from, until, timeWindowInSeconds);
+            peakLoad = new PeakLoad(inMemory.getRequests(), inMemory.getErrorBound(), !complete);
+        }
+
+        checkRep();
+        return peakLoad;
+    }
+
+    /**
+     * Helper method that passes every request logged in a period of time to a receiver, if the WikiMediator
+     * persists its statistics and has finished loading them.
+     * @param from the time, in seconds, at which the period starts
+     * @param to the time, in seconds, at which the period ends
+     * @param receiver receives every logged request made in [from, to), receiver must not be null
+     * @return true if every logged request made in [from, to) was passed to receiver, or false if the
+     * WikiMediator does not persist its statistics, has not finished loading them, no longer keeps the requests
+     * logged at from, or the log could not be read, in which case the period must be answered from the
+     * statistics in memory
+     */
+    private boolean scanLog(long from, long to, StatisticsLog.EventReceiver receiver) {
+        StatisticsLog persisted = log;
+        if (persisted == null || !loaded) {
+            return false;
+        }
+        try {
+            return persisted.scan(from, to, receiver);
+        }
+        catch (IOException e) {
+            System.err.println("Could not read statistics from disk: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Helper method that computes the maximum number of requests in any time window of a given length, from the
+     * number of requests made in each second.
+     * @param perSecond maps every second in which requests were made to the number of requests made in it
+     * @param until the time, in seconds, at which every window is cut off
+     * @param timeWindowInSeconds the length of the time window, in seconds
+     * @return the maximum number of requests made in any window [t, min(t + timeWindowInSeconds, until)), or 0 if
+     * timeWindowInSeconds <= 0
+     */
+    private static int peakLoad(SortedMap<Long, Integer> perSecond, long until, int timeWindowInSeconds) {
+        if (timeWindowInSeconds <= 0) {
+            return 0;
+        }
+
+        long[] seconds = new long[perSecond.size()];
+        int[] requests = new int[perSecond.size()];
+        int second = 0;
+        for (Map.Entry<Long, Integer> count : perSecond.entrySet()) {
+            seconds[second] = count.getKey();
+            requests[second] = count.getValue();
+            second++;
+        }
+
+        int maxRequests = 0;
+        int windowRequests = 0;
+        int windowEnd = 0;
+        for (int windowStart = 0; windowStart < seconds.length; windowStart++) {
+            long upperBound = Math.min(seconds[windowStart] + timeWindowInSeconds, until);
+            while (windowEnd < seconds.length && seconds[windowEnd] < upperBound) {
+                windowRequests += requests[windowEnd];
+                windowEnd++;
+            }
+            maxRequests = Math.max(maxRequests, windowRequests);
+            windowRequests -= requests[windowStart];
+        }
+        return maxRequests;
+    }
+
+    /**
+     * Write the statistics of the WikiMediator to disk as a snapshot, if it persists its statistics, so that
+     * they are reloaded by the next WikiMediator created with the same persistence directory, and stop refreshing
+     * stale pages and recording statistics in the background. Requests made after close are still answered and
+     * counted, by the thread that makes them, but are no longer persisted, and stale pages served after close are
+     * not refreshed.
+     */
+    public void close() {
+        closed = true;
+        statistics.close();
+        if (log == null) {
+            return;
+        }
+        snapshotLock.lock();
+        try {
+            takeSnapshot();
+        }
+        finally {
+            snapshotLock.unlock();
+        }
+        try {
+            log.close();
+        }
+        catch (IOException e) {
+            System.err.println("Could not write statistics to disk: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the shortest path between two Wikipedia pages, where shortest path is defined
+     * as the minimum number of link clicks it takes to start from a page, pageTitle1,
+     * and reach another page, pageTitle2.
+     * @param pageTitle1 The Wikipedia page to start on
+     * @param pageTitle2 The Wikipedia page to end on
+     * @param timeout The number of seconds that is permitted for this operation before
+     *                a TimeoutException is thrown.
+     * @return A list of page titles (including the starting and ending pages) on the
+     * shortest path between pageTitle1 and pageTitle2, if such a path exists. If there
+     * are two or more shortest paths, then the one with the lowest lexicographical
+     * value is to be returned. If no path exists between two pages, an empty List
+     * will be returned.
+     * @throws TimeoutException If the operation takes timeout seconds or longer to
+     * execute.
+     */
+    public List<String> shortestPath(String pageTitle1, String pageTitle2, int timeout) throws TimeoutException {
+        try {
+            return shortestPathAsync(pageTitle1, pageTitle2, timeout).join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw (TimeoutException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Finds the shortest path between two Wikipedia pages exactly as shortestPath does, without waiting for the
+     * answer.
+     * The path is found with a bidirectional breadth-first search, which follows the links of pages from
+     * pageTitle1 and the links to pages from pageTitle2, always extending the side with fewer pages to visit, and
+     * fetches the links of every page of a level of the search at once, reusing the links cached by earlier
+     * searches. Paths follow links between pages as Wikipedia lists them, so a redirect page is a page of its
+     * own, linking to its target. Once timeout seconds have passed, the queries of Wikipedia that are still
+     * running are cancelled and the search stops.
+     * If the WikiMediator has an offline link graph that holds both pages, the same search runs over the
+     * graph instead, without a network access, and stops once timeout seconds have passed. The landmarks of
+     * the graph prove some pages to be too far from the pages of the request to be on a shortest path, and
+     * those pages are not expanded; the path found is the same.
+     * @param pageTitle1 The Wikipedia page to start on
+     * @param pageTitle2 The Wikipedia page to end on
+     * @param timeout The number of seconds that is permitted for this operation before
+     *                the returned future completes exceptionally with a TimeoutException.
+     * @return A future of the list of page titles on the shortest path between pageTitle1 and
+     * pageTitle2, as returned by shortestPath. It completes exceptionally with a TimeoutException if
+     * the path is not found within timeout seconds, and with the failure of the query if the links
+     * of a page could not be fetched.
+     */
+    public CompletableFuture<List<String>> shortestPathAsync(String pageTitle1, String pageTitle2, int timeout) {
+        checkRep();
+
+        statistics.publish(null, currentTime());
+
+        String source = resolve(pageTitle1);
+        String target = resolve(pageTitle2);
+        if (source == null || target == null) {
+            checkRep();
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+
+        int from = linkGraph == null ? -1 : linkGraph.id(source);
+        int to = linkGraph == null ? -1 : linkGraph.id(target);
+        if (from >= 0 && to >= 0) {
+            CompletableFuture<List<String>> path = new CompletableFuture<>();
+            pathSearches.execute(() -> {
+                try {
+                    List<String> found = linkGraph.shortestPath(from, to, landmarks, path::isDone);
+                    if (found != null) {
+                        path.complete(found);
+                    }
+                }
+                catch (RuntimeException e) {
+                    path.completeExceptionally(e);
+                }
+            });
+            checkRep();
+            return path.orTimeout(timeout, TimeUnit.SECONDS);
+        }
+
+        CompletableFuture<List<String>> path =
+                new PathFinder(outLinks::links, inLinks::links, source, target).find();
+        checkRep();
+        return path.orTimeout(timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Estimates the number of link clicks on the shortest path from one Wikipedia page to another, without
+     * searching for the path. The bounds come from the distances between every page of the offline link graph
+     * and a few landmark pages, so an estimate is answered in time proportional to the number of landmarks,
+     * without a network access beyond resolving the titles. If either page is not in the offline link graph,
+     * or there are no landmarks yet, nothing is known beyond the estimate of any two distinct pages: at least
+     * one click, and no known path.
+     * @param pageTitle1 The Wikipedia page to start on
+     * @param pageTitle2 The Wikipedia page to end on
+     * @return bounds on the number of link clicks on the shortest path from pageTitle1 to pageTitle2, which
+     * are both 0 if they are the same page, and which show there is no path if either page does not exist
+     * or the landmarks show that pageTitle2 cannot be reached from pageTitle1
+     */
+    public DistanceEstimate distanceEstimate(String pageTitle1, String pageTitle2) {
+        checkRep();
+
+        statistics.publish(null, currentTime());
+
+        String source = resolve(pageTitle1);
+        String target = resolve(pageTitle2);
+        if (source == null || target == null) {
+            checkRep();
+            return new DistanceEstimate(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+        if (source.equals(target)) {
+            checkRep();
+            return new DistanceEstimate(0, 0);
+        }
+
+        int from = landmarks == null ? -1 : linkGraph.id(source);
+        int to = landmarks == null ? -1 : linkGraph.id(target);
+        if (from < 0 || to < 0) {
+            checkRep();
+            return new DistanceEstimate(1, Integer.MAX_VALUE);
+        }
+        Landmarks.Tables tables = landmarks.tables();
+        int lowerBound = tables.lowerBound(from, to);
+        checkRep();
+        return new DistanceEstimate(lowerBound,
+                lowerBound == Integer.MAX_VALUE ? Integer.MAX_VALUE : tables.upperBound(from, to));
+    }
+
+    /**
+     * A Snapshot holds every statistic of a WikiMediator that is persisted in a snapshot of its StatisticsLog.
+     * The statistics are written in a fixed order, with the approximate statistics last, because they are
+     * only partly read if the settings of the WikiMediator changed since the snapshot was taken.
+     */
+    private static class Snapshot {
+        private final RequestHistory history;
+        private final DecayedSummary decayed;
+        private final ApproximateStatistics approximate;
+        private final long searchEvents;
+
+        /**
+         * Create a Snapshot of empty statistics.
+         * @param config the optional settings of the WikiMediator, config must not be null
+         */
+        Snapshot(MediatorConfig config) {
+            this(new RequestHistory(currentTime(), config.getRawRetention(), config.getMinuteRetention()),
+                    new DecayedSummary(config.getHeavyHitterCapacity(), config.getDecayHalfLife(), currentTime()),
+                    config.getStatisticsMode() == MediatorConfig.StatisticsMode.APPROXIMATE
+                            ? new ApproximateStatistics(config) : null,
+                    0);
+        }
+
+        /**
+         * Create a Snapshot of existing statistics.
+         * @param history the request history, history must not be null
+         * @param decayed the decayed summary, decayed must not be null
+         * @param approximate the approximate statistics, or null if query strings are counted exactly
+         * @param searchEvents the number of search and getPage requests recorded, searchEvents >= 0
+         */
+        Snapshot(RequestHistory history, DecayedSummary decayed, ApproximateStatistics approximate,
+                 long searchEvents) {
+            this.history = history;
+            this.decayed = decayed;
+            this.approximate = approximate;
+            this.searchEvents = searchEvents;
+        }
+
+        /**
+         * Read the statistics written with writeTo. If the statistics mode changed since they were written,
+         * the approximate statistics are dropped or started empty.
+         * @param in the snapshot to read from, in must not be null
+         * @param config the optional settings of the WikiMediator, config must not be null
+         * @return the Snapshot that was written
+         * @throws IOException if in cannot be read
+         */
+        static Snapshot readFrom(DataInput in, MediatorConfig config) throws IOException {
+            long searchEvents = in.readLong();
+            RequestHistory history = RequestHistory.readFrom(in, config.getRawRetention(), config.getMinuteRetention());
+            DecayedSummary decayed = DecayedSummary.readFrom(in, config.getHeavyHitterCapacity(),
+                    config.getDecayHalfLife());
+
+            ApproximateStatistics approximate = null;
+            if (config.getStatisticsMode() == MediatorConfig.StatisticsMode.APPROXIMATE) {
+                approximate = in.readBoolean()
+                        ? ApproximateStatistics.readFrom(in, config) : new ApproximateStatistics(config);
+            }
+            return new Snapshot(history, decayed, approximate, searchEvents);
+        }
+
+        /**
+         * Write the statistics. Each statistic holds its own lock while it is written.
+         * @param out the snapshot to write to, out must not be null
+         * @throws IOException if out cannot be written
+         */
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(searchEvents);
+            history.writeTo(out);
+            decayed.writeTo(out);
+            out.writeBoolean(approximate != null);
+            if (approximate != null) {
+                approximate.writeTo(out);
+            }
+            out.flush();
+        }
+    }
+}
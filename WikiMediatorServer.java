@@ -1,13 +1,22 @@
 package cpen221.mp3.server;
 
 import com.google.gson.Gson;
+import cpen221.mp3.wikimediator.MediatorConfig;
+import cpen221.mp3.wikimediator.PageResult;
+import cpen221.mp3.wikimediator.PeakLoad;
+import cpen221.mp3.wikimediator.Ranking;
+import cpen221.mp3.wikimediator.VirtualThreads;
 import cpen221.mp3.wikimediator.WikiMediator;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 
 /**
@@ -20,8 +29,17 @@ import java.util.concurrent.*;
  * - serverSocket represents the network socket that connects the server
  *   to the client
  * - wikiPort is the port number used to connect the server and the client
- * - numConc is the number of concurrent requests the server can handle
+ * - numConc is the number of statistics requests the server can compute
+ *   concurrently, in statisticsExecutor, on platform threads; search, getPage
+ *   and getPages requests do not hold a thread while they wait for Wikipedia,
+ *   so any number of them can be in flight at once
+ * - connections runs the handler of each connection. If WikiMediator uses
+ *   virtual threads, each connection, and each statistics request, runs on
+ *   its own virtual thread, so idle or blocked clients do not hold an
+ *   operating system thread each
  * - WikiMediator is the WikiMediator instance to use for the server
+ * - stopped is true once the server has received a stop request
+ * - answered is true once the server has answered its first request
  */
 public class WikiMediatorServer extends Thread{
     /* default success message */
@@ -30,14 +48,28 @@ public class WikiMediatorServer extends Thread{
     /* default failure message */
     private final static String FAILED = "failed";
 
+    /* response to a stop request */
+    private final static String BYE = "bye";
+
+    /* the most requests of one connection that are answered at once is 64; reading waits for a free slot */
+    private final static int MAX_IN_FLIGHT = 64;
+
+    /* parses requests and formats responses; Gson is threadsafe, and costly to create per connection */
+    private final static Gson GSON = new Gson();
+
     private ServerSocket serverSocket;
     private final int WikiPort;
     private final int numConc;
     private final WikiMediator WikiMediator;
+    private final ExecutorService connections;
+    private final ExecutorService statisticsExecutor;
+    private volatile boolean stopped = false;
+    private final AtomicBoolean answered = new AtomicBoolean(false);
 
     /*
      * Representation Invariant:
      *  - serverSocket != null
+     *  - connections and statisticsExecutor != null
      */
 
     /**
@@ -48,20 +80,31 @@ public class WikiMediatorServer extends Thread{
         if (serverSocket == null) {
             throw new RuntimeException("serverSocket must not be null");
         }
+        if (connections == null || statisticsExecutor == null) {
+            throw new RuntimeException("connections and statisticsExecutor must not be null");
+        }
     }
 
     /**
-     * Start a server at a given port number, with the ability to process
-     * up to n requests concurrently.
+     * Start a server at a given port number, with the ability to compute
+     * up to n statistics requests concurrently.
      *
      * @param port the port number to bind the server to, 9000 <= {@code port} <= 9999
-     * @param n the number of concurrent requests the server can handle, 0 < {@code n} <= 32
+     * @param n the number of statistics requests the server can compute concurrently, 0 < {@code n} <= 32
      * @param wikiMediator the WikiMediator instance to use for the server, {@code wikiMediator} is not {@code null}
      */
     public WikiMediatorServer(int port, int n, WikiMediator wikiMediator) {
         WikiPort = port;
         numConc = n;
         WikiMediator = wikiMediator;
+        connections = VirtualThreads.newExecutor("wikimediator-connection", wikiMediator.usesVirtualThreads());
+        statisticsExecutor = wikiMediator.usesVirtualThreads()
+                ? VirtualThreads.newExecutor("wikimediator-statistics", true)
+                : Executors.newFixedThreadPool(n, task -> {
+                    Thread thread = new Thread(task, "wikimediator-statistics");
+                    thread.setDaemon(true);
+                    return thread;
+                });
 
         try {
             serverSocket = new ServerSocket(port);
@@ -72,18 +115,21 @@ public class WikiMediatorServer extends Thread{
     }
 
     /**
-     * Run the server, listening for connections and handling them.
+     * Run the server, listening for connections and handling them, until the
+     * server receives a stop request.
      *
      * @throws RuntimeException if the main server socket is broken. Throwing
      * an IOException will not terminate serve(), but a stack trace will
      * be printed.
      */
     public void serve() throws RuntimeException {
+        System.err.println("Accepting requests on port " + WikiPort + " " + uptime() + " ms after startup"
+                + (WikiMediator.isLoaded() ? "." : ", while statistics are still loading."));
         while (true) {
             try {
                 final Socket socket = serverSocket.accept();
 
-                Thread handler = new Thread(() -> {
+                connections.execute(() -> {
                     try {
                         try {
                             handle(socket);
@@ -94,18 +140,42 @@ public class WikiMediatorServer extends Thread{
                         ioe.printStackTrace();
                     }
                 });
-
-                handler.start();
             }
             catch (IOException ioe){
+                if (stopped) {
+                    return;
+                }
                 throw new RuntimeException();
             }
         }
     }
 
+    /**
+     * Stop the server: stop accepting connections and write the statistics of
+     * the WikiMediator to disk.
+     *
+     * Frame Condition:
+     * - serverSocket is closed, so serve() returns
+     */
+    private void stopServer() {
+        stopped = true;
+        connections.shutdown();
+        statisticsExecutor.shutdown();
+        WikiMediator.close();
+        try {
+            serverSocket.close();
+        } catch (IOException ioe) {
+            System.out.println("Could not close the WikiMediatorServer socket.");
+        }
+    }
+
     /**
      * Handle one client connection by having the server interpret and act upon requests.
-     * Returns when client disconnects.
+     * Each request is started as soon as it is read, without waiting for the requests read
+     * before it to finish, but responses are sent in the order the requests were read. At most
+     * MAX_IN_FLIGHT requests are answered at once; the next request is only read once the response
+     * to an earlier one has been sent. Returns when client disconnects, once every request has been
+     * answered.
      * @param socket The socket where client is connected.
      * @throws RuntimeException If the connection encounters an error.
      */
@@ -119,78 +189,50 @@ public class WikiMediatorServer extends Thread{
             PrintWriter out = new PrintWriter(new OutputStreamWriter(
                     socket.getOutputStream()), true);
 
+            CompletableFuture<Void> sent = CompletableFuture.completedFuture(null);
+            Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
             try{
-                Gson gson = new Gson();
-
                 for (String line = in.readLine(); line != null; line = in.readLine()) {
-                    Request request = gson.fromJson(line, Request.class);
+                    Request request = GSON.fromJson(line, Request.class);
                     String id = request.getId();
                     String type = request.getType();
-                    String timeout = request.getTimeout();
-
-                    Response responseObject;
-                    String response;
 
                     try {
                         request.checkValidRequest();
 
-                        if (timeout != null) {
-                            this.executeTimeout(request, out);
+                        if (Objects.equals(type, "stop")) {
+                            sent.join();
+                            sendResponse(new Response(id, BYE), out);
+                            stopServer();
+                            return;
                         }
 
-                        else {
-                            if (Objects.equals(type, "search")) {
-                                String query = request.getQuery();
-                                int limit = Integer.parseInt(request.getLimit());
-
-                                response = String.valueOf(WikiMediator.search(query, limit));
-                                responseObject = new Response(id, SUCCESS, response);
-                                sendResponse(responseObject, out);
-                            }
-
-                            else if (Objects.equals(type, "getPage")) {
-                                String pageTitle = request.getPageTitle();
-
-                                response = WikiMediator.getPage(pageTitle);
-                                responseObject = new Response(id, SUCCESS, response);
-                                sendResponse(responseObject, out);
-                            }
-
-                            else if (Objects.equals(type, "zeitgeist")) {
-                                int limit = Integer.parseInt(request.getLimit());
-
-                                response = String.valueOf(WikiMediator.zeitgeist(limit));
-                                responseObject = new Response(id, SUCCESS, response);
-                                sendResponse(responseObject, out);
-                            }
-
-                            else if (Objects.equals(type, "trending")) {
-                                int timeLimitInSeconds = Integer.parseInt(request.getTimeLimitInSeconds());
-                                int maxItems = Integer.parseInt(request.getMaxItems());
-
-                                response = String.valueOf(WikiMediator.trending(timeLimitInSeconds, maxItems));
-                                responseObject = new Response(id, SUCCESS, response);
+                        inFlight.acquireUninterruptibly();
+                        CompletableFuture<Response> response;
+                        try {
+                            response = respond(request);
+                        }
+                        catch (RuntimeException e) {
+                            // an operation that fails before returning its future must still free its place
+                            response = CompletableFuture.completedFuture(
+                                    new Response(id, FAILED, "Could not retrieve result of operation!!"));
+                        }
+                        sent = sent.thenCombine(response, (previous, responseObject) -> {
+                            try {
                                 sendResponse(responseObject, out);
                             }
-
-                            else if (Objects.equals(type, "windowedPeakLoad")) {
-                                if (request.getTimeWindowInSeconds() == null) {
-                                    response = String.valueOf(WikiMediator.windowedPeakLoad());
-                                }
-                                else {
-                                    int timeWindowInSeconds = Integer.parseInt(request.getTimeWindowInSeconds());
-                                    response = String.valueOf(WikiMediator.windowedPeakLoad(timeWindowInSeconds));
-                                }
-                                responseObject = new Response(id, SUCCESS, response);
-                                sendResponse(responseObject, out);
+                            finally {
+                                inFlight.release();
                             }
-                        }
+                            return null;
+                        });
                     }
                     catch (JsonFormatException jfe) {
-                        responseObject = new Response(id, FAILED, "Invalid JSON request!");
-                        sendResponse(responseObject, out);
+                        Response responseObject = new Response(id, FAILED, "Invalid JSON request!");
+                        sent = sent.thenRun(() -> sendResponse(responseObject, out));
                     }
                 }
+                sent.join();
             } finally {
                 out.close();
                 in.close();
@@ -202,95 +244,169 @@ public class WikiMediatorServer extends Thread{
     }
 
     /**
-     * Executes the operation specified by request and sends the response back to
-     * the client.
-     * @param request request to handle, must not be null and must have a timeout
-     *                instance variable > 0
-     * @param out communication manager that takes response obtained by handling
-     *            request and sends it to client
+     * Starts the operation specified by request, without waiting for it to finish. search, getPage,
+     * getPages and shortestPath requests wait for Wikipedia without holding a thread; every other
+     * request is computed by statisticsExecutor. If request has a timeout, the response is a failure response once the
+     * operation has taken that long.
+     * @param request request to handle, must not be null and must be valid
+     * @return a future of the response to send to the client, which never completes exceptionally
+     * @throws RuntimeException If the operation fails before it is started, for instance because
+     * a parameter is out of range
      */
-    private void executeTimeout(Request request, PrintWriter out) {
+    private CompletableFuture<Response> respond(Request request) {
         String id = request.getId();
         String type = request.getType();
-        long timeout = Long.parseLong(request.getTimeout());
+        CompletableFuture<Response> response;
 
         if (Objects.equals(type, "search")) {
             String query = request.getQuery();
             int limit = Integer.parseInt(request.getLimit());
-            Callable<Object> task = () -> WikiMediator.search(query, limit);
-            executeTimeoutTask(task, out, id, timeout);
+            response = WikiMediator.searchAsync(query, limit).thenApply(titles -> {
+                logFirstRequest();
+                return new Response(id, SUCCESS, String.valueOf(titles));
+            });
         }
 
         else if (Objects.equals(type, "getPage")) {
             String pageTitle = request.getPageTitle();
-            Callable<Object> task = () -> WikiMediator.getPage(pageTitle);
-            executeTimeoutTask(task, out, id, timeout);
+            response = WikiMediator.getPageResultAsync(pageTitle).thenApply(page -> {
+                logFirstRequest();
+                return pageResponse(id, page);
+            });
+        }
+
+        else if (Objects.equals(type, "getPages")) {
+            List<String> pageTitles = request.getPageTitles();
+            response = WikiMediator.getPagesAsync(pageTitles).thenApply(pages -> {
+                logFirstRequest();
+                return new Response(id, SUCCESS, GSON.toJson(pages));
+            });
+        }
+
+        else if (Objects.equals(type, "shortestPath")) {
+            String pageTitle1 = request.getPageTitle1();
+            String pageTitle2 = request.getPageTitle2();
+            int timeout = Integer.parseInt(request.getTimeout());
+            response = WikiMediator.shortestPathAsync(pageTitle1, pageTitle2, timeout).thenApply(
+                    path -> new Response(id, SUCCESS, String.valueOf(path)));
         }
 
         else if (Objects.equals(type, "zeitgeist")) {
             int limit = Integer.parseInt(request.getLimit());
-            Callable<Object> task = () -> WikiMediator.zeitgeist(limit);
-            executeTimeoutTask(task, out, id, timeout);
+            response = CompletableFuture.supplyAsync(
+                    () -> rankingResponse(id, WikiMediator.zeitgeistRanking(limit)), statisticsExecutor);
+        }
+
+        else if (Objects.equals(type, "decayedZeitgeist")) {
+            int limit = Integer.parseInt(request.getLimit());
+            response = CompletableFuture.supplyAsync(() -> {
+                Ranking ranking = WikiMediator.decayedZeitgeistRanking(limit);
+                return new Response(id, SUCCESS, String.valueOf(ranking.getItems()), null, ranking.isPartial());
+            }, statisticsExecutor);
         }
 
         else if (Objects.equals(type, "trending")) {
-            int timeLimitInSeconds = Integer.parseInt(request.getTimeLimitInSeconds());
             int maxItems = Integer.parseInt(request.getMaxItems());
-            Callable<Object> task = () -> WikiMediator.trending(timeLimitInSeconds, maxItems);
-            executeTimeoutTask(task, out, id, timeout);
+            if (request.isRange()) {
+                long from = Long.parseLong(request.getFrom());
+                long to = Long.parseLong(request.getTo());
+                response = CompletableFuture.supplyAsync(
+                        () -> rankingResponse(id, WikiMediator.trendingRanking(from, to, maxItems)), statisticsExecutor);
+            }
+            else {
+                int timeLimitInSeconds = Integer.parseInt(request.getTimeLimitInSeconds());
+                response = CompletableFuture.supplyAsync(
+                        () -> rankingResponse(id, WikiMediator.trendingRanking(timeLimitInSeconds, maxItems)),
+                        statisticsExecutor);
+            }
         }
 
         else if (Objects.equals(type, "windowedPeakLoad")) {
-            if (request.getTimeWindowInSeconds() != null) {
-                int timeWindowInSeconds = Integer.parseInt(request.getTimeWindowInSeconds());
-                Callable<Object> task = () -> WikiMediator.windowedPeakLoad(timeWindowInSeconds);
-                executeTimeoutTask(task, out, id, timeout);
+            int timeWindowInSeconds = Integer.parseInt(request.getTimeWindowInSeconds());
+            Supplier<PeakLoad> task;
+            if (request.isRange()) {
+                long from = Long.parseLong(request.getFrom());
+                long to = Long.parseLong(request.getTo());
+                task = () -> WikiMediator.windowedPeakLoadEstimate(from, to, timeWindowInSeconds);
             }
             else {
-                Callable<Object> task = WikiMediator::windowedPeakLoad;
-                executeTimeoutTask(task, out, id, timeout);
+                task = () -> WikiMediator.windowedPeakLoadEstimate(timeWindowInSeconds);
             }
+            response = CompletableFuture.supplyAsync(() -> peakLoadResponse(id, task.get()), statisticsExecutor);
         }
+
+        else {
+            response = CompletableFuture.completedFuture(new Response(id, FAILED, "Invalid JSON request!"));
+        }
+
+        if (request.getTimeout() != null) {
+            response = response.orTimeout(Long.parseLong(request.getTimeout()), TimeUnit.SECONDS);
+        }
+        return response.exceptionally(failure -> {
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof TimeoutException) {
+                return new Response(id, FAILED, "Operation timed out!");
+            }
+            return new Response(id, FAILED, "Could not retrieve result of operation!!");
+        });
     }
 
     /**
-     * Executes the operation specified by task and sends the response back to the client.
-     * Sends a failure response if the operation execution time exceeds
-     * timeout. Otherwise, sends a success response containing the result of the
-     * operation.
-     * @param task task that specifies the operation to execute
-     * @param out communication manager that takes response obtained by handling
-     *            request and sends it to client
+     * Creates a success response containing the items of a ranking. The error bound of
+     * the ranking is included in the response if the ranking is not exact, and the
+     * response is marked partial if the ranking is.
      * @param id id to include in the response
-     * @param timeout timeout time in seconds that specifies how long the operation
-     *                should execute before sending a failure response to client
+     * @param ranking the ranking to include in the response, must not be null
+     * @return a success response containing the ranking
      */
-    private static void executeTimeoutTask(Callable<Object> task, PrintWriter out,
-                                           String id, long timeout) {
-        Response responseObject;
-        String response;
-        ExecutorService executor = Executors.newCachedThreadPool();
-        Future<Object> future = executor.submit(task);
+    private static Response rankingResponse(String id, Ranking ranking) {
+        String response = String.valueOf(ranking.getItems());
+        String errorBound = ranking.isExact() ? null : String.valueOf(ranking.getErrorBound());
+        return new Response(id, SUCCESS, response, errorBound, ranking.isPartial());
+    }
 
-        try {
-            Object result = future.get(timeout, TimeUnit.SECONDS);
-            response = String.valueOf(result);
-            responseObject = new Response(id, SUCCESS, response);
-            sendResponse(responseObject, out);
-        } catch (TimeoutException ex) {
-            responseObject = new Response(id, FAILED, "Operation timed out!");
-            sendResponse(responseObject, out);
-        } catch (InterruptedException e) {
-            responseObject = new Response(id, FAILED, "Operation interrupted unexpectedly!");
-            sendResponse(responseObject, out);
-        } catch (ExecutionException e) {
-            responseObject = new Response(id, FAILED, "Could not retrieve result of operation!!");
-            sendResponse(responseObject, out);
-        } finally {
-            future.cancel(true);
+    /**
+     * Creates a success response containing a peak load. The error bound of the peak
+     * load is included in the response if it is not exact, and the response is marked
+     * partial if the peak load is.
+     * @param id id to include in the response
+     * @param peakLoad the peak load to include in the response, must not be null
+     * @return a success response containing the peak load
+     */
+    private static Response peakLoadResponse(String id, PeakLoad peakLoad) {
+        String response = String.valueOf(peakLoad.getRequests());
+        String errorBound = peakLoad.isExact() ? null : String.valueOf(peakLoad.getErrorBound());
+        return new Response(id, SUCCESS, response, errorBound, peakLoad.isPartial());
+    }
+
+    /**
+     * Creates a success response containing the text of a page. The response is marked
+     * stale if the text is a cached copy that is being fetched again.
+     * @param id id to include in the response
+     * @param page the page to include in the response, must not be null
+     * @return a success response containing the text of the page
+     */
+    private static Response pageResponse(String id, PageResult page) {
+        return new Response(id, SUCCESS, page.getText(), null, false, page.isStale());
+    }
+
+    /**
+     * Logs the time to first request the first time a search, getPage or getPages request is answered.
+     */
+    private void logFirstRequest() {
+        if (answered.compareAndSet(false, true)) {
+            System.err.println("Answered the first request " + uptime() + " ms after startup.");
         }
     }
 
+    /**
+     * Get the time since the JVM running the server started.
+     * @return the number of milliseconds since the JVM started
+     */
+    private static long uptime() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
     /**
      * Sends a response from the WikiMediatorServer to the client.
      * @param response contains the information that is to be included in the
@@ -299,8 +415,7 @@ public class WikiMediatorServer extends Thread{
      *            request and sends it to client
      */
     private static void sendResponse(Response response, PrintWriter out) {
-        Gson gson = new Gson();
-        String JsonResponse = gson.toJson(response);
+        String JsonResponse = GSON.toJson(response);
         out.println(JsonResponse + "\n");
     }
 
@@ -310,9 +425,13 @@ public class WikiMediatorServer extends Thread{
         int port = 9696;
         int numClients = 10;
 
-        WikiMediator wm = new WikiMediator(capacity, stalenessInterval);
+        MediatorConfig config = new MediatorConfig.Builder()
+                .withPersistence(MediatorConfig.LOCAL_DIRECTORY, MediatorConfig.DDURABILITY)
+                .withLinkGraph(MediatorConfig.LOCAL_DIRECTORY)
+                .build();
+        WikiMediator wm = new WikiMediator(capacity, stalenessInterval, config);
         WikiMediatorServer wms = new WikiMediatorServer(port, numClients, wm);
         wms.serve();
     }
 
-}
\ No newline at end of file
+}
@@ -2,6 +2,8 @@ package cpen221.mp3.wikimediator;
 
 import cpen221.mp3.fsftbuffer.Bufferable;
 
+import java.time.Instant;
+
 /**
  * A WikiPage is a data type that implements the Bufferable interface. It represents a
  * Wikipedia page with a page title and the corresponding page content.
@@ -10,15 +12,30 @@ import cpen221.mp3.fsftbuffer.Bufferable;
  * A WikiPage is represented by two Strings: pageTitle and pageContent. The pageTitle
  * is the title of the Wikipedia page it represents, while the pageContent is all the
  * text found on the Wikipedia page specified by pageTitle.
+ * revisionId and revisionTimestamp identify the revision of the page that pageContent was taken
+ * from; revisionId is -1 and revisionTimestamp is null if the revision is unknown.
+ * links are the WikitextLinks found in pageContent, or null if they have not been looked for yet.
  */
 public class WikiPage implements Bufferable {
     private final String pageTitle;
     private final String pageContent;
+    private final long revisionId;
+    private final Instant revisionTimestamp;
+    private volatile WikitextLinks links = null;
 
     /*
      * Representation Invariant:
      *  - pageTitle must be the title of a valid Wikipedia page
      *  - pageContent must be the text found on the Wikipedia page specified by pageTitle
+     *  - revisionId is -1 if and only if revisionTimestamp is null
+     *  - links is null or are the links of pageContent
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - pageTitle, pageContent, revisionId and revisionTimestamp are private, final and immutable
+     *  - links is volatile and immutable, and is only ever set to the links of pageContent, so two threads
+     *    that scan pageContent at once set it to equal links
      */
 
     /**
@@ -27,8 +44,20 @@ public class WikiPage implements Bufferable {
      * @param pageContent The text found on the Wikipedia page specified by pageTitle.
      */
     WikiPage(String pageTitle, String pageContent){
+        this(pageTitle, pageContent, null);
+    }
+
+    /**
+     * Create a WikiPage with a page title, page content and the revision the content was taken from.
+     * @param pageTitle The title of the Wikipedia page.
+     * @param pageContent The text found on the Wikipedia page specified by pageTitle.
+     * @param revision The revision of the page that pageContent was taken from, or null if it is unknown.
+     */
+    WikiPage(String pageTitle, String pageContent, RevisionInfo revision){
         this.pageTitle = pageTitle;
         this.pageContent = pageContent;
+        this.revisionId = revision == null ? -1 : revision.getRevisionId();
+        this.revisionTimestamp = revision == null ? null : revision.getTimestamp();
     }
 
     /**
@@ -56,4 +85,42 @@ public class WikiPage implements Bufferable {
         return pageContent;
     }
 
+    /**
+     * Get the ID of the revision that the page content was taken from.
+     * @return The revision ID of the page content, or -1 if it is unknown.
+     */
+    public long getRevisionId() {
+        return revisionId;
+    }
+
+    /**
+     * Get the time at which the revision that the page content was taken from was made.
+     * @return The timestamp of the revision of the page content, or null if it is unknown.
+     */
+    public Instant getRevisionTimestamp() {
+        return revisionTimestamp;
+    }
+
+    /**
+     * Check whether the page content was taken from a given revision.
+     * @param revision The latest revision of the page, or null if it is unknown.
+     * @return true if the revision of the page content is known and is revision, false otherwise.
+     */
+    boolean isRevision(RevisionInfo revision) {
+        return revision != null && revisionId != -1 && revisionId == revision.getRevisionId();
+    }
+
+    /**
+     * Get the articles that the page content links to, scanning it the first time they are asked for.
+     * @return The links of the page content, which are kept with the WikiPage.
+     */
+    WikitextLinks getLinks() {
+        WikitextLinks scanned = links;
+        if (scanned == null) {
+            scanned = WikitextLinks.scan(pageContent);
+            links = scanned;
+        }
+        return scanned;
+    }
+
 }
@@ -0,0 +1,357 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * WikitextLinks are the articles that the wikitext of a page links to, found by scanning the text for
+ * [[...]] links, so that the links of a page whose text is cached are known without asking Wikipedia.
+ *
+ * The text is scanned once, from start to end, without a regular expression or a parse tree, and the
+ * only Strings created are the titles of the links and the names of templates. A link is to the page
+ * named before its first '|', without the section after a '#'. Links to other namespaces, such as
+ * categories and files, and to other wikis are not links to articles and are left out, but the links in
+ * the caption of a file are kept. Links in comments and in tags whose content is shown as text, like
+ * nowiki and pre, are not links.
+ *
+ * Wikipedia lists the links of a page as it is rendered, and a template can add links that are not in
+ * the wikitext. A scan is therefore conservative: unless every part of the text is known not to add or
+ * hide a link, it gives up and the links are not complete. That is the case if the text uses a template
+ * other than a few that never add links to articles, or a citation template with a parameter that makes
+ * a link, if a link is to a title that may be on another wiki, or may be escaped, or if the text holds a
+ * tag like gallery that is rendered into links.
+ *
+ * Abstraction Function:
+ * If complete is true, WikitextLinks represent the set of the normalized titles of the articles that a
+ * wikitext links to, which are sorted and distinct in titles. If complete is false, they represent a
+ * wikitext whose links could not be found without rendering it, and titles is empty.
+ */
+final class WikitextLinks {
+
+    /* the links of a wikitext whose links cannot all be found without rendering it */
+    private static final WikitextLinks UNKNOWN = new WikitextLinks(Collections.emptyList(), false);
+
+    /* the names, in lower case, of namespaces that links can be to besides the standard ones */
+    private static final Set<String> NAMESPACE_ALIASES = new HashSet<>(Arrays.asList(
+            "image", "image talk", "project", "project talk", "wp", "wt", "timedtext", "timedtext talk"));
+
+    /* the prefixes of links to the other Wikimedia projects, which are not links to articles */
+    private static final Set<String> PROJECT_PREFIXES = new HashSet<>(Arrays.asList(
+            "b", "c", "commons", "d", "foundation", "incubator", "m", "meta", "mw", "n", "phab", "q", "s",
+            "species", "v", "voy", "w", "wikibooks", "wikidata", "wikinews", "wikiquote", "wikisource",
+            "wikispecies", "wikiversity", "wikivoyage", "wikt", "wiktionary", "wmf"));
+
+    /* the names, in lower case, of the templates and magic words that never add a link to an article */
+    private static final Set<String> LINKLESS_TEMPLATES = new HashSet<>(Arrays.asList(
+            "!", "=", "citation needed", "cn", "clear", "defaultsort", "displaytitle", "efn", "engvarb",
+            "featured article", "good article", "italic title", "notelist", "pp", "pp-protected",
+            "pp-semi-protected", "reflist", "sfn", "sfnp", "short description", "use american english",
+            "use australian english", "use british english", "use canadian english", "use dmy dates",
+            "use indian english", "use mdy dates"));
+
+    /* the tags whose content is shown as text, so that the links in it are not links */
+    private static final List<String> TEXT_TAGS = Arrays.asList(
+            "nowiki", "pre", "math", "syntaxhighlight", "source", "chem", "ce", "score", "templatedata");
+
+    /* the tags whose content changes the links of a page in ways that a scan cannot follow */
+    private static final List<String> OPAQUE_TAGS = Arrays.asList(
+            "gallery", "imagemap", "timeline", "includeonly", "inputbox", "categorytree", "mapframe",
+            "maplink", "graph");
+
+    private final List<String> titles;
+    private final boolean complete;
+
+    /*
+     * Representation Invariant:
+     *  - titles must not be null, and is sorted and holds no null and no duplicate
+     *  - titles is empty if complete is false
+     */
+
+    /*
+     * Thread Safety Arguments:
+     *  - WikitextLinks are immutable: titles and complete are private and final, and titles is unmodifiable
+     */
+
+    /**
+     * Check that the representation invariants for WikitextLinks hold true.
+     * @throws RuntimeException if any representation invariants are violated.
+     */
+    private void checkRep() {
+        if (titles == null) {
+            throw new RuntimeException("titles must not be null");
+        }
+        if (!complete && !titles.isEmpty()) {
+            throw new RuntimeException("titles should be empty if the links are not complete");
+        }
+    }
+
+    /**
+     * Create WikitextLinks.
+     * @param titles the sorted, distinct titles of the linked articles, titles must not be null
+     * @param complete true if titles are all the links of the wikitext
+     */
+    private WikitextLinks(List<String> titles, boolean complete) {
+        this.titles = Collections.unmodifiableList(titles);
+        this.complete = complete;
+        checkRep();
+    }
+
+    /**
+     * Find the articles that a wikitext links to.
+     * @param text the wikitext of a page, text must not be null
+     * @return the links of text, which are not complete if they cannot be known without rendering text
+     */
+    static WikitextLinks scan(String text) {
+        List<String> found = new ArrayList<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '[' && text.startsWith("[[", i)) {
+                int end = i + 2;
+                while (end < length && "|[]{}<>\n".indexOf(text.charAt(end)) < 0) {
+                    end++;
+                }
+                if (end < length && (text.charAt(end) == '{' || text.charAt(end) == '<')) {
+                    return UNKNOWN;
+                }
+                if (end < length && (text.charAt(end) == '|' || text.startsWith("]]", end))) {
+                    String title = link(text.substring(i + 2, end));
+                    if (title == null) {
+                        return UNKNOWN;
+                    }
+                    if (!title.isEmpty()) {
+                        found.add(title);
+                    }
+                }
+                // the rest of the link is scanned too, since the caption of a file can hold links
+                i = end;
+            }
+            else if (c == '{' && text.startsWith("{{", i)) {
+                if (!isLinkless(text, i + 2)) {
+                    return UNKNOWN;
+                }
+                i += 2;
+            }
+            else if (c == '<') {
+                i = skipTag(text, i);
+                if (i < 0) {
+                    return UNKNOWN;
+                }
+            }
+            else {
+                i++;
+            }
+        }
+
+        Collections.sort(found);
+        List<String> distinct = new ArrayList<>(found.size());
+        for (String title : found) {
+            if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).equals(title)) {
+                distinct.add(title);
+            }
+        }
+        return new WikitextLinks(distinct, true);
+    }
+
+    /**
+     * Check whether the links of the wikitext are all known.
+     * @return true if getTitles returns every article the wikitext links to, false if they are not known
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Get the articles that the wikitext links to.
+     * @return the sorted, distinct normalized titles of the articles that the wikitext links to, which is
+     * empty if the links are not complete
+     */
+    List<String> getTitles() {
+        return titles;
+    }
+
+    /**
+     * Helper method that finds the article a link is to.
+     * @param target the text of a link before its first '|', target must not be null
+     * @return the normalized title of the article that target links to, the empty String if target is not
+     * a link to an article, or null if it is not known whether, or where, it links
+     */
+    private static String link(String target) {
+        int escape = target.indexOf('&');
+        if (target.indexOf('%') >= 0 || target.contains("://") || (escape >= 0 && target.indexOf(';', escape) >= 0)) {
+            return null;
+        }
+
+        String title = target;
+        int anchor = title.indexOf('#');
+        if (anchor >= 0) {
+            title = title.substring(0, anchor);
+        }
+        title = title.replace('_', ' ').trim();
+        if (title.startsWith(":")) {
+            title = title.substring(1).trim();
+        }
+        if (title.isEmpty()) {
+            // a link to a section of the page itself
+            return "";
+        }
+
+        int colon = title.indexOf(':');
+        if (colon >= 0) {
+            String prefix = TitleNormalizer.collapseWhitespace(title.substring(0, colon)).toLowerCase(Locale.ROOT);
+            if (TitleNormalizer.isNamespace(prefix) || NAMESPACE_ALIASES.contains(prefix)
+                    || PROJECT_PREFIXES.contains(prefix)) {
+                return "";
+            }
+            if (prefix.indexOf(' ') < 0) {
+                // the prefixes of other wikis have no spaces, so this may be a link to another language
+                return null;
+            }
+        }
+        return TitleNormalizer.normalize(title);
+    }
+
+    /**
+     * Helper method that checks whether a template is known not to add links to articles.
+     * @param text the wikitext, text must not be null
+     * @param start the index in text just after the "{{" that starts the template
+     * @return true if the template never adds a link that is not in text, false if it may
+     */
+    private static boolean isLinkless(String text, int start) {
+        int end = start;
+        while (end < text.length() && "|{}[<".indexOf(text.charAt(end)) < 0) {
+            end++;
+        }
+        if (end == text.length() || (text.charAt(end) != '|' && !text.startsWith("}}", end))) {
+            // a parameter of a template, or a name that is built from other markup
+            return false;
+        }
+
+        String name = TitleNormalizer.collapseWhitespace(text.substring(start, end)).toLowerCase(Locale.ROOT);
+        if (name.startsWith("cite ") || name.equals("citation")) {
+            return !hasLinkParameter(text, end);
+        }
+        int colon = name.indexOf(':');
+        return LINKLESS_TEMPLATES.contains(colon < 0 ? name : name.substring(0, colon).trim());
+    }
+
+    /**
+     * Helper method that checks whether a citation template has a parameter that makes a link, such as
+     * author-link, whose value is a title that is not in a [[...]] link.
+     * @param text the wikitext, text must not be null
+     * @param start the index in text just after the name of the template
+     * @return true if the template has a parameter whose name contains "link", or does not end, false otherwise
+     */
+    private static boolean hasLinkParameter(String text, int start) {
+        int templates = 1;
+        int links = 0;
+        for (int i = start; i < text.length(); i++) {
+            if (text.startsWith("{{", i)) {
+                templates++;
+                i++;
+            }
+            else if (text.startsWith("}}", i)) {
+                templates--;
+                if (templates == 0) {
+                    return false;
+                }
+                i++;
+            }
+            else if (text.startsWith("[[", i)) {
+                links++;
+                i++;
+            }
+            else if (text.startsWith("]]", i)) {
+                links = Math.max(0, links - 1);
+                i++;
+            }
+            else if (text.charAt(i) == '|' && templates == 1 && links == 0) {
+                int equals = i + 1;
+                while (equals < text.length() && "=|{}[]".indexOf(text.charAt(equals)) < 0) {
+                    equals++;
+                }
+                if (equals < text.length() && text.charAt(equals) == '=' && contains(text, i + 1, equals, "link")) {
+                    return true;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method that skips a tag, with its content if it is shown as text, or a comment.
+     * @param text the wikitext, text must not be null
+     * @param start the index of a '<' in text
+     * @return the index in text to continue scanning at, which is after start, or -1 if the tag changes the
+     * links of text in ways a scan cannot follow
+     */
+    private static int skipTag(String text, int start) {
+        if (text.startsWith("<!--", start)) {
+            int close = text.indexOf("-->", start + 4);
+            return close < 0 ? text.length() : close + 3;
+        }
+        for (String tag : TEXT_TAGS) {
+            if (isTag(text, start, tag)) {
+                int open = text.indexOf('>', start);
+                if (open < 0) {
+                    return -1;
+                }
+                if (text.charAt(open - 1) == '/') {
+                    return open + 1;
+                }
+                for (int close = text.indexOf("</", open); close >= 0; close = text.indexOf("</", close + 2)) {
+                    if (text.regionMatches(true, close + 2, tag, 0, tag.length())) {
+                        int end = text.indexOf('>', close);
+                        return end < 0 ? -1 : end + 1;
+                    }
+                }
+                return -1;
+            }
+        }
+        for (String tag : OPAQUE_TAGS) {
+            if (isTag(text, start, tag)) {
+                return -1;
+            }
+        }
+        return start + 1;
+    }
+
+    /**
+     * Helper method that checks whether a tag opens at an index.
+     * @param text the wikitext, text must not be null
+     * @param start the index of a '<' in text
+     * @param tag the lower case name of the tag, tag must not be null
+     * @return true if text has a tag named tag, in any case, that opens at start
+     */
+    private static boolean isTag(String text, int start, String tag) {
+        int end = start + 1 + tag.length();
+        if (!text.regionMatches(true, start + 1, tag, 0, tag.length()) || end >= text.length()) {
+            return false;
+        }
+        char next = text.charAt(end);
+        return next == '>' || next == '/' || Character.isWhitespace(next);
+    }
+
+    /**
+     * Helper method that checks whether part of a String contains a word, in any case.
+     * @param text the String, text must not be null
+     * @param start the index in text that the part starts at
+     * @param end the index in text that the part ends before
+     * @param word the lower case word, word must not be null
+     * @return true if word occurs, in any case, between start and end in text
+     */
+    private static boolean contains(String text, int start, int end, String word) {
+        for (int i = start; i + word.length() <= end; i++) {
+            if (text.regionMatches(true, i, word, 0, word.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}